@@ -0,0 +1,79 @@
+package com.clone.netflix.benchmarks;
+
+import com.clone.netflix.entities.Video;
+import com.clone.netflix.playload.CatalogPage;
+import com.clone.netflix.playload.VideoSummary;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON for GET /api/v1/videos (every entity, every column) against one /catalog page
+ * (VideoSummary projection), with the ObjectMapper Spring MVC builds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CatalogSerializationBenchmark {
+
+    @Param({"20", "1000", "10000", "100000"})
+    public int videos;
+
+    private ObjectMapper objectMapper;
+
+    private List<Video> allVideos;
+
+    private CatalogPage page;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        allVideos = new ArrayList<>(videos);
+        List<VideoSummary> summaries = new ArrayList<>();
+        for (int i = 0; i < videos; i++) {
+            String videoId = UUID.randomUUID().toString();
+            Video video = Video.builder()
+                    .videoId(videoId)
+                    .title("Title " + i)
+                    .description("A reasonably long description of video number " + i + ", about as long as the ones users type in the upload form.")
+                    .contentType("video/mp4")
+                    .filePath("/data/video/" + videoId + "_movie_" + i + ".mp4")
+                    .build();
+            allVideos.add(video);
+            if (summaries.size() < 20) {
+                summaries.add(new VideoSummary(videoId, video.getTitle(), video.getContentType()));
+            }
+        }
+        page = new CatalogPage(summaries, summaries.get(summaries.size() - 1).getVideoId());
+    }
+
+
+    @Benchmark
+    public byte[] allVideos() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(allVideos);
+    }
+
+    @Benchmark
+    public byte[] catalogPage() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(page);
+    }
+}
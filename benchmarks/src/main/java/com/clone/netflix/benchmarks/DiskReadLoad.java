@@ -0,0 +1,123 @@
+package com.clone.netflix.benchmarks;
+
+import com.clone.netflix.controllers.VideoController;
+import com.clone.netflix.streaming.DiskIoPermits;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Many players fetching segments from disk, served the way Tomcat would: on a pool of 200 platform threads, then on
+ * one virtual thread per request. Prints throughput, latency percentiles (queueing for a worker included), 503s and
+ * the most disk reads seen in flight at once, which DiskIoPermits keeps at streaming.io.max-concurrent.
+ * Not a JMH benchmark, it measures a node under load rather than one call:
+ *
+ *   java -cp target/benchmarks.jar com.clone.netflix.benchmarks.DiskReadLoad [clients] [seconds] [max-concurrent] [segments] [segment KiB]
+ *
+ * Segments stay in the page cache once read: for cold reads, make segments x 3 renditions x size larger than RAM
+ * or drop the page cache (sync; echo 3 > /proc/sys/vm/drop_caches) before each mode.
+ */
+public class DiskReadLoad {
+
+    // Tomcat's default server.tomcat.threads.max
+    private static final int PLATFORM_THREADS = 200;
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int maxConcurrent = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+        int segments = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+        int segmentBytes = (args.length > 4 ? Integer.parseInt(args[4]) : 1024) * 1024;
+
+        Path hlsDir = Files.createTempDirectory("hls-load");
+        try {
+            HlsFixture.writeVideo(hlsDir, segments, segmentBytes);
+            run("platform", Executors.newFixedThreadPool(PLATFORM_THREADS), hlsDir, clients, seconds, maxConcurrent, segments);
+            run("virtual", Executors.newVirtualThreadPerTaskExecutor(), hlsDir, clients, seconds, maxConcurrent, segments);
+        } finally {
+            HlsFixture.delete(hlsDir);
+        }
+    }
+
+
+    private static void run(String mode, ExecutorService workers, Path hlsDir, int clients, int seconds, int maxConcurrent,
+                            int segments) throws Exception {
+        DiskIoPermits diskIoPermits = new DiskIoPermits(maxConcurrent, 5000);
+        // no cache: every body is read from disk
+        VideoController controller = HlsFixture.controller(hlsDir, 0, diskIoPermits);
+
+        AtomicInteger peakReads = new AtomicInteger();
+        LongAdder bytes = new LongAdder();
+        LongAdder unavailable = new LongAdder();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+        Thread sampler = Thread.ofPlatform().daemon().start(() -> {
+            while (System.nanoTime() < deadline) {
+                peakReads.accumulateAndGet(maxConcurrent - diskIoPermits.available(), Math::max);
+                LockSupport.parkNanos(100_000);
+            }
+        });
+
+        List<long[]> latencies = new ArrayList<>();
+        try (ExecutorService players = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<long[]>> results = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                results.add(players.submit(() -> {
+                    long[] samples = new long[1024];
+                    int count = 0;
+                    while (System.nanoTime() < deadline) {
+                        int quality = ThreadLocalRandom.current().nextInt(HlsFixture.RENDITIONS);
+                        String name = String.format("segment_%03d.ts", ThreadLocalRandom.current().nextInt(segments));
+                        long start = System.nanoTime();
+                        // the player waits for a worker like a request waits for a connector thread
+                        int status = workers.submit(() -> {
+                            HlsFixture.DiscardingResponse response = new HlsFixture.DiscardingResponse();
+                            controller.getSegment(HlsFixture.VIDEO_ID, quality, name, new MockHttpServletRequest("GET", "/"), response);
+                            bytes.add(response.bytesWritten());
+                            return response.getStatus();
+                        }).get();
+                        if (status == 503) {
+                            unavailable.increment();
+                        }
+                        if (count == samples.length) {
+                            samples = Arrays.copyOf(samples, count * 2);
+                        }
+                        samples[count++] = System.nanoTime() - start;
+                    }
+                    return Arrays.copyOf(samples, count);
+                }));
+            }
+            for (Future<long[]> result : results) {
+                latencies.add(result.get());
+            }
+        } finally {
+            workers.shutdown();
+        }
+        sampler.join();
+
+        long[] all = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        System.out.printf("%-8s clients=%d requests/s=%.0f MiB/s=%.1f p50=%.2fms p99=%.2fms 503s=%d peak disk reads=%d (max %d)%n",
+                mode, clients, all.length / (double) seconds, bytes.sum() / (1024.0 * 1024 * seconds),
+                percentile(all, 0.50), percentile(all, 0.99), unavailable.sum(), peakReads.get(), maxConcurrent);
+    }
+
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[(int) Math.min(sorted.length - 1, Math.round(p * sorted.length))] / 1e6;
+    }
+}
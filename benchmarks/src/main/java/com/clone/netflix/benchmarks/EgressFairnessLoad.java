@@ -0,0 +1,72 @@
+package com.clone.netflix.benchmarks;
+
+import com.clone.netflix.metrics.StreamingMetrics;
+import com.clone.netflix.streaming.EgressShaper;
+import com.clone.netflix.streaming.HlsCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Many players pacing through one saturated EgressShaper link: prints how evenly the link was shared
+ * (Jain's fairness index, 1 when every player got the same) and how much of it was used.
+ * Not a JMH benchmark, it measures a distribution rather than a time:
+ *
+ *   java -cp target/benchmarks.jar com.clone.netflix.benchmarks.EgressFairnessLoad [players] [seconds] [MiB/s] [chunk KiB]
+ *
+ * Exits with 1 when the index is below 0.9 or the link was under- or over-used.
+ */
+public class EgressFairnessLoad {
+
+    private static final long MIB = 1024 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        int players = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        long rate = (args.length > 2 ? Long.parseLong(args[2]) : 40) * MIB;
+        int chunk = (args.length > 3 ? Integer.parseInt(args[3]) : 4) * 1024;
+
+        StreamingMetrics metrics = new StreamingMetrics(new SimpleMeterRegistry(), new HlsCache(1024, 1024),
+                Executors.newSingleThreadExecutor());
+        EgressShaper shaper = new EgressShaper(metrics, rate, chunk, 0, chunk, chunk, 120, 5000);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+        List<Future<Long>> sent = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < players; i++) {
+                MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+                request.setRemoteAddr("10." + (i >> 16 & 255) + "." + (i >> 8 & 255) + "." + (i & 255));
+                request.addHeader("X-Playback-Session-Id", "player-" + i);
+                EgressShaper.Pacer pacer = shaper.pacer(request, 0);
+                sent.add(executor.submit(() -> {
+                    long bytes = 0;
+                    while (System.nanoTime() < deadline) {
+                        pacer.pace(bytes + chunk);
+                        bytes += chunk;
+                    }
+                    return bytes;
+                }));
+            }
+        }
+
+        double sum = 0;
+        double squares = 0;
+        for (Future<Long> bytes : sent) {
+            sum += bytes.get();
+            squares += (double) bytes.get() * bytes.get();
+        }
+        double fairness = sum * sum / (players * squares);
+        double used = sum / (rate * seconds);
+        System.out.printf("players=%d fairness=%.3f link used=%.2f%n", players, fairness, used);
+
+        // the link was used, and not beyond its rate (plus the burst and one chunk in flight per player)
+        boolean ok = fairness > 0.9 && sum > rate * (seconds / 2.0) && sum < rate * (seconds + 0.5) + (long) players * chunk;
+        System.exit(ok ? 0 : 1);
+    }
+}
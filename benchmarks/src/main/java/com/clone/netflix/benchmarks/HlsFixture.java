@@ -0,0 +1,187 @@
+package com.clone.netflix.benchmarks;
+
+import com.clone.netflix.controllers.VideoController;
+import com.clone.netflix.metrics.StreamingMetrics;
+import com.clone.netflix.services.impl.LiveStreamServiceImpl;
+import com.clone.netflix.storage.LocalStorageBackend;
+import com.clone.netflix.storage.StorageBackend;
+import com.clone.netflix.streaming.DiskIoPermits;
+import com.clone.netflix.streaming.EgressShaper;
+import com.clone.netflix.streaming.HlsCache;
+import com.clone.netflix.streaming.HlsFileServer;
+import com.clone.netflix.streaming.HlsMetadataIndex;
+import com.clone.netflix.streaming.HlsStorageKeys;
+import com.clone.netflix.streaming.OpenFileCache;
+import com.clone.netflix.streaming.SegmentPrefetcher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * On-disk HLS output shaped like what HlsEncoder writes (HLS_DIR/{videoId}/{qualityLevel}/...),
+ * plus a controller wired the same way Spring wires it but without a context.
+ */
+final class HlsFixture {
+
+    static final String VIDEO_ID = "bench-video";
+
+    static final int RENDITIONS = 3;
+
+    private HlsFixture() {
+    }
+
+
+    /**
+     * Write master.m3u8, one playlist per rendition and segmentCount random segments per rendition
+     * @param hlsDir
+     * @param segmentCount
+     * @param segmentBytes
+     * @throws IOException
+     */
+    static void writeVideo(Path hlsDir, int segmentCount, int segmentBytes) throws IOException {
+        Path videoDir = hlsDir.resolve(VIDEO_ID);
+        Random random = new Random(42);
+        byte[] segment = new byte[segmentBytes];
+
+        StringBuilder master = new StringBuilder("#EXTM3U\n#EXT-X-VERSION:3\n");
+        for (int quality = 0; quality < RENDITIONS; quality++) {
+            Path renditionDir = Files.createDirectories(videoDir.resolve(String.valueOf(quality)));
+            StringBuilder playlist = new StringBuilder("#EXTM3U\n#EXT-X-VERSION:3\n#EXT-X-TARGETDURATION:6\n#EXT-X-MEDIA-SEQUENCE:0\n");
+            for (int i = 0; i < segmentCount; i++) {
+                String name = String.format("segment_%03d.ts", i);
+                random.nextBytes(segment);
+                Files.write(renditionDir.resolve(name), segment);
+                playlist.append("#EXTINF:6.000000,\n").append(name).append('\n');
+            }
+            playlist.append("#EXT-X-ENDLIST\n");
+            Files.writeString(renditionDir.resolve("playlist.m3u8"), playlist);
+            master.append("#EXT-X-STREAM-INF:BANDWIDTH=").append(800_000 * (quality + 1)).append('\n')
+                    .append(quality).append("/playlist.m3u8\n");
+        }
+        Files.writeString(videoDir.resolve("master.m3u8"), master);
+    }
+
+
+    /**
+     * @param cacheBytes 0 serves everything from disk
+     * @return
+     */
+    static VideoController controller(Path hlsDir, long cacheBytes) {
+        return controller(hlsDir, cacheBytes, new DiskIoPermits(256, 5000));
+    }
+
+
+    /**
+     * @param cacheBytes 0 serves everything from disk
+     * @param diskIoPermits bounds the handler's disk reads
+     * @return
+     */
+    static VideoController controller(Path hlsDir, long cacheBytes, DiskIoPermits diskIoPermits) {
+        HlsCache cache = new HlsCache(cacheBytes, Math.min(cacheBytes, 8L * 1024 * 1024));
+        StreamingMetrics metrics = new StreamingMetrics(new SimpleMeterRegistry(), cache, Executors.newSingleThreadExecutor());
+        HlsMetadataIndex metadataIndex = new HlsMetadataIndex();
+        StorageBackend storage = new LocalStorageBackend(hlsDir);
+        // no readahead: every request is measured on its own
+        HlsStorageKeys storageKeys = HlsStorageKeys.perVideo();
+        SegmentPrefetcher prefetcher = new SegmentPrefetcher(cache, metadataIndex, diskIoPermits, metrics, storage, storageKeys,
+                hlsDir.toString(), 0, 0, 1);
+        HlsFileServer fileServer = new HlsFileServer(cache, metadataIndex, diskIoPermits, metrics, new OpenFileCache(1024), storage, storageKeys,
+                prefetcher, new EgressShaper(metrics, 0, 0, 0, 0, 1024 * 1024, 120, 5000));
+        ReflectionTestUtils.setField(fileServer, "playlistCacheControl", "public, max-age=60");
+        ReflectionTestUtils.setField(fileServer, "segmentCacheControl", "public, max-age=31536000, immutable");
+        ReflectionTestUtils.setField(fileServer, "HLS_DIR", hlsDir.toString());
+
+        return new VideoController(null, null, fileServer, new LiveStreamServiceImpl(null, cache, metadataIndex, storage, null));
+    }
+
+
+    static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+
+    /**
+     * Response whose body goes nowhere, so the benchmark measures the handler and not a buffer
+     */
+    static final class DiscardingResponse extends MockHttpServletResponse {
+
+        private final CountingOutputStream body = new CountingOutputStream();
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return body;
+        }
+
+        long bytesWritten() {
+            return body.count;
+        }
+    }
+
+
+    static final class CountingOutputStream extends ServletOutputStream {
+
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+        }
+    }
+
+
+    /**
+     * Channel sink for the FileChannel / mmap variants. Not a socket, so transferTo takes the JDK's
+     * buffered fallback here: the numbers compare against the read path, not against sendfile.
+     */
+    static final class DiscardingChannel implements WritableByteChannel {
+
+        long count;
+
+        @Override
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            src.position(src.limit());
+            count += n;
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
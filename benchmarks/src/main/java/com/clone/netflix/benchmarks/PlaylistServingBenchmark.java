@@ -0,0 +1,94 @@
+package com.clone.netflix.benchmarks;
+
+import com.clone.netflix.controllers.VideoController;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Master and rendition playlists: what every player re-requests, so per-request overhead matters
+ * more than bytes. Includes the revalidation (304) path players hit once max-age runs out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlaylistServingBenchmark {
+
+    // a 2 hour title at 6s segments has 1200
+    @Param({"100", "1200"})
+    public int segments;
+
+    @Param({"0", "268435456"})
+    public long cacheBytes;
+
+    private Path hlsDir;
+
+    private VideoController controller;
+
+    private String playlistEtag;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        hlsDir = Files.createTempDirectory("hls-bench");
+        HlsFixture.writeVideo(hlsDir, segments, 188);
+        controller = HlsFixture.controller(hlsDir, cacheBytes);
+
+        HlsFixture.DiscardingResponse response = new HlsFixture.DiscardingResponse();
+        controller.getQualityPlaylist(HlsFixture.VIDEO_ID, 1, new MockHttpServletRequest("GET", ""), response);
+        playlistEtag = response.getHeader("ETag");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        HlsFixture.delete(hlsDir);
+    }
+
+
+    @Benchmark
+    public long master() throws IOException {
+        HlsFixture.DiscardingResponse response = new HlsFixture.DiscardingResponse();
+        controller.serverMasterFile(HlsFixture.VIDEO_ID, new MockHttpServletRequest("GET", ""), response);
+        return response.bytesWritten();
+    }
+
+    @Benchmark
+    public long playlist() throws IOException {
+        HlsFixture.DiscardingResponse response = new HlsFixture.DiscardingResponse();
+        controller.getQualityPlaylist(HlsFixture.VIDEO_ID, 1, new MockHttpServletRequest("GET", ""), response);
+        return response.bytesWritten();
+    }
+
+    @Benchmark
+    public int playlistNotModified() throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "");
+        request.addHeader("If-None-Match", playlistEtag);
+        HlsFixture.DiscardingResponse response = new HlsFixture.DiscardingResponse();
+        controller.getQualityPlaylist(HlsFixture.VIDEO_ID, 1, request, response);
+        return response.getStatus();
+    }
+
+    // what the endpoint did before HlsFileServer: read the whole file per request
+    @Benchmark
+    public byte[] readAllBytes() throws IOException {
+        return Files.readAllBytes(hlsDir.resolve(HlsFixture.VIDEO_ID).resolve("1").resolve("playlist.m3u8"));
+    }
+}
@@ -0,0 +1,143 @@
+package com.clone.netflix.benchmarks;
+
+import com.clone.netflix.controllers.VideoController;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.UrlResource;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serving one .ts segment: the controller path (metadata index, cache, range handling) against the
+ * ways the old endpoint and the obvious alternatives read a file. Files stay in the page cache, so
+ * this measures CPU and copies, not the disk.
+ * Reported as throughput and as a sampled latency distribution (p50 ... p99.99), both against urlResource,
+ * the old endpoint's baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SegmentServingBenchmark {
+
+    private static final int SEGMENTS = 16;
+
+    @Param({"262144", "2097152"})
+    public int segmentBytes;
+
+    private Path hlsDir;
+
+    private VideoController controller;
+
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        hlsDir = Files.createTempDirectory("hls-bench");
+        HlsFixture.writeVideo(hlsDir, SEGMENTS, segmentBytes);
+        // local segments skip the off-heap cache: its size doesn't matter here
+        controller = HlsFixture.controller(hlsDir, 256L * 1024 * 1024);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        HlsFixture.delete(hlsDir);
+    }
+
+    private String nextSegment() {
+        next = (next + 1) % SEGMENTS;
+        return String.format("segment_%03d.ts", next);
+    }
+
+    private Path segmentPath(String name) {
+        return Paths.get(hlsDir.toString(), HlsFixture.VIDEO_ID, "1", name);
+    }
+
+
+    @Benchmark
+    public long controller() throws IOException {
+        String name = nextSegment();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/videos/" + HlsFixture.VIDEO_ID + "/1/" + name);
+        HlsFixture.DiscardingResponse response = new HlsFixture.DiscardingResponse();
+        controller.getSegment(HlsFixture.VIDEO_ID, 1, name, request, response);
+        return response.bytesWritten();
+    }
+
+    @Benchmark
+    public long controllerRange() throws IOException {
+        String name = nextSegment();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/videos/" + HlsFixture.VIDEO_ID + "/1/" + name);
+        request.addHeader("Range", "bytes=0-65535");
+        HlsFixture.DiscardingResponse response = new HlsFixture.DiscardingResponse();
+        controller.getSegment(HlsFixture.VIDEO_ID, 1, name, request, response);
+        return response.bytesWritten();
+    }
+
+    @Benchmark
+    public long fileSystemResource() throws IOException {
+        FileSystemResource resource = new FileSystemResource(segmentPath(nextSegment()));
+        try (InputStream in = resource.getInputStream()) {
+            return in.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    @Benchmark
+    public long urlResource() throws IOException {
+        UrlResource resource = new UrlResource(segmentPath(nextSegment()).toUri());
+        try (InputStream in = resource.getInputStream()) {
+            return in.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    @Benchmark
+    public long fileChannelTransferTo() throws IOException {
+        HlsFixture.DiscardingChannel target = new HlsFixture.DiscardingChannel();
+        try (FileChannel channel = FileChannel.open(segmentPath(nextSegment()), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long written = 0;
+            while (written < size) {
+                written += channel.transferTo(written, size - written, target);
+            }
+        }
+        return target.count;
+    }
+
+    @Benchmark
+    public long mmap() throws IOException {
+        HlsFixture.DiscardingChannel target = new HlsFixture.DiscardingChannel();
+        try (FileChannel channel = FileChannel.open(segmentPath(nextSegment()), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            long sum = 0;
+            // touch every page so the mapping cost is actually paid
+            for (int i = 0; i < buffer.limit(); i += 4096) {
+                sum += buffer.get(i);
+            }
+            target.write(buffer);
+            return target.count + sum;
+        }
+    }
+}
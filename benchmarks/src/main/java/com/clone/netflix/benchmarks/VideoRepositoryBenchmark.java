@@ -0,0 +1,138 @@
+package com.clone.netflix.benchmarks;
+
+import com.clone.netflix.entities.Video;
+import com.clone.netflix.playload.CatalogPage;
+import com.clone.netflix.playload.VideoSummary;
+import com.clone.netflix.repositories.VideoRepository;
+import com.clone.netflix.services.impl.VideoServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * VideoRepository queries behind the read endpoints, on an in-memory H2 database.
+ * Only the JPA slice is started (no controllers, transcoding or search beans), so the numbers are
+ * Hibernate + JDBC + query shape. H2 hides network round trips: compare variants, not absolute numbers.
+ * cachedCatalogPage goes through VideoServiceImpl.getCatalog, whose read-through page cache answers after the first
+ * query of each cursor. Run with -prof gc for allocation per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VideoRepositoryBenchmark {
+
+    @Param({"10000", "100000"})
+    public int videos;
+
+    private ConfigurableApplicationContext context;
+
+    private VideoRepository videoRepository;
+
+    private VideoServiceImpl videoService;
+
+    private List<String> videoIds;
+
+    private int next;
+
+    @Configuration
+    @EnableAutoConfiguration
+    @EntityScan(basePackageClasses = Video.class)
+    @EnableJpaRepositories(basePackageClasses = VideoRepository.class)
+    static class JpaSlice {
+    }
+
+    @Setup
+    public void setUp() {
+        // command line args beat the service's application.properties, which expects MySQL
+        context = new SpringApplicationBuilder(JpaSlice.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:bench;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.jpa.hibernate.ddl-auto=create-drop",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.root=WARN");
+        videoRepository = context.getBean(VideoRepository.class);
+
+        List<Video> batch = new ArrayList<>(videos);
+        videoIds = new ArrayList<>(videos);
+        for (int i = 0; i < videos; i++) {
+            String videoId = UUID.randomUUID().toString();
+            videoIds.add(videoId);
+            batch.add(Video.builder()
+                    .videoId(videoId)
+                    .title("Title " + i)
+                    .description("Description of video " + i)
+                    .contentType("video/mp4")
+                    .filePath("/data/video/" + videoId + ".mp4")
+                    .build());
+        }
+        videoRepository.saveAll(batch);
+        // only getCatalog is called, which needs nothing but the repository
+        videoService = new VideoServiceImpl(videoRepository, null, null, null, null, null, null, null, null, null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    private int nextIndex() {
+        next = (next + 1) % videos;
+        return next;
+    }
+
+
+    @Benchmark
+    public Optional<Video> findById() {
+        return videoRepository.findById(videoIds.get(nextIndex()));
+    }
+
+    @Benchmark
+    public Optional<Video> findFirstByTitle() {
+        return videoRepository.findFirstByTitle("Title " + nextIndex());
+    }
+
+    @Benchmark
+    public List<VideoSummary> catalogPage() {
+        return videoRepository.findSummariesAfter(videoIds.get(nextIndex()), PageRequest.of(0, 20));
+    }
+
+    // a few hundred cursors, fewer than the cache holds: every page is a hit after the first round
+    @Benchmark
+    public CatalogPage cachedCatalogPage() {
+        return videoService.getCatalog(videoIds.get(nextIndex() % 512), 20);
+    }
+
+    // GET /api/v1/videos: the whole table as entities
+    @Benchmark
+    public List<Video> findAll() {
+        return videoRepository.findAll();
+    }
+}
@@ -2,8 +2,10 @@ package com.clone.netflix;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class NetflixVideoStreamingService {
     public static void main(String[] args) {
         SpringApplication.run(NetflixVideoStreamingService.class, args);
@@ -0,0 +1,86 @@
+package com.clone.netflix.config;
+
+import com.clone.netflix.storage.LocalStorageBackend;
+import com.clone.netflix.storage.S3StorageBackend;
+import com.clone.netflix.storage.StorageBackend;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+@Configuration
+public class StorageConfig {
+
+    @Value("${storage.backend:local}")
+    private String backend;
+
+    @Value("${storage.s3.bucket:netflix}")
+    private String bucket;
+
+    @Value("${storage.s3.multipart-threshold:16777216}")
+    private long multipartThreshold;
+
+    @Value("${storage.s3.part-size:8388608}")
+    private long partSize;
+
+    @Value("${storage.s3.upload-concurrency:16}")
+    private int uploadConcurrency;
+
+    /**
+     * Published HLS output: HLS_DIR itself (local), or hls/ in the bucket (s3)
+     * @param hlsDir
+     * @param s3Client
+     * @return
+     */
+    @Bean
+    public StorageBackend hlsStorage(@Value("${file.video.hls}") String hlsDir, ObjectProvider<S3Client> s3Client) {
+        return backend(Paths.get(hlsDir), "hls/", s3Client);
+    }
+
+
+    /**
+     * Uploaded originals: files.video itself (local), or originals/ in the bucket (s3)
+     * @param videoDir
+     * @param s3Client
+     * @return
+     */
+    @Bean
+    public StorageBackend originalsStorage(@Value("${files.video}") String videoDir, ObjectProvider<S3Client> s3Client) {
+        return backend(Paths.get(videoDir), "originals/", s3Client);
+    }
+
+
+    /**
+     * One client for both backends. The connection pool covers parallel uploads plus the ranged reads
+     * of serving; keep it at least as big as the request threads that may read from the bucket.
+     * @param endpoint empty for AWS itself
+     * @param region
+     * @param accessKey empty for the default AWS credentials chain
+     * @param secretKey
+     * @param maxConnections
+     * @return
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "storage.backend", havingValue = "s3")
+    public S3Client s3Client(@Value("${storage.s3.endpoint:}") String endpoint,
+                             @Value("${storage.s3.region:us-east-1}") String region,
+                             @Value("${storage.s3.access-key:}") String accessKey,
+                             @Value("${storage.s3.secret-key:}") String secretKey,
+                             @Value("${storage.s3.max-connections:256}") int maxConnections) {
+        return S3StorageBackend.client(endpoint, region, accessKey, secretKey, maxConnections);
+    }
+
+
+    private StorageBackend backend(Path localRoot, String prefix, ObjectProvider<S3Client> s3Client) {
+        return switch (backend) {
+            case "local" -> new LocalStorageBackend(localRoot);
+            case "s3" -> new S3StorageBackend(s3Client.getObject(), bucket, prefix, multipartThreshold, partSize, uploadConcurrency);
+            default -> throw new IllegalStateException("Unknown storage.backend: " + backend);
+        };
+    }
+}
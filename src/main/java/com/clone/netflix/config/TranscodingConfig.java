@@ -0,0 +1,46 @@
+package com.clone.netflix.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+public class TranscodingConfig {
+
+    /**
+     * Worker pool for transcoding jobs. The pool is bounded to the core count (or transcoding.workers)
+     * so ingest can never eat into the servlet threads that serve playback.
+     * The queue only holds job ids - the jobs themselves live in the transcoding_jobs table.
+     * @param workers
+     * @return
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService transcodingExecutor(@Value("${transcoding.workers:0}") int workers) {
+        int size = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "transcoder-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+
+    /**
+     * Work-stealing pool the per-rendition ffmpeg tasks run on. Shared by all jobs, so rungs of
+     * several titles interleave instead of one title holding a whole worker.
+     * @param parallelism
+     * @return
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService encodingExecutor(@Value("${hls.encoding.parallelism:0}") int parallelism) {
+        return Executors.newWorkStealingPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+}
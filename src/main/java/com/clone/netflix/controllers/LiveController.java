@@ -0,0 +1,67 @@
+package com.clone.netflix.controllers;
+
+import com.clone.netflix.entities.Video;
+import com.clone.netflix.playload.CustomMessage;
+import com.clone.netflix.services.LiveStreamService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+
+@RestController
+@RequestMapping("/api/v1/live")
+@CrossOrigin(origins = {"http://localhost:5173", "http://localhost:3000", "*"})
+public class LiveController {
+
+    private final LiveStreamService liveStreamService;
+
+    public LiveController(LiveStreamService liveStreamService) {
+        this.liveStreamService = liveStreamService;
+    }
+
+
+    /**
+     * Create a live stream. Play it at /api/v1/videos/{videoId}/master.m3u8, publish to /api/v1/live/{videoId}/ingest
+     * @param title
+     * @param description
+     * @return
+     */
+    @PostMapping
+    public ResponseEntity<Video> create(@RequestParam("title") String title,
+                                        @RequestParam(value = "description", required = false) String description) {
+        return ResponseEntity.status(HttpStatus.CREATED).body(liveStreamService.create(title, description));
+    }
+
+
+    /**
+     * Publish: the request body is the live input (e.g. ffmpeg -re -i in.mp4 -c copy -f mpegts
+     * http://host/api/v1/live/{videoId}/ingest). The request lasts as long as the stream.
+     * @param videoId
+     * @param request
+     * @return
+     */
+    @RequestMapping(value = "/{videoId}/ingest", method = {RequestMethod.POST, RequestMethod.PUT})
+    public ResponseEntity<CustomMessage> ingest(@PathVariable String videoId, HttpServletRequest request) {
+        try {
+            liveStreamService.ingest(videoId, request.getInputStream());
+            return ResponseEntity.ok(CustomMessage.builder().message("Stream ended").success(true).build());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(CustomMessage.builder().message(e.getMessage()).success(false).build());
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(CustomMessage.builder().message("Error starting live encoder").success(false).build());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(CustomMessage.builder().message("Interrupted").success(false).build());
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(CustomMessage.builder().message("Live stream not found").success(false).build());
+        }
+    }
+}
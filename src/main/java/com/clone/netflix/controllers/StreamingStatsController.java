@@ -0,0 +1,27 @@
+package com.clone.netflix.controllers;
+
+import com.clone.netflix.streaming.HlsCache;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/v1/stats")
+public class StreamingStatsController {
+
+    private final HlsCache hlsCache;
+
+    public StreamingStatsController(HlsCache hlsCache) {
+        this.hlsCache = hlsCache;
+    }
+
+
+    /**
+     * Hit / miss / eviction counters of the hot-segment cache
+     * @return
+     */
+    @GetMapping("/hls-cache")
+    public HlsCache.Stats hlsCache() {
+        return hlsCache.stats();
+    }
+}
@@ -0,0 +1,123 @@
+package com.clone.netflix.controllers;
+
+import com.clone.netflix.entities.JobStatus;
+import com.clone.netflix.entities.TranscodingJob;
+import com.clone.netflix.playload.CustomMessage;
+import com.clone.netflix.playload.EncodeProgress;
+import com.clone.netflix.services.TranscodingJobService;
+import com.clone.netflix.transcoding.TranscodingProgress;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@RestController
+@RequestMapping("/api/v1/jobs")
+@CrossOrigin(origins = {"http://localhost:5173", "http://localhost:3000", "*"})
+public class TranscodingJobController {
+
+    // EventSource reconnects on its own, so a long-lived stream can still be cut now and then
+    private static final long PROGRESS_STREAM_TIMEOUT_MS = 30 * 60 * 1000L;
+
+    private final TranscodingJobService transcodingJobService;
+
+    private final TranscodingProgress transcodingProgress;
+
+    public TranscodingJobController(TranscodingJobService transcodingJobService, TranscodingProgress transcodingProgress) {
+        this.transcodingJobService = transcodingJobService;
+        this.transcodingProgress = transcodingProgress;
+    }
+
+
+    /**
+     * Get status of a transcoding job
+     * @param jobId
+     * @return
+     */
+    @GetMapping("/{jobId}")
+    public ResponseEntity<?> get(@PathVariable String jobId) {
+        try {
+            return ResponseEntity.ok(transcodingJobService.get(jobId));
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(CustomMessage.builder().message("Job not found").success(false).build());
+        }
+    }
+
+
+    /**
+     * List jobs, optionally filtered by status (QUEUED, RUNNING, DONE, FAILED) or by video
+     * @param status
+     * @param videoId
+     * @return
+     */
+    @GetMapping
+    public List<TranscodingJob> getAll(@RequestParam(value = "status", required = false) JobStatus status,
+                                       @RequestParam(value = "videoId", required = false) String videoId) {
+        if (videoId != null) {
+            return transcodingJobService.getByVideo(videoId);
+        }
+        return transcodingJobService.getByStatus(status);
+    }
+
+
+    /**
+     * Live progress of a job as Server-Sent Events ("progress" events carrying EncodeProgress).
+     * The stream ends after the event with status DONE or FAILED.
+     * @param jobId
+     * @return
+     */
+    @GetMapping(value = "/{jobId}/progress", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> progress(@PathVariable String jobId) {
+        TranscodingJob job;
+        try {
+            job = transcodingJobService.get(jobId);
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+
+        SseEmitter emitter = new SseEmitter(PROGRESS_STREAM_TIMEOUT_MS);
+        AtomicBoolean closed = new AtomicBoolean();
+        // subscribe before reading the status again, so the final event can't slip between the two
+        Runnable unsubscribe = transcodingProgress.subscribe(job.getVideoId(), update -> send(emitter, closed, update));
+        emitter.onCompletion(unsubscribe);
+        emitter.onTimeout(unsubscribe);
+        emitter.onError(e -> unsubscribe.run());
+
+        job = transcodingJobService.get(jobId);
+        EncodeProgress current = transcodingProgress.current(job.getVideoId());
+        if (job.getStatus() == JobStatus.DONE || job.getStatus() == JobStatus.FAILED || current == null) {
+            current = new EncodeProgress(job.getVideoId(), job.getStatus(),
+                    job.getStatus() == JobStatus.DONE ? 100 : 0, 0, 0, null, 0, 0);
+        }
+        send(emitter, closed, current);
+        return ResponseEntity.ok(emitter);
+    }
+
+
+    private static void send(SseEmitter emitter, AtomicBoolean closed, EncodeProgress update) {
+        if (closed.get()) {
+            return;
+        }
+        boolean last = update.getStatus() == JobStatus.DONE || update.getStatus() == JobStatus.FAILED;
+        try {
+            emitter.send(SseEmitter.event().name("progress").data(update, MediaType.APPLICATION_JSON));
+            if (last && closed.compareAndSet(false, true)) {
+                emitter.complete();
+            }
+        } catch (IOException | IllegalStateException e) {
+            // client went away
+            closed.set(true);
+            emitter.completeWithError(e);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.clone.netflix.controllers;
+
+import com.clone.netflix.entities.UploadSession;
+import com.clone.netflix.playload.CustomMessage;
+import com.clone.netflix.services.UploadService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+
+/**
+ * Resumable, streaming uploads.
+ * POST creates an upload, then the file is sent as raw bodies with PUT ?offset=N (any chunk size).
+ * After an interruption GET the upload and continue from its receivedBytes.
+ */
+@RestController
+@RequestMapping("/api/v1/uploads")
+@CrossOrigin(origins = {"http://localhost:5173", "http://localhost:3000", "*"})
+public class UploadController {
+
+    private static final String UPLOAD_OFFSET_HEADER = "Upload-Offset";
+
+    private final UploadService uploadService;
+
+    public UploadController(UploadService uploadService) {
+        this.uploadService = uploadService;
+    }
+
+
+    /**
+     * Start an upload
+     * @param title
+     * @param description
+     * @param fileName
+     * @param contentType
+     * @param size total file size in bytes
+     * @return
+     */
+    @PostMapping
+    public ResponseEntity<?> create(@RequestParam("title") String title, @RequestParam("description") String description,
+                                    @RequestParam("fileName") String fileName,
+                                    @RequestParam(value = "contentType", required = false) String contentType,
+                                    @RequestParam("size") long size) {
+        try {
+            UploadSession session = uploadService.create(title, description, fileName, contentType, size);
+            return ResponseEntity.status(HttpStatus.CREATED).header(UPLOAD_OFFSET_HEADER, "0").body(session);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(CustomMessage.builder().message(e.getMessage()).success(false).build());
+        }
+    }
+
+
+    /**
+     * Current state of an upload, receivedBytes is the offset to resume from
+     * @param uploadId
+     * @return
+     */
+    @GetMapping("/{uploadId}")
+    public ResponseEntity<?> get(@PathVariable String uploadId) {
+        try {
+            UploadSession session = uploadService.get(uploadId);
+            return ResponseEntity.ok().header(UPLOAD_OFFSET_HEADER, String.valueOf(session.getReceivedBytes())).body(session);
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(CustomMessage.builder().message("Upload not found").success(false).build());
+        }
+    }
+
+
+    /**
+     * Append a chunk. The body is read straight from the request, never parsed as multipart.
+     * Responds 202 with the session (and its jobId) once the last chunk is in.
+     * @param uploadId
+     * @param offset
+     * @param sha256 optional hex SHA-256 of this chunk
+     * @param request
+     * @return
+     * @throws IOException
+     */
+    @PutMapping("/{uploadId}")
+    public ResponseEntity<?> appendChunk(@PathVariable String uploadId, @RequestParam("offset") long offset,
+                                         @RequestHeader(value = "X-Chunk-SHA256", required = false) String sha256,
+                                         HttpServletRequest request) throws IOException {
+        UploadSession current;
+        try {
+            current = uploadService.get(uploadId);
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(CustomMessage.builder().message("Upload not found").success(false).build());
+        }
+
+        try {
+            UploadSession session = uploadService.appendChunk(uploadId, offset, request.getInputStream(), sha256);
+            return ResponseEntity.status(session.isCompleted() ? HttpStatus.ACCEPTED : HttpStatus.OK)
+                    .header(UPLOAD_OFFSET_HEADER, String.valueOf(session.getReceivedBytes()))
+                    .body(session);
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .header(UPLOAD_OFFSET_HEADER, String.valueOf(current.getReceivedBytes()))
+                    .body(CustomMessage.builder().message(e.getMessage()).success(false).build());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .header(UPLOAD_OFFSET_HEADER, String.valueOf(current.getReceivedBytes()))
+                    .body(CustomMessage.builder().message(e.getMessage()).success(false).build());
+        }
+    }
+}
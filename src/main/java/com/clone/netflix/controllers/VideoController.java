@@ -1,45 +1,67 @@
 package com.clone.netflix.controllers;
 
+import com.clone.netflix.entities.TranscodingJob;
 import com.clone.netflix.entities.Video;
+import com.clone.netflix.live.LiveStream;
+import com.clone.netflix.playload.CatalogPage;
 import com.clone.netflix.playload.CustomMessage;
+import com.clone.netflix.playload.VideoSummary;
+import com.clone.netflix.services.LiveStreamService;
+import com.clone.netflix.services.TranscodingJobService;
 import com.clone.netflix.services.VideoService;
+import com.clone.netflix.streaming.HlsCacheKey;
+import com.clone.netflix.streaming.HlsFileServer;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 @RestController
 @RequestMapping("/api/v1/videos")
 @CrossOrigin(origins = {"http://localhost:5173", "http://localhost:3000", "*"})
 public class VideoController {
-    @Value("${file.video.hls}")
-    private String HLS_DIR;
+
+    private static final Logger log = LoggerFactory.getLogger(VideoController.class);
     private final VideoService videoService;
+    private final TranscodingJobService transcodingJobService;
+    private final HlsFileServer hlsFileServer;
+    private final LiveStreamService liveStreamService;
+
+    // live playlists change with every part
+    private static final String LIVE_PLAYLIST_CACHE_CONTROL = "no-cache";
 
-    public VideoController(VideoService videoService) {
+    public VideoController(VideoService videoService, TranscodingJobService transcodingJobService, HlsFileServer hlsFileServer,
+                           LiveStreamService liveStreamService) {
         this.videoService = videoService;
+        this.transcodingJobService = transcodingJobService;
+        this.hlsFileServer = hlsFileServer;
+        this.liveStreamService = liveStreamService;
     }
 
     /**
      * Upload video
+     * Stores the file and queues a transcoding job, responds 202 with the job (poll /api/v1/jobs/{jobId})
      * @param file
      * @param title
      * @param description
@@ -47,7 +69,7 @@ public class VideoController {
      */
     @PostMapping
     public ResponseEntity<?> create(@RequestParam("file") MultipartFile file, @RequestParam("title") String title, @RequestParam("description") String description) {
-        System.out.print("file received : " + file.getOriginalFilename());
+        log.info("File received: {}", file.getOriginalFilename());
 
         Video video = new Video();
         video.setTitle(title);
@@ -57,7 +79,8 @@ public class VideoController {
         Video savedVideo = videoService.save(video, file);
 
         if (savedVideo != null) {
-            return ResponseEntity.status(HttpStatus.OK).body(video);
+            TranscodingJob job = transcodingJobService.submit(savedVideo.getVideoId(), savedVideo.getFilePath());
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
         } else {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(CustomMessage.builder().message("Video not uploaded ").success(false).build());
         }
@@ -75,33 +98,93 @@ public class VideoController {
 
 
     /**
-     * Serve the master playlist file
-     * @param videoId
+     * Get the catalog one page at a time (id, title, content type only)
+     * @param cursor nextCursor from the previous page
+     * @param size
      * @return
      */
-    @GetMapping("/{videoId}/master.m3u8")
-    public ResponseEntity<Resource> serverMasterFile(
-            @PathVariable String videoId
-    ) {
+    @GetMapping("/catalog")
+    public CatalogPage getCatalog(@RequestParam(value = "cursor", required = false) String cursor,
+                                  @RequestParam(value = "size", defaultValue = "20") int size) {
+        return videoService.getCatalog(cursor, size);
+    }
+
+
+    /**
+     * Search titles and descriptions
+     * @param query
+     * @param limit
+     * @return
+     */
+    @GetMapping("/search")
+    public List<VideoSummary> search(@RequestParam("q") String query, @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        return videoService.search(query, limit);
+    }
 
-        String filePath = Paths.get(HLS_DIR).toString();
-//        creating path
-        Path path = Paths.get(filePath, videoId, "master.m3u8");
 
-        System.out.println(path);
+    /**
+     * Title typeahead
+     * @param query
+     * @param limit
+     * @return
+     */
+    @GetMapping("/suggest")
+    public List<VideoSummary> suggest(@RequestParam("q") String query, @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        return videoService.suggest(query, limit);
+    }
+
 
-        if (!Files.exists(path)) {
-            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+    /**
+     * Delete a video. HLS output shared with other uploads of the same file stays until its last video is deleted
+     * @param videoId
+     * @return
+     */
+    @DeleteMapping("/{videoId}")
+    public ResponseEntity<CustomMessage> delete(@PathVariable String videoId) {
+        try {
+            videoService.get(videoId);
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(CustomMessage.builder().message("Video not found").success(false).build());
+        }
+        try {
+            videoService.delete(videoId);
+            return ResponseEntity.ok(CustomMessage.builder().message("Video deleted").success(true).build());
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(CustomMessage.builder().message("Error deleting video").success(false).build());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(CustomMessage.builder().message("Interrupted").success(false).build());
         }
+    }
 
-        Resource resource = new FileSystemResource(path);
 
-        return ResponseEntity
-                .ok()
-                .header(
-                        HttpHeaders.CONTENT_TYPE, "application/vnd.apple.mpegurl"
-                )
-                .body(resource);
+    /**
+     * Serve the master playlist file
+     * @param videoId
+     * @param request
+     * @param response
+     * @throws IOException
+     */
+    @GetMapping("/{videoId}/master.m3u8")
+    public void serverMasterFile(
+            @PathVariable String videoId,
+            HttpServletRequest request,
+            HttpServletResponse response
+    ) throws IOException {
+        hlsFileServer.servePlaylist(request, response, HlsCacheKey.master(videoId));
+    }
+
+
+    /**
+     * Serve the DASH manifest (only written for fMP4 packaging, over the same files as the HLS playlists)
+     * @param videoId
+     * @param request
+     * @param response
+     * @throws IOException
+     */
+    @GetMapping("/{videoId}/manifest.mpd")
+    public void serveDashManifest(@PathVariable String videoId, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        hlsFileServer.serveDashManifest(request, response, HlsCacheKey.dashManifest(videoId));
     }
 
 
@@ -109,42 +192,101 @@ public class VideoController {
      * Get HLS playlist for a specific quality level. (Video of a specified quality)
      * @param videoId
      * @param qualityLevel
-     * @return
+     * @param request
+     * @param response
+     * @throws IOException
      */
     @GetMapping("{videoId}/{qualityLevel}/playlist.m3u8")
-    public ResponseEntity<Resource> getQualityPlaylist(@PathVariable String videoId, @PathVariable int qualityLevel) {
-        try {
-            String filePath = Paths.get(HLS_DIR).toString();
-            String playlistPath = filePath + "/" + videoId + "/" + qualityLevel + "/playlist.m3u8";
-            Resource resource = new UrlResource(Paths.get(playlistPath).toUri());
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_TYPE, "application/vnd.apple.mpegurl")
-                    .body(resource);
-        } catch (Exception e) {
-            return ResponseEntity.notFound().build();
+    public void getQualityPlaylist(@PathVariable String videoId, @PathVariable int qualityLevel,
+                                   HttpServletRequest request, HttpServletResponse response) throws IOException {
+        LiveStream live = liveStreamService.get(videoId);
+        if (live != null && qualityLevel == 0) {
+            byte[] body = live.render().getBytes(StandardCharsets.UTF_8);
+            response.setContentType(HlsFileServer.PLAYLIST_CONTENT_TYPE);
+            response.setHeader(HttpHeaders.CACHE_CONTROL, LIVE_PLAYLIST_CACHE_CONTROL);
+            response.setContentLength(body.length);
+            response.getOutputStream().write(body);
+            return;
         }
+        hlsFileServer.servePlaylist(request, response, new HlsCacheKey(videoId, qualityLevel, "playlist.m3u8"));
+    }
+
+
+    /**
+     * LL-HLS blocking playlist reload: answers once the playlist holds part _HLS_part of segment _HLS_msn
+     * (or the whole segment without _HLS_part). The request is parked, not a thread; it gets 503 after
+     * three target durations and 400 when it asks for more than two segments ahead.
+     * Streams that are no longer live answer right away with their recorded playlist.
+     * @param videoId
+     * @param qualityLevel
+     * @param msn
+     * @param part
+     * @return
+     * @throws IOException
+     */
+    @GetMapping(value = "{videoId}/{qualityLevel}/playlist.m3u8", params = "_HLS_msn")
+    public DeferredResult<ResponseEntity<String>> getQualityPlaylistBlocking(@PathVariable String videoId, @PathVariable int qualityLevel,
+                                                                             @RequestParam("_HLS_msn") long msn,
+                                                                             @RequestParam(value = "_HLS_part", required = false) Integer part) throws IOException {
+        LiveStream live = liveStreamService.get(videoId);
+        if (live == null || qualityLevel != 0) {
+            DeferredResult<ResponseEntity<String>> result = new DeferredResult<>();
+            String playlist = hlsFileServer.readPlaylist(new HlsCacheKey(videoId, qualityLevel, "playlist.m3u8"));
+            result.setResult(playlist != null ? livePlaylistResponse(playlist) : ResponseEntity.notFound().build());
+            return result;
+        }
+
+        long timeoutMillis = (long) (3 * live.getSegmentTarget() * 1000);
+        DeferredResult<ResponseEntity<String>> result = new DeferredResult<>(timeoutMillis,
+                () -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+        Consumer<String> callback = playlist -> result.setResult(livePlaylistResponse(playlist));
+        // also runs after the timeout or a dropped connection: the stream must not keep the waiter
+        result.onCompletion(() -> live.cancel(callback));
+        boolean accepted = live.await(msn, part != null ? part : -1, callback);
+        if (!accepted) {
+            result.setResult(ResponseEntity.badRequest().build());
+        }
+        return result;
+    }
+
+
+    private static ResponseEntity<String> livePlaylistResponse(String playlist) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(HlsFileServer.PLAYLIST_CONTENT_TYPE))
+                .header(HttpHeaders.CACHE_CONTROL, LIVE_PLAYLIST_CACHE_CONTROL)
+                .body(playlist);
     }
 
 
     /**
      * Get HLS segment for a specific quality level.
+     * Supports Range / If-Range (206) and is written with sendfile, see HlsFileServer
      * @param videoId
      * @param qualityLevel
      * @param segmentName
-     * @return
+     * @param request
+     * @param response
+     * @throws IOException
      */
     @GetMapping("{videoId}/{qualityLevel}/{segmentName}")
-    public ResponseEntity<Resource> getSegment(@PathVariable String videoId, @PathVariable int qualityLevel, @PathVariable String segmentName) {
-        try {
-            String filePath = Paths.get(HLS_DIR).toString();
-            String segmentPath = filePath + "/" + videoId + "/" + qualityLevel + "/" + segmentName;
-            Resource resource = new UrlResource(Paths.get(segmentPath).toUri());
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_TYPE, "video/MP2T")
-                    .body(resource);
-        } catch (Exception e) {
-            return ResponseEntity.notFound().build();
-        }
+    public void getSegment(@PathVariable String videoId, @PathVariable int qualityLevel, @PathVariable String segmentName,
+                           HttpServletRequest request, HttpServletResponse response) throws IOException {
+        hlsFileServer.serveSegment(request, response, new HlsCacheKey(videoId, qualityLevel, segmentName));
+    }
+
+
+    /**
+     * Scrub thumbnails of a video: sprite sheets, thumbnails.vtt, images.m3u8 and the poster, see TrickplayGenerator
+     * @param videoId
+     * @param name
+     * @param request
+     * @param response
+     * @throws IOException
+     */
+    @GetMapping("{videoId}/thumbs/{name}")
+    public void getThumbnail(@PathVariable String videoId, @PathVariable String name,
+                             HttpServletRequest request, HttpServletResponse response) throws IOException {
+        hlsFileServer.serveThumbnail(request, response, HlsCacheKey.thumbnail(videoId, name));
     }
 
 
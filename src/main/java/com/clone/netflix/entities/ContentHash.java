@@ -0,0 +1,47 @@
+package com.clone.netflix.entities;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.Version;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+/**
+ * HLS output shared by every video uploaded with the same bytes.
+ * The output lives in HLS_DIR/_content/{sha256}; each video's HLS_DIR/{videoId} links to it.
+ */
+@Entity
+@Table(name = "content_hashes")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ContentHash {
+
+    // hex SHA-256 of the uploaded file
+    @Id
+    @Column(length = 64)
+    private String sha256;
+
+    // videos linked to the output; the output is deleted when this drops to 0
+    private int refCount;
+
+    // false while the first upload of this content is still being encoded (or its encode failed)
+    private boolean ready;
+
+    private Instant createdAt;
+
+    private Instant updatedAt;
+
+    @Version
+    private Long version;
+
+}
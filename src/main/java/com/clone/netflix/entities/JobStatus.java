@@ -0,0 +1,8 @@
+package com.clone.netflix.entities;
+
+public enum JobStatus {
+    QUEUED,
+    RUNNING,
+    DONE,
+    FAILED
+}
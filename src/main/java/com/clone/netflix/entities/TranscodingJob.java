@@ -0,0 +1,52 @@
+package com.clone.netflix.entities;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import jakarta.persistence.Version;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+@Entity
+@Table(name = "transcoding_jobs", indexes = @Index(name = "idx_transcoding_jobs_status", columnList = "status"))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TranscodingJob {
+
+    @Id
+    private String jobId;
+
+    private String videoId;
+
+    // uploaded file the job transcodes from
+    private String sourcePath;
+
+    @Enumerated(EnumType.STRING)
+    private JobStatus status;
+
+    @Column(length = 1000)
+    private String errorMessage;
+
+    private Instant createdAt;
+
+    private Instant startedAt;
+
+    private Instant finishedAt;
+
+    // guards against two workers claiming the same job
+    @Version
+    private Long version;
+
+}
@@ -0,0 +1,55 @@
+package com.clone.netflix.entities;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+@Entity
+@Table(name = "upload_sessions")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UploadSession {
+
+    @Id
+    private String uploadId;
+
+    // id the video gets once the upload completes
+    private String videoId;
+
+    private String title;
+
+    @Column(length = 2000)
+    private String description;
+
+    private String fileName;
+
+    private String contentType;
+
+    private long totalSize;
+
+    // bytes persisted so far = offset of the next chunk
+    private long receivedBytes;
+
+    private String filePath;
+
+    private boolean completed;
+
+    // transcoding job started when the last chunk arrived
+    private String jobId;
+
+    private Instant createdAt;
+
+    private Instant updatedAt;
+
+}
@@ -1,7 +1,9 @@
 package com.clone.netflix.entities;
 
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -10,7 +12,7 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 @Entity
-@Table(name = "videos")
+@Table(name = "videos", indexes = @Index(name = "idx_videos_title", columnList = "title"))
 @Getter
 @Setter
 @NoArgsConstructor
@@ -30,6 +32,15 @@ public class Video {
 
     private  String filePath;
 
+    // hex SHA-256 of the uploaded file, links the video to its (possibly shared) HLS output
+    @Column(length = 64)
+    private  String contentHash;
+
+    // whether the video holds one of its content's references (ContentHash.refCount), so a re-run job takes it once;
+    // the default lets ddl-auto add the column to a table that already has rows
+    @Column(nullable = false, columnDefinition = "boolean default false")
+    private  boolean contentReferenced;
+
 //    @ManyToOne
 //    private  Genre genre;
 
@@ -0,0 +1,305 @@
+package com.clone.netflix.live;
+
+import com.clone.netflix.transcoding.MediaPlaylist;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * LL-HLS state of one live rendition: the partial segments ffmpeg has finished, grouped into
+ * segments at the forced keyframes, and the requests blocked on a part that doesn't exist yet.
+ * Fed by a single reader thread; playlist requests read it concurrently.
+ */
+public class LiveStream {
+
+    // parts are listed for this many segments before the open one (3 target durations, RFC 8216bis 4.4.4.9)
+    static final int PART_SEGMENTS = 3;
+
+    public record Part(String uri, double duration, boolean independent) {
+    }
+
+    private static final class Segment {
+
+        final long msn;
+        final List<Part> parts = new ArrayList<>();
+        double duration;
+        boolean complete;
+
+        Segment(long msn) {
+            this.msn = msn;
+        }
+    }
+
+    private record Waiter(long msn, int part, Consumer<String> callback) {
+    }
+
+    private final String videoId;
+
+    private final double partTarget;
+
+    private final double segmentTarget;
+
+    private final List<Segment> segments = new ArrayList<>();
+
+    private final List<Waiter> waiters = new ArrayList<>();
+
+    private boolean ended;
+
+    private String rendered;
+
+    public LiveStream(String videoId, double partTarget, double segmentTarget) {
+        this.videoId = videoId;
+        this.partTarget = partTarget;
+        this.segmentTarget = segmentTarget;
+    }
+
+    public String getVideoId() {
+        return videoId;
+    }
+
+    public double getSegmentTarget() {
+        return segmentTarget;
+    }
+
+    public static String segmentUri(long msn) {
+        return String.format(Locale.ROOT, "segment_%06d.ts", msn);
+    }
+
+
+    /**
+     * Keyframes are forced on the segment grid, so a part starting on it begins a new segment
+     * @param partStart
+     * @return true if a part starting there closes the open segment
+     */
+    public synchronized boolean startsSegment(double partStart) {
+        Segment open = open();
+        if (open == null || open.parts.isEmpty()) {
+            return false;
+        }
+        // within a frame (at 25 fps) of the grid, the muxer cuts on the first packet past it
+        double offGrid = partStart % segmentTarget;
+        return offGrid < 0.04 || segmentTarget - offGrid < 0.04;
+    }
+
+
+    /**
+     * Parts of the open segment, in order; what has to be concatenated when it closes
+     * @return
+     */
+    public synchronized List<Part> openParts() {
+        Segment open = open();
+        return open != null ? List.copyOf(open.parts) : List.of();
+    }
+
+
+    /**
+     * @return media sequence number of the open segment
+     */
+    public synchronized long openMsn() {
+        Segment open = open();
+        return open != null ? open.msn : 0;
+    }
+
+
+    /**
+     * Add a finished part. If it starts a segment the open one is closed first; its file
+     * (segmentUri of its msn) must already have been written.
+     * @param uri
+     * @param start
+     * @param end
+     */
+    public void addPart(String uri, double start, double end) {
+        List<Consumer<String>> ready;
+        String playlist;
+        synchronized (this) {
+            boolean newSegment = startsSegment(start);
+            if (newSegment) {
+                open().complete = true;
+            }
+            if (segments.isEmpty() || newSegment) {
+                segments.add(new Segment(segments.isEmpty() ? 0 : open().msn + 1));
+            }
+            Segment open = open();
+            open.parts.add(new Part(uri, end - start, open.parts.isEmpty()));
+            open.duration += end - start;
+            rendered = null;
+            playlist = render();
+            ready = takeSatisfied();
+        }
+        ready.forEach(callback -> callback.accept(playlist));
+    }
+
+
+    /**
+     * Input ended: close the last segment (its file must already be written) and release every waiter
+     */
+    public void end() {
+        List<Consumer<String>> ready;
+        String playlist;
+        synchronized (this) {
+            Segment open = open();
+            if (open != null && !open.parts.isEmpty()) {
+                open.complete = true;
+            }
+            ended = true;
+            rendered = null;
+            playlist = render();
+            ready = takeSatisfied();
+        }
+        ready.forEach(callback -> callback.accept(playlist));
+    }
+
+    public synchronized boolean isEnded() {
+        return ended;
+    }
+
+
+    /**
+     * Drop parts that are no longer listed (nor were in the previous playlist)
+     * @return their URIs, for deleting the files
+     */
+    public synchronized List<String> expireParts() {
+        List<String> expired = new ArrayList<>();
+        long keepFrom = openMsn() - PART_SEGMENTS - 1;
+        for (Segment segment : segments) {
+            if (segment.msn >= keepFrom) {
+                break;
+            }
+            if (segment.complete) {
+                segment.parts.forEach(part -> expired.add(part.uri()));
+                segment.parts.clear();
+            }
+        }
+        return expired;
+    }
+
+
+    /**
+     * Blocking playlist reload: call back with the playlist once it holds part `part` of segment `msn`
+     * (or the whole segment when part is -1). Calls back right away when that's already the case.
+     * @param msn
+     * @param part
+     * @param callback
+     * @return false if msn is too far ahead to wait for (answer 400)
+     */
+    public boolean await(long msn, int part, Consumer<String> callback) {
+        String playlist;
+        synchronized (this) {
+            if (!ended && msn > openMsn() + 2) {
+                return false;
+            }
+            if (!satisfied(msn, part)) {
+                waiters.add(new Waiter(msn, part, callback));
+                return true;
+            }
+            playlist = render();
+        }
+        callback.accept(playlist);
+        return true;
+    }
+
+
+    /**
+     * Forget a waiter that was answered some other way (timed out, connection gone), so it doesn't pile up
+     * until its part comes, or forever if it never does
+     * @param callback as passed to await
+     */
+    public synchronized void cancel(Consumer<String> callback) {
+        waiters.removeIf(waiter -> waiter.callback() == callback);
+    }
+
+
+    private boolean satisfied(long msn, int part) {
+        if (ended) {
+            return true;
+        }
+        Segment open = open();
+        if (open == null) {
+            return false;
+        }
+        if (part < 0) {
+            return msn < open.msn;
+        }
+        return msn < open.msn || (msn == open.msn && part < open.parts.size());
+    }
+
+    private List<Consumer<String>> takeSatisfied() {
+        List<Consumer<String>> ready = new ArrayList<>();
+        for (Iterator<Waiter> it = waiters.iterator(); it.hasNext(); ) {
+            Waiter waiter = it.next();
+            if (satisfied(waiter.msn(), waiter.part())) {
+                ready.add(waiter.callback());
+                it.remove();
+            }
+        }
+        return ready;
+    }
+
+    private Segment open() {
+        return segments.isEmpty() ? null : segments.get(segments.size() - 1);
+    }
+
+
+    /**
+     * Current LL-HLS media playlist (EVENT: every segment stays listed)
+     * @return
+     */
+    public synchronized String render() {
+        if (rendered != null) {
+            return rendered;
+        }
+        double longest = segmentTarget;
+        for (Segment segment : segments) {
+            if (segment.complete) {
+                longest = Math.max(longest, segment.duration);
+            }
+        }
+
+        StringBuilder sb = new StringBuilder("#EXTM3U\n#EXT-X-VERSION:6\n");
+        sb.append("#EXT-X-TARGETDURATION:").append((int) Math.ceil(longest)).append('\n');
+        sb.append(String.format(Locale.ROOT, "#EXT-X-PART-INF:PART-TARGET=%.3f\n", partTarget));
+        sb.append(String.format(Locale.ROOT, "#EXT-X-SERVER-CONTROL:CAN-BLOCK-RELOAD=YES,PART-HOLD-BACK=%.3f\n", 3 * partTarget));
+        sb.append("#EXT-X-PLAYLIST-TYPE:EVENT\n");
+        sb.append("#EXT-X-MEDIA-SEQUENCE:0\n");
+
+        long partsFrom = openMsn() - PART_SEGMENTS;
+        for (Segment segment : segments) {
+            if (segment.msn >= partsFrom) {
+                for (Part part : segment.parts) {
+                    sb.append(String.format(Locale.ROOT, "#EXT-X-PART:DURATION=%.3f,URI=\"%s\"", part.duration(), part.uri()));
+                    if (part.independent()) {
+                        sb.append(",INDEPENDENT=YES");
+                    }
+                    sb.append('\n');
+                }
+            }
+            if (segment.complete) {
+                sb.append(String.format(Locale.ROOT, "#EXTINF:%.3f,\n", segment.duration))
+                        .append(segmentUri(segment.msn)).append('\n');
+            }
+        }
+        if (ended) {
+            sb.append("#EXT-X-ENDLIST\n");
+        }
+        rendered = sb.toString();
+        return rendered;
+    }
+
+
+    /**
+     * The finished segments as a plain VOD playlist, for serving the recording once the stream ended
+     * @return
+     */
+    public synchronized String renderVod() {
+        List<MediaPlaylist.Segment> complete = new ArrayList<>();
+        for (Segment segment : segments) {
+            if (segment.complete) {
+                complete.add(new MediaPlaylist.Segment(segment.duration, segmentUri(segment.msn)));
+            }
+        }
+        return MediaPlaylist.renderVod(complete);
+    }
+}
@@ -0,0 +1,188 @@
+package com.clone.netflix.metrics;
+
+import com.clone.netflix.streaming.HlsCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Meters for the ingest and playback hot paths, scraped from /actuator/prometheus.
+ * Serving meters are registered once up front so recording a request allocates nothing.
+ */
+@Component
+public class StreamingMetrics {
+
+    public enum Endpoint {
+        MASTER("master.m3u8"),
+        PLAYLIST("playlist.m3u8"),
+        DASH_MANIFEST("manifest.mpd"),
+        SEGMENT("segment"),
+        THUMBNAIL("thumbnail");
+
+        private final String tag;
+
+        Endpoint(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private final MeterRegistry registry;
+
+    private final Timer[] requestTimers = new Timer[Endpoint.values().length];
+    private final DistributionSummary[] bytesServed = new DistributionSummary[Endpoint.values().length];
+    private final Counter segmentNotFound;
+    private final Counter prefetchUsed;
+    private final Counter prefetchWasted;
+    private final Counter prefetchDropped;
+    private final Counter prefetchBytes;
+    private final Counter[] throttledBytes = new Counter[2];
+    private final Timer[] throttleDelay = new Timer[2];
+
+    private final AtomicLong inFlightChunkBytes = new AtomicLong();
+
+    public StreamingMetrics(MeterRegistry registry, HlsCache hlsCache,
+                            @Qualifier("transcodingExecutor") ExecutorService transcodingExecutor) {
+        this.registry = registry;
+
+        for (Endpoint endpoint : Endpoint.values()) {
+            requestTimers[endpoint.ordinal()] = Timer.builder("hls.request.duration")
+                    .description("Time spent in the HLS handler (sendfile bodies are written after it returns)")
+                    .tag("endpoint", endpoint.tag)
+                    .publishPercentileHistogram()
+                    .register(registry);
+            bytesServed[endpoint.ordinal()] = DistributionSummary.builder("hls.response.bytes")
+                    .baseUnit("bytes")
+                    .tag("endpoint", endpoint.tag)
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+        segmentNotFound = Counter.builder("hls.segment.not_found").register(registry);
+        prefetchUsed = Counter.builder("hls.prefetch.segments").tag("outcome", "used")
+                .description("Prefetched segments, by whether a player asked for them in time").register(registry);
+        prefetchWasted = Counter.builder("hls.prefetch.segments").tag("outcome", "wasted").register(registry);
+        prefetchDropped = Counter.builder("hls.prefetch.segments").tag("outcome", "dropped")
+                .description("Prefetches skipped for the budget or busy disks").register(registry);
+        prefetchBytes = Counter.builder("hls.prefetch.bytes").baseUnit("bytes").register(registry);
+        for (int playback = 0; playback < 2; playback++) {
+            String traffic = playback == 1 ? "playback" : "bulk";
+            throttledBytes[playback] = Counter.builder("hls.egress.throttled.bytes").baseUnit("bytes").tag("traffic", traffic)
+                    .description("Segment bytes held back by the egress shaper").register(registry);
+            throttleDelay[playback] = Timer.builder("hls.egress.throttle.delay").tag("traffic", traffic)
+                    .description("Time segment chunks waited for egress tokens").register(registry);
+        }
+
+        Gauge.builder("transcoding.queue.depth", transcodingExecutor,
+                        executor -> executor instanceof ThreadPoolExecutor pool ? pool.getQueue().size() : 0)
+                .description("Jobs waiting for a transcoding worker")
+                .register(registry);
+        // multipart POST /api/v1/videos bodies are spooled by the container before the handler runs, so only
+        // resumable chunks (read by UploadServiceImpl itself) can be counted while they arrive
+        Gauge.builder("upload.chunk.inflight.bytes", inFlightChunkBytes, AtomicLong::get)
+                .baseUnit("bytes")
+                .description("Bytes of resumable upload chunks (PUT /api/v1/uploads/{id}) currently being received")
+                .register(registry);
+
+        FunctionCounter.builder("hls.cache.hits", hlsCache, cache -> cache.stats().hits()).register(registry);
+        FunctionCounter.builder("hls.cache.misses", hlsCache, cache -> cache.stats().misses()).register(registry);
+        FunctionCounter.builder("hls.cache.evictions", hlsCache, cache -> cache.stats().evictions()).register(registry);
+        Gauge.builder("hls.cache.bytes", hlsCache, cache -> cache.stats().bytes()).baseUnit("bytes").register(registry);
+    }
+
+
+    /**
+     * Record one served HLS request
+     * @param endpoint
+     * @param bytes body bytes (0 for 304/404/HEAD)
+     * @param nanos
+     */
+    public void recordServed(Endpoint endpoint, long bytes, long nanos) {
+        requestTimers[endpoint.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+        bytesServed[endpoint.ordinal()].record(bytes);
+    }
+
+    public void segmentNotFound() {
+        segmentNotFound.increment();
+    }
+
+
+    public void prefetched(long bytes) {
+        prefetchBytes.increment(bytes);
+    }
+
+    public void prefetchUsed() {
+        prefetchUsed.increment();
+    }
+
+    public void prefetchWasted() {
+        prefetchWasted.increment();
+    }
+
+    public void prefetchDropped() {
+        prefetchDropped.increment();
+    }
+
+
+    /**
+     * Record a chunk of a segment body that had to wait for egress tokens
+     * @param playback whether it went to a playback session (or a bulk fetch)
+     * @param bytes
+     * @param nanos
+     */
+    public void egressThrottled(boolean playback, long bytes, long nanos) {
+        int index = playback ? 1 : 0;
+        throttledBytes[index].increment(bytes);
+        throttleDelay[index].record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+
+    /**
+     * Record an ffmpeg phase (hls, hls-chunk, intro) for a rendition
+     * @param phase
+     * @param rendition
+     * @param nanos
+     * @param success
+     */
+    public void recordFfmpeg(String phase, String rendition, long nanos, boolean success) {
+        Timer.builder("ffmpeg.phase.duration")
+                .tag("phase", phase)
+                .tag("rendition", rendition)
+                .tag("outcome", success ? "success" : "failure")
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+
+    /**
+     * Average encoding speed of a finished ffmpeg run, as a realtime factor (2.0 = twice playback speed)
+     * @param phase
+     * @param rendition
+     * @param speed
+     */
+    public void recordEncodeSpeed(String phase, String rendition, double speed) {
+        DistributionSummary.builder("ffmpeg.speed")
+                .description("Realtime factor of finished ffmpeg runs")
+                .tag("phase", phase)
+                .tag("rendition", rendition)
+                .register(registry)
+                .record(speed);
+    }
+
+
+    public void uploadChunkBytesStarted(long bytes) {
+        inFlightChunkBytes.addAndGet(bytes);
+    }
+
+    public void uploadChunkBytesFinished(long bytes) {
+        inFlightChunkBytes.addAndGet(-bytes);
+    }
+}
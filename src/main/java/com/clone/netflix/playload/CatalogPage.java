@@ -0,0 +1,22 @@
+package com.clone.netflix.playload;
+
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * One page of the catalog. Pass nextCursor back as cursor to get the next page, null on the last page.
+ * Immutable: pages are cached and shared between requests.
+ */
+@Getter
+public class CatalogPage {
+
+    private final List<VideoSummary> items;
+
+    private final String nextCursor;
+
+    public CatalogPage(List<VideoSummary> items, String nextCursor) {
+        this.items = List.copyOf(items);
+        this.nextCursor = nextCursor;
+    }
+}
@@ -0,0 +1,34 @@
+package com.clone.netflix.playload;
+
+import com.clone.netflix.entities.JobStatus;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Progress of a video's encode, summed over its ffmpeg processes (renditions / chunks).
+ * fps and speed add up across the processes running in parallel; etaSeconds is null until known.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+public class EncodeProgress {
+
+    private String videoId;
+
+    private JobStatus status;
+
+    private double percent;
+
+    private double fps;
+
+    private double speed;
+
+    private Long etaSeconds;
+
+    private int tasksDone;
+
+    private int tasksTotal;
+}
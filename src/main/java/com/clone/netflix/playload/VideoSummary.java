@@ -0,0 +1,19 @@
+package com.clone.netflix.playload;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Catalog row: only what the catalog page shows (no description / file path).
+ * Immutable: shared by cached catalog pages and the search index.
+ */
+@AllArgsConstructor
+@Getter
+public class VideoSummary {
+
+    private final String videoId;
+
+    private final String title;
+
+    private final String contentType;
+}
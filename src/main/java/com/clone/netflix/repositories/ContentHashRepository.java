@@ -0,0 +1,10 @@
+package com.clone.netflix.repositories;
+
+import com.clone.netflix.entities.ContentHash;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ContentHashRepository extends JpaRepository<ContentHash, String> {
+
+}
@@ -0,0 +1,17 @@
+package com.clone.netflix.repositories;
+
+import com.clone.netflix.entities.JobStatus;
+import com.clone.netflix.entities.TranscodingJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface TranscodingJobRepository extends JpaRepository<TranscodingJob, String> {
+
+    List<TranscodingJob> findByStatusOrderByCreatedAtAsc(JobStatus status);
+
+    List<TranscodingJob> findByVideoIdOrderByCreatedAtDesc(String videoId);
+
+}
@@ -0,0 +1,14 @@
+package com.clone.netflix.repositories;
+
+import com.clone.netflix.entities.UploadSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSession, String> {
+
+    List<UploadSession> findByCompletedFalseAndUpdatedAtBefore(Instant updatedBefore);
+}
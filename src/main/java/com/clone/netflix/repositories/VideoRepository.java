@@ -1,18 +1,32 @@
 package com.clone.netflix.repositories;
 
 import com.clone.netflix.entities.Video;
+import com.clone.netflix.playload.VideoSummary;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface VideoRepository extends JpaRepository<Video,String>
 {
-    Optional<Video> findByTitle(String title);
+    Optional<Video> findFirstByTitle(String title);
 
     //query methods
 
+    // keyset pagination on the primary key: constant cost per page, no OFFSET scan
+    @Query("select new com.clone.netflix.playload.VideoSummary(v.videoId, v.title, v.contentType) " +
+            "from Video v where v.videoId > :after order by v.videoId")
+    List<VideoSummary> findSummariesAfter(@Param("after") String after, Pageable pageable);
+
+    // id, title, description, contentType - just what the search index needs, in keyset batches
+    @Query("select v.videoId, v.title, v.description, v.contentType from Video v where v.videoId > :after order by v.videoId")
+    List<Object[]> findSearchFieldsAfter(@Param("after") String after, Pageable pageable);
+
     //native
 
     //criteria api
@@ -0,0 +1,254 @@
+package com.clone.netflix.search;
+
+import com.clone.netflix.playload.VideoSummary;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory inverted index over video titles and descriptions.
+ * - titleTokens: sorted token -> ids, so a typeahead prefix is a range scan
+ * - textTokens: token -> ids over title + description for full-text queries (all terms must match)
+ * Updates are serialized, reads are lock-free on the concurrent maps.
+ */
+@Component
+public class VideoSearchIndex {
+
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{Nd}]+");
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+
+    private final ConcurrentMap<String, Document> documents = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<String, Set<String>> titleTokens = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<String, Set<String>> textTokens = new ConcurrentHashMap<>();
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private record Document(VideoSummary summary, Set<String> titleTokens, Set<String> textTokens) {
+    }
+
+
+    /**
+     * Add or replace a video
+     * @param videoId
+     * @param title
+     * @param description
+     * @param contentType
+     */
+    public void index(String videoId, String title, String description, String contentType) {
+        Set<String> titleSet = tokenize(title);
+        Set<String> textSet = new LinkedHashSet<>(titleSet);
+        textSet.addAll(tokenize(description));
+        Document document = new Document(new VideoSummary(videoId, title, contentType), titleSet, textSet);
+
+        writeLock.lock();
+        try {
+            Document previous = documents.put(videoId, document);
+            if (previous != null) {
+                unlink(videoId, previous);
+            }
+            for (String token : titleSet) {
+                titleTokens.computeIfAbsent(token, key -> ConcurrentHashMap.newKeySet()).add(videoId);
+            }
+            for (String token : textSet) {
+                textTokens.computeIfAbsent(token, key -> ConcurrentHashMap.newKeySet()).add(videoId);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+
+    /**
+     * Remove a video
+     * @param videoId
+     */
+    public void remove(String videoId) {
+        writeLock.lock();
+        try {
+            Document previous = documents.remove(videoId);
+            if (previous != null) {
+                unlink(videoId, previous);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+
+    public int size() {
+        return documents.size();
+    }
+
+
+    /**
+     * Typeahead: every complete word must be in the title and the last (partial) word must
+     * prefix a title word. Shorter titles first.
+     * @param query
+     * @param limit
+     * @return
+     */
+    public List<VideoSummary> suggest(String query, int limit) {
+        List<String> words = new ArrayList<>(tokenize(query));
+        if (words.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        boolean lastIsPartial = !Character.isWhitespace(query.charAt(query.length() - 1));
+        String prefix = lastIsPartial ? words.remove(words.size() - 1) : null;
+
+        Set<String> ids = new LinkedHashSet<>();
+        if (words.isEmpty()) {
+            // only a prefix: walk the matching token range until we have enough
+            NavigableMap<String, Set<String>> range = titleTokens.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+            for (Set<String> posting : range.values()) {
+                for (String id : posting) {
+                    ids.add(id);
+                    if (ids.size() >= limit) {
+                        return summaries(ids);
+                    }
+                }
+            }
+            return summaries(ids);
+        }
+
+        for (String id : smallestPosting(titleTokens, words)) {
+            Document document = documents.get(id);
+            if (document == null || !document.titleTokens().containsAll(words)) {
+                continue;
+            }
+            if (prefix == null || document.titleTokens().stream().anyMatch(token -> token.startsWith(prefix))) {
+                ids.add(id);
+                if (ids.size() >= limit) {
+                    break;
+                }
+            }
+        }
+        return summaries(ids);
+    }
+
+
+    /**
+     * Full-text search over title and description. All words must match;
+     * results with more words in the title rank first.
+     * @param query
+     * @param limit
+     * @return
+     */
+    public List<VideoSummary> search(String query, int limit) {
+        Set<String> words = tokenize(query);
+        if (words.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+
+        List<Map.Entry<Document, Integer>> matches = new ArrayList<>();
+        for (String id : smallestPosting(textTokens, words)) {
+            Document document = documents.get(id);
+            if (document == null || !document.textTokens().containsAll(words)) {
+                continue;
+            }
+            int titleHits = 0;
+            for (String word : words) {
+                if (document.titleTokens().contains(word)) {
+                    titleHits++;
+                }
+            }
+            matches.add(Map.entry(document, titleHits));
+        }
+
+        matches.sort(Map.Entry.<Document, Integer>comparingByValue().reversed()
+                .thenComparing(entry -> titleLength(entry.getKey().summary())));
+        List<VideoSummary> results = new ArrayList<>();
+        for (int i = 0; i < matches.size() && i < limit; i++) {
+            results.add(matches.get(i).getKey().summary());
+        }
+        return results;
+    }
+
+
+    /**
+     * Lowercase, accent-free words
+     * @param text
+     * @return
+     */
+    static Set<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (text == null || text.isBlank()) {
+            return tokens;
+        }
+        String normalized = DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("")
+                .toLowerCase(Locale.ROOT);
+        for (String token : NON_WORD.split(normalized)) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+
+    private static Set<String> smallestPosting(Map<String, Set<String>> index, Iterable<String> words) {
+        Set<String> smallest = null;
+        for (String word : words) {
+            Set<String> posting = index.get(word);
+            if (posting == null) {
+                return Collections.emptySet();
+            }
+            if (smallest == null || posting.size() < smallest.size()) {
+                smallest = posting;
+            }
+        }
+        return smallest == null ? Collections.emptySet() : smallest;
+    }
+
+
+    private List<VideoSummary> summaries(Set<String> ids) {
+        List<VideoSummary> results = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Document document = documents.get(id);
+            if (document != null) {
+                results.add(document.summary());
+            }
+        }
+        results.sort(Comparator.comparingInt(VideoSearchIndex::titleLength));
+        return results;
+    }
+
+
+    private static int titleLength(VideoSummary summary) {
+        return summary.getTitle() == null ? 0 : summary.getTitle().length();
+    }
+
+
+    private void unlink(String videoId, Document document) {
+        for (String token : document.titleTokens()) {
+            removeFromPosting(titleTokens, token, videoId);
+        }
+        for (String token : document.textTokens()) {
+            removeFromPosting(textTokens, token, videoId);
+        }
+    }
+
+
+    private static void removeFromPosting(Map<String, Set<String>> index, String token, String videoId) {
+        Set<String> posting = index.get(token);
+        if (posting != null) {
+            posting.remove(videoId);
+            if (posting.isEmpty()) {
+                index.remove(token);
+            }
+        }
+    }
+}
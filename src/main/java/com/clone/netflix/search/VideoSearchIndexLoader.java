@@ -0,0 +1,55 @@
+package com.clone.netflix.search;
+
+import com.clone.netflix.repositories.VideoRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Fills the search index from the videos table on startup, in keyset batches of plain columns
+ * (no entity hydration). Runs on its own thread; searches made meanwhile see a partial index.
+ */
+@Component
+public class VideoSearchIndexLoader {
+
+    private static final Logger log = LoggerFactory.getLogger(VideoSearchIndexLoader.class);
+
+    private static final int BATCH_SIZE = 5000;
+
+    private final VideoRepository videoRepository;
+
+    private final VideoSearchIndex searchIndex;
+
+    public VideoSearchIndexLoader(VideoRepository videoRepository, VideoSearchIndex searchIndex) {
+        this.videoRepository = videoRepository;
+        this.searchIndex = searchIndex;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        Thread thread = new Thread(this::load, "search-index-rebuild");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void load() {
+        long start = System.currentTimeMillis();
+        String after = "";
+        while (true) {
+            List<Object[]> rows = videoRepository.findSearchFieldsAfter(after, PageRequest.of(0, BATCH_SIZE));
+            for (Object[] row : rows) {
+                searchIndex.index((String) row[0], (String) row[1], (String) row[2], (String) row[3]);
+            }
+            if (rows.size() < BATCH_SIZE) {
+                break;
+            }
+            after = (String) rows.get(rows.size() - 1)[0];
+        }
+        log.info("Search index built: {} videos in {} ms", searchIndex.size(), System.currentTimeMillis() - start);
+    }
+}
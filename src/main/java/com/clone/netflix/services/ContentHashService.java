@@ -0,0 +1,46 @@
+package com.clone.netflix.services;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+public interface ContentHashService {
+
+    /**
+     * Hex SHA-256 of a file
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    String hash(Path file) throws IOException;
+
+
+    /**
+     * Take a reference on already encoded content
+     * @param sha256
+     * @return true if the content is ready and the reference was taken, false if it must be encoded first
+     */
+    boolean acquire(String sha256);
+
+
+    /**
+     * @param sha256
+     * @return whether the content has been encoded completely
+     */
+    boolean isReady(String sha256);
+
+
+    /**
+     * Record that the content has been encoded, and take a reference on it
+     * @param sha256
+     */
+    void encoded(String sha256);
+
+
+    /**
+     * Drop a reference
+     * @param sha256
+     * @return true if it was the last one (the row is gone and the output can be deleted)
+     */
+    boolean release(String sha256);
+
+}
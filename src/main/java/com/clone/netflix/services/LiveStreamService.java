@@ -0,0 +1,38 @@
+package com.clone.netflix.services;
+
+import com.clone.netflix.entities.Video;
+import com.clone.netflix.live.LiveStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public interface LiveStreamService {
+
+    /**
+     * Create a live video; playback URLs work right away and fill up once ingest starts
+     * @param title
+     * @param description
+     * @return
+     */
+    Video create(String title, String description);
+
+
+    /**
+     * Encode a continuous MPEG-TS (or any ffmpeg-readable) stream into LL-HLS until it ends.
+     * Blocks the calling thread for the whole stream.
+     * @param videoId
+     * @param input
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    void ingest(String videoId, InputStream input) throws IOException, InterruptedException;
+
+
+    /**
+     * Live state of a video, or null when it isn't live (any more)
+     * @param videoId
+     * @return
+     */
+    LiveStream get(String videoId);
+
+}
@@ -0,0 +1,42 @@
+package com.clone.netflix.services;
+
+import com.clone.netflix.entities.JobStatus;
+import com.clone.netflix.entities.TranscodingJob;
+
+import java.util.List;
+
+public interface TranscodingJobService {
+
+    /**
+     * Persist a new job and hand it to the worker pool
+     * @param videoId
+     * @param sourcePath
+     * @return
+     */
+    TranscodingJob submit(String videoId, String sourcePath);
+
+
+    /**
+     * Get job by ID
+     * @param jobId
+     * @return
+     */
+    TranscodingJob get(String jobId);
+
+
+    /**
+     * Get jobs in a given status (all jobs when status is null)
+     * @param status
+     * @return
+     */
+    List<TranscodingJob> getByStatus(JobStatus status);
+
+
+    /**
+     * Get jobs created for a video, newest first
+     * @param videoId
+     * @return
+     */
+    List<TranscodingJob> getByVideo(String videoId);
+
+}
@@ -0,0 +1,50 @@
+package com.clone.netflix.services;
+
+import com.clone.netflix.entities.UploadSession;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public interface UploadService {
+
+    /**
+     * Start a resumable upload
+     * @param title
+     * @param description
+     * @param fileName
+     * @param contentType
+     * @param totalSize
+     * @return
+     */
+    UploadSession create(String title, String description, String fileName, String contentType, long totalSize);
+
+
+    /**
+     * Get upload by ID (receivedBytes is where the next chunk must start)
+     * @param uploadId
+     * @return
+     */
+    UploadSession get(String uploadId);
+
+
+    /**
+     * Stream one chunk of the request body to its place in the upload file.
+     * Once the last byte arrives the video is saved and a transcoding job is queued.
+     * @param uploadId
+     * @param offset must equal receivedBytes, otherwise IllegalStateException
+     * @param body
+     * @param sha256 hex SHA-256 of the chunk, optional. A mismatch discards the chunk (IllegalArgumentException)
+     * @return
+     * @throws IOException
+     */
+    UploadSession appendChunk(String uploadId, long offset, InputStream body, String sha256) throws IOException;
+
+
+    /**
+     * Drop uploads that received nothing for longer than upload.session-ttl-hours: their partial file,
+     * their session and what this node keeps for them
+     * @return number of uploads dropped
+     */
+    int expireAbandoned();
+
+}
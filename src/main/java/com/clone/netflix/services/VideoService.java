@@ -2,6 +2,8 @@ package com.clone.netflix.services;
 
 
 import com.clone.netflix.entities.Video;
+import com.clone.netflix.playload.CatalogPage;
+import com.clone.netflix.playload.VideoSummary;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
@@ -10,7 +12,7 @@ import java.util.List;
 public interface VideoService {
 
     /**
-     * Save video
+     * Save video (metadata + uploaded file). Transcoding is done separately by a job.
      * @param video
      * @param file
      * @return
@@ -18,6 +20,14 @@ public interface VideoService {
     Video save(Video video, MultipartFile file);
 
 
+    /**
+     * Save metadata of a video whose file is already stored (e.g. a completed resumable upload)
+     * @param video
+     * @return
+     */
+    Video saveMetadata(Video video);
+
+
     /**
      * Get video by ID
      * @param videoId
@@ -41,6 +51,33 @@ public interface VideoService {
     List<Video> getAll();
 
 
+    /**
+     * Get one page of the catalog (id, title, content type), ordered by id
+     * @param cursor nextCursor of the previous page, null for the first page
+     * @param size
+     * @return
+     */
+    CatalogPage getCatalog(String cursor, int size);
+
+
+    /**
+     * Full-text search over title and description
+     * @param query
+     * @param limit
+     * @return
+     */
+    List<VideoSummary> search(String query, int limit);
+
+
+    /**
+     * Title typeahead (the last word may be partial)
+     * @param query
+     * @param limit
+     * @return
+     */
+    List<VideoSummary> suggest(String query, int limit);
+
+
     /**
      * Generate adaptive HLS for a video
      * @param videoId
@@ -53,7 +90,22 @@ public interface VideoService {
 
     /**
      * Process video (eg: transcode, etc.)
+     * Stores the uploaded file as the original and generates its HLS renditions (startup animation included),
+     * or links the HLS output of an earlier upload with the same content
+     * @param videoId
+     * @param sourcePath
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    void processVideo(String videoId, String sourcePath) throws IOException, InterruptedException;
+
+
+    /**
+     * Delete a video, its original and its HLS output (or its reference on shared output)
+     * @param videoId
+     * @throws IOException
+     * @throws InterruptedException
      */
-    //String processVideo(String videoId);
+    void delete(String videoId) throws IOException, InterruptedException;
 
 }
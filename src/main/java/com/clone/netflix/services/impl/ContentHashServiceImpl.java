@@ -0,0 +1,130 @@
+package com.clone.netflix.services.impl;
+
+import com.clone.netflix.entities.ContentHash;
+import com.clone.netflix.repositories.ContentHashRepository;
+import com.clone.netflix.services.ContentHashService;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+
+/**
+ * Reference counts of shared HLS output. Callers serialize work on one hash (see VideoServiceImpl),
+ * the row's version catches anything that slips past that.
+ */
+@Service
+public class ContentHashServiceImpl implements ContentHashService {
+
+    private static final int READ_BUFFER_SIZE = 1024 * 1024;
+
+    private final ContentHashRepository contentHashRepository;
+
+    public ContentHashServiceImpl(ContentHashRepository contentHashRepository) {
+        this.contentHashRepository = contentHashRepository;
+    }
+
+
+    /**
+     * Hex SHA-256 of a file, read sequentially through one direct buffer
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    @Override
+    public String hash(Path file) throws IOException {
+        MessageDigest digest = sha256Digest();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+
+    /**
+     * Take a reference on already encoded content
+     * @param sha256
+     * @return
+     */
+    @Override
+    public boolean acquire(String sha256) {
+        ContentHash content = contentHashRepository.findById(sha256).orElse(null);
+        if (content == null || !content.isReady()) {
+            return false;
+        }
+        content.setRefCount(content.getRefCount() + 1);
+        content.setUpdatedAt(Instant.now());
+        contentHashRepository.save(content);
+        return true;
+    }
+
+
+    /**
+     * Whether the content has been encoded completely
+     * @param sha256
+     * @return
+     */
+    @Override
+    public boolean isReady(String sha256) {
+        return contentHashRepository.findById(sha256).map(ContentHash::isReady).orElse(false);
+    }
+
+
+    /**
+     * Record that the content has been encoded, and take a reference on it.
+     * Adds to the count rather than resetting it: videos linked to an earlier encode of the same content keep theirs.
+     * @param sha256
+     */
+    @Override
+    public void encoded(String sha256) {
+        Instant now = Instant.now();
+        ContentHash content = contentHashRepository.findById(sha256)
+                .orElseGet(() -> ContentHash.builder().sha256(sha256).createdAt(now).build());
+        content.setReady(true);
+        content.setRefCount(content.getRefCount() + 1);
+        content.setUpdatedAt(now);
+        contentHashRepository.save(content);
+    }
+
+
+    /**
+     * Drop a reference
+     * @param sha256
+     * @return
+     */
+    @Override
+    public boolean release(String sha256) {
+        ContentHash content = contentHashRepository.findById(sha256).orElse(null);
+        if (content == null) {
+            return false;
+        }
+        if (content.getRefCount() <= 1) {
+            contentHashRepository.delete(content);
+            return true;
+        }
+        content.setRefCount(content.getRefCount() - 1);
+        content.setUpdatedAt(Instant.now());
+        contentHashRepository.save(content);
+        return false;
+    }
+
+
+    private static MessageDigest sha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.clone.netflix.services.impl;
+
+import com.clone.netflix.entities.Video;
+import com.clone.netflix.live.LiveStream;
+import com.clone.netflix.services.LiveStreamService;
+import com.clone.netflix.services.VideoService;
+import com.clone.netflix.storage.StorageBackend;
+import com.clone.netflix.streaming.HlsCache;
+import com.clone.netflix.streaming.HlsMetadataIndex;
+import com.clone.netflix.transcoding.FfmpegSupervisor;
+import com.clone.netflix.transcoding.MasterPlaylistWriter;
+import com.clone.netflix.transcoding.Rendition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Live ingest: the request body is piped into one ffmpeg whose segment muxer cuts partial segments
+ * (live.part-seconds) and reports each finished part on stdout. Keyframes are forced every
+ * live.segment-seconds, so parts on that grid open a new segment, and a closed segment's file is
+ * its parts concatenated (TS allows that). Playlists are rendered from memory; when the input ends
+ * the recording is left behind as a regular VOD rendition and published to the storage backend.
+ * While live, the stream is only served by the node ingesting it.
+ * The encoder is started through FfmpegSupervisor as live work: never queued, and ahead of backfill encodes.
+ */
+@Service
+public class LiveStreamServiceImpl implements LiveStreamService {
+
+    private static final Logger log = LoggerFactory.getLogger(LiveStreamServiceImpl.class);
+
+    // one rendition, published as quality level 0
+    public static final Rendition LIVE_RENDITION = new Rendition(0, 1280, 720, 2800, 128);
+
+    private static final String PART_PATTERN = "part_%06d.ts";
+
+    @Value("${file.video.hls}")
+    String HLS_DIR;
+
+    @Value("${live.part-seconds:0.5}")
+    private double partSeconds;
+
+    @Value("${live.segment-seconds:2}")
+    private int segmentSeconds;
+
+    @Value("${live.threads:2}")
+    private int threads;
+
+    private final VideoService videoService;
+
+    private final HlsCache hlsCache;
+
+    private final HlsMetadataIndex metadataIndex;
+
+    private final StorageBackend hlsStorage;
+
+    private final FfmpegSupervisor supervisor;
+
+    private final ConcurrentMap<String, LiveStream> streams = new ConcurrentHashMap<>();
+
+    // streams with an ingest request in progress
+    private final ConcurrentMap<String, Boolean> ingesting = new ConcurrentHashMap<>();
+
+    public LiveStreamServiceImpl(VideoService videoService, HlsCache hlsCache, HlsMetadataIndex metadataIndex,
+                                 @Qualifier("hlsStorage") StorageBackend hlsStorage, FfmpegSupervisor supervisor) {
+        this.videoService = videoService;
+        this.hlsCache = hlsCache;
+        this.metadataIndex = metadataIndex;
+        this.hlsStorage = hlsStorage;
+        this.supervisor = supervisor;
+    }
+
+
+    /**
+     * Create a live video
+     * @param title
+     * @param description
+     * @return
+     */
+    @Override
+    public Video create(String title, String description) {
+        Video video = new Video();
+        video.setVideoId(UUID.randomUUID().toString());
+        video.setTitle(title);
+        video.setDescription(description);
+        video.setContentType("video/MP2T");
+        try {
+            Path videoDir = Paths.get(HLS_DIR, video.getVideoId());
+            Files.createDirectories(videoDir.resolve(String.valueOf(LIVE_RENDITION.index())));
+            MasterPlaylistWriter.writeAtomically(videoDir.resolve("master.m3u8"), MasterPlaylistWriter.build(List.of(LIVE_RENDITION)));
+        } catch (IOException e) {
+            throw new RuntimeException("Error creating live stream", e);
+        }
+        streams.put(video.getVideoId(), new LiveStream(video.getVideoId(), partSeconds, segmentSeconds));
+        return videoService.saveMetadata(video);
+    }
+
+
+    /**
+     * Get live state
+     * @param videoId
+     * @return
+     */
+    @Override
+    public LiveStream get(String videoId) {
+        return streams.get(videoId);
+    }
+
+
+    /**
+     * Pipe the input into ffmpeg until it ends, then finalize the recording
+     * @param videoId
+     * @param input
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Override
+    public void ingest(String videoId, InputStream input) throws IOException, InterruptedException {
+        LiveStream stream = streams.get(videoId);
+        if (stream == null || stream.isEnded()) {
+            throw new RuntimeException("live stream not found");
+        }
+        if (ingesting.putIfAbsent(videoId, Boolean.TRUE) != null) {
+            throw new IllegalStateException("Stream is already being ingested");
+        }
+
+        Path renditionDir = Paths.get(HLS_DIR, videoId, String.valueOf(LIVE_RENDITION.index()));
+        Process process = supervisor.start(command(), renditionDir.toFile(), FfmpegSupervisor.Priority.LIVE,
+                FfmpegSupervisor.Demand.encode(LIVE_RENDITION.width(), LIVE_RENDITION.height(), threads));
+        Thread partReader = Thread.ofVirtual().name("live-parts-" + videoId).start(() -> readParts(process, stream, renditionDir));
+        Thread errorReader = Thread.ofVirtual().name("live-stderr-" + videoId).start(() -> drainErrors(process, videoId));
+
+        try {
+            try (OutputStream stdin = process.getOutputStream()) {
+                input.transferTo(stdin);
+            } catch (IOException e) {
+                // publisher went away (or ffmpeg died): end the stream with what we have
+                log.warn("Live input of {} ended: {}", videoId, e.getMessage());
+            }
+            int exitCode = process.waitFor();
+            partReader.join();
+            errorReader.join();
+            if (exitCode != 0) {
+                log.warn("Live ffmpeg for {} exited with {}", videoId, exitCode);
+            }
+            finish(stream, renditionDir);
+        } catch (InterruptedException e) {
+            supervisor.kill(process);
+            throw e;
+        } finally {
+            ingesting.remove(videoId);
+        }
+    }
+
+
+    /**
+     * Low-latency x264, keyframes on the segment grid, parts cut without waiting for a keyframe
+     */
+    private List<String> command() {
+        Rendition rendition = LIVE_RENDITION;
+        return List.of(
+                "ffmpeg", "-hide_banner", "-nostats", "-loglevel", "warning",
+                "-fflags", "nobuffer",
+                "-i", "pipe:0",
+                "-map", "0:v:0", "-map", "0:a:0?",
+                "-vf", "scale=" + rendition.width() + ":" + rendition.height(),
+                "-c:v", "libx264", "-preset", "veryfast", "-tune", "zerolatency", "-bf", "0",
+                "-b:v", rendition.videoBitrateKbps() + "k",
+                "-maxrate", rendition.videoBitrateKbps() + "k",
+                "-bufsize", rendition.videoBitrateKbps() + "k",
+                "-force_key_frames", "expr:gte(t,n_forced*" + segmentSeconds + ")",
+                "-sc_threshold", "0",
+                "-threads", String.valueOf(threads),
+                "-c:a", "aac", "-b:a", rendition.audioBitrateKbps() + "k",
+                "-f", "segment",
+                "-segment_format", "mpegts",
+                "-segment_time", String.format(Locale.ROOT, "%.3f", partSeconds),
+                "-break_non_keyframes", "1",
+                "-segment_list", "pipe:1",
+                "-segment_list_type", "csv",
+                "-segment_list_flags", "live",
+                PART_PATTERN
+        );
+    }
+
+
+    /**
+     * One csv line per finished part: filename,start,end
+     */
+    private void readParts(Process process, LiveStream stream, Path renditionDir) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(",");
+                if (fields.length < 3) {
+                    continue;
+                }
+                double start = Double.parseDouble(fields[1].trim());
+                double end = Double.parseDouble(fields[2].trim());
+                if (stream.startsSegment(start)) {
+                    writeSegment(stream, renditionDir);
+                }
+                stream.addPart(fields[0].trim(), start, end);
+                for (String expired : stream.expireParts()) {
+                    Files.deleteIfExists(renditionDir.resolve(expired));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Live part reader of {} stopped: {}", stream.getVideoId(), e.getMessage());
+        }
+    }
+
+
+    /**
+     * The open segment's file, from its parts, before the segment is listed
+     */
+    private static void writeSegment(LiveStream stream, Path renditionDir) throws IOException {
+        Path segment = renditionDir.resolve(LiveStream.segmentUri(stream.openMsn()));
+        Path temp = segment.resolveSibling(segment.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (LiveStream.Part part : stream.openParts()) {
+                try (FileChannel in = FileChannel.open(renditionDir.resolve(part.uri()), StandardOpenOption.READ)) {
+                    long size = in.size();
+                    long written = 0;
+                    while (written < size) {
+                        written += in.transferTo(written, size - written, out);
+                    }
+                }
+            }
+        }
+        Files.move(temp, segment, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+
+    private static void drainErrors(Process process, String videoId) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                log.warn("ffmpeg[live {}]: {}", videoId, line);
+            }
+        } catch (IOException e) {
+            // process gone
+        }
+    }
+
+
+    /**
+     * Close the last segment, leave a VOD playlist of the recording, publish it and drop the live state
+     */
+    private void finish(LiveStream stream, Path renditionDir) throws IOException, InterruptedException {
+        if (!stream.openParts().isEmpty()) {
+            writeSegment(stream, renditionDir);
+        }
+        stream.end();
+        MasterPlaylistWriter.writeAtomically(renditionDir.resolve("playlist.m3u8"), stream.renderVod());
+
+        // only segments are referenced from now on
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(renditionDir, "part_*.ts")) {
+            for (Path part : files) {
+                Files.deleteIfExists(part);
+            }
+        }
+        hlsStorage.writeAll(stream.getVideoId(), renditionDir.getParent());
+        streams.remove(stream.getVideoId());
+        hlsCache.invalidate(stream.getVideoId());
+        metadataIndex.invalidate(stream.getVideoId());
+        metadataIndex.index(stream.getVideoId(), renditionDir.getParent());
+        log.info("Live stream {} ended", stream.getVideoId());
+    }
+}
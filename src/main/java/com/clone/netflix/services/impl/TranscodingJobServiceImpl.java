@@ -0,0 +1,162 @@
+package com.clone.netflix.services.impl;
+
+import com.clone.netflix.entities.JobStatus;
+import com.clone.netflix.entities.TranscodingJob;
+import com.clone.netflix.repositories.TranscodingJobRepository;
+import com.clone.netflix.services.TranscodingJobService;
+import com.clone.netflix.services.VideoService;
+import com.clone.netflix.transcoding.TranscodingProgress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+
+@Service
+public class TranscodingJobServiceImpl implements TranscodingJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(TranscodingJobServiceImpl.class);
+
+    private final TranscodingJobRepository jobRepository;
+
+    private final VideoService videoService;
+
+    private final ExecutorService transcodingExecutor;
+
+    private final TranscodingProgress progress;
+
+    public TranscodingJobServiceImpl(TranscodingJobRepository jobRepository, VideoService videoService,
+                                     @Qualifier("transcodingExecutor") ExecutorService transcodingExecutor,
+                                     TranscodingProgress progress) {
+        this.jobRepository = jobRepository;
+        this.videoService = videoService;
+        this.transcodingExecutor = transcodingExecutor;
+        this.progress = progress;
+    }
+
+
+    /**
+     * Re-queue jobs that were interrupted by a restart and dispatch everything still waiting
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recover() {
+        for (TranscodingJob job : jobRepository.findByStatusOrderByCreatedAtAsc(JobStatus.RUNNING)) {
+            job.setStatus(JobStatus.QUEUED);
+            job.setStartedAt(null);
+            jobRepository.save(job);
+        }
+
+        List<TranscodingJob> queued = jobRepository.findByStatusOrderByCreatedAtAsc(JobStatus.QUEUED);
+        queued.forEach(job -> dispatch(job.getJobId()));
+        log.info("Transcoding jobs recovered: {}", queued.size());
+    }
+
+
+    /**
+     * Persist a new job and hand it to the worker pool
+     * @param videoId
+     * @param sourcePath
+     * @return
+     */
+    @Override
+    public TranscodingJob submit(String videoId, String sourcePath) {
+        TranscodingJob job = TranscodingJob.builder()
+                .jobId(UUID.randomUUID().toString())
+                .videoId(videoId)
+                .sourcePath(sourcePath)
+                .status(JobStatus.QUEUED)
+                .createdAt(Instant.now())
+                .build();
+        TranscodingJob savedJob = jobRepository.save(job);
+        dispatch(savedJob.getJobId());
+        return savedJob;
+    }
+
+
+    /**
+     * Get job by ID
+     * @param jobId
+     * @return
+     */
+    @Override
+    public TranscodingJob get(String jobId) {
+        return jobRepository.findById(jobId).orElseThrow(() -> new RuntimeException("job not found"));
+    }
+
+
+    /**
+     * Get jobs in a given status (all jobs when status is null)
+     * @param status
+     * @return
+     */
+    @Override
+    public List<TranscodingJob> getByStatus(JobStatus status) {
+        if (status == null) {
+            return jobRepository.findAll();
+        }
+        return jobRepository.findByStatusOrderByCreatedAtAsc(status);
+    }
+
+
+    /**
+     * Get jobs created for a video, newest first
+     * @param videoId
+     * @return
+     */
+    @Override
+    public List<TranscodingJob> getByVideo(String videoId) {
+        return jobRepository.findByVideoIdOrderByCreatedAtDesc(videoId);
+    }
+
+
+    private void dispatch(String jobId) {
+        transcodingExecutor.execute(() -> run(jobId));
+    }
+
+
+    /**
+     * Runs on a transcoder thread: claim the job, process the video and record the outcome
+     * @param jobId
+     */
+    private void run(String jobId) {
+        TranscodingJob job = jobRepository.findById(jobId).orElse(null);
+        if (job == null || job.getStatus() != JobStatus.QUEUED) {
+            return;
+        }
+
+        try {
+            job.setStatus(JobStatus.RUNNING);
+            job.setStartedAt(Instant.now());
+            job = jobRepository.save(job);
+        } catch (OptimisticLockingFailureException e) {
+            // another worker claimed it first
+            return;
+        }
+
+        try {
+            videoService.processVideo(job.getVideoId(), job.getSourcePath());
+            job.setStatus(JobStatus.DONE);
+        } catch (InterruptedException e) {
+            // shutting down - leave the job RUNNING so recover() picks it up on the next start
+            Thread.currentThread().interrupt();
+            return;
+        } catch (Exception e) {
+            log.error("Transcoding job {} failed", jobId, e);
+            job.setStatus(JobStatus.FAILED);
+            String message = String.valueOf(e.getMessage());
+            job.setErrorMessage(message.length() > 1000 ? message.substring(0, 1000) : message);
+        }
+        job.setFinishedAt(Instant.now());
+        jobRepository.save(job);
+        // after the save, so a client that subscribes late and then reads the job sees the outcome
+        progress.finish(job.getVideoId(), job.getStatus());
+        log.info("Transcoding job {} finished with status {}", jobId, job.getStatus());
+    }
+}
@@ -0,0 +1,284 @@
+package com.clone.netflix.services.impl;
+
+import com.clone.netflix.AppConstants;
+import com.clone.netflix.entities.TranscodingJob;
+import com.clone.netflix.entities.UploadSession;
+import com.clone.netflix.entities.Video;
+import com.clone.netflix.metrics.StreamingMetrics;
+import com.clone.netflix.repositories.UploadSessionRepository;
+import com.clone.netflix.services.TranscodingJobService;
+import com.clone.netflix.services.UploadService;
+import com.clone.netflix.services.VideoService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+@Service
+public class UploadServiceImpl implements UploadService {
+
+    private static final Logger log = LoggerFactory.getLogger(UploadServiceImpl.class);
+
+    @Value("${files.video}")
+    String DIR;
+
+    @Value("${upload.session-ttl-hours:24}")
+    private long sessionTtlHours;
+
+    private final UploadSessionRepository uploadSessionRepository;
+
+    private final VideoService videoService;
+
+    private final TranscodingJobService transcodingJobService;
+
+    private final StreamingMetrics metrics;
+
+    // one writer per upload at a time
+    private final ConcurrentMap<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+    // running SHA-256 of everything received so far, for deduplication. Lost on restart, in which
+    // case the transcoding job hashes the finished file instead
+    private final ConcurrentMap<String, MessageDigest> fileDigests = new ConcurrentHashMap<>();
+
+    public UploadServiceImpl(UploadSessionRepository uploadSessionRepository, VideoService videoService,
+                             TranscodingJobService transcodingJobService, StreamingMetrics metrics) {
+        this.uploadSessionRepository = uploadSessionRepository;
+        this.videoService = videoService;
+        this.transcodingJobService = transcodingJobService;
+        this.metrics = metrics;
+    }
+
+
+    /**
+     * Start a resumable upload
+     * @param title
+     * @param description
+     * @param fileName
+     * @param contentType
+     * @param totalSize
+     * @return
+     */
+    @Override
+    public UploadSession create(String title, String description, String fileName, String contentType, long totalSize) {
+        if (totalSize <= 0) {
+            throw new IllegalArgumentException("Upload size must be positive");
+        }
+        String videoId = UUID.randomUUID().toString();
+        String cleanFileName = StringUtils.cleanPath(fileName);
+        // same place a multipart upload lands, so processing doesn't care how the file arrived
+        Path filePath = Paths.get(DIR, "temp_" + videoId + "_" + Paths.get(cleanFileName).getFileName());
+
+        UploadSession session = UploadSession.builder()
+                .uploadId(UUID.randomUUID().toString())
+                .videoId(videoId)
+                .title(title)
+                .description(description)
+                .fileName(cleanFileName)
+                .contentType(contentType)
+                .totalSize(totalSize)
+                .receivedBytes(0)
+                .filePath(filePath.toString())
+                .createdAt(Instant.now())
+                .updatedAt(Instant.now())
+                .build();
+        return uploadSessionRepository.save(session);
+    }
+
+
+    /**
+     * Get upload by ID
+     * @param uploadId
+     * @return
+     */
+    @Override
+    public UploadSession get(String uploadId) {
+        return uploadSessionRepository.findById(uploadId).orElseThrow(() -> new RuntimeException("upload not found"));
+    }
+
+
+    /**
+     * Stream one chunk straight from the request into the upload file at its offset.
+     * Nothing is buffered beyond one CHUNK_SIZE array, and the file is written exactly once.
+     * @param uploadId
+     * @param offset
+     * @param body
+     * @param sha256
+     * @return
+     * @throws IOException
+     */
+    @Override
+    public UploadSession appendChunk(String uploadId, long offset, InputStream body, String sha256) throws IOException {
+        ReentrantLock lock = locks.computeIfAbsent(uploadId, id -> new ReentrantLock());
+        if (!lock.tryLock()) {
+            throw new IllegalStateException("Another chunk of this upload is being written");
+        }
+        try {
+            UploadSession session = get(uploadId);
+            if (session.isCompleted()) {
+                throw new IllegalStateException("Upload already completed");
+            }
+            if (offset != session.getReceivedBytes()) {
+                throw new IllegalStateException("Expected offset " + session.getReceivedBytes());
+            }
+
+            MessageDigest digest = sha256Digest();
+            // work on a copy so a rejected chunk leaves the running hash as it was
+            MessageDigest fileDigest = offset == 0 ? sha256Digest() : copyOf(fileDigests.get(uploadId));
+            long position = offset;
+            long inFlight = 0;
+            try (FileChannel channel = FileChannel.open(Paths.get(session.getFilePath()),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                try {
+                    byte[] buffer = new byte[AppConstants.CHUNK_SIZE];
+                    int read;
+                    while ((read = body.read(buffer)) != -1) {
+                        if (position + read > session.getTotalSize()) {
+                            throw new IllegalArgumentException("Chunk goes past the declared upload size");
+                        }
+                        metrics.uploadChunkBytesStarted(read);
+                        inFlight += read;
+                        digest.update(buffer, 0, read);
+                        if (fileDigest != null) {
+                            fileDigest.update(buffer, 0, read);
+                        }
+                        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, read);
+                        while (byteBuffer.hasRemaining()) {
+                            position += channel.write(byteBuffer, position);
+                        }
+                    }
+                    if (sha256 != null && !sha256.equalsIgnoreCase(HexFormat.of().formatHex(digest.digest()))) {
+                        throw new IllegalArgumentException("Chunk checksum mismatch");
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // drop the partial chunk so the client can resend it from the same offset
+                    channel.truncate(offset);
+                    throw e;
+                } finally {
+                    metrics.uploadChunkBytesFinished(inFlight);
+                }
+                channel.force(false);
+            }
+
+            session.setReceivedBytes(position);
+            session.setUpdatedAt(Instant.now());
+            boolean last = position == session.getTotalSize();
+            if (last) {
+                fileDigests.remove(uploadId);
+                complete(session, fileDigest != null ? HexFormat.of().formatHex(fileDigest.digest()) : null);
+            }
+            UploadSession savedSession = uploadSessionRepository.save(session);
+            // only once the new offset is stored, so the hash never runs ahead of it
+            if (!last && fileDigest != null) {
+                fileDigests.put(uploadId, fileDigest);
+            } else if (!last) {
+                fileDigests.remove(uploadId);
+            }
+            return savedSession;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Last byte received: save the video and queue its transcoding job
+     * @param contentHash SHA-256 of the whole file, null if it couldn't be followed across chunks
+     */
+    private void complete(UploadSession session, String contentHash) {
+        Video video = new Video();
+        video.setVideoId(session.getVideoId());
+        video.setTitle(session.getTitle());
+        video.setDescription(session.getDescription());
+        video.setContentType(session.getContentType());
+        video.setFilePath(session.getFilePath());
+        video.setContentHash(contentHash);
+        videoService.saveMetadata(video);
+
+        TranscodingJob job = transcodingJobService.submit(video.getVideoId(), video.getFilePath());
+        session.setCompleted(true);
+        session.setJobId(job.getJobId());
+        locks.remove(session.getUploadId());
+    }
+
+
+    /**
+     * Drop uploads that received nothing for longer than upload.session-ttl-hours: their partial file,
+     * their session and what this node keeps for them
+     * @return number of uploads dropped
+     */
+    @Override
+    @Scheduled(fixedDelayString = "${upload.cleanup-interval-ms:3600000}", initialDelayString = "${upload.cleanup-interval-ms:3600000}")
+    public int expireAbandoned() {
+        Instant cutoff = Instant.now().minus(Duration.ofHours(sessionTtlHours));
+        int expired = 0;
+        for (UploadSession stale : uploadSessionRepository.findByCompletedFalseAndUpdatedAtBefore(cutoff)) {
+            String uploadId = stale.getUploadId();
+            ReentrantLock lock = locks.computeIfAbsent(uploadId, id -> new ReentrantLock());
+            if (!lock.tryLock()) {
+                // a chunk is arriving right now: not abandoned after all
+                continue;
+            }
+            try {
+                // a chunk may have landed between the query and the lock
+                UploadSession session = uploadSessionRepository.findById(uploadId).orElse(null);
+                if (session != null && !session.isCompleted() && session.getUpdatedAt().isBefore(cutoff)) {
+                    Files.deleteIfExists(Paths.get(session.getFilePath()));
+                    uploadSessionRepository.delete(session);
+                    expired++;
+                }
+                fileDigests.remove(uploadId);
+                // anyone still holding this lock finds the session gone
+                locks.remove(uploadId, lock);
+            } catch (IOException e) {
+                log.warn("Could not delete the partial file of upload {}: {}", uploadId, e.getMessage());
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (expired > 0) {
+            log.info("Expired {} abandoned uploads", expired);
+        }
+        return expired;
+    }
+
+
+    private static MessageDigest copyOf(MessageDigest digest) {
+        if (digest == null) {
+            return null;
+        }
+        try {
+            return (MessageDigest) digest.clone();
+        } catch (CloneNotSupportedException e) {
+            return null;
+        }
+    }
+
+
+    private static MessageDigest sha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -1,27 +1,47 @@
 package com.clone.netflix.services.impl;
 
 import com.clone.netflix.entities.Video;
+import com.clone.netflix.playload.CatalogPage;
+import com.clone.netflix.playload.VideoSummary;
 import com.clone.netflix.repositories.VideoRepository;
+import com.clone.netflix.search.VideoSearchIndex;
+import com.clone.netflix.services.ContentHashService;
 import com.clone.netflix.services.VideoService;
+import com.clone.netflix.storage.StorageBackend;
+import com.clone.netflix.streaming.HlsCache;
+import com.clone.netflix.streaming.HlsMetadataIndex;
+import com.clone.netflix.streaming.HlsStorageKeys;
+import com.clone.netflix.streaming.OpenFileCache;
+import com.clone.netflix.transcoding.HlsEncoder;
+import com.clone.netflix.transcoding.Rendition;
 import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Service
 public class VideoServiceImpl implements VideoService {
 
+    private static final Logger log = LoggerFactory.getLogger(VideoServiceImpl.class);
+
     @Value("${files.video}")
     String DIR;
 
@@ -30,8 +50,56 @@ public class VideoServiceImpl implements VideoService {
 
     private VideoRepository videoRepository;
 
-    public VideoServiceImpl(VideoRepository videoRepository) {
+    private HlsCache hlsCache;
+
+    private HlsMetadataIndex metadataIndex;
+
+    private OpenFileCache openFiles;
+
+    private HlsEncoder hlsEncoder;
+
+    private VideoSearchIndex searchIndex;
+
+    private ContentHashService contentHashService;
+
+    private StorageBackend hlsStorage;
+
+    private StorageBackend originalsStorage;
+
+    private HlsStorageKeys storageKeys;
+
+    public static final int MAX_CATALOG_PAGE_SIZE = 100;
+
+    // jobs for the same content run one after the other, so the second one finds the first one's output
+    private static final int CONTENT_LOCK_STRIPES = 64;
+    private final ReentrantLock[] contentLocks = new ReentrantLock[CONTENT_LOCK_STRIPES];
+
+    // read-through cache of catalog pages, keyed by cursor + size, dropped whenever a video is saved
+    private static final int MAX_CACHED_CATALOG_PAGES = 1024;
+    private final ConcurrentMap<String, CachedCatalogPage> catalogCache = new ConcurrentHashMap<>();
+    private final AtomicLong catalogGeneration = new AtomicLong();
+
+    // a page with the catalog generation it was read at, only served while that generation is current
+    private record CachedCatalogPage(long generation, CatalogPage page) {
+    }
+
+    public VideoServiceImpl(VideoRepository videoRepository, HlsCache hlsCache, HlsMetadataIndex metadataIndex, OpenFileCache openFiles,
+                            HlsEncoder hlsEncoder, VideoSearchIndex searchIndex, ContentHashService contentHashService,
+                            @Qualifier("hlsStorage") StorageBackend hlsStorage, @Qualifier("originalsStorage") StorageBackend originalsStorage,
+                            HlsStorageKeys storageKeys) {
         this.videoRepository = videoRepository;
+        this.hlsCache = hlsCache;
+        this.metadataIndex = metadataIndex;
+        this.openFiles = openFiles;
+        this.hlsEncoder = hlsEncoder;
+        this.searchIndex = searchIndex;
+        this.contentHashService = contentHashService;
+        this.hlsStorage = hlsStorage;
+        this.originalsStorage = originalsStorage;
+        this.storageKeys = storageKeys;
+        for (int i = 0; i < CONTENT_LOCK_STRIPES; i++) {
+            contentLocks[i] = new ReentrantLock();
+        }
     }
 
     /**
@@ -48,9 +116,9 @@ public class VideoServiceImpl implements VideoService {
 
         if (!file.exists()) {
             file.mkdir();
-            System.out.println("Folder Created:");
+            log.info("Folder created: {}", DIR);
         } else {
-            System.out.println("Folder already created");
+            log.debug("Folder already created: {}", DIR);
         }
 
     }
@@ -58,6 +126,7 @@ public class VideoServiceImpl implements VideoService {
 
     /**
      * Save video (metadata + file)
+     * The upload is only stored here, transcoding runs later on a job (see processVideo)
      * @param video
      * @param file
      * @return
@@ -67,77 +136,227 @@ public class VideoServiceImpl implements VideoService {
         try {
             String filename = file.getOriginalFilename();
             String contentType = file.getContentType();
-            InputStream inputStream = file.getInputStream();
 
-            // Save uploaded file temporarily
+            // Save uploaded file temporarily, prefixed with the id so concurrent uploads never collide.
+            // transferTo(File) lets the container move its own spooled copy instead of writing it again
             String cleanFileName = StringUtils.cleanPath(filename);
-            Path tempPath = Paths.get(DIR, "temp_" + cleanFileName);
-            Files.copy(inputStream, tempPath, StandardCopyOption.REPLACE_EXISTING);
-
-            // Concatenate with startup animation BEFORE storing
-            String finalOutputPath = attachStartupAnimation(tempPath.toString(), cleanFileName);
+            Path tempPath = Paths.get(DIR, "temp_" + video.getVideoId() + "_" + cleanFileName);
+            file.transferTo(tempPath.toFile());
 
             // Save metadata
             video.setContentType(contentType);
-            video.setFilePath(finalOutputPath);
+            video.setFilePath(tempPath.toString());
             Video savedVideo = videoRepository.save(video);
-
-            // Now process the concatenated video
-            // processVideo(savedVideo.getVideoId());
-            generateAdaptiveHls(savedVideo.getVideoId(), finalOutputPath);
-
-            // Delete temp uploaded file (optional)
-            Files.deleteIfExists(tempPath);
-
+            onVideoSaved(savedVideo);
             return savedVideo;
 
         } catch (IOException e) {
-            e.printStackTrace();
+            log.error("Error in processing video {}", video.getVideoId(), e);
             throw new RuntimeException("Error in processing video ");
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
         }
     }
 
 
     /**
-     * Attach startup animation to the beginning of the video using FFmpeg
-     * @param filePath
-     * @param originalFileName
+     * Save metadata of a video whose file is already stored
+     * @param video
      * @return
      */
-    public String attachStartupAnimation(String filePath, String originalFileName) {
+    @Override
+    public Video saveMetadata(Video video) {
+        Video savedVideo = videoRepository.save(video);
+        onVideoSaved(savedVideo);
+        return savedVideo;
+    }
+
+
+    /**
+     * Process video (eg: transcode, etc.)
+     * The upload is encoded once as-is; the startup animation is prepended at playlist level
+     * from its pre-encoded cache (see IntroBumper).
+     * Uploads are deduplicated by SHA-256: content that was encoded before is linked, not encoded again.
+     * New content is linked before it is encoded, so playback can start while the encode runs.
+     * The finished output (and the original) is then published to the storage backend, from where any node can serve it:
+     * once per content, under _content/{sha256} (see HlsStorageKeys).
+     * @param videoId
+     * @param sourcePath
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Override
+    public void processVideo(String videoId, String sourcePath) throws IOException, InterruptedException {
+        Video video = get(videoId);
+        Path tempPath = Paths.get(sourcePath);
+        Path finalPath = tempPath.resolveSibling(tempPath.getFileName().toString().replaceFirst("^temp_", ""));
+
+        // the upload becomes the stored original: a rename, not another copy
+        String originalKey = finalPath.getFileName().toString();
+        if (Files.exists(tempPath) && !tempPath.equals(finalPath)) {
+            Files.move(tempPath, finalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            originalsStorage.write(originalKey, finalPath);
+        } else if (!Files.exists(finalPath)) {
+            // stored by another node
+            Files.createDirectories(finalPath.getParent());
+            originalsStorage.copyTo(originalKey, finalPath);
+        }
+
+        video.setFilePath(finalPath.toString());
+        if (video.getContentHash() == null) {
+            // resumable uploads hash while writing; multipart ones (and resumable ones cut by a restart) are hashed here
+            video.setContentHash(contentHashService.hash(finalPath));
+        }
+        videoRepository.save(video);
+
+        String sha256 = video.getContentHash();
+        Path videoDir = Paths.get(HLS_DIR, videoId);
+        String contentPrefix = HlsStorageKeys.contentPrefix(sha256);
+        boolean publish = true;
+        ReentrantLock lock = contentLock(sha256);
+        lock.lockInterruptibly();
         try {
-            String animationPath = "videos/netflix-intro.mp4";
-            String outputDir = DIR; // store final video in main dir
-            Files.createDirectories(Paths.get(outputDir));
+            boolean linked = isLinkedTo(videoDir, sha256);
+            if (linked && contentHashService.isReady(sha256)) {
+                // job re-run after a restart: only the publishing may be missing. The reference is missing too when
+                // this video's encode was cut short and another upload of the same content encoded it since
+                if (!video.isContentReferenced() && contentHashService.acquire(sha256)) {
+                    referenced(video);
+                }
+                log.info("Video {} was already encoded", videoId);
+            } else if (!linked && contentHashService.acquire(sha256)) {
+                referenced(video);
+                log.info("Video {} has the same content as an earlier upload, reusing {}", videoId, sha256);
+                linkOutput(videoId, sha256);
+                // already published by the first upload, unless that was before output was shared in storage too
+                publish = hlsStorage.stat(contentPrefix + "/master.m3u8") == null;
+            } else {
+                Path contentDir = Paths.get(HLS_DIR, HlsStorageKeys.CONTENT_DIR, sha256);
+                // leftovers of an encode that failed or was cut short
+                FileSystemUtils.deleteRecursively(contentDir);
+                Files.createDirectories(contentDir);
+                // linked up front so the video can be watched while it is being encoded
+                linkOutput(videoId, sha256);
+                try {
+                    encodeHls(videoId, finalPath.toString(), contentDir);
+                } catch (IOException | InterruptedException | RuntimeException e) {
+                    // don't leave viewers on a playlist that never ends, nor partial output on disk
+                    Files.deleteIfExists(videoDir);
+                    FileSystemUtils.deleteRecursively(contentDir);
+                    throw e;
+                }
+                contentHashService.encoded(sha256);
+                referenced(video);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (publish) {
+            hlsStorage.writeAll(contentPrefix, videoDir);
+        }
+        // hash the new output now rather than on the first viewer's request
+        metadataIndex.index(videoId, videoDir);
+        log.info("Adaptive HLS ready for video: {}", videoId);
+    }
+
+
+    /**
+     * Delete a video, its original and its HLS output (or its reference on shared output)
+     * @param videoId
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    @Override
+    public void delete(String videoId) throws IOException, InterruptedException {
+        Video video = get(videoId);
+
+        Path videoDir = Paths.get(HLS_DIR, videoId);
+        // the reference is dropped on whichever node deletes the video, linked on its disk or not
+        if (video.isContentReferenced() || Files.isSymbolicLink(videoDir)) {
+            unlinkOutput(video, videoDir);
+        } else {
+            FileSystemUtils.deleteRecursively(videoDir);
+        }
+        // output of its own (shared output is dropped with its last reference, in unlinkOutput)
+        hlsStorage.deleteAll(videoId);
+        storageKeys.invalidate(videoId);
+        hlsCache.invalidate(videoId);
+        metadataIndex.invalidate(videoId);
+        openFiles.invalidate(videoId);
+
+        if (video.getFilePath() != null) {
+            Path original = Paths.get(video.getFilePath());
+            Files.deleteIfExists(original);
+            originalsStorage.delete(original.getFileName().toString());
+        }
+        videoRepository.delete(video);
 
-            String outputFilePath = Paths.get(outputDir, originalFileName).toString();
+        catalogGeneration.incrementAndGet();
+        catalogCache.clear();
+        searchIndex.remove(videoId);
+    }
 
 
-            String ffmpegCmd = String.format(
-                    "ffmpeg -i \"%s\" -i \"%s\" -filter_complex " +
-                            "\"[0:v]scale=1920:1080:force_original_aspect_ratio=decrease,pad=1920:1080:(ow-iw)/2:(oh-ih)/2[v0]; " +
-                            "[1:v]scale=1920:1080:force_original_aspect_ratio=decrease,pad=1920:1080:(ow-ih)/2:(oh-ih)/2[v1]; " +
-                            "[v0][0:a][v1][1:a]concat=n=2:v=1:a=1[outv][outa]\" " +
-                            "-map \"[outv]\" -map \"[outa]\" -c:v libx264 -crf 23 -preset veryfast -c:a aac \"%s\"",
-                    animationPath, filePath, outputFilePath
-            );
+    private ReentrantLock contentLock(String sha256) {
+        return contentLocks[Math.floorMod(sha256.hashCode(), CONTENT_LOCK_STRIPES)];
+    }
 
-            ProcessBuilder processBuilder = new ProcessBuilder("/bin/bash", "-c", ffmpegCmd);
-            processBuilder.inheritIO();
-            Process process = processBuilder.start();
-            int exitCode = process.waitFor();
 
-            if (exitCode != 0) {
-                throw new RuntimeException("Failed to concatenate the startup animation with the video!");
-            }
+    private static boolean isLinkedTo(Path videoDir, String sha256) throws IOException {
+        return Files.isSymbolicLink(videoDir) && Files.readSymbolicLink(videoDir).equals(Paths.get(HlsStorageKeys.CONTENT_DIR, sha256));
+    }
+
+
+    /**
+     * Point HLS_DIR/{videoId} at the shared output, replacing whatever was there
+     */
+    private void linkOutput(String videoId, String sha256) throws IOException {
+        Path videoDir = Paths.get(HLS_DIR, videoId);
+        storageKeys.invalidate(videoId);
+        hlsCache.invalidate(videoId);
+        metadataIndex.invalidate(videoId);
+        openFiles.invalidate(videoId);
+        if (Files.isSymbolicLink(videoDir)) {
+            Files.delete(videoDir);
+        } else {
+            FileSystemUtils.deleteRecursively(videoDir);
+        }
+        // relative, so HLS_DIR can be moved or mounted elsewhere
+        Files.createSymbolicLink(videoDir, Paths.get(HlsStorageKeys.CONTENT_DIR, sha256));
+    }
 
-            System.out.println("Startup animation attached successfully: " + outputFilePath);
-            return outputFilePath;
 
-        } catch (IOException | InterruptedException ex) {
-            throw new RuntimeException("Error while attaching startup animation!", ex);
+    /**
+     * Record that the video holds a reference on its content
+     */
+    private void referenced(Video video) {
+        video.setContentReferenced(true);
+        videoRepository.save(video);
+    }
+
+
+    /**
+     * Remove the video's link and drop its reference, deleting the shared output with the last one.
+     * A video whose encode never finished holds no reference, and must not take one from the videos that do.
+     */
+    private void unlinkOutput(Video video, Path videoDir) throws IOException, InterruptedException {
+        String sha256 = Files.isSymbolicLink(videoDir)
+                ? Files.readSymbolicLink(videoDir).getFileName().toString()
+                : video.getContentHash();
+        ReentrantLock lock = contentLock(sha256);
+        lock.lockInterruptibly();
+        try {
+            Files.deleteIfExists(videoDir);
+            if (video.isContentReferenced()) {
+                if (contentHashService.release(sha256)) {
+                    FileSystemUtils.deleteRecursively(Paths.get(HLS_DIR, HlsStorageKeys.CONTENT_DIR, sha256));
+                    hlsStorage.deleteAll(HlsStorageKeys.contentPrefix(sha256));
+                    log.info("Shared HLS output {} deleted with its last video {}", sha256, video.getVideoId());
+                }
+                video.setContentReferenced(false);
+                videoRepository.save(video);
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -161,7 +380,7 @@ public class VideoServiceImpl implements VideoService {
      */
     @Override
     public Video getByTitle(String title) {
-        return null;
+        return videoRepository.findFirstByTitle(title).orElseThrow(() -> new RuntimeException("video not found"));
     }
 
 
@@ -175,6 +394,71 @@ public class VideoServiceImpl implements VideoService {
     }
 
 
+    /**
+     * Get one page of the catalog
+     * @param cursor
+     * @param size
+     * @return
+     */
+    @Override
+    public CatalogPage getCatalog(String cursor, int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_CATALOG_PAGE_SIZE));
+        String after = cursor == null ? "" : cursor;
+        String key = after + "|" + pageSize;
+
+        long generation = catalogGeneration.get();
+        CachedCatalogPage cached = catalogCache.get(key);
+        if (cached != null && cached.generation() == generation) {
+            return cached.page();
+        }
+
+        List<VideoSummary> items = videoRepository.findSummariesAfter(after, PageRequest.of(0, pageSize));
+        String nextCursor = items.size() == pageSize ? items.get(items.size() - 1).getVideoId() : null;
+        CatalogPage page = new CatalogPage(items, nextCursor);
+
+        if (catalogCache.size() >= MAX_CACHED_CATALOG_PAGES) {
+            catalogCache.clear();
+        }
+        // tagged with the generation read before the query: a save meanwhile makes it a miss for everyone after
+        catalogCache.put(key, new CachedCatalogPage(generation, page));
+        return page;
+    }
+
+
+    /**
+     * Keep the catalog cache and search index in step with the videos table
+     */
+    private void onVideoSaved(Video video) {
+        catalogGeneration.incrementAndGet();
+        catalogCache.clear();
+        searchIndex.index(video.getVideoId(), video.getTitle(), video.getDescription(), video.getContentType());
+    }
+
+
+    /**
+     * Full-text search over title and description
+     * @param query
+     * @param limit
+     * @return
+     */
+    @Override
+    public List<VideoSummary> search(String query, int limit) {
+        return searchIndex.search(query, Math.min(limit, MAX_CATALOG_PAGE_SIZE));
+    }
+
+
+    /**
+     * Title typeahead
+     * @param query
+     * @param limit
+     * @return
+     */
+    @Override
+    public List<VideoSummary> suggest(String query, int limit) {
+        return searchIndex.suggest(query, Math.min(limit, MAX_CATALOG_PAGE_SIZE));
+    }
+
+
     /**
      * Generate adaptive HLS for a video
      * @param videoId
@@ -185,67 +469,50 @@ public class VideoServiceImpl implements VideoService {
     @Override
     public void generateAdaptiveHls(String videoId, String videoPath) throws IOException, InterruptedException {
 
-        String parentDir = Paths.get(HLS_DIR).toString() + "/" + videoId;
+        Path parentDir = Paths.get(HLS_DIR, videoId);
 
-        // Create directories for HLS output
-        new File(parentDir).mkdirs();
-        for (int i = 0; i < 3; i++) {
-            new File(parentDir + "/" + i).mkdirs();
+        // never write through the link into output other videos share
+        Video video = videoRepository.findById(videoId).orElse(null);
+        if (Files.isSymbolicLink(parentDir) || (video != null && video.isContentReferenced())) {
+            unlinkOutput(video != null ? video : get(videoId), parentDir);
         }
 
-        // FFmpeg command construction
-        List<String> cmd = new ArrayList<>();
-        cmd.add("ffmpeg");
-        cmd.add("-i");
-        cmd.add(videoPath);
-
-        // Define filter_complex for scaling and splitting video streams
-        String filterComplex = "[0:v]split=3[v1][v2][v3];" +
-                "[v1]scale=640:360[v1out];" +
-                "[v2]scale=1280:720[v2out];" +
-                "[v3]scale=1920:1080[v3out]";
-        cmd.add("-filter_complex");
-        cmd.add(filterComplex);
-
-        // Define video and audio encoding settings
-        String[] mappings = {
-                "-map", "[v1out]", "-map", "0:a", "-c:v:0", "libx264", "-b:v:0", "800k", "-c:a", "aac", "-b:a", "96k",
-                "-map", "[v2out]", "-map", "0:a", "-c:v:1", "libx264", "-b:v:1", "2800k", "-c:a", "aac", "-b:a", "128k",
-                "-map", "[v3out]", "-map", "0:a", "-c:v:2", "libx264", "-b:v:2", "5000k", "-c:a", "aac", "-b:a", "192k"
-        };
-        for (String arg : mappings) {
-            cmd.add(arg);
-        }
+        // Create directories for HLS output
+        Files.createDirectories(parentDir);
 
-        // HLS options
-        cmd.add("-f");
-        cmd.add("hls");
-        cmd.add("-hls_time");
-        cmd.add("6");
-        cmd.add("-hls_playlist_type");
-        cmd.add("vod");
-        cmd.add("-var_stream_map");
-        cmd.add("v:0,a:0 v:1,a:1 v:2,a:2");
-        cmd.add("-master_pl_name");
-        cmd.add("master.m3u8");
-        cmd.add("-hls_segment_filename");
-        cmd.add(parentDir + "/%v/segment_%03d.ts");
-        cmd.add(parentDir + "/%v/playlist.m3u8");
-
-        // Execute FFmpeg command
-        System.out.println("Executing FFmpeg command: " + String.join(" ", cmd));
-        ProcessBuilder pb = new ProcessBuilder(cmd);
-        pb.directory(new File(parentDir));
-        pb.inheritIO();
-        Process process = pb.start();
-        int exitCode = process.waitFor();
-
-        // Handle process completion
-        if (exitCode != 0) {
-            throw new RuntimeException("FFmpeg failed with exit code " + exitCode);
+        try {
+            encodeHls(videoId, videoPath, parentDir);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            FileSystemUtils.deleteRecursively(parentDir);
+            throw e;
         }
+        hlsStorage.writeAll(videoId, parentDir);
+
+        // hash the new output now rather than on the first viewer's request
+        metadataIndex.index(videoId, parentDir);
 
-        System.out.println("Adaptive HLS generation completed for video: " + videoId);
+        log.info("Adaptive HLS generation completed for video: {}", videoId);
+    }
+
+
+    /**
+     * One ffmpeg per rendition, in parallel; the output is served while it grows (see HlsEncoder)
+     */
+    private void encodeHls(String videoId, String videoPath, Path outputDir) throws IOException, InterruptedException {
+        // cached playlists/segments (and their ETags) of a previous run must not outlive the rewrite
+        hlsCache.invalidate(videoId);
+        metadataIndex.invalidate(videoId);
+        openFiles.invalidate(videoId);
+        metadataIndex.markGrowing(videoId);
+        try {
+            hlsEncoder.encode(videoId, videoPath, outputDir, Rendition.DEFAULT_LADDER);
+        } finally {
+            // anything requested while ffmpeg was writing may have been cached half-done
+            hlsCache.invalidate(videoId);
+            metadataIndex.invalidate(videoId);
+            openFiles.invalidate(videoId);
+            metadataIndex.markComplete(videoId);
+        }
     }
 
 //    /**
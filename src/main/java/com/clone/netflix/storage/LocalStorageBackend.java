@@ -0,0 +1,138 @@
+package com.clone.netflix.storage;
+
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Keys are files under a root directory. With the root set to the directory ffmpeg writes to,
+ * publishing is a no-op and a node serves only what is on its own disk (or on a shared mount).
+ */
+public class LocalStorageBackend implements StorageBackend {
+
+    private final Path root;
+
+    public LocalStorageBackend(Path root) {
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+
+    @Override
+    public boolean isLocal() {
+        return true;
+    }
+
+
+    @Override
+    public StoredObject stat(String key) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(resolve(key), BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (!attributes.isRegularFile()) {
+            return null;
+        }
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        return new StoredObject(attributes.size(), lastModified,
+                "\"" + Long.toHexString(attributes.size()) + "-" + Long.toHexString(lastModified) + "\"");
+    }
+
+
+    @Override
+    public InputStream read(String key, long offset, long length) throws IOException {
+        FileChannel channel = FileChannel.open(resolve(key), StandardOpenOption.READ);
+        channel.position(offset);
+        return new BoundedInputStream(Channels.newInputStream(channel), length);
+    }
+
+
+    @Override
+    public void write(String key, Path file) throws IOException {
+        Path target = resolve(key);
+        if (Files.exists(target) && Files.isSameFile(file, target)) {
+            return;
+        }
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        // keeps the modification time, which validators are derived from
+        Files.copy(file, temp, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+
+    @Override
+    public void writeAll(String prefix, Path dir) throws IOException {
+        Path target = resolve(prefix);
+        if (Files.exists(target) && Files.isSameFile(dir, target)) {
+            // written in place
+            return;
+        }
+        // dir may be a link to shared output, which walk() wouldn't enter
+        Path source = dir.toRealPath();
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(source)) {
+            files = walk.filter(Files::isRegularFile).toList();
+        }
+        for (Path file : files) {
+            write(prefix + "/" + keyOf(source.relativize(file)), file);
+        }
+    }
+
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(resolve(key));
+    }
+
+
+    @Override
+    public void deleteAll(String prefix) throws IOException {
+        FileSystemUtils.deleteRecursively(resolve(prefix));
+    }
+
+
+    @Override
+    public Path localPath(String key) {
+        return resolve(key);
+    }
+
+
+    /**
+     * The file of a key, refusing keys that would leave the root ("..", absolute paths)
+     */
+    private Path resolve(String key) {
+        Path path = root.resolve(key).normalize();
+        if (!path.startsWith(root) || path.equals(root)) {
+            throw new IllegalArgumentException("Invalid storage key: " + key);
+        }
+        return path;
+    }
+
+
+    /**
+     * Relative path as a key, '/'-separated whatever the platform
+     */
+    static String keyOf(Path relative) {
+        StringBuilder key = new StringBuilder();
+        for (Path name : relative) {
+            if (!key.isEmpty()) {
+                key.append('/');
+            }
+            key.append(name);
+        }
+        return key.toString();
+    }
+}
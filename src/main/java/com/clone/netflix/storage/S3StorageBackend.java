@@ -0,0 +1,383 @@
+package com.clone.netflix.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Objects in an S3-compatible bucket (AWS, MinIO, Ceph RGW, ...), every key under a fixed prefix.
+ * Files above the multipart threshold are uploaded in parts; parts, and the files of a writeAll, are sent
+ * in parallel from a pool of upload-concurrency threads per backend.
+ * Reads are ranged GETs streamed straight from the response.
+ * Objects keep the modification time of the file they were uploaded from (x-amz-meta-mtime), which stat() reports
+ * as their Last-Modified, so validators derived from it match those of the local file.
+ */
+public class S3StorageBackend implements StorageBackend, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(S3StorageBackend.class);
+
+    // S3 limits
+    private static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+    private static final int MAX_PARTS = 10_000;
+    private static final int MAX_DELETE_BATCH = 1000;
+
+    // user metadata holding the source file's modification time, epoch millis
+    private static final String MTIME_METADATA = "mtime";
+
+    private final S3Client s3;
+
+    private final String bucket;
+
+    private final String prefix;
+
+    private final long multipartThreshold;
+
+    private final long partSize;
+
+    // platform threads: the Apache HTTP client blocks in synchronized code, which would pin virtual threads
+    private final ExecutorService uploadExecutor;
+
+    /**
+     * @param s3
+     * @param bucket
+     * @param prefix prepended to every key, "" or ending with '/'
+     * @param multipartThreshold files at least this big are uploaded in parts
+     * @param partSize
+     * @param uploadConcurrency upload requests in flight at a time
+     */
+    public S3StorageBackend(S3Client s3, String bucket, String prefix, long multipartThreshold, long partSize, int uploadConcurrency) {
+        this.s3 = s3;
+        this.bucket = bucket;
+        this.prefix = prefix;
+        this.multipartThreshold = multipartThreshold;
+        this.partSize = Math.max(MIN_PART_SIZE, partSize);
+        AtomicInteger counter = new AtomicInteger();
+        this.uploadExecutor = Executors.newFixedThreadPool(Math.max(1, uploadConcurrency), runnable -> {
+            Thread thread = new Thread(runnable, "storage-upload-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+
+    /**
+     * Blocking client for an S3-compatible endpoint. Path-style addressing, since MinIO and most
+     * self-hosted stores don't do virtual-host buckets; without credentials the default AWS chain is used.
+     * @param endpoint empty for AWS itself
+     * @param region
+     * @param accessKey
+     * @param secretKey
+     * @param maxConnections
+     * @return
+     */
+    public static S3Client client(String endpoint, String region, String accessKey, String secretKey, int maxConnections) {
+        S3ClientBuilder builder = S3Client.builder()
+                .region(Region.of(region))
+                .httpClientBuilder(ApacheHttpClient.builder().maxConnections(maxConnections))
+                .serviceConfiguration(S3Configuration.builder()
+                        .pathStyleAccessEnabled(true)
+                        // signed single-shot bodies, which every S3 clone accepts
+                        .chunkedEncodingEnabled(false)
+                        .build());
+        if (endpoint != null && !endpoint.isBlank()) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+        if (accessKey != null && !accessKey.isBlank()) {
+            builder.credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey)));
+        } else {
+            builder.credentialsProvider(DefaultCredentialsProvider.create());
+        }
+        return builder.build();
+    }
+
+
+    @Override
+    public boolean isLocal() {
+        return false;
+    }
+
+
+    @Override
+    public StoredObject stat(String key) throws IOException {
+        try {
+            HeadObjectResponse head = s3.headObject(b -> b.bucket(bucket).key(prefix + key));
+            String mtime = head.metadata().get(MTIME_METADATA);
+            long lastModified;
+            try {
+                lastModified = mtime != null ? Long.parseLong(mtime) : head.lastModified().toEpochMilli();
+            } catch (NumberFormatException e) {
+                lastModified = head.lastModified().toEpochMilli();
+            }
+            return new StoredObject(head.contentLength(), lastModified, head.eTag());
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                return null;
+            }
+            throw new IOException("HEAD " + key + " failed", e);
+        } catch (SdkException e) {
+            throw new IOException("HEAD " + key + " failed", e);
+        }
+    }
+
+
+    @Override
+    public InputStream read(String key, long offset, long length) throws IOException {
+        if (length <= 0) {
+            return InputStream.nullInputStream();
+        }
+        try {
+            return s3.getObject(b -> b.bucket(bucket).key(prefix + key).range("bytes=" + offset + "-" + (offset + length - 1)));
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                throw new NoSuchFileException(key);
+            }
+            throw new IOException("GET " + key + " failed", e);
+        } catch (SdkException e) {
+            throw new IOException("GET " + key + " failed", e);
+        }
+    }
+
+
+    @Override
+    public void write(String key, Path file) throws IOException {
+        Upload upload = start(key, file);
+        try {
+            upload.finish();
+        } catch (IOException | RuntimeException e) {
+            upload.abort();
+            throw e;
+        } catch (InterruptedException e) {
+            upload.abort();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Upload of " + key + " interrupted");
+        }
+    }
+
+
+    /**
+     * Every file's PUT, or the parts of its multipart upload, goes to the upload pool before any is waited for
+     */
+    @Override
+    public void writeAll(String prefix, Path dir) throws IOException, InterruptedException {
+        // dir may be a link to shared output, which walk() wouldn't enter
+        Path source = dir.toRealPath();
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(source)) {
+            files = walk.filter(Files::isRegularFile).toList();
+        }
+        List<Upload> started = new ArrayList<>();
+        try {
+            for (Path file : files) {
+                started.add(start(prefix + "/" + LocalStorageBackend.keyOf(source.relativize(file)), file));
+            }
+            for (Upload upload : started) {
+                upload.finish();
+            }
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            started.forEach(Upload::abort);
+            throw e;
+        }
+        log.debug("Published {} files under {}{}", files.size(), this.prefix, prefix);
+    }
+
+
+    @Override
+    public void delete(String key) throws IOException {
+        try {
+            s3.deleteObject(b -> b.bucket(bucket).key(prefix + key));
+        } catch (SdkException e) {
+            throw new IOException("DELETE " + key + " failed", e);
+        }
+    }
+
+
+    @Override
+    public void deleteAll(String prefix) throws IOException {
+        String listPrefix = this.prefix + prefix + "/";
+        try {
+            String token = null;
+            do {
+                String continuation = token;
+                ListObjectsV2Response page = s3.listObjectsV2(b -> b.bucket(bucket).prefix(listPrefix)
+                        .maxKeys(MAX_DELETE_BATCH).continuationToken(continuation));
+                List<ObjectIdentifier> keys = new ArrayList<>();
+                for (S3Object object : page.contents()) {
+                    keys.add(ObjectIdentifier.builder().key(object.key()).build());
+                }
+                if (!keys.isEmpty()) {
+                    s3.deleteObjects(b -> b.bucket(bucket).delete(d -> d.objects(keys).quiet(true)));
+                }
+                token = Boolean.TRUE.equals(page.isTruncated()) ? page.nextContinuationToken() : null;
+            } while (token != null);
+        } catch (SdkException e) {
+            throw new IOException("Deleting " + listPrefix + " failed", e);
+        }
+    }
+
+
+    @Override
+    public void close() {
+        uploadExecutor.shutdownNow();
+    }
+
+
+    /**
+     * Queue the requests of one file: a single PUT below the multipart threshold, its parts above it
+     */
+    private Upload start(String key, Path file) throws IOException {
+        long size = Files.size(file);
+        Map<String, String> metadata = Map.of(MTIME_METADATA, Long.toString(Files.getLastModifiedTime(file).toMillis()));
+        if (size < multipartThreshold) {
+            Upload upload = new Upload(key, null);
+            upload.parts.add(uploadExecutor.submit(() -> {
+                try {
+                    s3.putObject(b -> b.bucket(bucket).key(prefix + key).metadata(metadata), RequestBody.fromFile(file));
+                    return null;
+                } catch (SdkException e) {
+                    throw new IOException("PUT " + key + " failed", e);
+                }
+            }));
+            return upload;
+        }
+
+        long part = Math.max(partSize, (size + MAX_PARTS - 1) / MAX_PARTS);
+        int partCount = (int) ((size + part - 1) / part);
+        Upload upload;
+        try {
+            upload = new Upload(key, s3.createMultipartUpload(b -> b.bucket(bucket).key(prefix + key).metadata(metadata)).uploadId());
+        } catch (SdkException e) {
+            throw new IOException("Starting multipart upload of " + key + " failed", e);
+        }
+        for (int i = 0; i < partCount; i++) {
+            int partNumber = i + 1;
+            long offset = i * part;
+            long length = Math.min(part, size - offset);
+            upload.parts.add(uploadExecutor.submit(() -> uploadPart(key, upload.uploadId, partNumber, file, offset, length)));
+        }
+        return upload;
+    }
+
+
+    private CompletedPart uploadPart(String key, String uploadId, int partNumber, Path file, long offset, long length) throws IOException {
+        try {
+            String etag = s3.uploadPart(b -> b.bucket(bucket).key(prefix + key).uploadId(uploadId)
+                            .partNumber(partNumber).contentLength(length),
+                    RequestBody.fromContentProvider(() -> open(file, offset, length), length,
+                            "application/octet-stream")).eTag();
+            return CompletedPart.builder().partNumber(partNumber).eTag(etag).build();
+        } catch (SdkException e) {
+            throw new IOException("Part " + partNumber + " of " + key + " failed", e);
+        }
+    }
+
+
+    /**
+     * A fresh stream over the part for every attempt, so the SDK can retry it
+     */
+    private static InputStream open(Path file, long offset, long length) {
+        try {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            channel.position(offset);
+            return new BoundedInputStream(Channels.newInputStream(channel), length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    /**
+     * Requests of one file in flight on the upload pool
+     */
+    private final class Upload {
+
+        private final String key;
+
+        // null for a single PUT
+        private final String uploadId;
+
+        private final List<Future<CompletedPart>> parts = new ArrayList<>();
+
+        private Upload(String key, String uploadId) {
+            this.key = key;
+            this.uploadId = uploadId;
+        }
+
+        /**
+         * Wait for every request, then complete the multipart upload
+         */
+        void finish() throws IOException, InterruptedException {
+            List<CompletedPart> completed = new ArrayList<>();
+            for (Future<CompletedPart> part : parts) {
+                try {
+                    completed.add(part.get());
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException io) {
+                        throw io;
+                    }
+                    throw new IOException("Upload of " + key + " failed", e.getCause());
+                }
+            }
+            if (uploadId == null) {
+                return;
+            }
+            try {
+                s3.completeMultipartUpload(b -> b.bucket(bucket).key(prefix + key).uploadId(uploadId)
+                        .multipartUpload(CompletedMultipartUpload.builder().parts(completed).build()));
+            } catch (SdkException e) {
+                throw new IOException("Completing multipart upload of " + key + " failed", e);
+            }
+        }
+
+        /**
+         * Cancel what hasn't been sent and drop the parts S3 already holds
+         */
+        void abort() {
+            parts.forEach(part -> part.cancel(true));
+            if (uploadId == null) {
+                return;
+            }
+            try {
+                s3.abortMultipartUpload(b -> b.bucket(bucket).key(prefix + key).uploadId(uploadId));
+            } catch (SdkException e) {
+                log.warn("Could not abort multipart upload of {}: {}", key, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.clone.netflix.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Where originals and published HLS output are kept, addressed by '/'-separated keys
+ * ({videoId}/master.m3u8, {videoId}/{qualityLevel}/segment_000.ts, _content/{sha256}/... for shared output, ...).
+ * ffmpeg always writes to local disk; finished output is published here, and a node that doesn't have
+ * a title on its own disk serves it from here (see HlsFileServer).
+ */
+public interface StorageBackend {
+
+    /**
+     * Size, Last-Modified (the modification time of the file it was written from) and the backend's ETag of a stored object
+     */
+    record StoredObject(long size, long lastModified, String etag) {
+    }
+
+
+    /**
+     * @return true when keys are plain files under a local directory (localPath never returns null)
+     */
+    boolean isLocal();
+
+
+    /**
+     * Get an object's metadata
+     * @param key
+     * @return null if there is no such object
+     * @throws IOException
+     */
+    StoredObject stat(String key) throws IOException;
+
+
+    /**
+     * Stream part of an object
+     * @param key
+     * @param offset first byte
+     * @param length number of bytes, the stream ends early if the object is shorter
+     * @return
+     * @throws IOException NoSuchFileException if there is no such object
+     */
+    InputStream read(String key, long offset, long length) throws IOException;
+
+
+    /**
+     * Store a file under a key, replacing the object if there is one
+     * @param key
+     * @param file
+     * @throws IOException
+     */
+    void write(String key, Path file) throws IOException;
+
+
+    /**
+     * Store every regular file under a directory as prefix/{relative path}, in parallel
+     * @param prefix
+     * @param dir
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    void writeAll(String prefix, Path dir) throws IOException, InterruptedException;
+
+
+    /**
+     * Delete an object, if it exists
+     * @param key
+     * @throws IOException
+     */
+    void delete(String key) throws IOException;
+
+
+    /**
+     * Delete every object under prefix/
+     * @param prefix
+     * @throws IOException
+     */
+    void deleteAll(String prefix) throws IOException;
+
+
+    /**
+     * @param key
+     * @return the file holding the object, or null for remote storage
+     */
+    default Path localPath(String key) {
+        return null;
+    }
+
+
+    /**
+     * Copy a whole object to a local file
+     * @param key
+     * @param target
+     * @throws IOException
+     */
+    default void copyTo(String key, Path target) throws IOException {
+        StoredObject object = stat(key);
+        if (object == null) {
+            throw new NoSuchFileException(key);
+        }
+        try (InputStream in = read(key, 0, object.size())) {
+            Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.clone.netflix.streaming;
+
+/**
+ * A single satisfiable byte range of a file, both ends inclusive (as in the Content-Range header).
+ */
+public record ByteRange(long start, long end) {
+
+    /**
+     * Returned when a Range header is syntactically valid but lies outside the file (-> 416)
+     */
+    public static final ByteRange UNSATISFIABLE = new ByteRange(-1, -1);
+
+    public long length() {
+        return end - start + 1;
+    }
+
+    public String contentRange(long fileLength) {
+        return "bytes " + start + "-" + end + "/" + fileLength;
+    }
+
+    /**
+     * Parse a Range header against a file of the given length.
+     * Only a single range is supported (that is all HLS players send); anything else,
+     * including multiple ranges or a malformed header, returns null which means "serve the full file"
+     * as allowed by RFC 9110.
+     * @param header
+     * @param fileLength
+     * @return the range, UNSATISFIABLE, or null when the header should be ignored
+     */
+    public static ByteRange parse(String header, long fileLength) {
+        if (header == null || !header.startsWith("bytes=")) {
+            return null;
+        }
+        String spec = header.substring(6).trim();
+        if (spec.indexOf(',') >= 0) {
+            return null;
+        }
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+
+            if (first.isEmpty()) {
+                // suffix range: last N bytes
+                if (last.isEmpty()) {
+                    return null;
+                }
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0 || fileLength == 0) {
+                    return UNSATISFIABLE;
+                }
+                start = Math.max(0, fileLength - suffix);
+                end = fileLength - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? fileLength - 1 : Math.min(Long.parseLong(last), fileLength - 1);
+                if (start >= fileLength) {
+                    return UNSATISFIABLE;
+                }
+                if (end < start) {
+                    return null;
+                }
+            }
+            return new ByteRange(start, end);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
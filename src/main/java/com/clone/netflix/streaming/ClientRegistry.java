@@ -0,0 +1,172 @@
+package com.clone.netflix.streaming;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
+
+import java.security.Principal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * State kept per player or per client between requests, and how requests are told apart.
+ * Entries are striped like HlsCache: each stripe is a LinkedHashMap in access order under its own lock, holding at most
+ * its share of maxEntries. An entry not used for ttlNanos is dropped when it is next asked for or when it is the
+ * stripe's eldest, so nothing ever walks the whole map.
+ */
+final class ClientRegistry<T> {
+
+    /**
+     * Sent by AVPlayer, a different value for every playback
+     */
+    static final String SESSION_HEADER = "X-Playback-Session-Id";
+
+    private static final int STRIPES = 16;
+
+    private final Stripe[] stripes;
+
+    private final long ttlNanos;
+
+    @SuppressWarnings("unchecked")
+    ClientRegistry(int maxEntries, long ttlNanos) {
+        this.ttlNanos = ttlNanos;
+        this.stripes = (Stripe[]) new ClientRegistry.Stripe[STRIPES];
+        int stripeEntries = Math.max(1, maxEntries / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(stripeEntries);
+        }
+    }
+
+
+    /**
+     * One playback: X-Playback-Session-Id, or client address and user agent for players that don't send it.
+     * Chosen by the client, so it tells players apart but must not be what a limit is kept by.
+     * @param request
+     * @return
+     */
+    static String sessionId(HttpServletRequest request) {
+        String id = request.getHeader(SESSION_HEADER);
+        return id != null ? id : request.getRemoteAddr() + " " + request.getHeader(HttpHeaders.USER_AGENT);
+    }
+
+
+    /**
+     * Who is asking, as far as the client can't choose it: the authenticated user, or the client address
+     * (the proxy's unless server.forward-headers-strategy is set behind one)
+     * @param request
+     * @return
+     */
+    static String clientId(HttpServletRequest request) {
+        Principal principal = request.getUserPrincipal();
+        return principal != null ? "user " + principal.getName() : request.getRemoteAddr();
+    }
+
+
+    /**
+     * @param id
+     * @return the entry, null if there is none or it has been idle too long
+     */
+    T get(String id) {
+        return stripe(id).get(id, System.nanoTime());
+    }
+
+
+    /**
+     * @param id
+     * @param create makes the entry when there is none (or it has been idle too long)
+     * @return the entry
+     */
+    T computeIfAbsent(String id, Function<String, T> create) {
+        long now = System.nanoTime();
+        Stripe stripe = stripe(id);
+        stripe.lock.lock();
+        try {
+            T value = stripe.get(id, now);
+            if (value == null) {
+                value = create.apply(id);
+                stripe.put(id, value, now);
+            }
+            return value;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+
+    void put(String id, T value) {
+        stripe(id).put(id, value, System.nanoTime());
+    }
+
+
+    int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                size += stripe.entries.size();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+
+    private Stripe stripe(String id) {
+        return stripes[(id.hashCode() & 0x7fffffff) % STRIPES];
+    }
+
+
+    private record Entry<T>(T value, long lastSeen) {
+    }
+
+
+    private final class Stripe {
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final LinkedHashMap<String, Entry<T>> entries;
+
+        // time of the insert in progress, for removeEldestEntry
+        private long now;
+
+        Stripe(int maxEntries) {
+            this.entries = new LinkedHashMap<>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry<T>> eldest) {
+                    // one idle entry goes with every insert, so idle ones don't wait for the stripe to fill up
+                    return size() > maxEntries || now - eldest.getValue().lastSeen() > ttlNanos;
+                }
+            };
+        }
+
+        T get(String id, long now) {
+            lock.lock();
+            try {
+                Entry<T> entry = entries.get(id);
+                if (entry == null) {
+                    return null;
+                }
+                if (now - entry.lastSeen() > ttlNanos) {
+                    entries.remove(id);
+                    return null;
+                }
+                put(id, entry.value(), now);
+                return entry.value();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void put(String id, T value, long now) {
+            lock.lock();
+            try {
+                this.now = now;
+                entries.put(id, new Entry<>(value, now));
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
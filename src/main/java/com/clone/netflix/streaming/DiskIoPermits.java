@@ -0,0 +1,54 @@
+package com.clone.netflix.streaming;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caps how many requests read from disk at the same time.
+ * With virtual threads (spring.threads.virtual.enabled) there is no request pool size left to act as
+ * a limit, so this is what protects the disks from thousands of concurrent cold reads.
+ * A permit is held for one read (a metadata lookup, a file loaded into memory, one piece of a segment body),
+ * never while that piece goes out to a client: network time would otherwise count against the disk budget.
+ * Bodies handed to sendfile are read by the connector's few poller threads, outside of these permits.
+ */
+@Component
+public class DiskIoPermits {
+
+    private final Semaphore permits;
+
+    private final long timeoutMillis;
+
+    public DiskIoPermits(@Value("${streaming.io.max-concurrent:256}") int maxConcurrent,
+                         @Value("${streaming.io.acquire-timeout-ms:5000}") long timeoutMillis) {
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Wait for a permit. Returns false when the disk stayed saturated for the whole timeout.
+     * @return
+     * @throws InterruptedException
+     */
+    public boolean acquire() throws InterruptedException {
+        return permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Take a permit only if one is free right now (background reads that must not queue behind requests)
+     * @return
+     */
+    public boolean tryAcquire() {
+        return permits.tryAcquire();
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public int available() {
+        return permits.availablePermits();
+    }
+}
@@ -0,0 +1,289 @@
+package com.clone.netflix.streaming;
+
+import com.clone.netflix.metrics.StreamingMetrics;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.InterruptedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Paces segment bodies so a few greedy clients can't take the node's whole uplink.
+ * Two token buckets apply to every chunk (hls.egress.chunk-bytes) of a body: the client's own
+ * (hls.egress.client.*) and the node's (hls.egress.max-bytes-per-second). Each is a virtual clock advanced with one
+ * compare-and-set per chunk (GCRA), so there is no shared lock to queue on, and clients that keep asking are served in
+ * the order they asked: a thousand players on a saturated link each get about a thousandth of it.
+ *
+ * A client is the authenticated user or else the client address, never anything the client sends, so rotating
+ * X-Playback-Session-Id buys neither a fresh burst nor a clean record (see ClientRegistry.clientId; behind a proxy
+ * set server.forward-headers-strategy). Its sessions (X-Playback-Session-Id, or the user agent) only count how many
+ * players it runs: each active one plays a second of media per second, up to MAX_STREAMS_PER_CLIENT. A client
+ * that has fetched more media than its players could have played (more than hls.egress.playback-lead-seconds ahead
+ * of real time per player, from the segment durations in HlsMetadataIndex) is a bulk fetch: it only gets node
+ * bandwidth playback doesn't need right now. Playback waits its turn, bulk waits until the node's bucket has tokens left over, for at most
+ * hls.egress.bulk-max-wait-ms per chunk: past that it queues like playback, so a busy link slows bulk down without
+ * stalling it.
+ *
+ * Both rates at 0 (the default) turn shaping off, and bodies keep going out with sendfile.
+ */
+@Component
+public class EgressShaper {
+
+    // a client without requests for this long is forgotten
+    private static final long CLIENT_TTL_NANOS = TimeUnit.MINUTES.toNanos(2);
+
+    private static final int MAX_CLIENTS = 100_000;
+
+    // a household's screens behind one address: more sessions than this don't drain the lead any faster
+    private static final int MAX_STREAMS_PER_CLIENT = 4;
+
+    // recent sessions remembered per client
+    private static final int SESSIONS_PER_CLIENT = 16;
+
+    // a session that fetched within this long is counted as playing
+    private static final long ACTIVE_SESSION_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final StreamingMetrics metrics;
+
+    private final Rate node;
+
+    private final long clientBytesPerSecond;
+
+    private final long clientBurstBytes;
+
+    private final int chunkBytes;
+
+    private final double playbackLeadSeconds;
+
+    private final long bulkMaxWaitNanos;
+
+    private final ClientRegistry<Client> clients = new ClientRegistry<>(MAX_CLIENTS, CLIENT_TTL_NANOS);
+
+    public EgressShaper(StreamingMetrics metrics,
+                        @Value("${hls.egress.max-bytes-per-second:0}") long maxBytesPerSecond,
+                        @Value("${hls.egress.burst-bytes:4194304}") long burstBytes,
+                        @Value("${hls.egress.client.max-bytes-per-second:0}") long clientBytesPerSecond,
+                        @Value("${hls.egress.client.burst-bytes:8388608}") long clientBurstBytes,
+                        @Value("${hls.egress.chunk-bytes:1048576}") int chunkBytes,
+                        @Value("${hls.egress.playback-lead-seconds:120}") double playbackLeadSeconds,
+                        @Value("${hls.egress.bulk-max-wait-ms:5000}") long bulkMaxWaitMillis) {
+        this.metrics = metrics;
+        this.chunkBytes = chunkBytes;
+        // a bucket must hold at least one chunk, or a bulk fetch could never take one
+        this.node = maxBytesPerSecond > 0 ? new Rate(maxBytesPerSecond, Math.max(burstBytes, chunkBytes)) : null;
+        this.clientBytesPerSecond = clientBytesPerSecond;
+        this.clientBurstBytes = Math.max(clientBurstBytes, chunkBytes);
+        this.playbackLeadSeconds = playbackLeadSeconds;
+        this.bulkMaxWaitNanos = TimeUnit.MILLISECONDS.toNanos(bulkMaxWaitMillis);
+    }
+
+
+    /**
+     * Token bucket kept as the time its next token is due (GCRA): taking n bytes pushes that time n / rate further.
+     * Bytes may go out once the due time is less than a burst ahead of now.
+     */
+    static final class Rate {
+
+        private final double nanosPerByte;
+
+        private final long toleranceNanos;
+
+        private final AtomicLong due = new AtomicLong(System.nanoTime());
+
+        Rate(long bytesPerSecond, long burstBytes) {
+            this.nanosPerByte = 1e9 / bytesPerSecond;
+            this.toleranceNanos = (long) (burstBytes * nanosPerByte);
+        }
+
+        /**
+         * Take bytes, queueing behind whoever took before
+         * @return nanos to wait before sending them
+         */
+        long reserve(long bytes) {
+            long cost = (long) (bytes * nanosPerByte);
+            while (true) {
+                long now = System.nanoTime();
+                long current = due.get();
+                long next = Math.max(current, now) + cost;
+                if (due.compareAndSet(current, next)) {
+                    return Math.max(0, next - toleranceNanos - now);
+                }
+            }
+        }
+
+        /**
+         * Take bytes only if they can go out now
+         * @return 0 if taken, otherwise nanos until they could be (nothing is taken)
+         */
+        long tryReserve(long bytes) {
+            long cost = (long) (bytes * nanosPerByte);
+            while (true) {
+                long now = System.nanoTime();
+                long current = due.get();
+                long next = Math.max(current, now) + cost;
+                long wait = next - toleranceNanos - now;
+                if (wait > 0) {
+                    return wait;
+                }
+                if (due.compareAndSet(current, next)) {
+                    return 0;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * A client's bucket, and how far ahead of real time its fetches are (media seconds, drained by wall-clock time
+     * times the sessions playing)
+     */
+    private static final class Client {
+
+        private final Rate rate;
+
+        private double leadSeconds;
+
+        private long updatedAt = System.nanoTime();
+
+        // last fetch of each recent session, least recent first
+        private final LinkedHashMap<String, Long> sessions = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > SESSIONS_PER_CLIENT;
+            }
+        };
+
+        Client(Rate rate) {
+            this.rate = rate;
+        }
+
+        /**
+         * @return the lead per playing session
+         */
+        synchronized double fetched(String sessionId, double mediaSeconds, long now) {
+            sessions.put(sessionId, now);
+            int playing = 0;
+            for (long lastFetch : sessions.values()) {
+                if (now - lastFetch <= ACTIVE_SESSION_NANOS) {
+                    playing++;
+                }
+            }
+            playing = Math.min(playing, MAX_STREAMS_PER_CLIENT);
+            leadSeconds = Math.max(0, leadSeconds - playing * (now - updatedAt) / 1e9) + mediaSeconds;
+            updatedAt = now;
+            return leadSeconds / playing;
+        }
+    }
+
+
+    /**
+     * Paces one response body. Not thread-safe: it belongs to the request writing the body.
+     */
+    public final class Pacer {
+
+        private final Client client;
+
+        private final boolean playback;
+
+        private long paced;
+
+        private Pacer(Client client, boolean playback) {
+            this.client = client;
+            this.playback = playback;
+        }
+
+        /**
+         * Wait until the body may be sent up to end (bytes from its start).
+         * Callers write at most chunkBytes() past the previous end.
+         * @param end
+         * @throws InterruptedIOException
+         */
+        public void pace(long end) throws InterruptedIOException {
+            if (end <= paced) {
+                return;
+            }
+            long bytes = end - paced;
+            paced = end;
+
+            long waited = 0;
+            if (client.rate != null) {
+                waited += sleep(client.rate.reserve(bytes));
+            }
+            if (node != null) {
+                if (playback) {
+                    waited += sleep(node.reserve(bytes));
+                } else {
+                    long wait;
+                    long bulkWaited = 0;
+                    // anything playback left over, retried since playback may take it meanwhile
+                    while ((wait = node.tryReserve(bytes)) > 0) {
+                        if (bulkWaited >= bulkMaxWaitNanos) {
+                            // waited long enough: take a place in the queue
+                            waited += sleep(node.reserve(bytes));
+                            break;
+                        }
+                        long slept = sleep(Math.min(wait, bulkMaxWaitNanos - bulkWaited));
+                        bulkWaited += slept;
+                        waited += slept;
+                    }
+                }
+            }
+            if (waited > 0) {
+                metrics.egressThrottled(playback, bytes, waited);
+            }
+        }
+
+        boolean isPlayback() {
+            return playback;
+        }
+    }
+
+
+    /**
+     * Pacer for a segment body, null when shaping is off
+     * @param request
+     * @param mediaSeconds playback time the body holds (0 if unknown)
+     * @return
+     */
+    public Pacer pacer(HttpServletRequest request, double mediaSeconds) {
+        if (!isEnabled()) {
+            return null;
+        }
+        long now = System.nanoTime();
+        Client client = clients.computeIfAbsent(ClientRegistry.clientId(request),
+                id -> new Client(clientBytesPerSecond > 0 ? new Rate(clientBytesPerSecond, clientBurstBytes) : null));
+        return new Pacer(client, client.fetched(ClientRegistry.sessionId(request), mediaSeconds, now) <= playbackLeadSeconds);
+    }
+
+
+    public boolean isEnabled() {
+        return node != null || clientBytesPerSecond > 0;
+    }
+
+
+    /**
+     * Largest piece of a body paced at once: bodies up to this size are paced up front and may still use sendfile
+     * @return
+     */
+    public int chunkBytes() {
+        return chunkBytes;
+    }
+
+
+    private static long sleep(long nanos) throws InterruptedIOException {
+        if (nanos <= 0) {
+            return 0;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while paced");
+        }
+        return nanos;
+    }
+}
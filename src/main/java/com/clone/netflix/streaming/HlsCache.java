@@ -0,0 +1,384 @@
+package com.clone.netflix.streaming;
+
+import com.clone.netflix.storage.StorageBackend;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Off-heap cache for hot playlists and segments.
+ * Bodies live in direct ByteBuffers so a large cache doesn't add GC pressure.
+ * Eviction is segmented LRU: new entries go to a probation segment and are only promoted to the
+ * protected segment on a second hit, so one pass over a long title can't flush the popular
+ * first segments and playlists. The budget is split over independently locked stripes.
+ * Prefetched entries (see SegmentPrefetcher) count as not yet requested: their first hit keeps them on probation.
+ * Callers that only want files asked for more than once (segments) check admit() before loading:
+ * it remembers recent misses by key only, so one-hit segments never take cache space.
+ */
+@Component
+public class HlsCache {
+
+    private static final int STRIPES = 16;
+
+    // share of each stripe's budget reserved for entries that have been hit at least twice
+    private static final double PROTECTED_RATIO = 0.8;
+
+    // keys of recent misses kept per stripe for admit()
+    private static final int RECENT_MISSES_PER_STRIPE = 4096;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    private final long maxEntryBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public HlsCache(@Value("${hls.cache.max-bytes:268435456}") long maxBytes,
+                    @Value("${hls.cache.max-entry-bytes:8388608}") long maxEntryBytes) {
+        this.maxEntryBytes = maxEntryBytes;
+        long stripeBudget = maxBytes / STRIPES;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(stripeBudget);
+        }
+    }
+
+    /**
+     * A cached file body, read-only. Use body() to get an independent view for writing.
+     */
+    public record CachedFile(ByteBuffer buffer, long lastModified) {
+
+        public long size() {
+            return buffer.capacity();
+        }
+
+        public ByteBuffer body() {
+            return buffer.duplicate();
+        }
+    }
+
+    public record Stats(long hits, long misses, long evictions, long entries, long bytes) {
+    }
+
+
+    /**
+     * Get a cached file, or null (counted as a miss)
+     * @param key
+     * @return
+     */
+    public CachedFile get(HlsCacheKey key) {
+        CachedFile file = stripe(key).get(key);
+        if (file != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return file;
+    }
+
+
+    /**
+     * Read a file into the cache. Returns null when the file is too big to be worth caching,
+     * the caller should then serve it from disk.
+     * @param key
+     * @param path
+     * @param size
+     * @param lastModified
+     * @return
+     * @throws IOException
+     */
+    public CachedFile load(HlsCacheKey key, Path path, long size, long lastModified) throws IOException {
+        if (!fits(key, size)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return fill(key, channel, size, lastModified);
+        }
+    }
+
+
+    /**
+     * Read an object of remote storage into the cache. Returns null when it is too big to be worth caching.
+     * @param key
+     * @param storage
+     * @param objectKey the file's key in storage, see HlsStorageKeys
+     * @param size
+     * @param lastModified
+     * @return
+     * @throws IOException
+     */
+    public CachedFile load(HlsCacheKey key, StorageBackend storage, String objectKey, long size, long lastModified) throws IOException {
+        if (!fits(key, size)) {
+            return null;
+        }
+        try (ReadableByteChannel channel = Channels.newChannel(storage.read(objectKey, 0, size))) {
+            return fill(key, channel, size, lastModified);
+        }
+    }
+
+
+    /**
+     * Read an object of remote storage into the cache ahead of its first request.
+     * Returns false when it is too big to be worth caching.
+     * @param key
+     * @param storage
+     * @param objectKey the file's key in storage, see HlsStorageKeys
+     * @param size
+     * @param lastModified
+     * @return
+     * @throws IOException
+     */
+    public boolean prefetch(HlsCacheKey key, StorageBackend storage, String objectKey, long size, long lastModified) throws IOException {
+        if (!fits(key, size)) {
+            return false;
+        }
+        try (ReadableByteChannel channel = Channels.newChannel(storage.read(objectKey, 0, size))) {
+            CachedFile file = read(channel, size, lastModified);
+            if (file == null) {
+                return false;
+            }
+            stripe(key).put(key, file, true);
+            return true;
+        }
+    }
+
+
+    /**
+     * Whether a missed file should be loaded: true when it was missed recently already
+     * @param key
+     * @return
+     */
+    public boolean admit(HlsCacheKey key) {
+        return stripe(key).admit(key);
+    }
+
+
+    /**
+     * Whether a file is cached, without counting a hit or a miss
+     * @param key
+     * @return
+     */
+    public boolean contains(HlsCacheKey key) {
+        return stripe(key).contains(key);
+    }
+
+
+    private boolean fits(HlsCacheKey key, long size) {
+        return size <= maxEntryBytes && size <= stripe(key).budget / 2;
+    }
+
+
+    private CachedFile fill(HlsCacheKey key, ReadableByteChannel channel, long size, long lastModified) throws IOException {
+        CachedFile file = read(channel, size, lastModified);
+        if (file != null) {
+            stripe(key).put(key, file, false);
+        }
+        return file;
+    }
+
+
+    private static CachedFile read(ReadableByteChannel channel, long size, long lastModified) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                // shorter than its attributes said: being rewritten, don't cache
+                return null;
+            }
+        }
+        buffer.flip();
+        return new CachedFile(buffer.asReadOnlyBuffer(), lastModified);
+    }
+
+
+    /**
+     * Drop every entry of a video (its HLS output is being regenerated)
+     * @param videoId
+     */
+    public void invalidate(String videoId) {
+        for (Stripe stripe : stripes) {
+            stripe.removeIf(videoId);
+        }
+    }
+
+
+    public Stats stats() {
+        long entries = 0;
+        long bytes = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                entries += stripe.probation.size() + stripe.protectedEntries.size();
+                bytes += stripe.probationBytes + stripe.protectedBytes;
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), entries, bytes);
+    }
+
+
+    private Stripe stripe(HlsCacheKey key) {
+        return stripes[stripeIndex(key)];
+    }
+
+
+    static int stripeIndex(HlsCacheKey key) {
+        return (key.hashCode() & 0x7fffffff) % STRIPES;
+    }
+
+
+    /**
+     * One segmented-LRU. LinkedHashMaps in access order, eldest entry = least recently used.
+     * ReentrantLock rather than synchronized so virtual threads never pin on it.
+     */
+    private final class Stripe {
+
+        private final long budget;
+        private final long protectedBudget;
+
+        private final LinkedHashMap<HlsCacheKey, CachedFile> probation = new LinkedHashMap<>(64, 0.75f, true);
+        private final LinkedHashMap<HlsCacheKey, CachedFile> protectedEntries = new LinkedHashMap<>(64, 0.75f, true);
+        private long probationBytes;
+        private long protectedBytes;
+        // on probation without having been requested yet
+        private final Set<HlsCacheKey> prefetched = new HashSet<>();
+        // missed once, see admit()
+        private final LinkedHashMap<HlsCacheKey, Boolean> recentMisses = new LinkedHashMap<>(64, 0.75f, false);
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private Stripe(long budget) {
+            this.budget = budget;
+            this.protectedBudget = (long) (budget * PROTECTED_RATIO);
+        }
+
+        private CachedFile get(HlsCacheKey key) {
+            lock.lock();
+            try {
+                CachedFile file = protectedEntries.get(key);
+                if (file != null) {
+                    return file;
+                }
+                if (prefetched.remove(key)) {
+                    // first request of a prefetched entry: that's one hit, not two
+                    return probation.get(key);
+                }
+                file = probation.remove(key);
+                if (file != null) {
+                    // second hit: promote, demoting protected LRU entries back to probation if needed
+                    probationBytes -= file.size();
+                    protectedEntries.put(key, file);
+                    protectedBytes += file.size();
+                    while (protectedBytes > protectedBudget) {
+                        Map.Entry<HlsCacheKey, CachedFile> eldest = protectedEntries.entrySet().iterator().next();
+                        protectedEntries.remove(eldest.getKey());
+                        protectedBytes -= eldest.getValue().size();
+                        probation.put(eldest.getKey(), eldest.getValue());
+                        probationBytes += eldest.getValue().size();
+                    }
+                    evictOverBudget();
+                }
+                return file;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean admit(HlsCacheKey key) {
+            lock.lock();
+            try {
+                if (recentMisses.remove(key) != null) {
+                    return true;
+                }
+                recentMisses.put(key, Boolean.TRUE);
+                if (recentMisses.size() > RECENT_MISSES_PER_STRIPE) {
+                    recentMisses.remove(recentMisses.keySet().iterator().next());
+                }
+                return false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean contains(HlsCacheKey key) {
+            lock.lock();
+            try {
+                return protectedEntries.containsKey(key) || probation.containsKey(key);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void put(HlsCacheKey key, CachedFile file, boolean prefetch) {
+            lock.lock();
+            try {
+                if (prefetch) {
+                    prefetched.add(key);
+                } else {
+                    prefetched.remove(key);
+                }
+                CachedFile previous = protectedEntries.remove(key);
+                if (previous != null) {
+                    protectedBytes -= previous.size();
+                }
+                previous = probation.put(key, file);
+                if (previous != null) {
+                    probationBytes -= previous.size();
+                }
+                probationBytes += file.size();
+                evictOverBudget();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void evictOverBudget() {
+            Iterator<Map.Entry<HlsCacheKey, CachedFile>> iterator = probation.entrySet().iterator();
+            while (probationBytes + protectedBytes > budget && iterator.hasNext()) {
+                Map.Entry<HlsCacheKey, CachedFile> eldest = iterator.next();
+                probationBytes -= eldest.getValue().size();
+                prefetched.remove(eldest.getKey());
+                iterator.remove();
+                evictions.increment();
+            }
+        }
+
+        private void removeIf(String videoId) {
+            lock.lock();
+            try {
+                probationBytes -= removeVideo(probation, videoId);
+                protectedBytes -= removeVideo(protectedEntries, videoId);
+                prefetched.removeIf(key -> key.videoId().equals(videoId));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private long removeVideo(Map<HlsCacheKey, CachedFile> entries, String videoId) {
+            long removed = 0;
+            Iterator<Map.Entry<HlsCacheKey, CachedFile>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<HlsCacheKey, CachedFile> entry = iterator.next();
+                if (entry.getKey().videoId().equals(videoId)) {
+                    removed += entry.getValue().size();
+                    iterator.remove();
+                }
+            }
+            return removed;
+        }
+    }
+}
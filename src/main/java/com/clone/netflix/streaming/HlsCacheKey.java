@@ -0,0 +1,45 @@
+package com.clone.netflix.streaming;
+
+import com.clone.netflix.transcoding.TrickplayGenerator;
+
+/**
+ * Identifies a cached HLS file. The master playlist (and the DASH manifest) use MASTER as quality level,
+ * scrub thumbnails and the poster THUMBNAILS.
+ */
+public record HlsCacheKey(String videoId, int qualityLevel, String name) {
+
+    public static final int MASTER = -1;
+
+    public static final int THUMBNAILS = -2;
+
+    public static HlsCacheKey master(String videoId) {
+        return new HlsCacheKey(videoId, MASTER, "master.m3u8");
+    }
+
+    public static HlsCacheKey dashManifest(String videoId) {
+        return new HlsCacheKey(videoId, MASTER, "manifest.mpd");
+    }
+
+    public static HlsCacheKey thumbnail(String videoId, String name) {
+        return new HlsCacheKey(videoId, THUMBNAILS, name);
+    }
+
+    /**
+     * Path of the file under HLS_DIR: {videoId}/{name}, {videoId}/thumbs/{name} or {videoId}/{qualityLevel}/{name}.
+     * Its storage key may be under another prefix, see HlsStorageKeys.
+     */
+    public String objectKey() {
+        return videoId + "/" + path();
+    }
+
+    /**
+     * Path of the file within its video's output: {name}, thumbs/{name} or {qualityLevel}/{name}
+     */
+    public String path() {
+        return switch (qualityLevel) {
+            case MASTER -> name;
+            case THUMBNAILS -> TrickplayGenerator.DIR + "/" + name;
+            default -> qualityLevel + "/" + name;
+        };
+    }
+}
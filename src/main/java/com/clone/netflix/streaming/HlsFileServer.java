@@ -0,0 +1,668 @@
+package com.clone.netflix.streaming;
+
+import com.clone.netflix.metrics.StreamingMetrics;
+import com.clone.netflix.storage.StorageBackend;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Writes HLS files (playlists and segments) straight to the servlet response.
+ * Playlists and other small files come from the off-heap HlsCache. Segments on local disk never go through the cache
+ * (the page cache already holds hot ones): on Tomcat the file is handed to the connector's sendfile support,
+ * otherwise it is read piece by piece from a channel kept open in OpenFileCache (fMP4 renditions are read range
+ * by range from one file).
+ * Handles Range / If-Range with 206 + exact Content-Length, and conditional GETs (If-None-Match,
+ * If-Modified-Since) with 304 using the validators kept in HlsMetadataIndex.
+ * Disk reads are bounded by DiskIoPermits rather than by the number of request threads. A permit covers one read:
+ * a metadata lookup, a cache load, or one piece of a body read by the handler, never the write of that piece to the
+ * client, so a slow client never holds disk budget. sendfile bodies are read by the connector's poller threads,
+ * a handful per connector, which bounds them on their own.
+ * Output that is still being encoded is read fresh on every request and never cached; segments are only
+ * listed once ffmpeg has written them completely, and its temporary files are never served.
+ * Files are looked up under HLS_DIR first (output encoded or ingested on this node); with remote storage,
+ * anything else is read from the backend: ranged GETs streamed through, small files loaded into HlsCache
+ * (segments on their second request).
+ * Every served segment lets SegmentPrefetcher read ahead what the same player will ask for next.
+ * Segment bodies are paced by EgressShaper when it is on: chunk by chunk, or up front for bodies of one chunk
+ * (which keep sendfile). A paced body holds neither a disk permit nor a storage stream while it waits: storage bodies
+ * are read with one ranged GET per chunk.
+ */
+@Component
+public class HlsFileServer {
+
+    private static final Logger log = LoggerFactory.getLogger(HlsFileServer.class);
+
+    public static final String PLAYLIST_CONTENT_TYPE = "application/vnd.apple.mpegurl";
+    public static final String SEGMENT_CONTENT_TYPE = "video/MP2T";
+    public static final String FMP4_SEGMENT_CONTENT_TYPE = "video/mp4";
+    public static final String DASH_CONTENT_TYPE = "application/dash+xml";
+    public static final String VTT_CONTENT_TYPE = "text/vtt";
+
+    // Tomcat request attributes, see org.apache.coyote.Constants
+    private static final String SENDFILE_SUPPORTED_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    // below this the syscall setup costs more than the copy (same threshold as Tomcat's DefaultServlet)
+    private static final long SENDFILE_MIN_SIZE = 48 * 1024;
+
+    // a body read by the handler is read this much at a time, each piece under its own disk permit
+    private static final int DISK_READ_BYTES = 64 * 1024;
+
+    // ffmpeg's name for a segment it is still writing (-hls_flags temp_file)
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    private final HlsCache hlsCache;
+
+    private final HlsMetadataIndex metadataIndex;
+
+    private final DiskIoPermits diskIoPermits;
+
+    private final StreamingMetrics metrics;
+
+    private final OpenFileCache openFiles;
+
+    private final StorageBackend hlsStorage;
+
+    private final HlsStorageKeys storageKeys;
+
+    private final SegmentPrefetcher prefetcher;
+
+    private final EgressShaper egressShaper;
+
+    @Value("${file.video.hls}")
+    private String HLS_DIR;
+
+    @Value("${hls.cache-control.playlist:public, max-age=60}")
+    private String playlistCacheControl;
+
+    @Value("${hls.cache-control.segment:public, max-age=31536000, immutable}")
+    private String segmentCacheControl;
+
+    @Value("${hls.cache-control.thumbnail:public, max-age=604800}")
+    private String thumbnailCacheControl;
+
+    @Value("${hls.cache-control.growing-playlist:no-cache}")
+    private String growingPlaylistCacheControl;
+
+    public HlsFileServer(HlsCache hlsCache, HlsMetadataIndex metadataIndex, DiskIoPermits diskIoPermits, StreamingMetrics metrics,
+                         OpenFileCache openFiles, @Qualifier("hlsStorage") StorageBackend hlsStorage, HlsStorageKeys storageKeys,
+                         SegmentPrefetcher prefetcher, EgressShaper egressShaper) {
+        this.hlsCache = hlsCache;
+        this.metadataIndex = metadataIndex;
+        this.diskIoPermits = diskIoPermits;
+        this.metrics = metrics;
+        this.openFiles = openFiles;
+        this.hlsStorage = hlsStorage;
+        this.storageKeys = storageKeys;
+        this.prefetcher = prefetcher;
+        this.egressShaper = egressShaper;
+    }
+
+
+    /**
+     * Serve a master or rendition playlist (short TTL, revalidated on every request while the video is encoding)
+     * @param request
+     * @param response
+     * @param key
+     * @throws IOException
+     */
+    public void servePlaylist(HttpServletRequest request, HttpServletResponse response, HlsCacheKey key) throws IOException {
+        long start = System.nanoTime();
+        long bytes = metadataIndex.isGrowing(key.videoId())
+                ? serveGrowing(request, response, key)
+                : serve(request, response, key, PLAYLIST_CONTENT_TYPE, playlistCacheControl, false);
+        metrics.recordServed(key.qualityLevel() == HlsCacheKey.MASTER ? StreamingMetrics.Endpoint.MASTER : StreamingMetrics.Endpoint.PLAYLIST,
+                bytes, System.nanoTime() - start);
+    }
+
+
+    /**
+     * Serve the DASH manifest of fMP4 output (same TTL as playlists)
+     * @param request
+     * @param response
+     * @param key
+     * @throws IOException
+     */
+    public void serveDashManifest(HttpServletRequest request, HttpServletResponse response, HlsCacheKey key) throws IOException {
+        long start = System.nanoTime();
+        long bytes = serve(request, response, key, DASH_CONTENT_TYPE, playlistCacheControl, false);
+        metrics.recordServed(StreamingMetrics.Endpoint.DASH_MANIFEST, bytes, System.nanoTime() - start);
+    }
+
+
+    /**
+     * Serve a media segment (immutable once written): a .ts file, or a range of an fMP4 rendition
+     * @param request
+     * @param response
+     * @param key
+     * @throws IOException
+     */
+    public void serveSegment(HttpServletRequest request, HttpServletResponse response, HlsCacheKey key) throws IOException {
+        long start = System.nanoTime();
+        String name = key.name();
+        if (name.endsWith(TEMP_FILE_SUFFIX)) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            metrics.segmentNotFound();
+            return;
+        }
+        String contentType = name.endsWith(".mp4") || name.endsWith(".m4s") ? FMP4_SEGMENT_CONTENT_TYPE : SEGMENT_CONTENT_TYPE;
+        long bytes = serve(request, response, key, contentType, segmentCacheControl, true);
+        metrics.recordServed(StreamingMetrics.Endpoint.SEGMENT, bytes, System.nanoTime() - start);
+        if (response.getStatus() == HttpServletResponse.SC_NOT_FOUND) {
+            metrics.segmentNotFound();
+        } else {
+            prefetcher.onSegment(request, key);
+        }
+    }
+
+
+    /**
+     * Serve a scrub thumbnail sheet, the thumbnail track or image playlist, or the poster.
+     * They don't change once published, so they are cached for long (but not forever, a re-encode may change them)
+     * @param request
+     * @param response
+     * @param key
+     * @throws IOException
+     */
+    public void serveThumbnail(HttpServletRequest request, HttpServletResponse response, HlsCacheKey key) throws IOException {
+        long start = System.nanoTime();
+        String name = key.name();
+        String contentType;
+        if (name.endsWith(".jpg")) {
+            contentType = MediaType.IMAGE_JPEG_VALUE;
+        } else if (name.endsWith(".webp")) {
+            contentType = "image/webp";
+        } else if (name.endsWith(".vtt")) {
+            contentType = VTT_CONTENT_TYPE;
+        } else if (name.endsWith(".m3u8")) {
+            contentType = PLAYLIST_CONTENT_TYPE;
+        } else {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        long bytes = serve(request, response, key, contentType, thumbnailCacheControl, false);
+        metrics.recordServed(StreamingMetrics.Endpoint.THUMBNAIL, bytes, System.nanoTime() - start);
+    }
+
+
+    /**
+     * Read a whole playlist, from this node's disk or from storage
+     * @param key
+     * @return null if there is no such playlist
+     * @throws IOException
+     */
+    public String readPlaylist(HlsCacheKey key) throws IOException {
+        Path file = localFile(key);
+        if (file == null) {
+            return null;
+        }
+        try {
+            return Files.readString(file, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            if (hlsStorage.isLocal()) {
+                return null;
+            }
+        }
+        String objectKey = storageKeys.objectKey(key);
+        StorageBackend.StoredObject object = hlsStorage.stat(objectKey);
+        if (object == null) {
+            return null;
+        }
+        try (InputStream in = hlsStorage.read(objectKey, 0, object.size())) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+
+    /**
+     * @param segment a media segment: sent zero-copy and paced by EgressShaper
+     * @return body bytes written (or handed to sendfile)
+     */
+    private long serve(HttpServletRequest request, HttpServletResponse response, HlsCacheKey key,
+                       String contentType, String cacheControl, boolean segment) throws IOException {
+        Path file = localFile(key);
+        if (file == null || metadataIndex.isKnownMissing(key)) {
+            // outside HLS_DIR, or not part of a video the index knows in full: no need to look
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return 0;
+        }
+        // files of an encode in progress may still grow (fMP4), keep nothing about them
+        boolean growing = metadataIndex.isGrowing(key.videoId());
+        HlsMetadataIndex.FileMetadata metadata = growing ? null : metadataIndex.get(key);
+        if (metadata == null) {
+            if (!acquireDisk(response)) {
+                return 0;
+            }
+            try {
+                metadata = growing ? metadataIndex.peek(key, file) : metadataIndex.lookup(key, file);
+            } finally {
+                diskIoPermits.release();
+            }
+            if (metadata == null && !growing && !hlsStorage.isLocal()) {
+                metadata = metadataIndex.lookup(key, hlsStorage, storageKeys.objectKey(key));
+            }
+        }
+        if (metadata == null) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return 0;
+        }
+
+        long fileLength = metadata.size();
+        response.setHeader(HttpHeaders.ETAG, metadata.etag());
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, metadata.lastModified());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+
+        if (notModified(request, metadata)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return 0;
+        }
+
+        ByteRange range = ByteRange.parse(request.getHeader(HttpHeaders.RANGE), fileLength);
+        if (range != null && !ifRangeMatches(request, metadata)) {
+            range = null;
+        }
+
+        if (range == ByteRange.UNSATISFIABLE) {
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + fileLength);
+            return 0;
+        }
+
+        long start = range != null ? range.start() : 0;
+        long length = range != null ? range.length() : fileLength;
+        boolean head = "HEAD".equals(request.getMethod()) || length == 0;
+
+        EgressShaper.Pacer pacer = segment && !head
+                ? egressShaper.pacer(request, metadata.durationSeconds() * length / fileLength)
+                : null;
+        if (pacer != null) {
+            // wait for the first chunk before holding a disk permit or a storage connection
+            pacer.pace(Math.min(length, egressShaper.chunkBytes()));
+        }
+
+        // local segments stay on the zero-copy path
+        boolean cacheable = !growing && (metadata.remote() || !segment);
+        HlsCache.CachedFile cached = cacheable ? hlsCache.get(key) : null;
+        if (metadata.remote()) {
+            return serveRemote(response, key, metadata, cached, range, start, length, head, contentType, segment, pacer);
+        }
+        if (cached == null && cacheable && !head) {
+            // the permit covers the read into memory, not the write to the client
+            if (!acquireDisk(response)) {
+                return 0;
+            }
+            try {
+                cached = hlsCache.load(key, file, fileLength, metadata.lastModified());
+            } finally {
+                diskIoPermits.release();
+            }
+        }
+
+        response.setContentType(contentType);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (range != null) {
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, range.contentRange(fileLength));
+        } else {
+            response.setStatus(HttpServletResponse.SC_OK);
+        }
+        response.setContentLengthLong(length);
+
+        if (head) {
+            return 0;
+        }
+
+        if (cached != null) {
+            writeCached(response, cached, start, length, pacer);
+            log.debug("{} served from cache", key);
+            return length;
+        }
+
+        // the connector sends after we return: only bodies already paced in full can go that way
+        if (length >= SENDFILE_MIN_SIZE && (pacer == null || length <= egressShaper.chunkBytes())
+                && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTR))) {
+            // the connector writes the file after the handler returns, straight from the page cache
+            request.setAttribute(SENDFILE_FILENAME_ATTR, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START_ATTR, start);
+            request.setAttribute(SENDFILE_END_ATTR, start + length);
+            log.debug("{} handed to sendfile", key);
+            return length;
+        }
+
+        try (OpenFileCache.OpenFile open = openFiles.open(key, file, metadata.lastModified())) {
+            if (!copy(open.channel(), start, length, response, pacer)) {
+                return 0;
+            }
+        }
+        log.debug("{} served from disk", key);
+        return length;
+    }
+
+
+    /**
+     * Body from the storage backend, opened before the status is set so an object deleted in the meantime is still a 404.
+     * A paced body is read with one ranged read per chunk, so no storage stream is held open while the pacer sleeps.
+     * @return body bytes written
+     */
+    private long serveRemote(HttpServletResponse response, HlsCacheKey key, HlsMetadataIndex.FileMetadata metadata,
+                             HlsCache.CachedFile cached, ByteRange range, long start, long length, boolean head,
+                             String contentType, boolean segment, EgressShaper.Pacer pacer) throws IOException {
+        String objectKey = storageKeys.objectKey(key);
+        InputStream body = null;
+        try {
+            if (!head) {
+                try {
+                    // a segment is worth a whole-object GET once it's asked for again
+                    if (cached == null && (!segment || hlsCache.admit(key))) {
+                        cached = hlsCache.load(key, hlsStorage, objectKey, metadata.size(), metadata.lastModified());
+                    }
+                    if (cached == null) {
+                        // paced: only the first chunk, the one already paced for
+                        body = hlsStorage.read(objectKey, start, pacer != null ? Math.min(length, egressShaper.chunkBytes()) : length);
+                    }
+                } catch (NoSuchFileException e) {
+                    // deleted or re-encoded through another node
+                    metadataIndex.invalidate(key.videoId());
+                    hlsCache.invalidate(key.videoId());
+                    storageKeys.invalidate(key.videoId());
+                    response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                    return 0;
+                }
+            }
+
+            response.setContentType(contentType);
+            response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+            if (range != null) {
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, range.contentRange(metadata.size()));
+            } else {
+                response.setStatus(HttpServletResponse.SC_OK);
+            }
+            response.setContentLengthLong(length);
+
+            if (head) {
+                return 0;
+            }
+            if (cached != null) {
+                writeCached(response, cached, start, length, pacer);
+                log.debug("{} served from cache", key);
+                return length;
+            }
+            if (pacer == null) {
+                body.transferTo(response.getOutputStream());
+            } else {
+                InputStream first = body;
+                body = null;
+                copy(first, objectKey, start, length, response.getOutputStream(), pacer);
+            }
+            log.debug("{} served from storage", key);
+            return length;
+        } finally {
+            if (body != null) {
+                body.close();
+            }
+        }
+    }
+
+
+    private void writeCached(HttpServletResponse response, HlsCache.CachedFile cached, long start, long length,
+                             EgressShaper.Pacer pacer) throws IOException {
+        ByteBuffer body = cached.body();
+        WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+        int step = pacer != null ? egressShaper.chunkBytes() : (int) length;
+        for (long written = 0; written < length; ) {
+            int n = (int) Math.min(step, length - written);
+            if (pacer != null) {
+                pacer.pace(written + n);
+            }
+            body.limit((int) (start + written + n)).position((int) (start + written));
+            while (body.hasRemaining()) {
+                target.write(body);
+            }
+            written += n;
+        }
+    }
+
+
+    /**
+     * A storage body, chunk by chunk: each chunk is paced, then read with its own ranged read that is closed before
+     * the next wait
+     * @param first the first chunk, opened (and paced) by the caller, closed here
+     */
+    private void copy(InputStream first, String objectKey, long start, long length, OutputStream out,
+                      EgressShaper.Pacer pacer) throws IOException {
+        byte[] buffer = new byte[Math.min(egressShaper.chunkBytes(), 64 * 1024)];
+        InputStream next = first;
+        for (long written = 0; written < length; ) {
+            long n = Math.min(egressShaper.chunkBytes(), length - written);
+            if (next == null) {
+                pacer.pace(written + n);
+                next = hlsStorage.read(objectKey, start + written, n);
+            }
+            long copied = 0;
+            try (InputStream chunk = next) {
+                next = null;
+                int read;
+                while (copied < n && (read = chunk.read(buffer, 0, (int) Math.min(buffer.length, n - copied))) > 0) {
+                    out.write(buffer, 0, read);
+                    copied += read;
+                }
+            }
+            if (copied < n) {
+                // object shrank under us
+                break;
+            }
+            written += n;
+        }
+    }
+
+
+    /**
+     * File of a key under HLS_DIR, null for a key that would leave it
+     */
+    private Path localFile(HlsCacheKey key) {
+        return localFile(HLS_DIR, key);
+    }
+
+
+    static Path localFile(String hlsDir, HlsCacheKey key) {
+        Path root = Paths.get(hlsDir).toAbsolutePath().normalize();
+        Path file = root.resolve(key.objectKey()).normalize();
+        return file.startsWith(root) ? file : null;
+    }
+
+
+    /**
+     * A playlist that changes while its video is encoding: read in full (it is small), ETag from the bytes sent
+     * @return body bytes written
+     */
+    private long serveGrowing(HttpServletRequest request, HttpServletResponse response, HlsCacheKey key) throws IOException {
+        Path file = localFile(key);
+        if (file == null) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return 0;
+        }
+        if (!acquireDisk(response)) {
+            return 0;
+        }
+        byte[] body;
+        try {
+            body = Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return 0;
+        } finally {
+            diskIoPermits.release();
+        }
+
+        String etag = "\"" + DigestUtils.md5DigestAsHex(body) + "\"";
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, growingPlaylistCacheControl);
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null && etagListMatches(ifNoneMatch, etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return 0;
+        }
+
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(PLAYLIST_CONTENT_TYPE);
+        response.setContentLength(body.length);
+        if ("HEAD".equals(request.getMethod())) {
+            return 0;
+        }
+        response.getOutputStream().write(body);
+        return body.length;
+    }
+
+
+    /**
+     * Take a disk permit, answering 503 when the disks stay saturated
+     */
+    private boolean acquireDisk(HttpServletResponse response) {
+        if (acquireDisk()) {
+            return true;
+        }
+        unavailable(response);
+        return false;
+    }
+
+
+    private boolean acquireDisk() {
+        try {
+            return diskIoPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+
+    private static void unavailable(HttpServletResponse response) {
+        response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    }
+
+
+    /**
+     * A range of a file, read piece by piece under a disk permit and written to the client without one,
+     * paced piece by piece when there is a pacer
+     * @return false when no permit came before anything was sent: answered 503 instead
+     */
+    private boolean copy(FileChannel channel, long position, long length, HttpServletResponse response,
+                         EgressShaper.Pacer pacer) throws IOException {
+        OutputStream out = response.getOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(length, DISK_READ_BYTES));
+        for (long written = 0; written < length; ) {
+            int n = (int) Math.min(buffer.capacity(), length - written);
+            if (pacer != null) {
+                pacer.pace(written + n);
+            }
+            if (!acquireDisk()) {
+                if (written > 0 || response.isCommitted()) {
+                    throw new IOException("No disk permit within the timeout");
+                }
+                response.reset();
+                unavailable(response);
+                return false;
+            }
+            buffer.clear().limit(n);
+            try {
+                int read;
+                do {
+                    // positional reads: the channel is shared with other requests
+                    read = channel.read(buffer, position + written + buffer.position());
+                } while (read > 0 && buffer.hasRemaining());
+            } finally {
+                diskIoPermits.release();
+            }
+            out.write(buffer.array(), 0, buffer.position());
+            if (buffer.hasRemaining()) {
+                // file shrank under us
+                break;
+            }
+            written += n;
+        }
+        return true;
+    }
+
+
+    /**
+     * If-None-Match wins over If-Modified-Since (RFC 9110 13.2.2)
+     */
+    private boolean notModified(HttpServletRequest request, HlsMetadataIndex.FileMetadata metadata) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            return etagListMatches(ifNoneMatch, metadata.etag());
+        }
+        try {
+            long ifModifiedSince = request.getDateHeader(HttpHeaders.IF_MODIFIED_SINCE);
+            return ifModifiedSince != -1 && metadata.lastModified() / 1000 <= ifModifiedSince / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+
+    /**
+     * Weak comparison, as If-None-Match requires
+     */
+    private static boolean etagListMatches(String header, String etag) {
+        for (String candidate : header.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*")) {
+                return true;
+            }
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * A Range only applies when If-Range is absent or still matches the representation we'd send.
+     * If-Range carries either our strong ETag or a Last-Modified date (second precision).
+     */
+    private boolean ifRangeMatches(HttpServletRequest request, HlsMetadataIndex.FileMetadata metadata) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(metadata.etag());
+        }
+        try {
+            long date = request.getDateHeader(HttpHeaders.IF_RANGE);
+            return date / 1000 == metadata.lastModified() / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
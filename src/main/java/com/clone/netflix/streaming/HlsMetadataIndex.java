@@ -0,0 +1,488 @@
+package com.clone.netflix.streaming;
+
+import com.clone.netflix.storage.StorageBackend;
+import com.clone.netflix.transcoding.MediaPlaylist;
+import com.clone.netflix.transcoding.TrickplayGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Size, Last-Modified, strong ETag and (for segments) duration of every HLS file that has been served or generated.
+ * VOD output never changes once written, so the ETag is hashed once per file and a conditional
+ * request is answered from this map without touching the disk. Files too big to hash on a request
+ * (single-file fMP4 renditions) get an ETag from size and Last-Modified instead.
+ * Entries of a video are dropped when its output is regenerated. Files that only exist in remote storage
+ * are indexed from the backend's metadata on first use, with validators computed the same way as for a local file
+ * (the backend keeps the file's modification time, and its ETag is used only when it is the plain MD5), so every
+ * node answers conditional and If-Range requests for a file alike.
+ * Output that is still being encoded is marked as growing: its files change until the encode is done
+ * and must not be served from here or from HlsCache.
+ * A segment looked up on its own (remote, growing, or before the startup scan got to its video) gets its duration
+ * from its rendition playlist, parsed once per rendition and again only when it doesn't list the segment yet.
+ *
+ * A video indexed from disk in full (after its encode, or by the scan of HLS_DIR that runs in the background on
+ * startup) is complete: a key of it that isn't in the index doesn't exist, and the request is answered
+ * without touching the disk. The scan walks the videos in parallel (hls.index.scan-threads) and hashes output
+ * shared by several videos once.
+ */
+@Component
+public class HlsMetadataIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(HlsMetadataIndex.class);
+
+    private final ConcurrentMap<HlsCacheKey, FileMetadata> entries = new ConcurrentHashMap<>();
+
+    // segment durations by name, keyed by the rendition playlist they were parsed from
+    private final ConcurrentMap<HlsCacheKey, Map<String, Double>> renditionDurations = new ConcurrentHashMap<>();
+
+    private final Set<String> growing = ConcurrentHashMap.newKeySet();
+
+    // indexed in full from this node's disk
+    private final Set<String> complete = ConcurrentHashMap.newKeySet();
+
+    @Value("${file.video.hls:}")
+    private String hlsDir;
+
+    @Value("${hls.index.scan-threads:0}")
+    private int scanThreads;
+
+    private static final long HASHED_ETAG_MAX_BYTES = 16 * 1024 * 1024;
+
+    private static final Pattern MD5_HEX = Pattern.compile("[0-9a-f]{32}");
+
+    private static final String RENDITION_PLAYLIST = "playlist.m3u8";
+
+    /**
+     * @param durationSeconds playback duration of a segment (of a whole single-file rendition), 0 for other files
+     * @param remote the file is not on this node's disk and is read from the storage backend
+     */
+    public record FileMetadata(long size, long lastModified, String etag, double durationSeconds, boolean remote) {
+
+        FileMetadata withDuration(double seconds) {
+            return new FileMetadata(size, lastModified, etag, seconds, remote);
+        }
+    }
+
+
+    /**
+     * Get metadata if the file is already indexed, without touching the disk
+     * @param key
+     * @return
+     */
+    public FileMetadata get(HlsCacheKey key) {
+        return entries.get(key);
+    }
+
+
+    /**
+     * Get metadata for a file, reading and hashing it on first use. Returns null if the file doesn't exist.
+     * @param key
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public FileMetadata lookup(HlsCacheKey key, Path file) throws IOException {
+        FileMetadata metadata = entries.get(key);
+        if (metadata == null) {
+            metadata = read(file);
+            if (metadata != null) {
+                metadata = metadata.withDuration(duration(key, () -> readLocal(file.resolveSibling(RENDITION_PLAYLIST))));
+                entries.put(key, metadata);
+            }
+        }
+        return metadata;
+    }
+
+
+    /**
+     * Get metadata for an object of remote storage (a title this node doesn't have on disk), asking the backend on first use.
+     * Returns null if there is no such object.
+     * @param key
+     * @param storage
+     * @param objectKey the file's key in storage, see HlsStorageKeys
+     * @return
+     * @throws IOException
+     */
+    public FileMetadata lookup(HlsCacheKey key, StorageBackend storage, String objectKey) throws IOException {
+        FileMetadata metadata = entries.get(key);
+        if (metadata == null) {
+            StorageBackend.StoredObject object = storage.stat(objectKey);
+            if (object != null) {
+                String playlistKey = objectKey.substring(0, objectKey.lastIndexOf('/') + 1) + RENDITION_PLAYLIST;
+                metadata = new FileMetadata(object.size(), object.lastModified(), etag(storage, objectKey, object),
+                        duration(key, () -> readRemote(storage, playlistKey)), true);
+                entries.put(key, metadata);
+            }
+        }
+        return metadata;
+    }
+
+
+    /**
+     * The ETag a local copy of the object would get. S3's ETag is the MD5 only for objects uploaded in one PUT without
+     * KMS encryption; otherwise (multipart "md5-N", a backend's own format) a small object is hashed once here.
+     */
+    private static String etag(StorageBackend storage, String objectKey, StorageBackend.StoredObject object) throws IOException {
+        if (object.size() > HASHED_ETAG_MAX_BYTES) {
+            return etag(object.size(), object.lastModified(), null);
+        }
+        String stored = object.etag() != null ? object.etag().replace("\"", "").toLowerCase(Locale.ROOT) : "";
+        if (MD5_HEX.matcher(stored).matches()) {
+            return etag(object.size(), object.lastModified(), stored);
+        }
+        try (InputStream in = storage.read(objectKey, 0, object.size())) {
+            return etag(object.size(), object.lastModified(), DigestUtils.md5DigestAsHex(in));
+        }
+    }
+
+
+    /**
+     * Strong ETag of a file: its MD5, or size and Last-Modified for files too big to hash on a request
+     */
+    private static String etag(long size, long lastModified, String md5) {
+        return md5 != null
+                ? "\"" + md5 + "\""
+                : "\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModified) + "\"";
+    }
+
+
+    /**
+     * Read a file's metadata without keeping it, for files that are still being written. Returns null if the file doesn't exist.
+     * @param key
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public FileMetadata peek(HlsCacheKey key, Path file) throws IOException {
+        FileMetadata metadata = read(file);
+        return metadata != null
+                ? metadata.withDuration(duration(key, () -> readLocal(file.resolveSibling(RENDITION_PLAYLIST))))
+                : null;
+    }
+
+
+    /**
+     * Whether a file is known not to exist: its video is indexed in full and has no such file.
+     * False when that can't be said without looking (the video isn't indexed, or is still being written).
+     * @param key
+     * @return
+     */
+    public boolean isKnownMissing(HlsCacheKey key) {
+        return complete.contains(key.videoId()) && !growing.contains(key.videoId()) && !entries.containsKey(key);
+    }
+
+
+    /**
+     * Eagerly index a freshly generated video so the first viewers don't pay for hashing.
+     * Expects the HLS_DIR/{videoId}/{qualityLevel}/ and HLS_DIR/{videoId}/thumbs/ layout, HLS_DIR/{videoId} being a directory or a link to one.
+     * @param videoId
+     * @param videoDir
+     * @throws IOException
+     */
+    public void index(String videoId, Path videoDir) throws IOException {
+        // videoDir may be a link to shared output, which walk() wouldn't enter
+        add(videoId, readTree(videoDir.toRealPath()));
+    }
+
+
+    /**
+     * Index every video under HLS_DIR (_-prefixed folders are shared output, not videos)
+     * @param hlsDir
+     * @param threads
+     * @return number of videos indexed
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public int scan(Path hlsDir, int threads) throws IOException, InterruptedException {
+        // videoIds by the output they point to: deduplicated uploads share one folder
+        Map<Path, List<String>> videosByRoot = new HashMap<>();
+        try (DirectoryStream<Path> videoDirs = Files.newDirectoryStream(hlsDir)) {
+            for (Path videoDir : videoDirs) {
+                String videoId = videoDir.getFileName().toString();
+                if (videoId.startsWith("_") || !Files.isDirectory(videoDir)) {
+                    continue;
+                }
+                try {
+                    videosByRoot.computeIfAbsent(videoDir.toRealPath(), root -> new ArrayList<>()).add(videoId);
+                } catch (IOException e) {
+                    // dangling link of a deleted video
+                    log.debug("Skipping {}: {}", videoDir, e.getMessage());
+                }
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (Map.Entry<Path, List<String>> entry : videosByRoot.entrySet()) {
+                futures.add(executor.submit(() -> {
+                    Map<Path, FileMetadata> tree = readTree(entry.getKey());
+                    for (String videoId : entry.getValue()) {
+                        add(videoId, tree);
+                    }
+                    return entry.getValue().size();
+                }));
+            }
+            int indexed = 0;
+            for (Future<Integer> future : futures) {
+                try {
+                    indexed += future.get();
+                } catch (ExecutionException e) {
+                    log.warn("Indexing HLS output failed: {}", e.getCause().getMessage());
+                }
+            }
+            return indexed;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Scan HLS_DIR in the background: requests are served (from disk) while it runs
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void scanOnStartup() {
+        if (hlsDir == null || hlsDir.isEmpty() || !Files.isDirectory(Paths.get(hlsDir))) {
+            return;
+        }
+        int threads = scanThreads > 0 ? scanThreads : Runtime.getRuntime().availableProcessors();
+        Thread.ofPlatform().name("hls-index-scan").daemon().start(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                int videos = scan(Paths.get(hlsDir), threads);
+                log.info("Indexed {} videos of {} in {} ms", videos, hlsDir, System.currentTimeMillis() - start);
+            } catch (IOException e) {
+                log.warn("Scanning {} failed: {}", hlsDir, e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+
+    /**
+     * Drop every entry of a video
+     * @param videoId
+     */
+    public void invalidate(String videoId) {
+        complete.remove(videoId);
+        entries.keySet().removeIf(key -> key.videoId().equals(videoId));
+        renditionDurations.keySet().removeIf(key -> key.videoId().equals(videoId));
+    }
+
+
+    /**
+     * Mark a video's output as being written
+     * @param videoId
+     */
+    public void markGrowing(String videoId) {
+        growing.add(videoId);
+        complete.remove(videoId);
+    }
+
+
+    /**
+     * Mark a video's output as final (its entries should be invalidated first)
+     * @param videoId
+     */
+    public void markComplete(String videoId) {
+        growing.remove(videoId);
+    }
+
+
+    /**
+     * @param videoId
+     * @return whether the video's output is still being written
+     */
+    public boolean isGrowing(String videoId) {
+        return growing.contains(videoId);
+    }
+
+
+    /**
+     * Metadata of every file of a video's output by its path relative to root, with segment durations from the rendition playlists
+     */
+    private Map<Path, FileMetadata> readTree(Path root) throws IOException {
+        Map<Path, FileMetadata> tree = new HashMap<>();
+        try (Stream<Path> files = Files.walk(root, 2)) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                FileMetadata metadata = read(file);
+                if (metadata != null) {
+                    tree.put(root.relativize(file), metadata);
+                }
+            }
+        }
+
+        Map<Path, Double> durations = new HashMap<>();
+        for (Path relative : tree.keySet()) {
+            if (relative.getNameCount() == 2 && relative.getFileName().toString().equals(RENDITION_PLAYLIST)) {
+                Path renditionDir = relative.getParent();
+                durations(Files.readString(root.resolve(relative), StandardCharsets.UTF_8))
+                        .forEach((name, seconds) -> durations.put(renditionDir.resolve(name), seconds));
+            }
+        }
+        durations.forEach((relative, seconds) -> tree.computeIfPresent(relative, (path, metadata) -> metadata.withDuration(seconds)));
+        return tree;
+    }
+
+
+    /**
+     * Playback duration of a segment from its rendition playlist, 0 for other files or when the playlist can't be read
+     */
+    private double duration(HlsCacheKey key, PlaylistReader playlist) {
+        if (key.qualityLevel() < 0 || key.name().equals(RENDITION_PLAYLIST)) {
+            return 0;
+        }
+        HlsCacheKey playlistKey = new HlsCacheKey(key.videoId(), key.qualityLevel(), RENDITION_PLAYLIST);
+        Map<String, Double> durations = renditionDurations.get(playlistKey);
+        if (durations == null || !durations.containsKey(key.name())) {
+            // not parsed yet, or parsed before this segment was written
+            String text;
+            try {
+                text = playlist.read();
+            } catch (IOException e) {
+                log.debug("Reading the playlist of {} failed: {}", key, e.getMessage());
+                return 0;
+            }
+            if (text == null) {
+                return 0;
+            }
+            durations = durations(text);
+            renditionDurations.put(playlistKey, durations);
+        }
+        return durations.getOrDefault(key.name(), 0.0);
+    }
+
+
+    /**
+     * Segment durations of a media playlist by segment URI
+     */
+    private static Map<String, Double> durations(String playlist) {
+        Map<String, Double> durations = new HashMap<>();
+        for (MediaPlaylist.Segment segment : MediaPlaylist.parse(playlist)) {
+            // byte ranges of one file add up to the file's duration
+            durations.merge(segment.uri(), segment.duration(), Double::sum);
+        }
+        return durations;
+    }
+
+
+    @FunctionalInterface
+    private interface PlaylistReader {
+
+        /**
+         * @return the playlist, null if there is none
+         */
+        String read() throws IOException;
+    }
+
+
+    private static String readLocal(Path file) throws IOException {
+        try {
+            return Files.readString(file, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+
+    private static String readRemote(StorageBackend storage, String objectKey) throws IOException {
+        StorageBackend.StoredObject object = storage.stat(objectKey);
+        if (object == null) {
+            return null;
+        }
+        try (InputStream in = storage.read(objectKey, 0, object.size())) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+
+    /**
+     * Put a video's files in the index and mark it complete, unless it started being rewritten meanwhile
+     */
+    private void add(String videoId, Map<Path, FileMetadata> tree) {
+        for (Map.Entry<Path, FileMetadata> entry : tree.entrySet()) {
+            HlsCacheKey key = key(videoId, entry.getKey());
+            if (key != null) {
+                entries.put(key, entry.getValue());
+            }
+        }
+        complete.add(videoId);
+        if (growing.contains(videoId)) {
+            complete.remove(videoId);
+        }
+    }
+
+
+    /**
+     * Key of a file from its path relative to the video's folder, null for files that aren't served
+     */
+    private static HlsCacheKey key(String videoId, Path relative) {
+        if (relative.getNameCount() == 1) {
+            return new HlsCacheKey(videoId, HlsCacheKey.MASTER, relative.toString());
+        }
+        String dir = relative.getName(0).toString();
+        if (dir.equals(TrickplayGenerator.DIR)) {
+            return HlsCacheKey.thumbnail(videoId, relative.getName(1).toString());
+        }
+        try {
+            return new HlsCacheKey(videoId, Integer.parseInt(dir), relative.getName(1).toString());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+
+    private FileMetadata read(Path file) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (!attributes.isRegularFile()) {
+            return null;
+        }
+
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        if (attributes.size() > HASHED_ETAG_MAX_BYTES) {
+            return new FileMetadata(attributes.size(), lastModified, etag(attributes.size(), lastModified, null), 0, false);
+        }
+
+        String hash;
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            hash = DigestUtils.md5DigestAsHex(inputStream);
+        }
+        return new FileMetadata(attributes.size(), lastModified, etag(attributes.size(), lastModified, hash), 0, false);
+    }
+}
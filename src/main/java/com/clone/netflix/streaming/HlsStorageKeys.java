@@ -0,0 +1,94 @@
+package com.clone.netflix.streaming;
+
+import com.clone.netflix.entities.Video;
+import com.clone.netflix.repositories.VideoRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Where a video's HLS output is kept in the storage backend. Output shared by uploads of the same bytes is published
+ * once, under _content/{sha256}/; output of its own (live recordings, per-video re-encodes, titles published before
+ * deduplication) under {videoId}/. Only the storage key is mapped: on disk HLS_DIR/{videoId} links to the shared folder.
+ * The video to prefix mapping is read from the videos table on first use and kept until the video is invalidated.
+ */
+@Component
+public class HlsStorageKeys {
+
+    // shared HLS output, one folder per content hash, in HLS_DIR and in the storage backend
+    public static final String CONTENT_DIR = "_content";
+
+    private static final int MAX_CACHED_VIDEOS = 100_000;
+
+    private final Function<String, String> prefixOf;
+
+    private final ConcurrentMap<String, String> prefixes = new ConcurrentHashMap<>();
+
+    @Autowired
+    public HlsStorageKeys(VideoRepository videoRepository) {
+        this(videoId -> videoRepository.findById(videoId).map(HlsStorageKeys::prefix).orElse(videoId));
+    }
+
+    /**
+     * @param prefixOf storage prefix of a video's output
+     */
+    public HlsStorageKeys(Function<String, String> prefixOf) {
+        this.prefixOf = prefixOf;
+    }
+
+
+    /**
+     * Every video under its own prefix (no shared output), for tools and tests without a database
+     * @return
+     */
+    public static HlsStorageKeys perVideo() {
+        return new HlsStorageKeys(Function.identity());
+    }
+
+
+    /**
+     * Storage prefix of a video's output
+     * @param video
+     * @return _content/{sha256} when the video holds a reference on shared output, its videoId otherwise
+     */
+    public static String prefix(Video video) {
+        return video.getContentHash() != null && video.isContentReferenced()
+                ? contentPrefix(video.getContentHash())
+                : video.getVideoId();
+    }
+
+
+    public static String contentPrefix(String sha256) {
+        return CONTENT_DIR + "/" + sha256;
+    }
+
+
+    /**
+     * Storage key of a file
+     * @param key
+     * @return
+     */
+    public String objectKey(HlsCacheKey key) {
+        String prefix = prefixes.get(key.videoId());
+        if (prefix == null) {
+            if (prefixes.size() >= MAX_CACHED_VIDEOS) {
+                prefixes.clear();
+            }
+            prefix = prefixOf.apply(key.videoId());
+            prefixes.put(key.videoId(), prefix);
+        }
+        return prefix + "/" + key.path();
+    }
+
+
+    /**
+     * Forget a video's prefix (its output was linked, re-encoded or deleted)
+     * @param videoId
+     */
+    public void invalidate(String videoId) {
+        prefixes.remove(videoId);
+    }
+}
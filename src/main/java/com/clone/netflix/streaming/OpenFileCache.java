@@ -0,0 +1,188 @@
+package com.clone.netflix.streaming;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Read-only FileChannels of recently served files, kept open between requests.
+ * An fMP4 rendition is one file holding every segment, so a player fetching it range by range would
+ * otherwise open and close the same file for every segment. Reads use positional transferTo, so any
+ * number of requests share one channel.
+ * LRU bounded by hls.open-files.max; an evicted channel is closed once its last reader is done.
+ * An entry is reopened when the file's Last-Modified no longer matches (output regenerated).
+ */
+@Component
+public class OpenFileCache {
+
+    private static final Logger log = LoggerFactory.getLogger(OpenFileCache.class);
+
+    private final int maxOpen;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // access order, eldest first
+    private final LinkedHashMap<HlsCacheKey, OpenFile> files = new LinkedHashMap<>(16, 0.75f, true);
+
+    public OpenFileCache(@Value("${hls.open-files.max:1024}") int maxOpen) {
+        this.maxOpen = maxOpen;
+    }
+
+    /**
+     * A shared channel, to be closed by the reader when done (the channel itself stays open while cached)
+     */
+    public final class OpenFile implements AutoCloseable {
+
+        private final FileChannel channel;
+
+        private final long lastModified;
+
+        // guarded by lock
+        private int readers;
+        private boolean evicted;
+
+        private OpenFile(FileChannel channel, long lastModified) {
+            this.channel = channel;
+            this.lastModified = lastModified;
+        }
+
+        public FileChannel channel() {
+            return channel;
+        }
+
+        @Override
+        public void close() {
+            release(this);
+        }
+    }
+
+
+    /**
+     * Get the open channel of a file, opening it on a miss
+     * @param key
+     * @param path
+     * @param lastModified as served, a different value reopens the file
+     * @return
+     * @throws IOException
+     */
+    public OpenFile open(HlsCacheKey key, Path path, long lastModified) throws IOException {
+        lock.lock();
+        try {
+            OpenFile file = files.get(key);
+            if (file != null && file.lastModified != lastModified) {
+                files.remove(key);
+                evict(file);
+                file = null;
+            }
+            if (file == null) {
+                file = new OpenFile(FileChannel.open(path, StandardOpenOption.READ), lastModified);
+                files.put(key, file);
+                trim();
+            }
+            file.readers++;
+            return file;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Close every channel of a video (its HLS output is being regenerated or deleted)
+     * @param videoId
+     */
+    public void invalidate(String videoId) {
+        lock.lock();
+        try {
+            Iterator<Map.Entry<HlsCacheKey, OpenFile>> iterator = files.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<HlsCacheKey, OpenFile> entry = iterator.next();
+                if (entry.getKey().videoId().equals(videoId)) {
+                    iterator.remove();
+                    evict(entry.getValue());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * @return number of cached channels
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return files.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    @PreDestroy
+    public void shutdown() {
+        lock.lock();
+        try {
+            files.values().forEach(this::evict);
+            files.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    private void trim() {
+        Iterator<OpenFile> iterator = files.values().iterator();
+        while (files.size() > maxOpen && iterator.hasNext()) {
+            OpenFile eldest = iterator.next();
+            iterator.remove();
+            evict(eldest);
+        }
+    }
+
+
+    private void release(OpenFile file) {
+        lock.lock();
+        try {
+            file.readers--;
+            if (file.evicted && file.readers == 0) {
+                closeQuietly(file);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Caller holds the lock and has removed the entry
+     */
+    private void evict(OpenFile file) {
+        file.evicted = true;
+        if (file.readers == 0) {
+            closeQuietly(file);
+        }
+    }
+
+
+    private static void closeQuietly(OpenFile file) {
+        try {
+            file.channel.close();
+        } catch (IOException e) {
+            log.warn("Could not close cached file channel: {}", e.getMessage());
+        }
+    }
+}
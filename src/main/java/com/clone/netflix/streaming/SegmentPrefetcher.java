@@ -0,0 +1,348 @@
+package com.clone.netflix.streaming;
+
+import com.clone.netflix.metrics.StreamingMetrics;
+import com.clone.netflix.storage.StorageBackend;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Readahead for segment requests. Players fetch segment_N.ts one after another, so once a session asks for N,
+ * the next hls.prefetch.segments segments of its rendition (and the next one of the rendition the player is most
+ * likely to switch to) are read in the background:
+ * local files through the page cache (Java has no posix_fadvise, a plain read is the WILLNEED),
+ * remote objects into HlsCache, where they stay on probation until requested.
+ *
+ * Sessions are told apart by X-Playback-Session-Id (sent by AVPlayer), or by client address and user agent.
+ * Prefetched bytes nobody has asked for yet are capped by hls.prefetch.max-bytes, so speculation can't push
+ * more than that out of the caches. Prefetch never waits: it is dropped when the budget is used up, the workers
+ * are busy or no disk permit is free. Byte-range renditions (fMP4) are left to the kernel's own readahead.
+ */
+@Component
+public class SegmentPrefetcher {
+
+    private static final Logger log = LoggerFactory.getLogger(SegmentPrefetcher.class);
+
+    // segment_000.ts, part_000042.ts: prefix, number, extension
+    private static final Pattern NUMBERED = Pattern.compile("(.*?)(\\d+)(\\.\\w+)");
+
+    // a prefetched segment not requested within this long is counted as wasted and leaves the budget
+    private static final long UNUSED_TTL_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    // a session without requests for this long is forgotten
+    private static final long SESSION_TTL_NANOS = TimeUnit.MINUTES.toNanos(2);
+
+    private static final int MAX_SESSIONS = 100_000;
+
+    private static final int READ_BUFFER_BYTES = 256 * 1024;
+
+    private static final long DISK_BUSY = -2;
+
+    private static final ThreadLocal<ByteBuffer> READ_BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(READ_BUFFER_BYTES));
+
+    private final HlsCache hlsCache;
+
+    private final HlsMetadataIndex metadataIndex;
+
+    private final DiskIoPermits diskIoPermits;
+
+    private final StreamingMetrics metrics;
+
+    private final StorageBackend hlsStorage;
+
+    private final HlsStorageKeys storageKeys;
+
+    private final String hlsDir;
+
+    private final int segments;
+
+    private final long maxBytes;
+
+    private final ThreadPoolExecutor executor;
+
+    private final ClientRegistry<Session> sessions = new ClientRegistry<>(MAX_SESSIONS, SESSION_TTL_NANOS);
+
+    private final ConcurrentMap<HlsCacheKey, Warm> outstanding = new ConcurrentHashMap<>();
+
+    private final AtomicLong outstandingBytes = new AtomicLong();
+
+    public SegmentPrefetcher(HlsCache hlsCache, HlsMetadataIndex metadataIndex, DiskIoPermits diskIoPermits, StreamingMetrics metrics,
+                             @Qualifier("hlsStorage") StorageBackend hlsStorage, HlsStorageKeys storageKeys,
+                             @Value("${file.video.hls}") String hlsDir,
+                             @Value("${hls.prefetch.segments:2}") int segments,
+                             @Value("${hls.prefetch.max-bytes:67108864}") long maxBytes,
+                             @Value("${hls.prefetch.threads:4}") int threads) {
+        this.hlsCache = hlsCache;
+        this.metadataIndex = metadataIndex;
+        this.diskIoPermits = diskIoPermits;
+        this.metrics = metrics;
+        this.hlsStorage = hlsStorage;
+        this.storageKeys = storageKeys;
+        this.hlsDir = hlsDir;
+        this.segments = segments;
+        this.maxBytes = maxBytes;
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(threads * 4), runnable -> {
+            Thread thread = new Thread(runnable, "prefetch-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+
+    /**
+     * Where a session was last seen. direction is the sign of its last rendition switch (0 before any).
+     */
+    record Session(String videoId, int qualityLevel, long index, int direction) {
+    }
+
+
+    /**
+     * A prefetch in flight or done: its bytes count against the budget until it is requested or expires
+     */
+    private static final class Warm {
+
+        private final long startedAt = System.nanoTime();
+
+        private long bytes;
+
+        private boolean released;
+
+        synchronized long loaded(long size) {
+            if (released) {
+                return 0;
+            }
+            bytes = size;
+            return size;
+        }
+
+        synchronized long release() {
+            released = true;
+            return bytes;
+        }
+    }
+
+
+    /**
+     * A segment has been served: count a prefetch that was used and warm what the session will ask for next
+     * @param request
+     * @param key
+     */
+    public void onSegment(HttpServletRequest request, HlsCacheKey key) {
+        if (segments <= 0 || key.qualityLevel() < 0) {
+            return;
+        }
+        Warm warm = outstanding.remove(key);
+        if (warm != null) {
+            outstandingBytes.addAndGet(-warm.release());
+            metrics.prefetchUsed();
+        }
+
+        Matcher matcher = NUMBERED.matcher(key.name());
+        if (!matcher.matches() || metadataIndex.isGrowing(key.videoId())) {
+            return;
+        }
+        long index = Long.parseLong(matcher.group(2));
+
+        String sessionId = ClientRegistry.sessionId(request);
+        Session previous = sessions.get(sessionId);
+        if (previous != null && previous.videoId().equals(key.videoId())
+                && previous.qualityLevel() == key.qualityLevel() && previous.index() == index) {
+            // retry of the same segment, its successors are already on their way
+            return;
+        }
+        Session session = next(previous, key, index);
+        sessions.put(sessionId, session);
+
+        for (int i = 1; i <= segments; i++) {
+            prefetch(new HlsCacheKey(key.videoId(), key.qualityLevel(), name(matcher, index + i)));
+        }
+        int neighbor = neighbor(session);
+        if (neighbor >= 0) {
+            prefetch(new HlsCacheKey(key.videoId(), neighbor, name(matcher, index + 1)));
+        }
+    }
+
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+
+    /**
+     * Session state after a request for index of key
+     */
+    static Session next(Session previous, HlsCacheKey key, long index) {
+        int direction = 0;
+        if (previous != null && previous.videoId().equals(key.videoId())) {
+            direction = key.qualityLevel() == previous.qualityLevel()
+                    ? previous.direction()
+                    : Integer.signum(key.qualityLevel() - previous.qualityLevel());
+        }
+        return new Session(key.videoId(), key.qualityLevel(), index, direction);
+    }
+
+
+    /**
+     * The rendition the player is most likely to switch to: the way it last switched, down if it hasn't yet
+     * (a down-switch is the one that avoids a stall). -1 when there is none.
+     */
+    static int neighbor(Session session) {
+        return session.direction() > 0 ? session.qualityLevel() + 1 : session.qualityLevel() - 1;
+    }
+
+
+    /**
+     * The segment name with another number, zero-padded to the same width
+     */
+    static String name(Matcher numbered, long index) {
+        String digits = String.valueOf(index);
+        int width = numbered.group(2).length();
+        return numbered.group(1) + "0".repeat(Math.max(0, width - digits.length())) + digits + numbered.group(3);
+    }
+
+
+    static Matcher numbered(String name) {
+        return NUMBERED.matcher(name);
+    }
+
+
+    long outstandingBytes() {
+        return outstandingBytes.get();
+    }
+
+
+    boolean isOutstanding(HlsCacheKey key) {
+        return outstanding.containsKey(key);
+    }
+
+
+    private void prefetch(HlsCacheKey key) {
+        if (hlsCache.contains(key)) {
+            return;
+        }
+        Warm warm = new Warm();
+        if (outstanding.putIfAbsent(key, warm) != null) {
+            return;
+        }
+        if (outstandingBytes.get() >= maxBytes) {
+            expireUnused();
+            if (outstandingBytes.get() >= maxBytes) {
+                outstanding.remove(key, warm);
+                metrics.prefetchDropped();
+                return;
+            }
+        }
+        try {
+            executor.execute(() -> load(key, warm));
+        } catch (RejectedExecutionException e) {
+            outstanding.remove(key, warm);
+            metrics.prefetchDropped();
+        }
+    }
+
+
+    private void load(HlsCacheKey key, Warm warm) {
+        try {
+            long bytes = readLocal(key);
+            if (bytes == DISK_BUSY) {
+                outstanding.remove(key, warm);
+                metrics.prefetchDropped();
+                return;
+            }
+            if (bytes < 0 && !hlsStorage.isLocal()) {
+                bytes = readRemote(key);
+            }
+            if (bytes < 0) {
+                // no such segment (past the end, or a rendition the ladder doesn't have)
+                outstanding.remove(key, warm);
+                return;
+            }
+            outstandingBytes.addAndGet(warm.loaded(bytes));
+            metrics.prefetched(bytes);
+        } catch (IOException | RuntimeException e) {
+            outstanding.remove(key, warm);
+            log.debug("Prefetch of {} failed: {}", key, e.getMessage());
+        }
+    }
+
+
+    /**
+     * Read a local file through the page cache
+     * @return bytes read, -1 if there is no such file, DISK_BUSY if no disk permit is free right now
+     */
+    private long readLocal(HlsCacheKey key) throws IOException {
+        Path file = HlsFileServer.localFile(hlsDir, key);
+        if (file == null) {
+            return -1;
+        }
+        if (!diskIoPermits.tryAcquire()) {
+            return DISK_BUSY;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = READ_BUFFER.get();
+            long total = 0;
+            int read;
+            while ((read = channel.read(buffer.clear())) > 0) {
+                total += read;
+            }
+            return total;
+        } catch (NoSuchFileException e) {
+            return -1;
+        } finally {
+            diskIoPermits.release();
+        }
+    }
+
+
+    /**
+     * Read a remote object into HlsCache
+     * @return its size, -1 if there is no such object or it is too big to cache
+     */
+    private long readRemote(HlsCacheKey key) throws IOException {
+        String objectKey = storageKeys.objectKey(key);
+        HlsMetadataIndex.FileMetadata metadata = metadataIndex.lookup(key, hlsStorage, objectKey);
+        if (metadata == null) {
+            return -1;
+        }
+        return hlsCache.prefetch(key, hlsStorage, objectKey, metadata.size(), metadata.lastModified()) ? metadata.size() : -1;
+    }
+
+
+    private void expireUnused() {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<HlsCacheKey, Warm>> iterator = outstanding.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<HlsCacheKey, Warm> entry = iterator.next();
+            if (now - entry.getValue().startedAt > UNUSED_TTL_NANOS) {
+                iterator.remove();
+                outstandingBytes.addAndGet(-entry.getValue().release());
+                metrics.prefetchWasted();
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.clone.netflix.transcoding;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Builds a static DASH manifest (MPD) over the fMP4 output of the HLS encode: the same files, addressed with
+ * SegmentList byte ranges taken from each rung's playlist, so nothing is packaged twice.
+ * Every run of segments sharing one init section (the intro, each chunk of a chunked encode) becomes its own
+ * Period; runs that start with a discontinuity restart media time at zero, as the encoder does.
+ * Audio stays muxed with video, one Representation per rung.
+ */
+public final class DashManifestWriter {
+
+    static final String H264_PROFILE = "high";
+    static final String H264_LEVEL = "4.2";
+
+    // avc1 High@4.2 + AAC-LC, matches H264_PROFILE / H264_LEVEL
+    private static final String CODECS = "avc1.64002a,mp4a.40.2";
+
+    private static final int TIMESCALE = 1000;
+
+    private DashManifestWriter() {
+    }
+
+    /**
+     * Build manifest.mpd content referencing {index}/ for every rendition
+     * @param ladder
+     * @param playlists segments of every rung, in ladder order
+     * @return
+     */
+    public static String build(List<Rendition> ladder, List<List<MediaPlaylist.Segment>> playlists) {
+        List<List<List<MediaPlaylist.Segment>>> runs = new ArrayList<>();
+        for (List<MediaPlaylist.Segment> playlist : playlists) {
+            runs.add(runs(playlist));
+        }
+        int periods = runs.get(0).size();
+        for (List<List<MediaPlaylist.Segment>> rungRuns : runs) {
+            if (rungRuns.size() != periods) {
+                throw new IllegalArgumentException("Renditions are not split the same way");
+            }
+        }
+
+        double total = MediaPlaylist.duration(playlists.get(0));
+        StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<MPD xmlns=\"urn:mpeg:dash:schema:mpd:2011\" profiles=\"urn:mpeg:dash:profile:isoff-main:2011\" type=\"static\"")
+                .append(" mediaPresentationDuration=\"").append(duration(total)).append('"')
+                .append(" minBufferTime=\"").append(duration(HlsEncoder.SEGMENT_SECONDS)).append("\">\n");
+
+        double mediaTime = 0;
+        for (int p = 0; p < periods; p++) {
+            List<MediaPlaylist.Segment> first = runs.get(0).get(p);
+            if (first.get(0).discontinuity()) {
+                mediaTime = 0;
+            }
+            double periodDuration = MediaPlaylist.duration(first);
+            sb.append("  <Period id=\"").append(p).append("\" duration=\"").append(duration(periodDuration)).append("\">\n")
+                    .append("    <AdaptationSet mimeType=\"video/mp4\" codecs=\"").append(CODECS)
+                    .append("\" segmentAlignment=\"true\" startWithSAP=\"1\">\n");
+            for (int r = 0; r < ladder.size(); r++) {
+                representation(sb, ladder.get(r), runs.get(r).get(p), Math.round(mediaTime * TIMESCALE));
+            }
+            sb.append("    </AdaptationSet>\n")
+                    .append("  </Period>\n");
+            mediaTime += periodDuration;
+        }
+        sb.append("</MPD>\n");
+        return sb.toString();
+    }
+
+
+    private static void representation(StringBuilder sb, Rendition rendition, List<MediaPlaylist.Segment> segments, long startTime) {
+        MediaPlaylist.InitSection init = segments.get(0).map();
+        sb.append("      <Representation id=\"").append(rendition.index())
+                .append("\" bandwidth=\"").append(rendition.bandwidth())
+                .append("\" width=\"").append(rendition.width())
+                .append("\" height=\"").append(rendition.height()).append("\">\n")
+                .append("        <BaseURL>").append(rendition.index()).append("/</BaseURL>\n")
+                .append("        <SegmentList timescale=\"").append(TIMESCALE)
+                .append("\" presentationTimeOffset=\"").append(startTime).append("\">\n")
+                .append("          <Initialization sourceURL=\"").append(init.uri()).append('"');
+        if (init.range() != null) {
+            sb.append(" range=\"").append(range(init.range())).append('"');
+        }
+        sb.append("/>\n")
+                .append("          <SegmentTimeline>\n");
+        long time = startTime;
+        for (MediaPlaylist.Segment segment : segments) {
+            long duration = Math.round(segment.duration() * TIMESCALE);
+            sb.append("            <S t=\"").append(time).append("\" d=\"").append(duration).append("\"/>\n");
+            time += duration;
+        }
+        sb.append("          </SegmentTimeline>\n");
+        for (MediaPlaylist.Segment segment : segments) {
+            sb.append("          <SegmentURL media=\"").append(segment.uri()).append('"');
+            if (segment.range() != null) {
+                sb.append(" mediaRange=\"").append(range(segment.range())).append('"');
+            }
+            sb.append("/>\n");
+        }
+        sb.append("        </SegmentList>\n")
+                .append("      </Representation>\n");
+    }
+
+
+    /**
+     * Split a rung's segments where the init section changes
+     */
+    private static List<List<MediaPlaylist.Segment>> runs(List<MediaPlaylist.Segment> segments) {
+        List<List<MediaPlaylist.Segment>> runs = new ArrayList<>();
+        MediaPlaylist.InitSection map = null;
+        for (MediaPlaylist.Segment segment : segments) {
+            if (segment.map() == null) {
+                throw new IllegalArgumentException("DASH needs fMP4 segments, " + segment.uri() + " has no init section");
+            }
+            if (runs.isEmpty() || !segment.map().equals(map)) {
+                runs.add(new ArrayList<>());
+                map = segment.map();
+            }
+            runs.get(runs.size() - 1).add(segment);
+        }
+        return runs;
+    }
+
+
+    /**
+     * first-last, inclusive
+     */
+    private static String range(MediaPlaylist.Range range) {
+        return range.offset() + "-" + (range.end() - 1);
+    }
+
+
+    private static String duration(double seconds) {
+        return String.format(Locale.ROOT, "PT%.3fS", seconds);
+    }
+}
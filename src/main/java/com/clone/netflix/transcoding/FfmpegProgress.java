@@ -0,0 +1,49 @@
+package com.clone.netflix.transcoding;
+
+/**
+ * One block of ffmpeg's -progress output. fps and speed are averages over the run so far
+ * (speed is the realtime factor, 2.0 = twice as fast as playback), 0 while ffmpeg reports N/A.
+ * outTimeMicros is the output position, including any -output_ts_offset.
+ */
+public record FfmpegProgress(long frame, double fps, double speed, long outTimeMicros, boolean end) {
+
+    /**
+     * Collects key=value lines until the progress= line that closes a block
+     */
+    static final class Parser {
+
+        private long frame;
+        private double fps;
+        private double speed;
+        private long outTimeMicros;
+
+        /**
+         * @param line
+         * @return the completed block, or null if the line didn't end one
+         */
+        FfmpegProgress accept(String line) {
+            int eq = line.indexOf('=');
+            if (eq < 0) {
+                return null;
+            }
+            String key = line.substring(0, eq).trim();
+            String value = line.substring(eq + 1).trim();
+            try {
+                switch (key) {
+                    case "frame" -> frame = Long.parseLong(value);
+                    case "fps" -> fps = Double.parseDouble(value);
+                    case "out_time_us" -> outTimeMicros = Long.parseLong(value);
+                    case "speed" -> speed = Double.parseDouble(value.endsWith("x") ? value.substring(0, value.length() - 1) : value);
+                    case "progress" -> {
+                        return new FfmpegProgress(frame, fps, speed, outTimeMicros, "end".equals(value));
+                    }
+                    default -> {
+                    }
+                }
+            } catch (NumberFormatException e) {
+                // "N/A" until the first frame is muxed
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.clone.netflix.transcoding;
+
+import com.clone.netflix.metrics.StreamingMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Runs an ffmpeg command to completion and times it as one phase of the pipeline.
+ * ffmpeg writes machine-readable progress to its stdout (-progress pipe:1), which a background
+ * reader parses and hands to the caller; stderr is drained by a second reader into the debug log,
+ * keeping the last lines for the error message. Nothing is inherited by the service's stdout.
+ *
+ * Processes are started through FfmpegSupervisor as backfill work, so they wait for their share of the node.
+ * A run is killed when it exceeds ffmpeg.timeout.wall-clock-minutes, or when its progress hasn't moved for
+ * ffmpeg.timeout.stall-seconds (a hung input or a wedged encoder), and fails like any other run.
+ */
+@Component
+public class FfmpegRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(FfmpegRunner.class);
+
+    // stderr lines kept to explain a failure
+    private static final int ERROR_TAIL_LINES = 5;
+
+    // how often the timeouts are checked
+    private static final long WATCHDOG_MILLIS = 1000;
+
+    private final StreamingMetrics metrics;
+
+    private final FfmpegSupervisor supervisor;
+
+    @Value("${ffmpeg.timeout.wall-clock-minutes:480}")
+    private long wallClockMinutes;
+
+    @Value("${ffmpeg.timeout.stall-seconds:120}")
+    private long stallSeconds;
+
+    public FfmpegRunner(StreamingMetrics metrics, FfmpegSupervisor supervisor) {
+        this.metrics = metrics;
+        this.supervisor = supervisor;
+    }
+
+
+    public void run(List<String> cmd, File workDir, String phase, String rendition) throws IOException, InterruptedException {
+        run(cmd, workDir, phase, rendition, FfmpegSupervisor.Demand.LIGHT, null);
+    }
+
+
+    /**
+     * @param cmd
+     * @param workDir
+     * @param phase probe, hls, hls-chunk, intro or trickplay
+     * @param rendition resolution the command produces, "source" when it isn't a rendition
+     * @param demand cores (match the command's -threads) and memory the run is admitted for
+     * @param progress called on the reader thread for every progress block, keep it cheap (may be null)
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void run(List<String> cmd, File workDir, String phase, String rendition, FfmpegSupervisor.Demand demand,
+                    Consumer<FfmpegProgress> progress) throws IOException, InterruptedException {
+        List<String> command = withProgressOutput(cmd);
+        Process process = supervisor.start(command, workDir, FfmpegSupervisor.Priority.BACKFILL, demand);
+        log.info("Executing FFmpeg command: {}", String.join(" ", command));
+        long start = System.nanoTime();
+        boolean success = false;
+        process.getOutputStream().close();
+
+        FfmpegProgress[] last = new FfmpegProgress[1];
+        AtomicLong lastActivity = new AtomicLong(start);
+        Deque<String> errorTail = new ArrayDeque<>();
+        Thread progressReader = Thread.ofVirtual().name("ffmpeg-progress").start(() ->
+                readLines(process.getInputStream(), new Consumer<>() {
+                    private final FfmpegProgress.Parser parser = new FfmpegProgress.Parser();
+
+                    @Override
+                    public void accept(String line) {
+                        FfmpegProgress block = parser.accept(line);
+                        if (block != null) {
+                            if (last[0] == null || block.frame() != last[0].frame() || block.outTimeMicros() != last[0].outTimeMicros()) {
+                                lastActivity.set(System.nanoTime());
+                            }
+                            last[0] = block;
+                            if (progress != null) {
+                                progress.accept(block);
+                            }
+                        }
+                    }
+                }));
+        Thread errorReader = Thread.ofVirtual().name("ffmpeg-stderr").start(() ->
+                readLines(process.getErrorStream(), line -> {
+                    log.debug("ffmpeg[{} {}]: {}", phase, rendition, line);
+                    synchronized (errorTail) {
+                        errorTail.addLast(line);
+                        if (errorTail.size() > ERROR_TAIL_LINES) {
+                            errorTail.removeFirst();
+                        }
+                    }
+                }));
+
+        try {
+            String timedOut = awaitExit(process, start, lastActivity);
+            // the pipes hit EOF once the process is gone
+            progressReader.join();
+            errorReader.join();
+            if (timedOut != null) {
+                throw new RuntimeException("FFmpeg " + timedOut);
+            }
+            int exitCode = process.exitValue();
+            if (exitCode != 0 && supervisor.isShuttingDown()) {
+                // killed by the shutdown, not the job's fault
+                throw new InterruptedException("FFmpeg killed by shutdown");
+            }
+            if (exitCode != 0) {
+                String tail;
+                synchronized (errorTail) {
+                    tail = String.join(" | ", errorTail);
+                }
+                throw new RuntimeException("FFmpeg failed with exit code " + exitCode + (tail.isEmpty() ? "" : ": " + tail));
+            }
+            success = true;
+            if (last[0] != null) {
+                log.info("FFmpeg {} {} finished: {} frames, {} fps, {}x realtime",
+                        phase, rendition, last[0].frame(), last[0].fps(), last[0].speed());
+                metrics.recordEncodeSpeed(phase, rendition, last[0].speed());
+            }
+        } catch (InterruptedException e) {
+            supervisor.kill(process);
+            throw e;
+        } finally {
+            metrics.recordFfmpeg(phase, rendition, System.nanoTime() - start, success);
+        }
+    }
+
+
+    /**
+     * Wait for the process to exit, killing it when it runs too long or stops making progress
+     * @return why it was killed, null if it exited on its own
+     */
+    private String awaitExit(Process process, long start, AtomicLong lastActivity) throws InterruptedException {
+        long wallClockNanos = TimeUnit.MINUTES.toNanos(wallClockMinutes);
+        long stallNanos = TimeUnit.SECONDS.toNanos(stallSeconds);
+        while (!process.waitFor(WATCHDOG_MILLIS, TimeUnit.MILLISECONDS)) {
+            long now = System.nanoTime();
+            String reason = null;
+            if (wallClockMinutes > 0 && now - start > wallClockNanos) {
+                reason = "timed out after " + wallClockMinutes + " min";
+            } else if (stallSeconds > 0 && now - lastActivity.get() > stallNanos) {
+                reason = "stalled, no progress for " + stallSeconds + " s";
+            }
+            if (reason != null) {
+                log.warn("Killing ffmpeg: {}", reason);
+                supervisor.kill(process);
+                return reason;
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * Progress blocks on stdout instead of the stats line on stderr
+     */
+    static List<String> withProgressOutput(List<String> cmd) {
+        List<String> command = new ArrayList<>(cmd.size() + 5);
+        command.add(cmd.get(0));
+        command.addAll(List.of("-hide_banner", "-nostats", "-progress", "pipe:1"));
+        command.addAll(cmd.subList(1, cmd.size()));
+        return command;
+    }
+
+
+    private static void readLines(InputStream stream, Consumer<String> consumer) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                consumer.accept(line);
+            }
+        } catch (IOException e) {
+            // process killed, nothing more to read
+        }
+    }
+}
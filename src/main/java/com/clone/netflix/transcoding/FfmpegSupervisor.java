@@ -0,0 +1,243 @@
+package com.clone.netflix.transcoding;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts every ffmpeg of the service and keeps the node from being oversubscribed.
+ * A process is admitted once the cores (its -threads) and the memory it is expected to use fit into
+ * the node's budget (ffmpeg.admission.*); until then the caller waits. A process that needs more than the
+ * whole budget is admitted when nothing else runs. Waiting processes are admitted in order.
+ *
+ * Live ingest can't wait: it is admitted right away (its cost still counts), and backfill work queued behind it
+ * waits until the budget has room again. Backfill runs under nice, so live keeps the CPU when the node is busy.
+ *
+ * Running processes are tracked, so they are killed with their children when the service shuts down.
+ */
+@Component
+public class FfmpegSupervisor {
+
+    private static final Logger log = LoggerFactory.getLogger(FfmpegSupervisor.class);
+
+    private static final long MIB = 1024 * 1024;
+
+    // time a killed process gets to exit before we stop waiting for it
+    private static final long KILL_WAIT_MILLIS = 5000;
+
+    public enum Priority {
+        LIVE,
+        BACKFILL
+    }
+
+    /**
+     * What a process is expected to use: encoder threads and resident memory
+     */
+    public record Demand(int cores, long memoryBytes) {
+
+        // probes, stream copies, short clips
+        public static final Demand LIGHT = new Demand(1, 256 * MIB);
+
+        /**
+         * An x264 encode: frames in flight (lookahead, references, one per thread) at the output size, plus a fixed overhead
+         * @param width
+         * @param height
+         * @param threads
+         * @return
+         */
+        public static Demand encode(int width, int height, int threads) {
+            long frameBytes = (long) width * height * 3 / 2;
+            return new Demand(threads, 64 * MIB + frameBytes * (60 + 4L * threads));
+        }
+    }
+
+    private final Set<Process> running = ConcurrentHashMap.newKeySet();
+
+    private final int maxCores;
+
+    private final long maxMemoryBytes;
+
+    @Value("${ffmpeg.nice.backfill:10}")
+    private int backfillNice;
+
+    private final boolean niceAvailable = Files.isExecutable(Path.of("/usr/bin/nice"));
+
+    private final Deque<Object> waiting = new ArrayDeque<>();
+
+    private int usedCores;
+
+    private long usedMemory;
+
+    private volatile boolean shuttingDown;
+
+    public FfmpegSupervisor(@Value("${ffmpeg.admission.max-cores:0}") int maxCores,
+                            @Value("${ffmpeg.admission.max-memory-mb:0}") long maxMemoryMb) {
+        this.maxCores = maxCores > 0 ? maxCores : Runtime.getRuntime().availableProcessors();
+        this.maxMemoryBytes = maxMemoryMb > 0 ? maxMemoryMb * MIB : defaultMemoryBudget();
+        log.info("ffmpeg admission budget: {} cores, {} MiB", this.maxCores, this.maxMemoryBytes / MIB);
+    }
+
+
+    /**
+     * Cores the encoders may use in total
+     * @return
+     */
+    public int maxCores() {
+        return maxCores;
+    }
+
+
+    /**
+     * Whether processes are being killed because the service is stopping: their failure is not the job's
+     * @return
+     */
+    public boolean isShuttingDown() {
+        return shuttingDown;
+    }
+
+
+    /**
+     * Wait for admission and start the process. Its share of the budget is given back when it exits.
+     * @param cmd
+     * @param workDir
+     * @param priority
+     * @param demand
+     * @return
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public Process start(List<String> cmd, File workDir, Priority priority, Demand demand) throws IOException, InterruptedException {
+        Demand admitted = new Demand(Math.min(demand.cores(), maxCores), Math.min(demand.memoryBytes(), maxMemoryBytes));
+        acquire(priority, admitted);
+
+        Process process;
+        try {
+            if (shuttingDown) {
+                throw new InterruptedException("Shutting down");
+            }
+            process = new ProcessBuilder(niced(cmd, priority)).directory(workDir).start();
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            release(admitted);
+            throw e;
+        }
+        running.add(process);
+        process.onExit().thenRun(() -> {
+            running.remove(process);
+            release(admitted);
+        });
+        return process;
+    }
+
+
+    /**
+     * Kill a process and anything it started, and wait (briefly) for it to go
+     * @param process
+     */
+    public void kill(Process process) {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+        try {
+            process.waitFor(KILL_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /**
+     * Kill whatever is still running, so no encoder outlives the service
+     */
+    @PreDestroy
+    public void shutdown() {
+        shuttingDown = true;
+        synchronized (this) {
+            notifyAll();
+        }
+        List<Process> processes = new ArrayList<>(running);
+        if (!processes.isEmpty()) {
+            log.info("Killing {} ffmpeg processes", processes.size());
+        }
+        processes.forEach(this::kill);
+    }
+
+
+    private synchronized void acquire(Priority priority, Demand demand) throws InterruptedException {
+        // live is never held back, only accounted for
+        if (priority == Priority.BACKFILL) {
+            // first come, first served: small processes don't starve a big one
+            Object ticket = new Object();
+            waiting.addLast(ticket);
+            try {
+                while (!shuttingDown && (waiting.peekFirst() != ticket || !fits(demand))) {
+                    wait();
+                }
+            } finally {
+                waiting.remove(ticket);
+                notifyAll();
+            }
+        }
+        take(demand);
+    }
+
+
+    private boolean fits(Demand demand) {
+        if (usedCores == 0 && usedMemory == 0) {
+            return true;
+        }
+        return usedCores + demand.cores() <= maxCores
+                && usedMemory + demand.memoryBytes() <= maxMemoryBytes;
+    }
+
+
+    private void take(Demand demand) {
+        usedCores += demand.cores();
+        usedMemory += demand.memoryBytes();
+    }
+
+
+    private synchronized void release(Demand demand) {
+        usedCores -= demand.cores();
+        usedMemory -= demand.memoryBytes();
+        notifyAll();
+    }
+
+
+    private List<String> niced(List<String> cmd, Priority priority) {
+        if (priority == Priority.LIVE || backfillNice <= 0 || !niceAvailable) {
+            return cmd;
+        }
+        List<String> command = new ArrayList<>(cmd.size() + 3);
+        command.addAll(List.of("/usr/bin/nice", "-n", String.valueOf(backfillNice)));
+        command.addAll(cmd);
+        return command;
+    }
+
+
+    /**
+     * Physical memory not taken by the heap, minus a quarter for the OS and page cache (segments are served from it)
+     */
+    private static long defaultMemoryBudget() {
+        long total = ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os
+                ? os.getTotalMemorySize()
+                : 0;
+        if (total <= 0) {
+            return Long.MAX_VALUE / 2;
+        }
+        return Math.max(512 * MIB, (total - Runtime.getRuntime().maxMemory()) * 3 / 4);
+    }
+}
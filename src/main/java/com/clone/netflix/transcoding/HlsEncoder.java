@@ -0,0 +1,448 @@
+package com.clone.netflix.transcoding;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Encodes a source into HLS with one ffmpeg process per ladder rung.
+ * Rungs run in parallel on the work-stealing encoding pool, each limited to a fixed number of
+ * encoder threads, and a failing rung is retried on its own instead of throwing away the others.
+ * The output can be played while it is written: the master playlist goes out before the rungs start and
+ * their playlists grow segment by segment (EVENT), switching to VOD when the encode is done.
+ *
+ * Which rungs are encoded, and at what bitrates, is decided per title, see LadderPlanner.
+ * The startup animation is not encoded again per title, see IntroBumper.
+ *
+ * Long sources (hls.chunked.min-duration-seconds) are split into chunks on the segment grid; every chunk x rung
+ * is its own task that decodes its window straight from the source (-ss/-t, an accurate seek, no intermediate
+ * files) and the chunk playlists are merged into one continuous playlist per rung. Chunks are encoded with their original timestamps, so the result
+ * needs no EXT-X-DISCONTINUITY. Chunks finish out of order, so chunked output is only published
+ * (master playlist included) once every rung is merged.
+ *
+ * With hls.packaging=fmp4 every rung (every chunk of it, when chunked) is one fragmented MP4 addressed
+ * by byte ranges, and a static DASH manifest over the same files is written next to master.m3u8.
+ *
+ * Scrub thumbnails (see TrickplayGenerator) are a task of their own on the encoding pool, next to the rungs;
+ * master.m3u8 lists them once they are done. Failing to make them does not fail the encode.
+ */
+@Component
+public class HlsEncoder {
+
+    private static final Logger log = LoggerFactory.getLogger(HlsEncoder.class);
+
+    public static final int SEGMENT_SECONDS = 6;
+
+    private static final String SEGMENT_PATTERN = "segment_%03d.ts";
+
+    public static final String DASH_MANIFEST = "manifest.mpd";
+
+    private final FfmpegRunner ffmpegRunner;
+
+    private final MediaProbe mediaProbe;
+
+    private final IntroBumper introBumper;
+
+    private final ExecutorService encodingExecutor;
+
+    private final TranscodingProgress progress;
+
+    private final LadderPlanner ladderPlanner;
+
+    private final TrickplayGenerator trickplayGenerator;
+
+    private final FfmpegSupervisor supervisor;
+
+    @Value("${hls.encoding.threads-per-rendition:0}")
+    private int threadsPerRendition;
+
+    @Value("${hls.encoding.retries:1}")
+    private int retries;
+
+    @Value("${hls.chunked.min-duration-seconds:1200}")
+    private double chunkedMinDuration;
+
+    @Value("${hls.chunked.chunk-seconds:300}")
+    private int chunkSeconds;
+
+    @Value("${hls.packaging:ts}")
+    private Packaging packaging;
+
+    public HlsEncoder(FfmpegRunner ffmpegRunner, MediaProbe mediaProbe, IntroBumper introBumper,
+                      @Qualifier("encodingExecutor") ExecutorService encodingExecutor, TranscodingProgress progress,
+                      LadderPlanner ladderPlanner, TrickplayGenerator trickplayGenerator, FfmpegSupervisor supervisor) {
+        this.ffmpegRunner = ffmpegRunner;
+        this.mediaProbe = mediaProbe;
+        this.introBumper = introBumper;
+        this.encodingExecutor = encodingExecutor;
+        this.progress = progress;
+        this.ladderPlanner = ladderPlanner;
+        this.trickplayGenerator = trickplayGenerator;
+        this.supervisor = supervisor;
+    }
+
+
+    /**
+     * Encode every rendition of the title's ladder and write master.m3u8.
+     * The ladder is planned per title from the candidates (see LadderPlanner).
+     * Progress of the rendition encodes is reported to TranscodingProgress under the video ID.
+     * @param videoId
+     * @param sourcePath
+     * @param outputDir HLS_DIR/{videoId}
+     * @param candidates
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void encode(String videoId, String sourcePath, Path outputDir, List<Rendition> candidates) throws IOException, InterruptedException {
+        MediaInfo info = mediaProbe.probe(sourcePath);
+        List<Rendition> ladder = ladderPlanner.plan(sourcePath, info, candidates, outputDir.resolve("_probe"));
+        log.info("Ladder for {}: {}", videoId, ladder);
+
+        // the rungs of one title share the node's encoding cores; other titles wait for admission (see FfmpegSupervisor)
+        int threads = threadsPerRendition > 0
+                ? threadsPerRendition
+                : Math.max(1, supervisor.maxCores() / ladder.size());
+
+        for (Rendition rendition : ladder) {
+            Files.createDirectories(outputDir.resolve(String.valueOf(rendition.index())));
+        }
+
+        // intro rungs are cached, so after the first title this costs nothing
+        List<Callable<Void>> tasks = new ArrayList<>();
+        if (introBumper.isEnabled()) {
+            for (Rendition rendition : ladder) {
+                tasks.add(() -> {
+                    introBumper.prepare(rendition, packaging);
+                    return null;
+                });
+            }
+        }
+
+        Future<TrickplayGenerator.Thumbnails> thumbnails = null;
+        if (trickplayGenerator.isEnabled() && info.height() > 0) {
+            thumbnails = encodingExecutor.submit(() -> trickplayGenerator.generate(sourcePath, info, outputDir.resolve(TrickplayGenerator.DIR)));
+        }
+
+        progress.start(videoId);
+        try {
+            if (chunkSeconds > 0 && info.durationSeconds() >= chunkedMinDuration) {
+                encodeChunked(videoId, sourcePath, info, outputDir, ladder, threads, tasks);
+
+                if (introBumper.isEnabled()) {
+                    for (Rendition rendition : ladder) {
+                        introBumper.prepend(outputDir.resolve(String.valueOf(rendition.index())), rendition, packaging);
+                    }
+                }
+                MasterPlaylistWriter.writeAtomically(outputDir.resolve("master.m3u8"),
+                        MasterPlaylistWriter.build(ladder, awaitThumbnails(videoId, thumbnails)));
+            } else {
+                encodeProgressive(videoId, sourcePath, info, outputDir, ladder, threads, tasks);
+
+                // master.m3u8 went out before the rungs, add the image stream now
+                TrickplayGenerator.Thumbnails generated = awaitThumbnails(videoId, thumbnails);
+                if (generated != null) {
+                    MasterPlaylistWriter.writeAtomically(outputDir.resolve("master.m3u8"), MasterPlaylistWriter.build(ladder, generated));
+                }
+            }
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            if (thumbnails != null) {
+                thumbnails.cancel(true);
+            }
+            throw e;
+        }
+
+        if (packaging == Packaging.FMP4) {
+            writeDashManifest(outputDir, ladder);
+        }
+    }
+
+
+    /**
+     * Wait for the thumbnails, which are optional: a failure is logged and the title goes out without them
+     * @return null when there are none
+     */
+    private static TrickplayGenerator.Thumbnails awaitThumbnails(String videoId, Future<TrickplayGenerator.Thumbnails> thumbnails)
+            throws InterruptedException {
+        if (thumbnails == null) {
+            return null;
+        }
+        try {
+            return thumbnails.get();
+        } catch (ExecutionException e) {
+            log.warn("Thumbnails for {} failed: {}", videoId, e.getCause().getMessage());
+            return null;
+        }
+    }
+
+
+    /**
+     * manifest.mpd over the finished fMP4 renditions
+     */
+    private static void writeDashManifest(Path outputDir, List<Rendition> ladder) throws IOException {
+        List<List<MediaPlaylist.Segment>> playlists = new ArrayList<>();
+        for (Rendition rendition : ladder) {
+            Path playlist = outputDir.resolve(String.valueOf(rendition.index())).resolve("playlist.m3u8");
+            playlists.add(MediaPlaylist.parse(Files.readString(playlist, StandardCharsets.UTF_8)));
+        }
+        MasterPlaylistWriter.writeAtomically(outputDir.resolve(DASH_MANIFEST), DashManifestWriter.build(ladder, playlists));
+    }
+
+
+    /**
+     * One ffmpeg per rung, published while it runs: master.m3u8 goes out first and every rung playlist
+     * grows as segments are finalized (see ProgressivePlaylist), then turns into VOD.
+     * The intro is listed from the first playlist on, so it has to be encoded before the content starts.
+     */
+    private void encodeProgressive(String videoId, String sourcePath, MediaInfo info, Path outputDir, List<Rendition> ladder,
+                                   int threads, List<Callable<Void>> introTasks) throws IOException, InterruptedException {
+        runAll(introTasks);
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        List<ProgressivePlaylist> playlists = new ArrayList<>();
+        for (Rendition rendition : ladder) {
+            Path renditionDir = outputDir.resolve(String.valueOf(rendition.index()));
+            List<MediaPlaylist.Segment> intro = introBumper.isEnabled() ? introBumper.link(renditionDir, rendition, packaging) : List.of();
+            ProgressivePlaylist playlist = new ProgressivePlaylist(renditionDir, intro);
+            playlists.add(playlist);
+
+            List<String> cmd = renditionCommand(sourcePath, rendition, threads, null, packaging, true,
+                    renditionDir.resolve(packaging.segmentFile("segment")), renditionDir.resolve(ProgressivePlaylist.ENCODER_PLAYLIST));
+            Consumer<FfmpegProgress> listener = progress.task(videoId, info.durationSeconds(), 0)
+                    .andThen(report -> playlist.refresh());
+            tasks.add(() -> {
+                runWithRetry(cmd, renditionDir, "hls", rendition, threads, rendition.resolution(), listener);
+                return null;
+            });
+        }
+        MasterPlaylistWriter.writeAtomically(outputDir.resolve("master.m3u8"), MasterPlaylistWriter.build(ladder));
+
+        runAll(tasks);
+
+        for (ProgressivePlaylist playlist : playlists) {
+            playlist.finish();
+        }
+    }
+
+
+    /**
+     * encode chunks x rungs in parallel (next to the given tasks) -> merge playlists
+     */
+    private void encodeChunked(String videoId, String sourcePath, MediaInfo info, Path outputDir, List<Rendition> ladder,
+                               int threads, List<Callable<Void>> tasks) throws IOException, InterruptedException {
+        List<Chunk> chunks = chunks(info.durationSeconds(), chunkSeconds);
+        log.info("Source encoded as {} chunks of {}s", chunks.size(), chunks.get(0).lengthSeconds());
+
+        for (Rendition rendition : ladder) {
+            Path renditionDir = outputDir.resolve(String.valueOf(rendition.index()));
+            for (Chunk chunk : chunks) {
+                String prefix = String.format(Locale.ROOT, "chunk%03d", chunk.index());
+                List<String> cmd = renditionCommand(sourcePath, rendition, threads, chunk, packaging, false,
+                        renditionDir.resolve(packaging.segmentFile(prefix)), renditionDir.resolve(prefix + ".m3u8"));
+                Consumer<FfmpegProgress> listener = progress.task(videoId, chunk.lengthSeconds(), chunk.startSeconds());
+                tasks.add(() -> {
+                    runWithRetry(cmd, renditionDir, "hls-chunk", rendition, threads, rendition.resolution() + " " + prefix, listener);
+                    return null;
+                });
+            }
+        }
+        runAll(tasks);
+
+        for (Rendition rendition : ladder) {
+            mergeChunkPlaylists(outputDir.resolve(String.valueOf(rendition.index())), chunks.size());
+        }
+    }
+
+
+    /**
+     * A window of the source, encoded by its own ffmpeg processes
+     */
+    record Chunk(int index, double startSeconds, double lengthSeconds) {
+    }
+
+
+    /**
+     * Cut a source of the given duration into windows of about chunkSeconds. Window lengths are a multiple of
+     * SEGMENT_SECONDS, so every chunk starts on the segment grid of a single-pass encode and its segments
+     * (and forced keyframes, counted from the chunk start) fall where a single pass would put them.
+     * Only the title's last segment is short.
+     * @param durationSeconds
+     * @param chunkSeconds
+     * @return
+     */
+    static List<Chunk> chunks(double durationSeconds, int chunkSeconds) {
+        int length = Math.max(1, Math.round(chunkSeconds / (float) SEGMENT_SECONDS)) * SEGMENT_SECONDS;
+        List<Chunk> chunks = new ArrayList<>();
+        for (int i = 0; (double) i * length < durationSeconds; i++) {
+            double start = (double) i * length;
+            chunks.add(new Chunk(i, start, Math.min(length, durationSeconds - start)));
+        }
+        return chunks;
+    }
+
+
+    /**
+     * Replace the per-chunk playlists of a rung with one continuous playlist.
+     * TS segment files are renamed into a single segment_%03d.ts sequence; fMP4 chunk files stay as they are,
+     * each with its own init section.
+     */
+    private void mergeChunkPlaylists(Path renditionDir, int chunkCount) throws IOException {
+        List<List<MediaPlaylist.Segment>> chunkSegments = new ArrayList<>();
+        for (int i = 0; i < chunkCount; i++) {
+            Path playlist = renditionDir.resolve(String.format(Locale.ROOT, "chunk%03d.m3u8", i));
+            chunkSegments.add(MediaPlaylist.parse(Files.readString(playlist, StandardCharsets.UTF_8)));
+        }
+
+        List<MediaPlaylist.Segment> merged;
+        if (packaging == Packaging.TS) {
+            merged = MediaPlaylist.concat(chunkSegments, SEGMENT_PATTERN);
+            int i = 0;
+            for (List<MediaPlaylist.Segment> chunk : chunkSegments) {
+                for (MediaPlaylist.Segment segment : chunk) {
+                    Files.move(renditionDir.resolve(segment.uri()), renditionDir.resolve(merged.get(i++).uri()),
+                            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+            }
+        } else {
+            merged = new ArrayList<>();
+            chunkSegments.forEach(merged::addAll);
+        }
+
+        MasterPlaylistWriter.writeAtomically(renditionDir.resolve("playlist.m3u8"), MediaPlaylist.renderVod(merged));
+        for (int c = 0; c < chunkCount; c++) {
+            Files.deleteIfExists(renditionDir.resolve(String.format(Locale.ROOT, "chunk%03d.m3u8", c)));
+        }
+    }
+
+
+    /**
+     * Run tasks on the encoding pool and wait for all of them, reporting every failure
+     */
+    private void runAll(List<Callable<Void>> tasks) throws InterruptedException {
+        List<Future<Void>> futures = new ArrayList<>();
+        for (Callable<Void> task : tasks) {
+            futures.add(encodingExecutor.submit(task));
+        }
+
+        List<String> failures = new ArrayList<>();
+        try {
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    failures.add(e.getCause().getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw e;
+        }
+
+        if (!failures.isEmpty()) {
+            throw new RuntimeException("HLS encoding failed: " + String.join(", ", failures));
+        }
+    }
+
+
+    private void runWithRetry(List<String> cmd, Path workDir, String phase, Rendition rendition, int threads, String label,
+                              Consumer<FfmpegProgress> listener) throws IOException, InterruptedException {
+        FfmpegSupervisor.Demand demand = FfmpegSupervisor.Demand.encode(rendition.width(), rendition.height(), threads);
+        for (int attempt = 0; ; attempt++) {
+            try {
+                long start = System.currentTimeMillis();
+                ffmpegRunner.run(cmd, workDir.toFile(), phase, rendition.resolution(), demand, listener);
+                log.info("Encoded {} in {} ms", label, System.currentTimeMillis() - start);
+                return;
+            } catch (RuntimeException e) {
+                if (attempt >= retries) {
+                    throw new RuntimeException(label + ": " + e.getMessage(), e);
+                }
+                log.warn("Retrying {}: {}", label, e.getMessage());
+            }
+        }
+    }
+
+
+    /**
+     * Scale into the rung's frame keeping the source aspect ratio, padded to the full frame (letter- or pillarbox),
+     * so the intro and titles of any shape share the rung's resolution without being stretched
+     * @param width
+     * @param height
+     * @return
+     */
+    static String fitFilter(int width, int height) {
+        return "scale=" + width + ":" + height + ":force_original_aspect_ratio=decrease:force_divisible_by=2"
+                + ",pad=" + width + ":" + height + ":(ow-iw)/2:(oh-ih)/2,setsar=1";
+    }
+
+
+    /**
+     * One rung as its own ffmpeg process. Keyframes are forced on the segment grid (and scene-cut
+     * keyframes disabled) so segments of independently encoded rungs line up for ABR switching.
+     * A chunk is cut from the input with an accurate seek (frames are decoded, not copied, so the cut is exact)
+     * and shifted back to its position in the source.
+     * A progressive encode writes an EVENT playlist that is updated after every segment, and never exposes
+     * a segment before it is complete.
+     * fMP4 output pins the H.264 profile and level so the DASH manifest can state its codecs.
+     */
+    static List<String> renditionCommand(String input, Rendition rendition, int threads, Chunk chunk,
+                                         Packaging packaging, boolean progressive, Path segmentFile, Path playlist) {
+        List<String> cmd = new ArrayList<>();
+        cmd.add("ffmpeg");
+        cmd.add("-y");
+        if (chunk != null) {
+            cmd.addAll(List.of(
+                    "-ss", String.format(Locale.ROOT, "%.6f", chunk.startSeconds()),
+                    "-t", String.format(Locale.ROOT, "%.6f", chunk.lengthSeconds())));
+        }
+        cmd.add("-i");
+        cmd.add(input);
+
+        cmd.addAll(List.of(
+                "-vf", fitFilter(rendition.width(), rendition.height()),
+                "-map", "0:v:0", "-map", "0:a:0?",
+                "-c:v", "libx264",
+                "-b:v", rendition.videoBitrateKbps() + "k",
+                "-maxrate", rendition.videoBitrateKbps() + "k",
+                "-bufsize", (rendition.videoBitrateKbps() * 2) + "k",
+                "-force_key_frames", "expr:gte(t,n_forced*" + SEGMENT_SECONDS + ")",
+                "-sc_threshold", "0",
+                "-threads", String.valueOf(threads),
+                "-c:a", "aac", "-b:a", rendition.audioBitrateKbps() + "k"
+        ));
+        if (packaging == Packaging.FMP4) {
+            cmd.addAll(List.of("-profile:v", DashManifestWriter.H264_PROFILE, "-level:v", DashManifestWriter.H264_LEVEL));
+        }
+        if (chunk != null) {
+            cmd.add("-output_ts_offset");
+            cmd.add(String.format(Locale.ROOT, "%.6f", chunk.startSeconds()));
+        }
+
+        // HLS options
+        cmd.addAll(List.of(
+                "-f", "hls",
+                "-hls_time", String.valueOf(SEGMENT_SECONDS),
+                "-hls_playlist_type", progressive ? "event" : "vod"
+        ));
+        cmd.addAll(packaging.hlsOptions(progressive));
+        cmd.add("-hls_segment_filename");
+        cmd.add(segmentFile.toString());
+        cmd.add(playlist.toString());
+        return cmd;
+    }
+}
@@ -0,0 +1,178 @@
+package com.clone.netflix.transcoding;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The startup animation, pre-encoded once per ladder rung and packaging into HLS segments and kept under
+ * HLS_DIR/_intro/{rung}[_fmp4]/. It is prepended to a title at playlist level (linked segments +
+ * EXT-X-DISCONTINUITY), so the uploaded content itself is encoded exactly once.
+ * The cache is rebuilt for a rung when the intro source is newer than its playlist: encoded next to it and swapped in
+ * under the rung's lock, which link() takes too, so a title never links a half-written intro, and segments linked
+ * by earlier titles are never rewritten.
+ */
+@Component
+public class IntroBumper {
+
+    private static final Logger log = LoggerFactory.getLogger(IntroBumper.class);
+
+    private final FfmpegRunner ffmpegRunner;
+
+    @Value("${file.video.hls}")
+    private String HLS_DIR;
+
+    @Value("${hls.intro.source:videos/netflix-intro.mp4}")
+    private String introSource;
+
+    @Value("${hls.intro.enabled:true}")
+    private boolean enabled;
+
+    private final ConcurrentMap<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+    public IntroBumper(FfmpegRunner ffmpegRunner) {
+        this.ffmpegRunner = ffmpegRunner;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+
+    /**
+     * Make sure the intro is encoded for this rung (no-op when cached)
+     * @param rendition
+     * @param packaging
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public void prepare(Rendition rendition, Packaging packaging) throws IOException, InterruptedException {
+        Path dir = cacheDir(rendition, packaging);
+        ReentrantLock lock = lock(dir);
+        lock.lockInterruptibly();
+        try {
+            Path playlist = dir.resolve("playlist.m3u8");
+            Path source = Paths.get(introSource);
+            if (Files.exists(playlist)
+                    && Files.getLastModifiedTime(playlist).compareTo(Files.getLastModifiedTime(source)) >= 0) {
+                return;
+            }
+
+            Path workDir = dir.resolveSibling(dir.getFileName() + ".work");
+            FileSystemUtils.deleteRecursively(workDir);
+            Files.createDirectories(workDir);
+            try {
+                ffmpegRunner.run(HlsEncoder.renditionCommand(source.toString(), rendition, 1, null, packaging, false,
+                        workDir.resolve(packaging.segmentFile("intro")), workDir.resolve("playlist.m3u8")),
+                        workDir.toFile(), "intro", rendition.resolution(),
+                        FfmpegSupervisor.Demand.encode(rendition.width(), rendition.height(), 1), null);
+                // the old files stay alive through the links of titles that use them
+                FileSystemUtils.deleteRecursively(dir);
+                Files.move(workDir, dir, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                FileSystemUtils.deleteRecursively(workDir);
+            }
+            log.info("Intro encoded for {}", rendition.resolution());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Link the cached intro segments into a rendition folder and put them in front of its playlist
+     * @param renditionDir
+     * @param rendition
+     * @param packaging
+     * @throws IOException
+     */
+    public void prepend(Path renditionDir, Rendition rendition, Packaging packaging) throws IOException {
+        Path playlist = renditionDir.resolve("playlist.m3u8");
+        List<MediaPlaylist.Segment> content = MediaPlaylist.parse(Files.readString(playlist, StandardCharsets.UTF_8));
+        MasterPlaylistWriter.writeAtomically(playlist, MediaPlaylist.renderVod(withIntro(link(renditionDir, rendition, packaging), content)));
+    }
+
+
+    /**
+     * Link the cached intro segments into a rendition folder
+     * @param renditionDir
+     * @param rendition
+     * @param packaging
+     * @return the intro segments, to be listed before the content
+     * @throws IOException
+     */
+    public List<MediaPlaylist.Segment> link(Path renditionDir, Rendition rendition, Packaging packaging) throws IOException {
+        Path dir = cacheDir(rendition, packaging);
+        ReentrantLock lock = lock(dir);
+        // not while prepare() swaps the rung's files
+        lock.lock();
+        try {
+            List<MediaPlaylist.Segment> intro = MediaPlaylist.parse(Files.readString(dir.resolve("playlist.m3u8"), StandardCharsets.UTF_8));
+            for (String uri : MediaPlaylist.uris(intro)) {
+                link(dir.resolve(uri), renditionDir.resolve(uri));
+            }
+            return intro;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Intro followed by content, with the discontinuity between them
+     * @param intro
+     * @param content
+     * @return
+     */
+    public static List<MediaPlaylist.Segment> withIntro(List<MediaPlaylist.Segment> intro, List<MediaPlaylist.Segment> content) {
+        List<MediaPlaylist.Segment> segments = new ArrayList<>(intro);
+        for (int i = 0; i < content.size(); i++) {
+            MediaPlaylist.Segment segment = content.get(i);
+            // encoder parameters change between intro and content
+            segments.add(i == 0 && !intro.isEmpty() ? segment.withDiscontinuity() : segment);
+        }
+        return segments;
+    }
+
+
+    /**
+     * Hard link (no extra bytes on disk), copy when the cache is on another file system
+     */
+    private static void link(Path source, Path target) throws IOException {
+        try {
+            Files.deleteIfExists(target);
+            Files.createLink(target, source);
+        } catch (FileAlreadyExistsException e) {
+            // concurrent prepend of the same title, the existing link is identical
+        } catch (UnsupportedOperationException | IOException e) {
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+
+    private ReentrantLock lock(Path dir) {
+        return locks.computeIfAbsent(dir.toString(), key -> new ReentrantLock());
+    }
+
+
+    private Path cacheDir(Rendition rendition, Packaging packaging) {
+        String name = rendition.resolution() + "_" + rendition.videoBitrateKbps() + "k_" + rendition.audioBitrateKbps() + "k";
+        return Paths.get(HLS_DIR, "_intro", packaging == Packaging.TS ? name : name + "_" + packaging.name().toLowerCase(Locale.ROOT));
+    }
+}
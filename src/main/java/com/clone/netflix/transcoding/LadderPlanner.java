@@ -0,0 +1,185 @@
+package com.clone.netflix.transcoding;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Per-title ladder: the candidate ladder cut down to the source resolution (no upscaled rungs), with
+ * video bitrates scaled by how hard the source is to compress.
+ *
+ * Complexity comes from a fast constant-quality (CRF) probe encode of a few short clips spread over the
+ * source, at the resolution of the highest kept rung up to 720p: the bitrate x264 needs for that quality,
+ * relative to the bitrate the candidate rung was sized for. Simple content (animation, talking heads,
+ * slides) ends up well below the default ladder, complex content (grain, sports) somewhat above it.
+ * The factor is rounded to steps of 0.1, so titles of similar complexity share their intro encodes
+ * (IntroBumper caches per rung).
+ */
+@Component
+public class LadderPlanner {
+
+    private static final Logger log = LoggerFactory.getLogger(LadderPlanner.class);
+
+    private static final int PROBE_MAX_HEIGHT = 720;
+
+    private static final int BITRATE_STEP_KBPS = 50;
+
+    private final FfmpegRunner ffmpegRunner;
+
+    @Value("${hls.ladder.per-title:true}")
+    private boolean perTitle;
+
+    @Value("${hls.ladder.probe-samples:3}")
+    private int probeSamples;
+
+    @Value("${hls.ladder.probe-seconds:4}")
+    private int probeSeconds;
+
+    @Value("${hls.ladder.probe-crf:23}")
+    private int probeCrf;
+
+    @Value("${hls.ladder.probe-threads:2}")
+    private int probeThreads;
+
+    @Value("${hls.ladder.min-factor:0.4}")
+    private double minFactor;
+
+    @Value("${hls.ladder.max-factor:1.2}")
+    private double maxFactor;
+
+    public LadderPlanner(FfmpegRunner ffmpegRunner) {
+        this.ffmpegRunner = ffmpegRunner;
+    }
+
+
+    /**
+     * Ladder for one source
+     * @param sourcePath
+     * @param info
+     * @param candidates rungs to choose from, lowest first
+     * @param workDir scratch space for the probe encodes, removed afterwards
+     * @return
+     * @throws InterruptedException
+     */
+    public List<Rendition> plan(String sourcePath, MediaInfo info, List<Rendition> candidates, Path workDir) throws InterruptedException {
+        if (info.height() == 0) {
+            // nothing to measure (or to compare resolutions against)
+            return candidates;
+        }
+
+        List<Rendition> rungs = fitToSource(candidates, info);
+        double factor = 1.0;
+        if (perTitle && info.durationSeconds() > 0) {
+            Rendition reference = rungs.get(0);
+            for (Rendition rung : rungs) {
+                if (rung.height() <= PROBE_MAX_HEIGHT) {
+                    reference = rung;
+                }
+            }
+            try {
+                double kbps = measure(sourcePath, info, reference, workDir);
+                factor = factor(kbps, reference.videoBitrateKbps(), minFactor, maxFactor);
+                log.info("Probe encode at {} needs {} kbps for CRF {}, ladder factor {}", reference.resolution(),
+                        Math.round(kbps), probeCrf, factor);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Complexity probe failed, keeping default bitrates: {}", e.getMessage());
+            }
+        }
+        return scale(rungs, factor);
+    }
+
+
+    /**
+     * Candidate rungs that fit in the source in both dimensions, re-indexed from 0.
+     * A source smaller than every rung gets one rung at its own (even) size, with the lowest rung's
+     * bitrates scaled down by pixel count.
+     */
+    static List<Rendition> fitToSource(List<Rendition> candidates, MediaInfo info) {
+        List<Rendition> rungs = new ArrayList<>();
+        for (Rendition rung : candidates) {
+            if (rung.width() <= info.width() && rung.height() <= info.height()) {
+                rungs.add(new Rendition(rungs.size(), rung.width(), rung.height(), rung.videoBitrateKbps(), rung.audioBitrateKbps()));
+            }
+        }
+        if (rungs.isEmpty()) {
+            Rendition lowest = candidates.get(0);
+            int width = info.width() & ~1;
+            int height = info.height() & ~1;
+            double pixels = (double) (width * height) / (lowest.width() * lowest.height());
+            rungs.add(new Rendition(0, width, height, roundBitrate(lowest.videoBitrateKbps() * pixels), lowest.audioBitrateKbps()));
+        }
+        return rungs;
+    }
+
+
+    /**
+     * measured / reference, clamped and rounded to one decimal
+     */
+    static double factor(double measuredKbps, int referenceKbps, double min, double max) {
+        double factor = Math.max(min, Math.min(max, measuredKbps / referenceKbps));
+        return Math.round(factor * 10) / 10.0;
+    }
+
+
+    static List<Rendition> scale(List<Rendition> rungs, double factor) {
+        List<Rendition> scaled = new ArrayList<>();
+        for (Rendition rung : rungs) {
+            scaled.add(new Rendition(rung.index(), rung.width(), rung.height(),
+                    roundBitrate(rung.videoBitrateKbps() * factor), rung.audioBitrateKbps()));
+        }
+        return scaled;
+    }
+
+
+    private static int roundBitrate(double kbps) {
+        return (int) Math.max(BITRATE_STEP_KBPS, Math.round(kbps / BITRATE_STEP_KBPS) * BITRATE_STEP_KBPS);
+    }
+
+
+    /**
+     * Average video bitrate of CRF encodes of evenly spaced clips (the whole source when it is short)
+     */
+    private double measure(String sourcePath, MediaInfo info, Rendition rung, Path workDir) throws IOException, InterruptedException {
+        Files.createDirectories(workDir);
+        try {
+            int samples = info.durationSeconds() > probeSamples * probeSeconds ? probeSamples : 1;
+            double length = Math.min(probeSeconds, info.durationSeconds());
+            long bytes = 0;
+            for (int i = 0; i < samples; i++) {
+                double start = samples == 1 ? 0 : info.durationSeconds() * (i + 1) / (samples + 1) - length / 2;
+                Path output = workDir.resolve("probe_" + i + ".mp4");
+                ffmpegRunner.run(probeCommand(sourcePath, rung, start, length, output), workDir.toFile(), "probe", rung.resolution(),
+                        FfmpegSupervisor.Demand.encode(rung.width(), rung.height(), probeThreads), null);
+                bytes += Files.size(output);
+            }
+            return bytes * 8 / (samples * length) / 1000;
+        } finally {
+            FileSystemUtils.deleteRecursively(workDir);
+        }
+    }
+
+
+    private List<String> probeCommand(String sourcePath, Rendition rung, double start, double length, Path output) {
+        return List.of(
+                "ffmpeg", "-y",
+                "-ss", String.format(Locale.ROOT, "%.3f", start),
+                "-t", String.format(Locale.ROOT, "%.3f", length),
+                "-i", sourcePath,
+                "-vf", "scale=" + rung.width() + ":" + rung.height(),
+                "-map", "0:v:0", "-an",
+                "-c:v", "libx264", "-preset", "veryfast",
+                "-crf", String.valueOf(probeCrf),
+                "-threads", String.valueOf(probeThreads),
+                output.toString()
+        );
+    }
+}
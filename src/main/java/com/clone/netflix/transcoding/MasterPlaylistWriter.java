@@ -0,0 +1,61 @@
+package com.clone.netflix.transcoding;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * Writes the master playlist that ties the separately encoded renditions together
+ */
+public final class MasterPlaylistWriter {
+
+    private MasterPlaylistWriter() {
+    }
+
+    /**
+     * Build master.m3u8 content referencing {index}/playlist.m3u8 for every rendition
+     * @param renditions
+     * @return
+     */
+    public static String build(List<Rendition> renditions) {
+        return build(renditions, null);
+    }
+
+    /**
+     * Build master.m3u8 content, with an EXT-X-IMAGE-STREAM-INF for the scrub thumbnails when there are any
+     * @param renditions
+     * @param thumbnails may be null
+     * @return
+     */
+    public static String build(List<Rendition> renditions, TrickplayGenerator.Thumbnails thumbnails) {
+        StringBuilder sb = new StringBuilder("#EXTM3U\n#EXT-X-VERSION:3\n");
+        for (Rendition rendition : renditions) {
+            sb.append("#EXT-X-STREAM-INF:BANDWIDTH=").append(rendition.bandwidth())
+                    .append(",RESOLUTION=").append(rendition.resolution())
+                    .append('\n')
+                    .append(rendition.index()).append("/playlist.m3u8\n");
+        }
+        if (thumbnails != null) {
+            sb.append("#EXT-X-IMAGE-STREAM-INF:BANDWIDTH=").append(thumbnails.bandwidth())
+                    .append(",RESOLUTION=").append(thumbnails.width()).append('x').append(thumbnails.height())
+                    .append(",CODECS=\"").append(thumbnails.codec()).append('"')
+                    .append(",URI=\"").append(TrickplayGenerator.DIR).append('/').append(TrickplayGenerator.PLAYLIST).append("\"\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Write a playlist through a temp file + rename so readers never see it half written
+     * @param target
+     * @param content
+     * @throws IOException
+     */
+    public static void writeAtomically(Path target, String content) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.writeString(temp, content, StandardCharsets.UTF_8);
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
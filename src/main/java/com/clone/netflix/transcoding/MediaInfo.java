@@ -0,0 +1,7 @@
+package com.clone.netflix.transcoding;
+
+/**
+ * What ffprobe told us about a source. Width/height are 0 when the source has no video stream.
+ */
+public record MediaInfo(double durationSeconds, int width, int height) {
+}
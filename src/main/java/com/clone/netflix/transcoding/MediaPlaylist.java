@@ -0,0 +1,249 @@
+package com.clone.netflix.transcoding;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Minimal HLS media playlist model: the segment list of a rendition playlist as ffmpeg writes it.
+ * Used to stitch playlists together (chunked encodes, intro, progressive playback) without re-encoding anything.
+ * Covers both packagings: one .ts file per segment, and fMP4 single files addressed with EXT-X-BYTERANGE
+ * behind an EXT-X-MAP init section.
+ */
+public final class MediaPlaylist {
+
+    private static final Pattern MAP_URI = Pattern.compile("URI=\"([^\"]*)\"");
+    private static final Pattern MAP_BYTERANGE = Pattern.compile("BYTERANGE=\"([^\"]*)\"");
+
+    /**
+     * @param duration EXTINF seconds
+     * @param uri
+     * @param discontinuity whether an EXT-X-DISCONTINUITY precedes this segment
+     * @param range bytes of uri holding the segment, null for the whole file
+     * @param map init section the segment needs (EXT-X-MAP), null for MPEG-TS
+     */
+    public record Segment(double duration, String uri, boolean discontinuity, Range range, InitSection map) {
+
+        public Segment(double duration, String uri) {
+            this(duration, uri, false);
+        }
+
+        public Segment(double duration, String uri, boolean discontinuity) {
+            this(duration, uri, discontinuity, null, null);
+        }
+
+        public Segment withDiscontinuity() {
+            return new Segment(duration, uri, true, range, map);
+        }
+
+        public Segment withUri(String uri) {
+            return new Segment(duration, uri, discontinuity, range, map);
+        }
+    }
+
+    /**
+     * @param offset first byte
+     * @param length
+     */
+    public record Range(long offset, long length) {
+
+        public long end() {
+            return offset + length;
+        }
+    }
+
+    /**
+     * @param uri
+     * @param range null for the whole file
+     */
+    public record InitSection(String uri, Range range) {
+    }
+
+    private MediaPlaylist() {
+    }
+
+    /**
+     * Read the segments of a media playlist (EXTINF/URI pairs, their byte ranges, init sections and
+     * discontinuities), other tags are ignored
+     * @param content
+     * @return
+     */
+    public static List<Segment> parse(String content) {
+        List<Segment> segments = new ArrayList<>();
+        // a byte range without offset continues where the previous one of the same file ended
+        Map<String, Long> nextOffsets = new HashMap<>();
+        double duration = -1;
+        boolean discontinuity = false;
+        String byteRange = null;
+        InitSection map = null;
+        for (String raw : content.split("\n")) {
+            String line = raw.trim();
+            if (line.equals("#EXT-X-DISCONTINUITY")) {
+                discontinuity = true;
+            } else if (line.startsWith("#EXTINF:")) {
+                String value = line.substring(8);
+                int comma = value.indexOf(',');
+                duration = Double.parseDouble(comma >= 0 ? value.substring(0, comma) : value);
+            } else if (line.startsWith("#EXT-X-BYTERANGE:")) {
+                byteRange = line.substring(17);
+            } else if (line.startsWith("#EXT-X-MAP:")) {
+                map = parseMap(line.substring(11));
+            } else if (!line.isEmpty() && !line.startsWith("#") && duration >= 0) {
+                Range range = byteRange != null ? parseRange(byteRange, nextOffsets.getOrDefault(line, 0L)) : null;
+                if (range != null) {
+                    nextOffsets.put(line, range.end());
+                }
+                segments.add(new Segment(duration, line, discontinuity, range, map));
+                duration = -1;
+                discontinuity = false;
+                byteRange = null;
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Files the segments are read from, init sections included
+     * @param segments
+     * @return
+     */
+    public static Set<String> uris(List<Segment> segments) {
+        Set<String> uris = new LinkedHashSet<>();
+        for (Segment segment : segments) {
+            if (segment.map() != null) {
+                uris.add(segment.map().uri());
+            }
+            uris.add(segment.uri());
+        }
+        return uris;
+    }
+
+    private static InitSection parseMap(String attributes) {
+        Matcher uri = MAP_URI.matcher(attributes);
+        if (!uri.find()) {
+            return null;
+        }
+        Matcher range = MAP_BYTERANGE.matcher(attributes);
+        return new InitSection(uri.group(1), range.find() ? parseRange(range.group(1), 0) : null);
+    }
+
+    /**
+     * n[@o], as EXT-X-BYTERANGE and the BYTERANGE attribute of EXT-X-MAP write it
+     */
+    private static Range parseRange(String value, long defaultOffset) {
+        int at = value.indexOf('@');
+        if (at < 0) {
+            return new Range(defaultOffset, Long.parseLong(value.trim()));
+        }
+        return new Range(Long.parseLong(value.substring(at + 1).trim()), Long.parseLong(value.substring(0, at).trim()));
+    }
+
+    /**
+     * Render a complete VOD playlist
+     * @param segments
+     * @return
+     */
+    public static String renderVod(List<Segment> segments) {
+        return renderVod(segments, 0);
+    }
+
+    /**
+     * Render a complete VOD playlist whose target duration is at least minTargetDuration,
+     * e.g. to keep the one an EVENT playlist of the same rendition announced
+     * @param segments
+     * @param minTargetDuration
+     * @return
+     */
+    public static String renderVod(List<Segment> segments, int minTargetDuration) {
+        return render(segments, "VOD", minTargetDuration, true);
+    }
+
+    /**
+     * Render an EVENT playlist (no EXT-X-ENDLIST) of a rendition that is still being encoded.
+     * The target duration must not change while the playlist grows, so pass one that covers every segment to come.
+     * @param segments
+     * @param minTargetDuration
+     * @return
+     */
+    public static String renderEvent(List<Segment> segments, int minTargetDuration) {
+        return render(segments, "EVENT", minTargetDuration, false);
+    }
+
+    private static String render(List<Segment> segments, String type, int minTargetDuration, boolean ended) {
+        double longest = minTargetDuration;
+        int version = 3;
+        for (Segment segment : segments) {
+            longest = Math.max(longest, segment.duration());
+            if (segment.map() != null) {
+                version = 6;
+            } else if (segment.range() != null) {
+                version = Math.max(version, 4);
+            }
+        }
+
+        StringBuilder sb = new StringBuilder("#EXTM3U\n#EXT-X-VERSION:").append(version).append('\n')
+                .append("#EXT-X-TARGETDURATION:").append((long) Math.ceil(longest)).append('\n')
+                .append("#EXT-X-MEDIA-SEQUENCE:0\n")
+                .append("#EXT-X-PLAYLIST-TYPE:").append(type).append('\n');
+        InitSection map = null;
+        for (Segment segment : segments) {
+            if (segment.discontinuity()) {
+                sb.append("#EXT-X-DISCONTINUITY\n");
+            }
+            if (segment.map() != null && !segment.map().equals(map)) {
+                map = segment.map();
+                sb.append("#EXT-X-MAP:URI=\"").append(map.uri()).append('"');
+                if (map.range() != null) {
+                    sb.append(",BYTERANGE=\"").append(map.range().length()).append('@').append(map.range().offset()).append('"');
+                }
+                sb.append('\n');
+            }
+            sb.append(String.format(Locale.ROOT, "#EXTINF:%.6f,", segment.duration())).append('\n');
+            if (segment.range() != null) {
+                sb.append("#EXT-X-BYTERANGE:").append(segment.range().length()).append('@').append(segment.range().offset()).append('\n');
+            }
+            sb.append(segment.uri()).append('\n');
+        }
+        if (ended) {
+            sb.append("#EXT-X-ENDLIST\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Concatenate the segment lists of consecutive chunks into one continuous list,
+     * renumbering the URIs with a single sequence (e.g. segment_%03d.ts). Input and output
+     * lists line up index by index so the caller can rename the files.
+     * @param chunks
+     * @param uriPattern
+     * @return
+     */
+    public static List<Segment> concat(List<List<Segment>> chunks, String uriPattern) {
+        List<Segment> merged = new ArrayList<>();
+        for (List<Segment> chunk : chunks) {
+            for (Segment segment : chunk) {
+                merged.add(segment.withUri(String.format(Locale.ROOT, uriPattern, merged.size())));
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Total duration in seconds
+     * @param segments
+     * @return
+     */
+    public static double duration(List<Segment> segments) {
+        double total = 0;
+        for (Segment segment : segments) {
+            total += segment.duration();
+        }
+        return total;
+    }
+}
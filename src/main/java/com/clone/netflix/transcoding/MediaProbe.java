@@ -0,0 +1,93 @@
+package com.clone.netflix.transcoding;
+
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Thin ffprobe wrapper. ffprobe is started through the supervisor like every ffmpeg, so it waits for
+ * admission and is killed when the service stops.
+ */
+@Component
+public class MediaProbe {
+
+    private final FfmpegSupervisor supervisor;
+
+    public MediaProbe(FfmpegSupervisor supervisor) {
+        this.supervisor = supervisor;
+    }
+
+    /**
+     * Probe duration and resolution of the first video stream
+     * @param sourcePath
+     * @return
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public MediaInfo probe(String sourcePath) throws IOException, InterruptedException {
+        List<String> cmd = List.of(
+                "ffprobe", "-v", "error",
+                "-select_streams", "v:0",
+                "-show_entries", "stream=width,height:format=duration",
+                "-of", "default=noprint_wrappers=1",
+                sourcePath
+        );
+        Process process = supervisor.start(cmd, null, FfmpegSupervisor.Priority.BACKFILL, FfmpegSupervisor.Demand.LIGHT);
+        boolean exited = false;
+        try {
+            process.getOutputStream().close();
+            Thread.ofVirtual().name("ffprobe-stderr").start(() -> {
+                try (InputStream errorStream = process.getErrorStream()) {
+                    errorStream.transferTo(OutputStream.nullOutputStream());
+                } catch (IOException e) {
+                    // the process is gone
+                }
+            });
+            String output;
+            try (InputStream inputStream = process.getInputStream()) {
+                output = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            int exitCode = process.waitFor();
+            exited = true;
+            if (exitCode != 0) {
+                throw new RuntimeException("ffprobe failed for " + sourcePath);
+            }
+            return parse(output);
+        } finally {
+            if (!exited) {
+                supervisor.kill(process);
+            }
+        }
+    }
+
+
+    static MediaInfo parse(String output) {
+        double duration = 0;
+        int width = 0;
+        int height = 0;
+        for (String line : output.split("\n")) {
+            int eq = line.indexOf('=');
+            if (eq < 0) {
+                continue;
+            }
+            String key = line.substring(0, eq).trim();
+            String value = line.substring(eq + 1).trim();
+            try {
+                switch (key) {
+                    case "duration" -> duration = Double.parseDouble(value);
+                    case "width" -> width = Integer.parseInt(value);
+                    case "height" -> height = Integer.parseInt(value);
+                    default -> {
+                    }
+                }
+            } catch (NumberFormatException e) {
+                // "N/A" for streams without the field
+            }
+        }
+        return new MediaInfo(duration, width, height);
+    }
+}
@@ -0,0 +1,37 @@
+package com.clone.netflix.transcoding;
+
+import java.util.List;
+
+/**
+ * How the segments of a rendition are stored (hls.packaging).
+ * TS writes one MPEG-TS file per segment. FMP4 writes the whole rendition as a single fragmented MP4 (CMAF)
+ * whose segments are byte ranges listed with EXT-X-BYTERANGE: far fewer files on disk, and the same bytes
+ * can be described by a DASH manifest.
+ */
+public enum Packaging {
+
+    TS,
+    FMP4;
+
+    /**
+     * The ffmpeg segment filename for a stream named prefix: a %03d pattern, or the one file of an fMP4 rendition
+     * @param prefix
+     * @return
+     */
+    public String segmentFile(String prefix) {
+        return this == TS ? prefix + "_%03d.ts" : prefix + ".mp4";
+    }
+
+    /**
+     * ffmpeg hls muxer options for this packaging
+     * @param progressive whether segments must only appear once complete
+     * @return
+     */
+    List<String> hlsOptions(boolean progressive) {
+        if (this == FMP4) {
+            // one file that only grows; ffmpeg lists a fragment in the playlist once it is flushed
+            return List.of("-hls_segment_type", "fmp4", "-hls_flags", "single_file");
+        }
+        return progressive ? List.of("-hls_flags", "temp_file") : List.of();
+    }
+}
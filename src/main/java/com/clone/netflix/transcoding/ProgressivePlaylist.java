@@ -0,0 +1,116 @@
+package com.clone.netflix.transcoding;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * playlist.m3u8 of a rung whose encode is still running: an EVENT playlist that only ever grows,
+ * so viewers can start before the encode is done.
+ * ffmpeg writes its own playlist next to it (ENCODER_PLAYLIST) and renames every segment into place once
+ * it is complete (-hls_flags temp_file, or appends it to the rendition's single fMP4 file); a segment is
+ * published only once all of its bytes are on disk, so a half-written one is never listed. The intro, when there is one, is listed first from the start.
+ * Once the encode has finished the playlist is replaced by the final VOD one.
+ */
+class ProgressivePlaylist {
+
+    private static final Logger log = LoggerFactory.getLogger(ProgressivePlaylist.class);
+
+    static final String ENCODER_PLAYLIST = "encoder.m3u8";
+
+    // announced while growing and kept by the VOD playlist; forced keyframes leave a little jitter on SEGMENT_SECONDS
+    static final int TARGET_DURATION = HlsEncoder.SEGMENT_SECONDS + 1;
+
+    private final Path renditionDir;
+
+    private final List<MediaPlaylist.Segment> intro;
+
+    private int published;
+
+    /**
+     * Publish the first playlist (the intro alone, or no segment at all)
+     * @param renditionDir
+     * @param intro segments already linked into renditionDir, empty without intro
+     * @throws IOException
+     */
+    public ProgressivePlaylist(Path renditionDir, List<MediaPlaylist.Segment> intro) throws IOException {
+        this.renditionDir = renditionDir;
+        this.intro = List.copyOf(intro);
+        Files.deleteIfExists(renditionDir.resolve(ENCODER_PLAYLIST));
+        publish(List.of());
+    }
+
+
+    /**
+     * Publish the segments ffmpeg has completed since the last call. Called on every progress report
+     * of the encode, so the playlist trails ffmpeg by at most one report interval.
+     */
+    public synchronized void refresh() {
+        try {
+            List<MediaPlaylist.Segment> content = completed();
+            // a retried encode starts over, the playlist must not shrink
+            if (content.size() > published) {
+                publish(content);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not update the playlist in {}: {}", renditionDir, e.getMessage());
+        }
+    }
+
+
+    /**
+     * Replace the playlist with the complete VOD one
+     * @throws IOException
+     */
+    public synchronized void finish() throws IOException {
+        Path encoderPlaylist = renditionDir.resolve(ENCODER_PLAYLIST);
+        List<MediaPlaylist.Segment> content = MediaPlaylist.parse(Files.readString(encoderPlaylist, StandardCharsets.UTF_8));
+        MasterPlaylistWriter.writeAtomically(renditionDir.resolve("playlist.m3u8"),
+                MediaPlaylist.renderVod(IntroBumper.withIntro(intro, content), TARGET_DURATION));
+        Files.delete(encoderPlaylist);
+    }
+
+
+    /**
+     * Leading segments of ffmpeg's playlist whose files are in place
+     */
+    private List<MediaPlaylist.Segment> completed() throws IOException {
+        Path encoderPlaylist = renditionDir.resolve(ENCODER_PLAYLIST);
+        if (!Files.exists(encoderPlaylist)) {
+            return List.of();
+        }
+        List<MediaPlaylist.Segment> completed = new ArrayList<>();
+        for (MediaPlaylist.Segment segment : MediaPlaylist.parse(Files.readString(encoderPlaylist, StandardCharsets.UTF_8))) {
+            if (!isWritten(segment)) {
+                break;
+            }
+            completed.add(segment);
+        }
+        return completed;
+    }
+
+
+    /**
+     * A .ts segment is there once renamed into place, an fMP4 one once the file has grown past its byte range
+     */
+    private boolean isWritten(MediaPlaylist.Segment segment) throws IOException {
+        Path file = renditionDir.resolve(segment.uri());
+        if (!Files.exists(file)) {
+            return false;
+        }
+        return segment.range() == null || Files.size(file) >= segment.range().end();
+    }
+
+
+    private void publish(List<MediaPlaylist.Segment> content) throws IOException {
+        MasterPlaylistWriter.writeAtomically(renditionDir.resolve("playlist.m3u8"),
+                MediaPlaylist.renderEvent(IntroBumper.withIntro(intro, content), TARGET_DURATION));
+        published = content.size();
+    }
+}
@@ -0,0 +1,28 @@
+package com.clone.netflix.transcoding;
+
+import java.util.List;
+
+/**
+ * One rung of the HLS bitrate ladder. The index is also the output folder name (HLS_DIR/{videoId}/{index}/)
+ * and the qualityLevel used by the playback endpoints.
+ */
+public record Rendition(int index, int width, int height, int videoBitrateKbps, int audioBitrateKbps) {
+
+    public static final List<Rendition> DEFAULT_LADDER = List.of(
+            new Rendition(0, 640, 360, 800, 96),
+            new Rendition(1, 1280, 720, 2800, 128),
+            new Rendition(2, 1920, 1080, 5000, 192)
+    );
+
+    /**
+     * Peak bandwidth in bits/s for EXT-X-STREAM-INF
+     * @return
+     */
+    public long bandwidth() {
+        return (videoBitrateKbps + audioBitrateKbps) * 1000L;
+    }
+
+    public String resolution() {
+        return width + "x" + height;
+    }
+}
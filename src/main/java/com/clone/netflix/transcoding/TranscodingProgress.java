@@ -0,0 +1,233 @@
+package com.clone.netflix.transcoding;
+
+import com.clone.netflix.entities.JobStatus;
+import com.clone.netflix.playload.EncodeProgress;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Live encode progress per video, fed by the ffmpeg progress readers and pushed to subscribers.
+ * Updates are published at most every PUBLISH_INTERVAL_NANOS per video. Each subscriber is
+ * delivered on its own virtual thread and only ever gets the latest snapshot, so a slow client
+ * skips updates instead of stalling the reader (and with it ffmpeg's stdout pipe).
+ */
+@Component
+public class TranscodingProgress {
+
+    private static final long PUBLISH_INTERVAL_NANOS = 500_000_000L;
+
+    private final ConcurrentMap<String, VideoProgress> videos = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, List<Subscriber>> subscribers = new ConcurrentHashMap<>();
+
+    private final ExecutorService delivery = Executors.newVirtualThreadPerTaskExecutor();
+
+
+    /**
+     * Forget any previous run of the video; call before registering its tasks
+     * @param videoId
+     */
+    public void start(String videoId) {
+        videos.put(videoId, new VideoProgress(videoId));
+    }
+
+
+    /**
+     * Register one ffmpeg process of the video's encode
+     * @param videoId
+     * @param durationSeconds media duration the process will write
+     * @param offsetSeconds -output_ts_offset of the process (0 when none)
+     * @return listener to pass to FfmpegRunner
+     */
+    public Consumer<FfmpegProgress> task(String videoId, double durationSeconds, double offsetSeconds) {
+        VideoProgress video = videos.computeIfAbsent(videoId, VideoProgress::new);
+        Task task = video.add((long) (durationSeconds * 1_000_000), (long) (offsetSeconds * 1_000_000));
+        return progress -> {
+            EncodeProgress snapshot = video.update(task, progress);
+            if (snapshot != null) {
+                publish(videoId, snapshot);
+            }
+        };
+    }
+
+
+    /**
+     * Final event for the video's subscribers, then drop its state
+     * @param videoId
+     * @param status DONE or FAILED
+     */
+    public void finish(String videoId, JobStatus status) {
+        VideoProgress video = videos.remove(videoId);
+        EncodeProgress snapshot = video != null ? video.snapshot() : new EncodeProgress(videoId, status, 0, 0, 0, null, 0, 0);
+        snapshot.setStatus(status);
+        if (status == JobStatus.DONE) {
+            snapshot.setPercent(100);
+            snapshot.setEtaSeconds(0L);
+        }
+        publish(videoId, snapshot);
+    }
+
+
+    /**
+     * @param videoId
+     * @return latest progress, or null when the video isn't encoding
+     */
+    public EncodeProgress current(String videoId) {
+        VideoProgress video = videos.get(videoId);
+        return video != null ? video.snapshot() : null;
+    }
+
+
+    /**
+     * Receive the video's progress until the returned handle is run
+     * @param videoId
+     * @param listener called on a delivery thread, one call at a time
+     * @return unsubscribe
+     */
+    public Runnable subscribe(String videoId, Consumer<EncodeProgress> listener) {
+        Subscriber subscriber = new Subscriber(listener);
+        subscribers.computeIfAbsent(videoId, id -> new CopyOnWriteArrayList<>()).add(subscriber);
+        return () -> subscribers.computeIfPresent(videoId, (id, list) -> {
+            list.remove(subscriber);
+            return list.isEmpty() ? null : list;
+        });
+    }
+
+
+    @PreDestroy
+    public void shutdown() {
+        delivery.shutdownNow();
+    }
+
+
+    private void publish(String videoId, EncodeProgress snapshot) {
+        List<Subscriber> list = subscribers.get(videoId);
+        if (list != null) {
+            for (Subscriber subscriber : list) {
+                subscriber.offer(snapshot);
+            }
+        }
+    }
+
+
+    private final class Subscriber {
+
+        private final Consumer<EncodeProgress> listener;
+
+        private final AtomicReference<EncodeProgress> pending = new AtomicReference<>();
+
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        Subscriber(Consumer<EncodeProgress> listener) {
+            this.listener = listener;
+        }
+
+        void offer(EncodeProgress snapshot) {
+            pending.set(snapshot);
+            if (draining.compareAndSet(false, true)) {
+                delivery.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            do {
+                EncodeProgress snapshot;
+                while ((snapshot = pending.getAndSet(null)) != null) {
+                    listener.accept(snapshot);
+                }
+                draining.set(false);
+                // an offer may have landed between the last poll and the reset
+            } while (pending.get() != null && draining.compareAndSet(false, true));
+        }
+    }
+
+
+    private static final class Task {
+
+        final long durationMicros;
+        final long offsetMicros;
+        long doneMicros;
+        double fps;
+        double speed;
+        boolean running;
+        boolean finished;
+
+        Task(long durationMicros, long offsetMicros) {
+            this.durationMicros = durationMicros;
+            this.offsetMicros = offsetMicros;
+        }
+    }
+
+
+    private static final class VideoProgress {
+
+        private final String videoId;
+
+        private final List<Task> tasks = new ArrayList<>();
+
+        private long lastPublished;
+
+        VideoProgress(String videoId) {
+            this.videoId = videoId;
+        }
+
+        synchronized Task add(long durationMicros, long offsetMicros) {
+            Task task = new Task(durationMicros, offsetMicros);
+            tasks.add(task);
+            return task;
+        }
+
+        /**
+         * @return a snapshot when it's time to publish, null otherwise
+         */
+        synchronized EncodeProgress update(Task task, FfmpegProgress progress) {
+            task.running = !progress.end();
+            task.finished = progress.end();
+            task.fps = progress.fps();
+            task.speed = progress.speed();
+            long done = progress.outTimeMicros() - task.offsetMicros;
+            task.doneMicros = progress.end() ? task.durationMicros : Math.max(0, Math.min(done, task.durationMicros));
+
+            long now = System.nanoTime();
+            if (!progress.end() && now - lastPublished < PUBLISH_INTERVAL_NANOS) {
+                return null;
+            }
+            lastPublished = now;
+            return snapshot();
+        }
+
+        synchronized EncodeProgress snapshot() {
+            long total = 0;
+            long done = 0;
+            double fps = 0;
+            double speed = 0;
+            int finished = 0;
+            for (Task task : tasks) {
+                total += task.durationMicros;
+                done += task.doneMicros;
+                if (task.running) {
+                    fps += task.fps;
+                    speed += task.speed;
+                }
+                if (task.finished) {
+                    finished++;
+                }
+            }
+            double percent = total > 0 ? Math.min(100.0, done * 100.0 / total) : 0;
+            // remaining media time over the combined realtime factor of what's running now
+            Long eta = speed > 0 ? Math.round((total - done) / 1_000_000.0 / speed) : null;
+            return new EncodeProgress(videoId, JobStatus.RUNNING, percent, fps, speed, eta, finished, tasks.size());
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.clone.netflix.transcoding;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Scrub previews. One ffmpeg pass over the source samples a frame every hls.trickplay.interval-seconds
+ * into sprite sheets of columns x rows thumbnails and grabs a poster frame along the way.
+ * Next to the sheets go a WebVTT thumbnail track (one cue per thumbnail, pointing at its tile with #xywh=)
+ * and an image media playlist (EXT-X-IMAGES-ONLY / EXT-X-TILES) that master.m3u8 references with
+ * EXT-X-IMAGE-STREAM-INF, so scrubbing costs one small image per sheet instead of a low-rung segment.
+ * Everything is written to a work directory and renamed into place once complete.
+ */
+@Component
+public class TrickplayGenerator {
+
+    // {outputDir}/thumbs/
+    public static final String DIR = "thumbs";
+
+    public static final String VTT = "thumbnails.vtt";
+
+    public static final String PLAYLIST = "images.m3u8";
+
+    private static final String SHEET_PREFIX = "sprite_";
+
+    private static final String POSTER = "poster";
+
+    private final FfmpegRunner ffmpegRunner;
+
+    @Value("${hls.trickplay.enabled:true}")
+    private boolean enabled;
+
+    @Value("${hls.trickplay.interval-seconds:2}")
+    private int intervalSeconds;
+
+    @Value("${hls.trickplay.width:160}")
+    private int width;
+
+    @Value("${hls.trickplay.columns:5}")
+    private int columns;
+
+    @Value("${hls.trickplay.rows:5}")
+    private int rows;
+
+    // jpg or webp
+    @Value("${hls.trickplay.format:jpg}")
+    private String format;
+
+    @Value("${hls.trickplay.poster-width:1280}")
+    private int posterWidth;
+
+    @Value("${hls.trickplay.threads:1}")
+    private int threads;
+
+    public TrickplayGenerator(FfmpegRunner ffmpegRunner) {
+        this.ffmpegRunner = ffmpegRunner;
+    }
+
+    /**
+     * Generated thumbnails: tile size, image format and the average bitrate of the sheets
+     */
+    public record Thumbnails(int width, int height, String format, long bandwidth) {
+
+        /**
+         * CODECS attribute of EXT-X-IMAGE-STREAM-INF
+         */
+        public String codec() {
+            return format.equals("jpg") ? "jpeg" : format;
+        }
+    }
+
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+
+    /**
+     * Sheets, thumbnail track, image playlist and poster of a source, replacing what dir held before
+     * @param sourcePath
+     * @param info
+     * @param dir {outputDir}/thumbs
+     * @return
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public Thumbnails generate(String sourcePath, MediaInfo info, Path dir) throws IOException, InterruptedException {
+        int height = tileHeight(info, width);
+        Path workDir = dir.resolveSibling("_" + dir.getFileName());
+        FileSystemUtils.deleteRecursively(workDir);
+        Files.createDirectories(workDir);
+        try {
+            // decoding the source is the cost, so the demand is sized for source frames
+            ffmpegRunner.run(command(sourcePath, info, height, workDir), workDir.toFile(), "trickplay", width + "x" + height,
+                    FfmpegSupervisor.Demand.encode(info.width(), info.height(), threads), null);
+
+            List<Path> sheets = new ArrayList<>();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(workDir, SHEET_PREFIX + "*." + format)) {
+                files.forEach(sheets::add);
+            }
+            // one thumbnail per started interval, as far as the sheets go
+            int count = Math.min((int) Math.ceil(info.durationSeconds() / intervalSeconds), sheets.size() * columns * rows);
+            Files.writeString(workDir.resolve(VTT), vtt(count, intervalSeconds, info.durationSeconds(), width, height, columns, rows, format),
+                    StandardCharsets.UTF_8);
+            Files.writeString(workDir.resolve(PLAYLIST), imagePlaylist(count, intervalSeconds, info.durationSeconds(), width, height, columns, rows, format),
+                    StandardCharsets.UTF_8);
+
+            long bytes = 0;
+            for (Path sheet : sheets) {
+                bytes += Files.size(sheet);
+            }
+            long bandwidth = info.durationSeconds() > 0 ? Math.round(bytes * 8 / info.durationSeconds()) : 0;
+
+            FileSystemUtils.deleteRecursively(dir);
+            Files.move(workDir, dir, StandardCopyOption.ATOMIC_MOVE);
+            return new Thumbnails(width, height, format, bandwidth);
+        } finally {
+            FileSystemUtils.deleteRecursively(workDir);
+        }
+    }
+
+
+    /**
+     * @return the poster's file name
+     */
+    public String posterName() {
+        return POSTER + "." + format;
+    }
+
+
+    /**
+     * Tile height for the source's aspect ratio, even for the encoder
+     */
+    static int tileHeight(MediaInfo info, int width) {
+        return Math.max(2, (int) Math.round((double) width * info.height() / info.width() / 2) * 2);
+    }
+
+
+    /**
+     * WEBVTT cues, one per thumbnail, each pointing at its tile: sprite_000.jpg#xywh=x,y,w,h
+     */
+    static String vtt(int count, int interval, double duration, int width, int height, int columns, int rows, String format) {
+        StringBuilder sb = new StringBuilder("WEBVTT\n");
+        int perSheet = columns * rows;
+        for (int i = 0; i < count; i++) {
+            int tile = i % perSheet;
+            sb.append('\n')
+                    .append(timestamp(i * interval)).append(" --> ").append(timestamp(Math.min((i + 1) * interval, duration))).append('\n')
+                    .append(sheetName(i / perSheet, format))
+                    .append("#xywh=").append(tile % columns * width).append(',').append(tile / columns * height)
+                    .append(',').append(width).append(',').append(height).append('\n');
+        }
+        return sb.toString();
+    }
+
+
+    /**
+     * Image media playlist: every sheet is one entry covering its thumbnails' time
+     */
+    static String imagePlaylist(int count, int interval, double duration, int width, int height, int columns, int rows, String format) {
+        int perSheet = columns * rows;
+        int sheets = (count + perSheet - 1) / perSheet;
+        StringBuilder entries = new StringBuilder();
+        double longest = 0;
+        for (int s = 0; s < sheets; s++) {
+            double start = (double) s * perSheet * interval;
+            double sheetDuration = Math.min((double) (s + 1) * perSheet * interval, duration) - start;
+            longest = Math.max(longest, sheetDuration);
+            entries.append(String.format(Locale.ROOT, "#EXTINF:%.3f,\n", sheetDuration))
+                    .append("#EXT-X-TILES:RESOLUTION=").append(width).append('x').append(height)
+                    .append(",LAYOUT=").append(columns).append('x').append(rows)
+                    .append(String.format(Locale.ROOT, ",DURATION=%.3f\n", (double) interval))
+                    .append(sheetName(s, format)).append('\n');
+        }
+        return "#EXTM3U\n#EXT-X-VERSION:7\n#EXT-X-TARGETDURATION:" + (int) Math.ceil(longest) + "\n"
+                + "#EXT-X-MEDIA-SEQUENCE:0\n#EXT-X-PLAYLIST-TYPE:VOD\n#EXT-X-IMAGES-ONLY\n"
+                + entries + "#EXT-X-ENDLIST\n";
+    }
+
+
+    private static String sheetName(int index, String format) {
+        return String.format(Locale.ROOT, SHEET_PREFIX + "%03d.%s", index, format);
+    }
+
+
+    private static String timestamp(double seconds) {
+        long millis = Math.round(seconds * 1000);
+        return String.format(Locale.ROOT, "%02d:%02d:%02d.%03d", millis / 3_600_000, millis / 60_000 % 60, millis / 1000 % 60, millis % 1000);
+    }
+
+
+    /**
+     * Sheets and poster from one decode: fps + scale + tile for the sheets, a second output seeking to
+     * a tenth of the way in for the poster (past most cold opens and black leaders)
+     */
+    private List<String> command(String sourcePath, MediaInfo info, int height, Path workDir) {
+        List<String> quality = format.equals("webp")
+                ? List.of("-c:v", "libwebp", "-quality", "75")
+                : List.of("-q:v", "5");
+        int poster = Math.min(posterWidth, info.width()) & ~1;
+
+        List<String> cmd = new ArrayList<>(List.of(
+                "ffmpeg", "-y", "-threads", String.valueOf(threads), "-i", sourcePath,
+                "-map", "0:v:0", "-an",
+                "-vf", "fps=1/" + intervalSeconds + ",scale=" + width + ":" + height + ",tile=" + columns + "x" + rows
+        ));
+        cmd.addAll(quality);
+        cmd.add(workDir.resolve(SHEET_PREFIX + "%03d." + format).toString());
+        cmd.addAll(List.of(
+                "-map", "0:v:0", "-an",
+                "-ss", String.format(Locale.ROOT, "%.3f", info.durationSeconds() / 10),
+                "-frames:v", "1",
+                "-vf", "scale=" + poster + ":-2"
+        ));
+        cmd.addAll(quality);
+        cmd.add(workDir.resolve(posterName()).toString());
+        return cmd;
+    }
+}
@@ -0,0 +1,114 @@
+package com.clone.netflix.live;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LiveStreamTest {
+
+	private static LiveStream streamWithParts(int parts) {
+		LiveStream stream = new LiveStream("v", 0.5, 2);
+		for (int i = 0; i < parts; i++) {
+			stream.addPart(String.format("part_%06d.ts", i), i * 0.5, (i + 1) * 0.5);
+		}
+		return stream;
+	}
+
+	@Test
+	void groupsPartsIntoSegmentsOnTheKeyframeGrid() {
+		LiveStream stream = streamWithParts(6);
+
+		assertEquals(1, stream.openMsn());
+		assertEquals(List.of("part_000004.ts", "part_000005.ts"), stream.openParts().stream().map(LiveStream.Part::uri).toList());
+		assertTrue(stream.startsSegment(4.0));
+		assertFalse(stream.startsSegment(3.5));
+	}
+
+	@Test
+	void rendersCompleteSegmentsAndOpenParts() {
+		String playlist = streamWithParts(5).render();
+
+		assertTrue(playlist.contains("#EXT-X-SERVER-CONTROL:CAN-BLOCK-RELOAD=YES,PART-HOLD-BACK=1.500"));
+		assertTrue(playlist.contains("#EXT-X-PART:DURATION=0.500,URI=\"part_000000.ts\",INDEPENDENT=YES\n"));
+		assertTrue(playlist.contains("#EXT-X-PART:DURATION=0.500,URI=\"part_000001.ts\"\n"));
+		assertTrue(playlist.contains("#EXTINF:2.000,\nsegment_000000.ts\n#EXT-X-PART:DURATION=0.500,URI=\"part_000004.ts\",INDEPENDENT=YES\n"));
+		assertFalse(playlist.contains("segment_000001.ts"));
+		assertFalse(playlist.contains("#EXT-X-ENDLIST"));
+	}
+
+	@Test
+	void blockingReloadWaitsForRequestedPart() {
+		LiveStream stream = streamWithParts(5);
+		List<String> answers = new ArrayList<>();
+
+		assertTrue(stream.await(1, 0, answers::add));
+		assertEquals(1, answers.size());
+
+		assertTrue(stream.await(1, 2, answers::add));
+		assertEquals(1, answers.size());
+		stream.addPart("part_000005.ts", 2.5, 3.0);
+		assertEquals(1, answers.size());
+		stream.addPart("part_000006.ts", 3.0, 3.5);
+		assertEquals(2, answers.size());
+		assertTrue(answers.get(1).contains("part_000006.ts"));
+	}
+
+	@Test
+	void blockingReloadForWholeSegmentWaitsUntilItCloses() {
+		LiveStream stream = streamWithParts(5);
+		List<String> answers = new ArrayList<>();
+
+		stream.await(1, -1, answers::add);
+		stream.addPart("part_000005.ts", 2.5, 3.0);
+		stream.addPart("part_000006.ts", 3.0, 3.5);
+		stream.addPart("part_000007.ts", 3.5, 4.0);
+		assertEquals(0, answers.size());
+		stream.addPart("part_000008.ts", 4.0, 4.5);
+		assertEquals(1, answers.size());
+		assertTrue(answers.get(0).contains("segment_000001.ts"));
+	}
+
+	@Test
+	void cancelledWaiterIsForgotten() {
+		LiveStream stream = streamWithParts(5);
+		List<String> answers = new ArrayList<>();
+		Consumer<String> callback = answers::add;
+
+		assertTrue(stream.await(1, 1, callback));
+		stream.cancel(callback);
+		stream.addPart("part_000005.ts", 2.5, 3.0);
+
+		assertEquals(0, answers.size());
+	}
+
+	@Test
+	void rejectsRequestsTooFarAheadAndReleasesWaitersOnEnd() {
+		LiveStream stream = streamWithParts(1);
+		List<String> answers = new ArrayList<>();
+
+		assertFalse(stream.await(3, 0, answers::add));
+		assertTrue(stream.await(2, 0, answers::add));
+		stream.end();
+
+		assertEquals(1, answers.size());
+		assertTrue(answers.get(0).endsWith("#EXT-X-ENDLIST\n"));
+		assertTrue(stream.renderVod().contains("segment_000000.ts"));
+	}
+
+	@Test
+	void expiresPartsOfOldSegments() {
+		LiveStream stream = streamWithParts(4 * 6);
+
+		List<String> expired = stream.expireParts();
+		// open segment is 5, parts are kept from segment 1 on
+		assertEquals(4, expired.size());
+		assertEquals("part_000000.ts", expired.get(0));
+		assertFalse(stream.render().contains("part_000003.ts"));
+	}
+}
@@ -0,0 +1,50 @@
+package com.clone.netflix.search;
+
+import com.clone.netflix.playload.VideoSummary;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VideoSearchIndexTest {
+
+	private static List<String> ids(List<VideoSummary> results) {
+		return results.stream().map(VideoSummary::getVideoId).toList();
+	}
+
+	@Test
+	void suggestMatchesWordsAndTrailingPrefix() {
+		VideoSearchIndex index = new VideoSearchIndex();
+		index.index("1", "The Dark Knight", "Batman", "video/mp4");
+		index.index("2", "Dark", "Time travel", "video/mp4");
+		index.index("3", "Knives Out", "Whodunit", "video/mp4");
+
+		assertEquals(List.of("2", "1"), ids(index.suggest("dar", 10)));
+		assertEquals(List.of("1"), ids(index.suggest("dark kn", 10)));
+		assertEquals(List.of("3", "1"), ids(index.suggest("kn", 10)));
+		assertTrue(index.suggest("dark knives", 10).isEmpty());
+	}
+
+	@Test
+	void searchCoversDescriptionAndRanksTitleHitsFirst() {
+		VideoSearchIndex index = new VideoSearchIndex();
+		index.index("1", "Gotham Stories", "A documentary about batman comics", "video/mp4");
+		index.index("2", "Batman Begins", "Origin story", "video/mp4");
+
+		assertEquals(List.of("2", "1"), ids(index.search("Batman", 10)));
+		assertEquals(List.of("1"), ids(index.search("batman documentary", 10)));
+	}
+
+	@Test
+	void reindexReplacesOldTokens() {
+		VideoSearchIndex index = new VideoSearchIndex();
+		index.index("1", "Amélie", "", "video/mp4");
+		assertEquals(List.of("1"), ids(index.search("amelie", 10)));
+
+		index.index("1", "Renamed", "", "video/mp4");
+		assertTrue(index.search("amelie", 10).isEmpty());
+		assertEquals(List.of("1"), ids(index.suggest("ren", 10)));
+	}
+}
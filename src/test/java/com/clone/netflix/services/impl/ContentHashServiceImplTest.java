@@ -0,0 +1,65 @@
+package com.clone.netflix.services.impl;
+
+import com.clone.netflix.entities.ContentHash;
+import com.clone.netflix.repositories.ContentHashRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ContentHashServiceImplTest {
+
+	private final ContentHashServiceImpl service = new ContentHashServiceImpl(null);
+
+	@Test
+	void hashesSmallFile(@TempDir Path dir) throws Exception {
+		Path file = Files.writeString(dir.resolve("abc"), "abc");
+
+		assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", service.hash(file));
+	}
+
+	@Test
+	void hashesAcrossBufferBoundaries(@TempDir Path dir) throws Exception {
+		byte[] content = new byte[3 * 1024 * 1024 + 17];
+		new Random(7).nextBytes(content);
+		Path file = Files.write(dir.resolve("big"), content);
+
+		String expected = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+		assertEquals(expected, service.hash(file));
+	}
+
+	@Test
+	void encodedAddsToTheReferencesOfAnEarlierEncode() {
+		ContentHashRepository repository = mock(ContentHashRepository.class);
+		ContentHash content = ContentHash.builder().sha256("abc").refCount(1).ready(true).build();
+		when(repository.findById("abc")).thenReturn(Optional.of(content));
+
+		new ContentHashServiceImpl(repository).encoded("abc");
+
+		assertEquals(2, content.getRefCount());
+		assertTrue(content.isReady());
+	}
+
+	@Test
+	void encodedTakesTheFirstReferenceOfNewContent() {
+		ContentHashRepository repository = mock(ContentHashRepository.class);
+		when(repository.findById("abc")).thenReturn(Optional.empty());
+		ContentHash[] saved = new ContentHash[1];
+		when(repository.save(any())).thenAnswer(invocation -> saved[0] = invocation.getArgument(0));
+
+		new ContentHashServiceImpl(repository).encoded("abc");
+
+		assertEquals(1, saved[0].getRefCount());
+	}
+}
@@ -0,0 +1,107 @@
+package com.clone.netflix.services.impl;
+
+import com.clone.netflix.entities.Video;
+import com.clone.netflix.playload.CatalogPage;
+import com.clone.netflix.playload.VideoSummary;
+import com.clone.netflix.repositories.VideoRepository;
+import com.clone.netflix.search.VideoSearchIndex;
+import com.clone.netflix.services.ContentHashService;
+import com.clone.netflix.storage.StorageBackend;
+import com.clone.netflix.streaming.HlsCache;
+import com.clone.netflix.streaming.HlsMetadataIndex;
+import com.clone.netflix.streaming.HlsStorageKeys;
+import com.clone.netflix.streaming.OpenFileCache;
+import com.clone.netflix.transcoding.HlsEncoder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class VideoServiceImplTest {
+
+	private final VideoRepository videoRepository = mock(VideoRepository.class);
+
+	private VideoServiceImpl service;
+
+	@TempDir
+	Path hlsDir;
+
+	@BeforeEach
+	void setUp() {
+		service = new VideoServiceImpl(videoRepository, mock(HlsCache.class), mock(HlsMetadataIndex.class), mock(OpenFileCache.class),
+				mock(HlsEncoder.class), mock(VideoSearchIndex.class), mock(ContentHashService.class),
+				mock(StorageBackend.class), mock(StorageBackend.class), HlsStorageKeys.perVideo());
+		ReflectionTestUtils.setField(service, "HLS_DIR", hlsDir.toString());
+	}
+
+	@Test
+	void catalogPagesFollowTheCursor() {
+		when(videoRepository.findSummariesAfter("", PageRequest.of(0, 2)))
+				.thenReturn(List.of(summary("a"), summary("b")));
+		when(videoRepository.findSummariesAfter("b", PageRequest.of(0, 2)))
+				.thenReturn(List.of(summary("c")));
+
+		CatalogPage first = service.getCatalog(null, 2);
+		assertEquals(List.of("a", "b"), first.getItems().stream().map(VideoSummary::getVideoId).toList());
+		assertEquals("b", first.getNextCursor());
+
+		CatalogPage last = service.getCatalog(first.getNextCursor(), 2);
+		assertEquals(List.of("c"), last.getItems().stream().map(VideoSummary::getVideoId).toList());
+		// a short page is the last one
+		assertNull(last.getNextCursor());
+	}
+
+	@Test
+	void catalogPageSizeIsClamped() {
+		service.getCatalog(null, 0);
+		service.getCatalog(null, 10_000);
+
+		verify(videoRepository).findSummariesAfter("", PageRequest.of(0, 1));
+		verify(videoRepository).findSummariesAfter("", PageRequest.of(0, VideoServiceImpl.MAX_CATALOG_PAGE_SIZE));
+	}
+
+	@Test
+	void catalogPagesAreCachedUntilAVideoIsSaved() {
+		when(videoRepository.findSummariesAfter("", PageRequest.of(0, 20))).thenReturn(List.of(summary("a")));
+		Video video = Video.builder().videoId("b").title("B").build();
+		when(videoRepository.save(video)).thenReturn(video);
+
+		CatalogPage page = service.getCatalog(null, 20);
+		assertSame(page, service.getCatalog(null, 20));
+		verify(videoRepository, times(1)).findSummariesAfter("", PageRequest.of(0, 20));
+
+		service.saveMetadata(video);
+		service.getCatalog(null, 20);
+
+		verify(videoRepository, times(2)).findSummariesAfter("", PageRequest.of(0, 20));
+	}
+
+	@Test
+	void catalogPagesAreDroppedWhenAVideoIsDeleted() throws Exception {
+		when(videoRepository.findSummariesAfter("", PageRequest.of(0, 20))).thenReturn(List.of(summary("a")));
+		when(videoRepository.findById("a")).thenReturn(Optional.of(Video.builder().videoId("a").title("A").build()));
+
+		service.getCatalog(null, 20);
+		service.delete("a");
+		service.getCatalog(null, 20);
+
+		verify(videoRepository, times(2)).findSummariesAfter("", PageRequest.of(0, 20));
+	}
+
+	private static VideoSummary summary(String videoId) {
+		return new VideoSummary(videoId, "Title " + videoId, "video/mp4");
+	}
+}
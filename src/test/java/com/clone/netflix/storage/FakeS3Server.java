@@ -0,0 +1,224 @@
+package com.clone.netflix.storage;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.springframework.util.DigestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory stand-in for an S3-compatible store (path-style, no auth), covering the calls S3StorageBackend makes
+ */
+class FakeS3Server implements AutoCloseable {
+
+	private static final Pattern XML_KEY = Pattern.compile("<Key>(.*?)</Key>");
+
+	private final HttpServer server;
+
+	private final String bucket;
+
+	final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+
+	// x-amz-meta-* headers of an object (or of a multipart upload until it completes)
+	private final Map<String, Map<String, String>> metadata = new ConcurrentHashMap<>();
+
+	private final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+
+	final AtomicInteger partsReceived = new AtomicInteger();
+
+	FakeS3Server(String bucket) throws IOException {
+		this.bucket = bucket;
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", this::handle);
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+	}
+
+	String endpoint() {
+		return "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	Set<String> keys() {
+		return objects.keySet();
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try (exchange) {
+			String path = exchange.getRequestURI().getPath();
+			String bucketPrefix = "/" + bucket;
+			if (!path.startsWith(bucketPrefix)) {
+				send(exchange, 404, null, new byte[0]);
+				return;
+			}
+			String key = path.length() > bucketPrefix.length() ? path.substring(bucketPrefix.length() + 1) : "";
+			Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+			byte[] body = exchange.getRequestBody().readAllBytes();
+
+			switch (exchange.getRequestMethod()) {
+				case "HEAD" -> head(exchange, key);
+				case "GET" -> {
+					if (key.isEmpty()) {
+						list(exchange, query.getOrDefault("prefix", ""));
+					} else {
+						get(exchange, key);
+					}
+				}
+				case "PUT" -> {
+					if (query.containsKey("uploadId")) {
+						uploads.get(query.get("uploadId")).put(Integer.parseInt(query.get("partNumber")), body);
+						partsReceived.incrementAndGet();
+					} else {
+						objects.put(key, body);
+						metadata.put(key, userMetadata(exchange));
+					}
+					exchange.getResponseHeaders().set("ETag", etag(body));
+					send(exchange, 200, null, new byte[0]);
+				}
+				case "POST" -> post(exchange, key, query, body);
+				case "DELETE" -> {
+					if (query.containsKey("uploadId")) {
+						uploads.remove(query.get("uploadId"));
+					} else {
+						objects.remove(key);
+					}
+					send(exchange, 204, null, null);
+				}
+				default -> send(exchange, 405, null, new byte[0]);
+			}
+		}
+	}
+
+	private void head(HttpExchange exchange, String key) throws IOException {
+		byte[] object = objects.get(key);
+		if (object == null) {
+			send(exchange, 404, null, null);
+			return;
+		}
+		exchange.getResponseHeaders().set("Content-Length", String.valueOf(object.length));
+		exchange.getResponseHeaders().set("ETag", etag(object));
+		exchange.getResponseHeaders().set("Last-Modified", DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC)));
+		metadata.getOrDefault(key, Map.of()).forEach((name, value) -> exchange.getResponseHeaders().set(name, value));
+		send(exchange, 200, null, null);
+	}
+
+	private void get(HttpExchange exchange, String key) throws IOException {
+		byte[] object = objects.get(key);
+		if (object == null) {
+			send(exchange, 404, "application/xml", "<Error><Code>NoSuchKey</Code></Error>".getBytes(StandardCharsets.UTF_8));
+			return;
+		}
+		String range = exchange.getRequestHeaders().getFirst("Range");
+		if (range == null) {
+			send(exchange, 200, "application/octet-stream", object);
+			return;
+		}
+		String[] bounds = range.substring("bytes=".length()).split("-");
+		int start = Integer.parseInt(bounds[0]);
+		int end = Math.min(Integer.parseInt(bounds[1]), object.length - 1);
+		byte[] slice = new byte[end - start + 1];
+		System.arraycopy(object, start, slice, 0, slice.length);
+		exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + object.length);
+		send(exchange, 206, "application/octet-stream", slice);
+	}
+
+	private void list(HttpExchange exchange, String prefix) throws IOException {
+		String contents = new TreeMap<>(objects).entrySet().stream()
+				.filter(entry -> entry.getKey().startsWith(prefix))
+				.map(entry -> "<Contents><Key>" + entry.getKey() + "</Key><Size>" + entry.getValue().length + "</Size></Contents>")
+				.collect(Collectors.joining());
+		String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><ListBucketResult><Name>" + bucket + "</Name><Prefix>" + prefix
+				+ "</Prefix><IsTruncated>false</IsTruncated>" + contents + "</ListBucketResult>";
+		send(exchange, 200, "application/xml", xml.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private void post(HttpExchange exchange, String key, Map<String, String> query, byte[] body) throws IOException {
+		String xml;
+		if (query.containsKey("delete")) {
+			Matcher matcher = XML_KEY.matcher(new String(body, StandardCharsets.UTF_8));
+			while (matcher.find()) {
+				objects.remove(matcher.group(1));
+			}
+			xml = "<DeleteResult></DeleteResult>";
+		} else if (query.containsKey("uploads")) {
+			String uploadId = UUID.randomUUID().toString();
+			uploads.put(uploadId, new ConcurrentHashMap<>());
+			metadata.put(uploadId, userMetadata(exchange));
+			xml = "<InitiateMultipartUploadResult><Bucket>" + bucket + "</Bucket><Key>" + key + "</Key><UploadId>" + uploadId
+					+ "</UploadId></InitiateMultipartUploadResult>";
+		} else {
+			Map<Integer, byte[]> parts = new TreeMap<>(uploads.remove(query.get("uploadId")));
+			ByteArrayOutputStream object = new ByteArrayOutputStream();
+			for (byte[] part : parts.values()) {
+				object.write(part);
+			}
+			objects.put(key, object.toByteArray());
+			metadata.put(key, metadata.remove(query.get("uploadId")));
+			xml = "<CompleteMultipartUploadResult><Bucket>" + bucket + "</Bucket><Key>" + key + "</Key><ETag>\"multipart-"
+					+ parts.size() + "\"</ETag></CompleteMultipartUploadResult>";
+		}
+		send(exchange, 200, "application/xml", ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + xml).getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+		if (contentType != null) {
+			exchange.getResponseHeaders().set("Content-Type", contentType);
+		}
+		exchange.sendResponseHeaders(status, body == null || body.length == 0 ? -1 : body.length);
+		if (body != null && body.length > 0) {
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		}
+	}
+
+	private static Map<String, String> userMetadata(HttpExchange exchange) {
+		Map<String, String> headers = new HashMap<>();
+		exchange.getRequestHeaders().forEach((name, values) -> {
+			if (name.toLowerCase().startsWith("x-amz-meta-")) {
+				headers.put(name.toLowerCase(), values.get(0));
+			}
+		});
+		return headers;
+	}
+
+	private static String etag(byte[] body) {
+		return "\"" + DigestUtils.md5DigestAsHex(body) + "\"";
+	}
+
+	private static Map<String, String> query(String raw) {
+		Map<String, String> query = new HashMap<>();
+		if (raw == null) {
+			return query;
+		}
+		for (String pair : raw.split("&")) {
+			int eq = pair.indexOf('=');
+			String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+			query.put(name, eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+		}
+		return query;
+	}
+}
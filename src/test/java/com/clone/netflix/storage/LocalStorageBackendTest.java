@@ -0,0 +1,57 @@
+package com.clone.netflix.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocalStorageBackendTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void outputWrittenInPlaceIsNotCopied() throws Exception {
+		Path root = Files.createDirectories(dir.resolve("hls"));
+		Path videoDir = Files.createDirectories(root.resolve("video/0"));
+		Path segment = Files.writeString(videoDir.resolve("segment_000.ts"), "segment");
+		long modified = Files.getLastModifiedTime(segment).toMillis();
+		LocalStorageBackend storage = new LocalStorageBackend(root);
+
+		storage.writeAll("video", root.resolve("video"));
+
+		assertEquals(modified, Files.getLastModifiedTime(segment).toMillis());
+		assertEquals(7, storage.stat("video/0/segment_000.ts").size());
+	}
+
+	@Test
+	void publishesAndReadsRanges() throws Exception {
+		Path workDir = Files.createDirectories(dir.resolve("work/0"));
+		Files.writeString(workDir.resolve("segment_000.ts"), "0123456789");
+		LocalStorageBackend storage = new LocalStorageBackend(dir.resolve("store"));
+
+		storage.writeAll("video", dir.resolve("work"));
+
+		try (InputStream in = storage.read("video/0/segment_000.ts", 2, 5)) {
+			assertEquals("23456", new String(in.readAllBytes()));
+		}
+		storage.deleteAll("video");
+		assertNull(storage.stat("video/0/segment_000.ts"));
+		assertTrue(Files.exists(workDir.resolve("segment_000.ts")));
+	}
+
+	@Test
+	void keysStayUnderTheRoot() {
+		LocalStorageBackend storage = new LocalStorageBackend(dir.resolve("store"));
+
+		assertThrows(IllegalArgumentException.class, () -> storage.stat("../secret"));
+		assertThrows(IllegalArgumentException.class, () -> storage.localPath("video/../../secret"));
+	}
+}
@@ -0,0 +1,120 @@
+package com.clone.netflix.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class S3StorageBackendTest {
+
+	private static final long MIB = 1024 * 1024;
+
+	@TempDir
+	Path dir;
+
+	private FakeS3Server server;
+
+	private S3Client client;
+
+	private S3StorageBackend storage;
+
+	@BeforeEach
+	void start() throws Exception {
+		server = new FakeS3Server("netflix");
+		client = S3StorageBackend.client(server.endpoint(), "us-east-1", "test", "test", 16);
+		storage = new S3StorageBackend(client, "netflix", "hls/", 5 * MIB, 5 * MIB, 4);
+	}
+
+	@AfterEach
+	void stop() {
+		client.close();
+		server.close();
+	}
+
+	@Test
+	void writesStatsAndReadsRanges() throws Exception {
+		byte[] content = random(1000);
+		Path file = Files.write(dir.resolve("segment_000.ts"), content);
+
+		storage.write("video/0/segment_000.ts", file);
+
+		StorageBackend.StoredObject object = storage.stat("video/0/segment_000.ts");
+		assertEquals(1000, object.size());
+		assertTrue(object.etag().startsWith("\""));
+		try (InputStream in = storage.read("video/0/segment_000.ts", 100, 200)) {
+			byte[] expected = new byte[200];
+			System.arraycopy(content, 100, expected, 0, 200);
+			assertArrayEquals(expected, in.readAllBytes());
+		}
+	}
+
+	@Test
+	void statReportsTheModificationTimeOfTheUploadedFile() throws Exception {
+		Path small = Files.write(dir.resolve("segment_000.ts"), random(1000));
+		Path big = Files.write(dir.resolve("rendition.mp4"), random((int) (6 * MIB)));
+		Files.setLastModifiedTime(small, FileTime.fromMillis(1_600_000_000_123L));
+		Files.setLastModifiedTime(big, FileTime.fromMillis(1_600_000_000_456L));
+
+		storage.write("video/0/segment_000.ts", small);
+		storage.write("video/0/rendition.mp4", big);
+
+		assertEquals(1_600_000_000_123L, storage.stat("video/0/segment_000.ts").lastModified());
+		assertEquals(1_600_000_000_456L, storage.stat("video/0/rendition.mp4").lastModified());
+	}
+
+	@Test
+	void missingObject() throws Exception {
+		assertNull(storage.stat("video/master.m3u8"));
+		assertThrows(NoSuchFileException.class, () -> storage.read("video/master.m3u8", 0, 10));
+	}
+
+	@Test
+	void bigFileIsUploadedInParts() throws Exception {
+		byte[] content = random((int) (12 * MIB));
+		Path file = Files.write(dir.resolve("rendition.mp4"), content);
+
+		storage.write("video/0/rendition.mp4", file);
+
+		assertEquals(3, server.partsReceived.get());
+		assertArrayEquals(content, server.objects.get("hls/video/0/rendition.mp4"));
+	}
+
+	@Test
+	void publishesAndDeletesAWholeVideo() throws Exception {
+		Path videoDir = Files.createDirectories(dir.resolve("video"));
+		Files.writeString(videoDir.resolve("master.m3u8"), "#EXTM3U\n");
+		Files.createDirectories(videoDir.resolve("0"));
+		Files.writeString(videoDir.resolve("0/playlist.m3u8"), "#EXTM3U\n");
+		Files.write(videoDir.resolve("0/segment_000.ts"), random(100));
+		Files.write(dir.resolve("other.ts"), random(10));
+		storage.write("video2/0/segment_000.ts", dir.resolve("other.ts"));
+
+		storage.writeAll("video", videoDir);
+		assertEquals(Set.of("hls/video/master.m3u8", "hls/video/0/playlist.m3u8", "hls/video/0/segment_000.ts",
+				"hls/video2/0/segment_000.ts"), server.keys());
+
+		storage.deleteAll("video");
+		assertEquals(Set.of("hls/video2/0/segment_000.ts"), server.keys());
+	}
+
+	private static byte[] random(int size) {
+		byte[] bytes = new byte[size];
+		new Random(size).nextBytes(bytes);
+		return bytes;
+	}
+}
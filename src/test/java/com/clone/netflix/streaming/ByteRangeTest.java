@@ -0,0 +1,36 @@
+package com.clone.netflix.streaming;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ByteRangeTest {
+
+	@Test
+	void parsesClosedOpenAndSuffixRanges() {
+		assertEquals(new ByteRange(0, 99), ByteRange.parse("bytes=0-99", 1000));
+		assertEquals(new ByteRange(500, 999), ByteRange.parse("bytes=500-", 1000));
+		assertEquals(new ByteRange(900, 999), ByteRange.parse("bytes=-100", 1000));
+		assertEquals(new ByteRange(0, 999), ByteRange.parse("bytes=-5000", 1000));
+		// end past the file is clamped
+		assertEquals(new ByteRange(10, 999), ByteRange.parse("bytes=10-5000", 1000));
+		assertEquals("bytes 10-19/1000", new ByteRange(10, 19).contentRange(1000));
+	}
+
+	@Test
+	void unsatisfiableWhenStartIsPastTheEnd() {
+		assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=1000-", 1000));
+		assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=-0", 1000));
+	}
+
+	@Test
+	void ignoresHeadersWeDoNotServe() {
+		assertNull(ByteRange.parse(null, 1000));
+		assertNull(ByteRange.parse("items=0-1", 1000));
+		assertNull(ByteRange.parse("bytes=0-1,5-6", 1000));
+		assertNull(ByteRange.parse("bytes=9-3", 1000));
+		assertNull(ByteRange.parse("bytes=a-b", 1000));
+	}
+}
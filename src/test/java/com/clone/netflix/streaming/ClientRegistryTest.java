@@ -0,0 +1,68 @@
+package com.clone.netflix.streaming;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClientRegistryTest {
+
+	@Test
+	void keepsEntriesUntilTheyGoIdle() throws Exception {
+		ClientRegistry<String> registry = new ClientRegistry<>(1000, TimeUnit.MILLISECONDS.toNanos(50));
+		registry.put("a", "first");
+
+		assertEquals("first", registry.get("a"));
+		assertSame(registry.get("a"), registry.computeIfAbsent("a", id -> "second"));
+
+		Thread.sleep(100);
+		assertNull(registry.get("a"));
+		assertEquals("second", registry.computeIfAbsent("a", id -> "second"));
+	}
+
+	@Test
+	void idleEntriesLeaveAsNewOnesComeIn() throws Exception {
+		ClientRegistry<String> registry = new ClientRegistry<>(100_000, TimeUnit.MILLISECONDS.toNanos(50));
+		for (int i = 0; i < 1000; i++) {
+			registry.put("idle-" + i, "idle");
+		}
+		Thread.sleep(100);
+		for (int i = 0; i < 5000; i++) {
+			registry.put("active-" + i, "active");
+		}
+
+		// every insert drops its stripe's eldest entry if that one is idle
+		assertEquals(5000, registry.size());
+	}
+
+	@Test
+	void sizeIsBounded() {
+		ClientRegistry<String> registry = new ClientRegistry<>(160, TimeUnit.MINUTES.toNanos(2));
+		for (int i = 0; i < 10_000; i++) {
+			registry.put("client-" + i, "value");
+		}
+
+		assertTrue(registry.size() <= 160);
+		// the most recent entries stay
+		assertEquals("value", registry.get("client-9999"));
+	}
+
+	@Test
+	void clientsAreNotWhatTheyClaim() {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+		request.setRemoteAddr("192.0.2.1");
+		request.addHeader(ClientRegistry.SESSION_HEADER, "session");
+
+		assertEquals("session", ClientRegistry.sessionId(request));
+		// the header is the client's to choose, the address isn't
+		assertEquals("192.0.2.1", ClientRegistry.clientId(request));
+
+		request.setUserPrincipal(() -> "alice");
+		assertEquals("user alice", ClientRegistry.clientId(request));
+	}
+}
@@ -0,0 +1,154 @@
+package com.clone.netflix.streaming;
+
+import com.clone.netflix.metrics.StreamingMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EgressShaperTest {
+
+	private static final int MB = 1024 * 1024;
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	@Test
+	void offWithoutRates() {
+		assertNull(shaper(0, 0, 64 * 1024).pacer(request("192.0.2.1", "a"), 6));
+	}
+
+	@Test
+	void bucketAllowsABurstThenTheRate() {
+		EgressShaper.Rate rate = new EgressShaper.Rate(MB, MB);
+
+		assertEquals(0, rate.reserve(MB));
+		long wait = rate.reserve(MB);
+		assertTrue(wait > TimeUnit.MILLISECONDS.toNanos(900) && wait <= TimeUnit.SECONDS.toNanos(1), "waited " + wait);
+	}
+
+	@Test
+	void bulkOnlyTakesWhatIsLeftOver() {
+		EgressShaper.Rate rate = new EgressShaper.Rate(MB, 64 * 1024);
+
+		assertEquals(0, rate.tryReserve(64 * 1024));
+		// playback queues up behind
+		assertTrue(rate.reserve(64 * 1024) > 0);
+		assertTrue(rate.tryReserve(64 * 1024) > 0);
+	}
+
+	@Test
+	void clientsFetchingAheadOfRealTimeAreBulk() {
+		EgressShaper shaper = shaper(100L * MB, 0, 64 * 1024);
+
+		assertTrue(shaper.pacer(request("192.0.2.1", "player"), 6).isPlayback());
+		for (int i = 0; i < 30; i++) {
+			shaper.pacer(request("192.0.2.2", "scraper"), 6);
+		}
+		assertFalse(shaper.pacer(request("192.0.2.2", "scraper"), 6).isPlayback());
+	}
+
+	@Test
+	void rotatingSessionIdsDoNotResetTheLead() {
+		EgressShaper shaper = shaper(100L * MB, 0, 64 * 1024);
+
+		for (int i = 0; i < 100; i++) {
+			shaper.pacer(request("192.0.2.2", "scraper-" + i), 6);
+		}
+
+		// 600 s fetched by at most 4 players at once
+		assertFalse(shaper.pacer(request("192.0.2.2", "scraper-100"), 6).isPlayback());
+		// a household with a few screens is still playback
+		for (int i = 0; i < 3; i++) {
+			for (int screen = 0; screen < 3; screen++) {
+				assertTrue(shaper.pacer(request("192.0.2.3", "screen-" + screen), 6).isPlayback());
+			}
+		}
+	}
+
+	@Test
+	void clientRateHoldsBackOneClient() throws Exception {
+		int chunk = 64 * 1024;
+		EgressShaper shaper = shaper(0, 4L * MB, chunk);
+		EgressShaper.Pacer pacer = shaper.pacer(request("192.0.2.1", "a"), 0);
+
+		long start = System.nanoTime();
+		for (long end = chunk; end <= MB; end += chunk) {
+			pacer.pace(end);
+		}
+
+		// 1 MiB at 4 MiB/s, less the one-chunk burst
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+		assertTrue(registry.get("hls.egress.throttled.bytes").tag("traffic", "playback").counter().count() > 0);
+	}
+
+	@Test
+	void rotatingSessionIdsShareTheClientRate() throws Exception {
+		int chunk = 64 * 1024;
+		EgressShaper shaper = shaper(0, 4L * MB, chunk);
+
+		long start = System.nanoTime();
+		for (int i = 0; i < MB / chunk; i++) {
+			// a fresh session id for every chunk, from the same address
+			shaper.pacer(request("192.0.2.1", "session-" + i), 0).pace(chunk);
+		}
+
+		// as if one session had fetched the whole MiB
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+	}
+
+	@Test
+	void bulkQueuesOnceItHasWaitedLongEnough() throws Exception {
+		int chunk = 16 * 1024;
+		EgressShaper shaper = shaper(MB, 0, chunk, 100);
+		EgressShaper.Pacer player = shaper.pacer(request("192.0.2.1", "player"), 0);
+		EgressShaper.Pacer scraper = shaper.pacer(request("192.0.2.2", "scraper"), 1000);
+		assertFalse(scraper.isPlayback());
+
+		AtomicBoolean done = new AtomicBoolean();
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			// playback keeps the link saturated, nothing is ever left over
+			executor.submit(() -> {
+				long bytes = 0;
+				while (!done.get() && System.nanoTime() < deadline) {
+					player.pace(bytes + chunk);
+					bytes += chunk;
+				}
+				return bytes;
+			});
+			Thread.sleep(50);
+
+			long start = System.nanoTime();
+			scraper.pace(chunk);
+			long elapsed = System.nanoTime() - start;
+			done.set(true);
+
+			assertTrue(elapsed < TimeUnit.SECONDS.toNanos(2), "bulk waited " + elapsed);
+		}
+	}
+
+	private EgressShaper shaper(long bytesPerSecond, long clientBytesPerSecond, int chunk) {
+		return shaper(bytesPerSecond, clientBytesPerSecond, chunk, 5000);
+	}
+
+	private EgressShaper shaper(long bytesPerSecond, long clientBytesPerSecond, int chunk, long bulkMaxWaitMillis) {
+		StreamingMetrics metrics = new StreamingMetrics(registry, new HlsCache(1024, 1024), Executors.newSingleThreadExecutor());
+		return new EgressShaper(metrics, bytesPerSecond, chunk, clientBytesPerSecond, chunk, chunk, 120, bulkMaxWaitMillis);
+	}
+
+	private static MockHttpServletRequest request(String address, String session) {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+		request.setRemoteAddr(address);
+		request.addHeader("X-Playback-Session-Id", session);
+		return request;
+	}
+}
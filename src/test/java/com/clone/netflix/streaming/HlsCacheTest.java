@@ -0,0 +1,170 @@
+package com.clone.netflix.streaming;
+
+import com.clone.netflix.storage.LocalStorageBackend;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HlsCacheTest {
+
+	// 16 stripes of 4096 bytes: four 1000 byte entries per stripe, three of them protected
+	private static final int ENTRY = 1000;
+
+	private final HlsCache cache = new HlsCache(1024 * 1024, 64 * 1024);
+
+	private final HlsCache small = new HlsCache(16 * 4096, 64 * 1024);
+
+	@TempDir
+	Path dir;
+
+	private Path file;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		file = dir.resolve("video/0/segment.ts");
+		Files.createDirectories(file.getParent());
+		Files.write(file, new byte[ENTRY]);
+	}
+
+	@Test
+	void segmentsAreAdmittedOnTheirSecondMiss() {
+		HlsCacheKey key = new HlsCacheKey("video", 0, "segment_000.ts");
+
+		assertFalse(cache.admit(key));
+		assertTrue(cache.admit(key));
+		// admitted once: the next miss starts over
+		assertFalse(cache.admit(key));
+	}
+
+	@Test
+	void recentMissesAreBounded() {
+		HlsCacheKey first = new HlsCacheKey("video", 0, "segment_000.ts");
+		cache.admit(first);
+		for (int i = 1; i <= 100_000; i++) {
+			cache.admit(new HlsCacheKey("video", 0, "segment_" + i + ".ts"));
+		}
+
+		assertFalse(cache.admit(first));
+	}
+
+	@Test
+	void leastRecentlyUsedIsEvictedOverTheStripeBudget() throws IOException {
+		List<HlsCacheKey> keys = keysInOneStripe(5);
+		for (HlsCacheKey key : keys) {
+			load(key);
+		}
+
+		assertFalse(small.contains(keys.get(0)));
+		for (int i = 1; i < 5; i++) {
+			assertTrue(small.contains(keys.get(i)));
+		}
+		assertEquals(1, small.stats().evictions());
+		assertEquals(4L * ENTRY, small.stats().bytes());
+	}
+
+	@Test
+	void aSecondHitProtectsAnEntryFromAScan() throws IOException {
+		List<HlsCacheKey> keys = keysInOneStripe(5);
+		load(keys.get(0));
+		assertNotNull(small.get(keys.get(0)));
+
+		for (int i = 1; i < 5; i++) {
+			load(keys.get(i));
+		}
+
+		// the scan evicted from probation, not the promoted entry
+		assertTrue(small.contains(keys.get(0)));
+		assertFalse(small.contains(keys.get(1)));
+	}
+
+	@Test
+	void protectedOverflowIsDemotedToProbation() throws IOException {
+		List<HlsCacheKey> keys = keysInOneStripe(5);
+		for (int i = 0; i < 4; i++) {
+			load(keys.get(i));
+			small.get(keys.get(i));
+		}
+		// only three fit in the protected segment: the first went back to probation
+		assertEquals(0, small.stats().evictions());
+
+		load(keys.get(4));
+
+		assertFalse(small.contains(keys.get(0)));
+		for (int i = 1; i < 5; i++) {
+			assertTrue(small.contains(keys.get(i)));
+		}
+	}
+
+	@Test
+	void prefetchedEntriesStayOnProbationAfterTheirFirstHit() throws IOException {
+		List<HlsCacheKey> keys = keysInOneStripe(5);
+		assertTrue(small.prefetch(keys.get(0), new LocalStorageBackend(dir), "video/0/segment.ts", ENTRY, 0));
+		assertNotNull(small.get(keys.get(0)));
+
+		for (int i = 1; i < 5; i++) {
+			load(keys.get(i));
+		}
+
+		assertFalse(small.contains(keys.get(0)));
+	}
+
+	@Test
+	void invalidateDropsOneVideo() throws IOException {
+		HlsCacheKey kept = new HlsCacheKey("kept", 0, "segment_000.ts");
+		cache.load(kept, file, ENTRY, 0);
+		for (int i = 0; i < 10; i++) {
+			cache.load(new HlsCacheKey("dropped", 0, "segment_" + i + ".ts"), file, ENTRY, 0);
+		}
+
+		cache.invalidate("dropped");
+
+		assertTrue(cache.contains(kept));
+		assertFalse(cache.contains(new HlsCacheKey("dropped", 0, "segment_0.ts")));
+		assertEquals(1, cache.stats().entries());
+		assertEquals(ENTRY, cache.stats().bytes());
+	}
+
+	@Test
+	void hitsAndMissesAreCounted() throws IOException {
+		HlsCacheKey key = new HlsCacheKey("video", 0, "segment_000.ts");
+
+		assertNull(cache.get(key));
+		cache.load(key, file, ENTRY, 0);
+		assertNotNull(cache.get(key));
+		assertNotNull(cache.get(key));
+		// contains() is neither
+		cache.contains(key);
+
+		HlsCache.Stats stats = cache.stats();
+		assertEquals(2, stats.hits());
+		assertEquals(1, stats.misses());
+		assertEquals(0, stats.evictions());
+	}
+
+	private void load(HlsCacheKey key) throws IOException {
+		assertNotNull(small.load(key, file, ENTRY, 0));
+	}
+
+	private static List<HlsCacheKey> keysInOneStripe(int count) {
+		List<HlsCacheKey> keys = new ArrayList<>();
+		for (int i = 0; keys.size() < count; i++) {
+			HlsCacheKey key = new HlsCacheKey("video", 0, "segment_" + i + ".ts");
+			if (HlsCache.stripeIndex(key) == 0) {
+				keys.add(key);
+			}
+		}
+		return keys;
+	}
+}
@@ -0,0 +1,240 @@
+package com.clone.netflix.streaming;
+
+import com.clone.netflix.metrics.StreamingMetrics;
+import com.clone.netflix.storage.LocalStorageBackend;
+import com.clone.netflix.storage.StorageBackend;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class HlsFileServerTest {
+
+	private static final String PLAYLIST = "#EXTM3U\n#EXT-X-TARGETDURATION:6\n#EXTINF:6.000000,\nsegment_000.ts\n#EXT-X-ENDLIST\n";
+
+	private static final HlsCacheKey SEGMENT = new HlsCacheKey("video", 0, "segment_000.ts");
+
+	private static final HlsCacheKey RENDITION_PLAYLIST = new HlsCacheKey("video", 0, "playlist.m3u8");
+
+	@TempDir
+	Path root;
+
+	private Path hlsDir;
+
+	private byte[] segment;
+
+	private DiskIoPermits diskIoPermits;
+
+	private HlsFileServer server;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		hlsDir = Files.createDirectories(root.resolve("hls"));
+		Path renditionDir = Files.createDirectories(hlsDir.resolve("video/0"));
+		segment = new byte[100 * 1024];
+		new Random(1).nextBytes(segment);
+		Files.write(renditionDir.resolve("segment_000.ts"), segment);
+		Files.writeString(renditionDir.resolve("playlist.m3u8"), PLAYLIST);
+		// next to HLS_DIR, must never be reachable through it
+		Files.writeString(root.resolve("secret.ts"), "secret");
+
+		HlsCache cache = new HlsCache(1024 * 1024, 64 * 1024);
+		StreamingMetrics metrics = new StreamingMetrics(new SimpleMeterRegistry(), cache, Executors.newSingleThreadExecutor());
+		HlsMetadataIndex metadataIndex = new HlsMetadataIndex();
+		StorageBackend storage = new LocalStorageBackend(hlsDir);
+		diskIoPermits = new DiskIoPermits(4, 100);
+		HlsStorageKeys storageKeys = HlsStorageKeys.perVideo();
+		SegmentPrefetcher prefetcher = new SegmentPrefetcher(cache, metadataIndex, diskIoPermits, metrics, storage, storageKeys,
+				hlsDir.toString(), 0, 0, 1);
+		server = new HlsFileServer(cache, metadataIndex, diskIoPermits, metrics, new OpenFileCache(16), storage, storageKeys,
+				prefetcher, new EgressShaper(metrics, 0, 0, 0, 0, 1024 * 1024, 120, 5000));
+		ReflectionTestUtils.setField(server, "HLS_DIR", hlsDir.toString());
+		ReflectionTestUtils.setField(server, "playlistCacheControl", "public, max-age=60");
+		ReflectionTestUtils.setField(server, "segmentCacheControl", "public, max-age=31536000, immutable");
+	}
+
+	@Test
+	void servesAWholeSegment() throws Exception {
+		MockHttpServletResponse response = segment(get());
+
+		assertEquals(200, response.getStatus());
+		assertEquals(HlsFileServer.SEGMENT_CONTENT_TYPE, response.getContentType());
+		assertEquals(segment.length, response.getContentLengthLong());
+		assertEquals("bytes", response.getHeader("Accept-Ranges"));
+		assertEquals("public, max-age=31536000, immutable", response.getHeader("Cache-Control"));
+		assertNotNull(response.getHeader("ETag"));
+		assertNotNull(response.getHeader("Last-Modified"));
+		assertArrayEquals(segment, response.getContentAsByteArray());
+	}
+
+	@Test
+	void servesAPlaylist() throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		server.servePlaylist(get(), response, RENDITION_PLAYLIST);
+
+		assertEquals(200, response.getStatus());
+		assertEquals(HlsFileServer.PLAYLIST_CONTENT_TYPE, response.getContentType());
+		assertEquals("public, max-age=60", response.getHeader("Cache-Control"));
+		assertEquals(PLAYLIST, response.getContentAsString(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void servesARange() throws Exception {
+		MockHttpServletRequest request = get();
+		request.addHeader("Range", "bytes=1000-1999");
+
+		MockHttpServletResponse response = segment(request);
+
+		assertEquals(206, response.getStatus());
+		assertEquals("bytes 1000-1999/" + segment.length, response.getHeader("Content-Range"));
+		assertEquals(1000, response.getContentLengthLong());
+		assertArrayEquals(Arrays.copyOfRange(segment, 1000, 2000), response.getContentAsByteArray());
+	}
+
+	@Test
+	void rangePastTheEndIsUnsatisfiable() throws Exception {
+		MockHttpServletRequest request = get();
+		request.addHeader("Range", "bytes=" + segment.length + "-");
+
+		MockHttpServletResponse response = segment(request);
+
+		assertEquals(416, response.getStatus());
+		assertEquals("bytes */" + segment.length, response.getHeader("Content-Range"));
+		assertEquals(0, response.getContentAsByteArray().length);
+	}
+
+	@Test
+	void ifRangeWithTheCurrentEtagKeepsTheRange() throws Exception {
+		String etag = segment(get()).getHeader("ETag");
+		MockHttpServletRequest request = get();
+		request.addHeader("Range", "bytes=0-9");
+		request.addHeader("If-Range", etag);
+
+		assertEquals(206, segment(request).getStatus());
+	}
+
+	@Test
+	void ifRangeWithAStaleEtagSendsTheWholeFile() throws Exception {
+		MockHttpServletRequest request = get();
+		request.addHeader("Range", "bytes=0-9");
+		request.addHeader("If-Range", "\"stale\"");
+
+		MockHttpServletResponse response = segment(request);
+
+		assertEquals(200, response.getStatus());
+		assertArrayEquals(segment, response.getContentAsByteArray());
+	}
+
+	@Test
+	void ifNoneMatchWithTheCurrentEtagIsNotModified() throws Exception {
+		String etag = segment(get()).getHeader("ETag");
+		MockHttpServletRequest request = get();
+		request.addHeader("If-None-Match", "\"other\", " + etag);
+
+		MockHttpServletResponse response = segment(request);
+
+		assertEquals(304, response.getStatus());
+		assertEquals(etag, response.getHeader("ETag"));
+		assertEquals(0, response.getContentAsByteArray().length);
+	}
+
+	@Test
+	void ifModifiedSinceTheLastModificationIsNotModified() throws Exception {
+		String lastModified = segment(get()).getHeader("Last-Modified");
+		MockHttpServletRequest request = get();
+		request.addHeader("If-Modified-Since", lastModified);
+
+		assertEquals(304, segment(request).getStatus());
+	}
+
+	@Test
+	void headSendsHeadersOnly() throws Exception {
+		MockHttpServletResponse response = segment(new MockHttpServletRequest("HEAD", "/"));
+
+		assertEquals(200, response.getStatus());
+		assertEquals(segment.length, response.getContentLengthLong());
+		assertEquals(0, response.getContentAsByteArray().length);
+	}
+
+	@Test
+	void largeBodiesAreHandedToSendfile() throws Exception {
+		MockHttpServletRequest request = get();
+		request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+		request.addHeader("Range", "bytes=100-");
+
+		MockHttpServletResponse response = segment(request);
+
+		assertEquals(206, response.getStatus());
+		assertEquals(hlsDir.resolve("video/0/segment_000.ts").toAbsolutePath().toString(),
+				request.getAttribute("org.apache.tomcat.sendfile.filename"));
+		assertEquals(100L, request.getAttribute("org.apache.tomcat.sendfile.start"));
+		assertEquals((long) segment.length, request.getAttribute("org.apache.tomcat.sendfile.end"));
+		// the connector writes the body
+		assertEquals(0, response.getContentAsByteArray().length);
+	}
+
+	@Test
+	void bodyReadsTakeADiskPermit() throws Exception {
+		// indexed: the next request only reads the body
+		segment(get());
+		for (int i = 0; i < 4; i++) {
+			diskIoPermits.acquire();
+		}
+
+		MockHttpServletResponse response = segment(get());
+
+		assertEquals(503, response.getStatus());
+		assertEquals("1", response.getHeader("Retry-After"));
+		assertEquals(0, response.getContentAsByteArray().length);
+
+		diskIoPermits.release();
+		assertEquals(200, segment(get()).getStatus());
+	}
+
+	@Test
+	void missingFileIsNotFound() throws Exception {
+		assertEquals(404, segment(get(), new HlsCacheKey("video", 0, "segment_999.ts")).getStatus());
+	}
+
+	@Test
+	void keysLeavingHlsDirAreRejected() throws Exception {
+		HlsCacheKey escape = new HlsCacheKey("video", 0, "../../../secret.ts");
+
+		assertNull(HlsFileServer.localFile(hlsDir.toString(), escape));
+		assertNull(HlsFileServer.localFile(hlsDir.toString(), new HlsCacheKey("..", HlsCacheKey.MASTER, "secret.ts")));
+		assertEquals(hlsDir.resolve("video/0/segment_000.ts").toAbsolutePath(), HlsFileServer.localFile(hlsDir.toString(), SEGMENT));
+
+		MockHttpServletResponse response = segment(get(), escape);
+		assertEquals(404, response.getStatus());
+		assertEquals(0, response.getContentAsByteArray().length);
+	}
+
+	private MockHttpServletResponse segment(MockHttpServletRequest request) throws Exception {
+		return segment(request, SEGMENT);
+	}
+
+	private MockHttpServletResponse segment(MockHttpServletRequest request, HlsCacheKey key) throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		server.serveSegment(request, response, key);
+		return response;
+	}
+
+	private static MockHttpServletRequest get() {
+		return new MockHttpServletRequest("GET", "/");
+	}
+}
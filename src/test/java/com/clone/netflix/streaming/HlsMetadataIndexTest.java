@@ -0,0 +1,118 @@
+package com.clone.netflix.streaming;
+
+import com.clone.netflix.storage.LocalStorageBackend;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HlsMetadataIndexTest {
+
+	private static final String PLAYLIST = "#EXTM3U\n#EXT-X-VERSION:3\n#EXT-X-TARGETDURATION:6\n"
+			+ "#EXTINF:6.000,\nsegment_000.ts\n#EXTINF:4.500,\nsegment_001.ts\n#EXT-X-ENDLIST\n";
+
+	@TempDir
+	Path hlsDir;
+
+	private final HlsMetadataIndex index = new HlsMetadataIndex();
+
+	@Test
+	void indexesSegmentsWithTheirDuration() throws Exception {
+		index.index("video", output(hlsDir.resolve("video")));
+
+		HlsMetadataIndex.FileMetadata segment = index.get(new HlsCacheKey("video", 0, "segment_001.ts"));
+		assertEquals(100, segment.size());
+		assertEquals(4.5, segment.durationSeconds(), 0.001);
+		assertEquals(0, index.get(HlsCacheKey.master("video")).durationSeconds());
+	}
+
+	@Test
+	void missingFilesOfACompleteVideoAreKnown() throws Exception {
+		index.index("video", output(hlsDir.resolve("video")));
+
+		assertTrue(index.isKnownMissing(new HlsCacheKey("video", 0, "segment_002.ts")));
+		assertTrue(index.isKnownMissing(new HlsCacheKey("video", 0, "../../etc/passwd")));
+		assertFalse(index.isKnownMissing(new HlsCacheKey("video", 0, "segment_000.ts")));
+		// never indexed: the disk has to be asked
+		assertFalse(index.isKnownMissing(new HlsCacheKey("other", 0, "segment_000.ts")));
+	}
+
+	@Test
+	void rewrittenVideosAreNotComplete() throws Exception {
+		index.index("video", output(hlsDir.resolve("video")));
+		HlsCacheKey key = new HlsCacheKey("video", 0, "segment_002.ts");
+
+		index.markGrowing("video");
+		assertFalse(index.isKnownMissing(key));
+
+		index.markComplete("video");
+		index.invalidate("video");
+		assertFalse(index.isKnownMissing(key));
+	}
+
+	@Test
+	void remoteObjectsGetTheValidatorsOfTheLocalFile(@TempDir Path storageDir) throws Exception {
+		Path file = output(hlsDir.resolve("video")).resolve("0/segment_000.ts");
+		LocalStorageBackend storage = new LocalStorageBackend(storageDir);
+		storage.writeAll(HlsStorageKeys.contentPrefix("abc"), hlsDir.resolve("video"));
+		HlsCacheKey key = new HlsCacheKey("video", 0, "segment_000.ts");
+
+		HlsMetadataIndex.FileMetadata local = index.lookup(key, file);
+		// the backend's own ETag (size-mtime here, md5-N for multipart S3 uploads) is not the local one
+		HlsMetadataIndex.FileMetadata remote = new HlsMetadataIndex()
+				.lookup(key, storage, HlsStorageKeys.contentPrefix("abc") + "/" + key.path());
+
+		assertEquals(local.etag(), remote.etag());
+		assertEquals(local.lastModified(), remote.lastModified());
+		assertTrue(remote.remote());
+		// from the rendition playlist, there is no scan of remote titles
+		assertEquals(6.0, remote.durationSeconds(), 0.001);
+		assertEquals(6.0, local.durationSeconds(), 0.001);
+	}
+
+	@Test
+	void segmentsLookedUpBeforeTheirPlaylistListsThemGetTheirDurationLater() throws Exception {
+		Path renditionDir = output(hlsDir.resolve("video")).resolve("0");
+		Files.write(renditionDir.resolve("segment_002.ts"), new byte[100]);
+		HlsCacheKey key = new HlsCacheKey("video", 0, "segment_002.ts");
+
+		index.markGrowing("video");
+		assertEquals(6.0, index.peek(new HlsCacheKey("video", 0, "segment_000.ts"), renditionDir.resolve("segment_000.ts")).durationSeconds(), 0.001);
+		assertEquals(0, index.peek(key, renditionDir.resolve("segment_002.ts")).durationSeconds());
+
+		Files.writeString(renditionDir.resolve("playlist.m3u8"), PLAYLIST.replace("#EXT-X-ENDLIST\n", "#EXTINF:2.000,\nsegment_002.ts\n"));
+		assertEquals(2.0, index.peek(key, renditionDir.resolve("segment_002.ts")).durationSeconds(), 0.001);
+	}
+
+	@Test
+	void scanIndexesSharedOutputOnce() throws Exception {
+		Path content = output(hlsDir.resolve("_content/abc"));
+		Files.createSymbolicLink(hlsDir.resolve("first"), content);
+		Files.createSymbolicLink(hlsDir.resolve("second"), content);
+		output(hlsDir.resolve("third"));
+
+		assertEquals(3, index.scan(hlsDir, 2));
+
+		HlsMetadataIndex.FileMetadata first = index.get(new HlsCacheKey("first", 0, "segment_000.ts"));
+		assertSame(first, index.get(new HlsCacheKey("second", 0, "segment_000.ts")));
+		assertEquals(6.0, first.durationSeconds(), 0.001);
+		assertTrue(index.isKnownMissing(new HlsCacheKey("third", 1, "segment_000.ts")));
+		assertNull(index.get(new HlsCacheKey("_content", 0, "segment_000.ts")));
+	}
+
+	private static Path output(Path videoDir) throws Exception {
+		Path renditionDir = Files.createDirectories(videoDir.resolve("0"));
+		Files.writeString(videoDir.resolve("master.m3u8"), "#EXTM3U\n");
+		Files.writeString(renditionDir.resolve("playlist.m3u8"), PLAYLIST);
+		Files.write(renditionDir.resolve("segment_000.ts"), new byte[100]);
+		Files.write(renditionDir.resolve("segment_001.ts"), new byte[100]);
+		return videoDir;
+	}
+}
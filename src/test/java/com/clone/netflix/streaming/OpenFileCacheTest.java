@@ -0,0 +1,71 @@
+package com.clone.netflix.streaming;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OpenFileCacheTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void requestsShareOneChannel() throws Exception {
+		OpenFileCache cache = new OpenFileCache(4);
+		Path file = write("segment.mp4");
+
+		try (OpenFileCache.OpenFile first = cache.open(key("segment.mp4"), file, 1);
+			 OpenFileCache.OpenFile second = cache.open(key("segment.mp4"), file, 1)) {
+			assertSame(first.channel(), second.channel());
+		}
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	void evictedChannelStaysOpenForItsReader() throws Exception {
+		OpenFileCache cache = new OpenFileCache(1);
+		Path a = write("a.mp4");
+		Path b = write("b.mp4");
+
+		OpenFileCache.OpenFile reading = cache.open(key("a.mp4"), a, 1);
+		cache.open(key("b.mp4"), b, 1).close();
+
+		assertTrue(reading.channel().isOpen());
+		reading.close();
+		assertFalse(reading.channel().isOpen());
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	void changedFileIsReopened() throws Exception {
+		OpenFileCache cache = new OpenFileCache(4);
+		Path file = write("segment.mp4");
+
+		OpenFileCache.OpenFile before = cache.open(key("segment.mp4"), file, 1);
+		before.close();
+		OpenFileCache.OpenFile after = cache.open(key("segment.mp4"), file, 2);
+		after.close();
+
+		assertNotSame(before.channel(), after.channel());
+		assertFalse(before.channel().isOpen());
+		cache.invalidate("video");
+		assertFalse(after.channel().isOpen());
+		assertEquals(0, cache.size());
+	}
+
+	private Path write(String name) throws Exception {
+		return Files.write(dir.resolve(name), new byte[]{1, 2, 3});
+	}
+
+	private static HlsCacheKey key(String name) {
+		return new HlsCacheKey("video", 0, name);
+	}
+}
@@ -0,0 +1,125 @@
+package com.clone.netflix.streaming;
+
+import com.clone.netflix.metrics.StreamingMetrics;
+import com.clone.netflix.storage.LocalStorageBackend;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SegmentPrefetcherTest {
+
+	private static final int SEGMENT_BYTES = 1000;
+
+	@TempDir
+	Path hlsDir;
+
+	private SimpleMeterRegistry registry;
+
+	private SegmentPrefetcher prefetcher;
+
+	@BeforeEach
+	void start() throws Exception {
+		for (int quality = 0; quality < 3; quality++) {
+			Path renditionDir = Files.createDirectories(hlsDir.resolve("video/" + quality));
+			for (int i = 0; i < 6; i++) {
+				Files.write(renditionDir.resolve(String.format("segment_%03d.ts", i)), new byte[SEGMENT_BYTES]);
+			}
+		}
+		prefetcher = prefetcher(2, 64L * SEGMENT_BYTES);
+	}
+
+	@AfterEach
+	void stop() {
+		prefetcher.shutdown();
+	}
+
+	@Test
+	void segmentNumbersKeepTheirWidth() {
+		assertEquals("segment_010.ts", name("segment_009.ts", 10));
+		assertEquals("part_000100.ts", name("part_000099.ts", 100));
+		assertEquals("segment_1000.ts", name("segment_999.ts", 1000));
+		assertFalse(SegmentPrefetcher.numbered("rendition.mp4").matches());
+	}
+
+	@Test
+	void warmsTheNextSegmentsAndTheRenditionBelow() {
+		prefetcher.onSegment(request("a"), new HlsCacheKey("video", 1, "segment_001.ts"));
+
+		assertTrue(prefetcher.isOutstanding(new HlsCacheKey("video", 1, "segment_002.ts")));
+		assertTrue(prefetcher.isOutstanding(new HlsCacheKey("video", 1, "segment_003.ts")));
+		assertTrue(prefetcher.isOutstanding(new HlsCacheKey("video", 0, "segment_002.ts")));
+		assertFalse(prefetcher.isOutstanding(new HlsCacheKey("video", 2, "segment_002.ts")));
+	}
+
+	@Test
+	void followsTheDirectionOfTheLastSwitch() {
+		prefetcher.onSegment(request("a"), new HlsCacheKey("video", 0, "segment_001.ts"));
+		prefetcher.onSegment(request("a"), new HlsCacheKey("video", 1, "segment_002.ts"));
+
+		assertTrue(prefetcher.isOutstanding(new HlsCacheKey("video", 2, "segment_003.ts")));
+	}
+
+	@Test
+	void requestedPrefetchesLeaveTheBudget() throws Exception {
+		HlsCacheKey next = new HlsCacheKey("video", 1, "segment_002.ts");
+		prefetcher.onSegment(request("a"), new HlsCacheKey("video", 1, "segment_001.ts"));
+		awaitOutstandingBytes(3L * SEGMENT_BYTES);
+
+		prefetcher.onSegment(request("a"), next);
+
+		assertFalse(prefetcher.isOutstanding(next));
+		assertEquals(1, registry.get("hls.prefetch.segments").tag("outcome", "used").counter().count());
+	}
+
+	@Test
+	void budgetStopsPrefetch() throws Exception {
+		prefetcher.shutdown();
+		prefetcher = prefetcher(2, 2L * SEGMENT_BYTES);
+
+		prefetcher.onSegment(request("a"), new HlsCacheKey("video", 1, "segment_001.ts"));
+		awaitOutstandingBytes(2L * SEGMENT_BYTES);
+		prefetcher.onSegment(request("b"), new HlsCacheKey("video", 2, "segment_004.ts"));
+
+		assertFalse(prefetcher.isOutstanding(new HlsCacheKey("video", 2, "segment_005.ts")));
+		assertTrue(registry.get("hls.prefetch.segments").tag("outcome", "dropped").counter().count() > 0);
+	}
+
+	private SegmentPrefetcher prefetcher(int segments, long maxBytes) {
+		HlsCache cache = new HlsCache(1024 * 1024, 64 * 1024);
+		registry = new SimpleMeterRegistry();
+		StreamingMetrics metrics = new StreamingMetrics(registry, cache, Executors.newSingleThreadExecutor());
+		return new SegmentPrefetcher(cache, new HlsMetadataIndex(), new DiskIoPermits(16, 1000), metrics,
+				new LocalStorageBackend(hlsDir), HlsStorageKeys.perVideo(), hlsDir.toString(), segments, maxBytes, 2);
+	}
+
+	private void awaitOutstandingBytes(long bytes) throws InterruptedException {
+		for (int i = 0; i < 500 && prefetcher.outstandingBytes() < bytes; i++) {
+			Thread.sleep(10);
+		}
+		assertTrue(prefetcher.outstandingBytes() >= bytes);
+	}
+
+	private static MockHttpServletRequest request(String session) {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+		request.addHeader("X-Playback-Session-Id", session);
+		return request;
+	}
+
+	private static String name(String name, long index) {
+		Matcher matcher = SegmentPrefetcher.numbered(name);
+		assertTrue(matcher.matches());
+		return SegmentPrefetcher.name(matcher, index);
+	}
+}
@@ -0,0 +1,56 @@
+package com.clone.netflix.transcoding;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DashManifestWriterTest {
+
+	private static final List<Rendition> LADDER = Rendition.DEFAULT_LADDER.subList(0, 2);
+
+	@Test
+	void segmentsBecomeByteRangesOfTheSameFile() {
+		List<MediaPlaylist.Segment> content = MediaPlaylist.parse(MediaPlaylistTest.SINGLE_FILE);
+
+		String mpd = DashManifestWriter.build(LADDER, List.of(content, content));
+
+		assertEquals(1, count(mpd, "<Period "));
+		assertEquals(2, count(mpd, "<Representation "));
+		assertTrue(mpd.contains("<Initialization sourceURL=\"segment.mp4\" range=\"0-811\"/>"));
+		assertTrue(mpd.contains("<SegmentURL media=\"segment.mp4\" mediaRange=\"812-400811\"/>"));
+		assertTrue(mpd.contains("<S t=\"6000\" d=\"6000\"/>"));
+		assertTrue(mpd.contains("mediaPresentationDuration=\"PT13.500S\""));
+	}
+
+	@Test
+	void introGetsItsOwnPeriod() {
+		MediaPlaylist.InitSection introInit = new MediaPlaylist.InitSection("intro.mp4", new MediaPlaylist.Range(0, 700));
+		List<MediaPlaylist.Segment> intro = List.of(
+				new MediaPlaylist.Segment(4.0, "intro.mp4", false, new MediaPlaylist.Range(700, 1000), introInit));
+		List<MediaPlaylist.Segment> playlist = IntroBumper.withIntro(intro, MediaPlaylist.parse(MediaPlaylistTest.SINGLE_FILE));
+
+		String mpd = DashManifestWriter.build(LADDER, List.of(playlist, playlist));
+
+		assertEquals(2, count(mpd, "<Period "));
+		assertTrue(mpd.contains("<Period id=\"0\" duration=\"PT4.000S\">"));
+		// the content restarts media time after the intro, in every representation of both periods
+		assertEquals(4, count(mpd, "presentationTimeOffset=\"0\""));
+		assertEquals(2, count(mpd, "<S t=\"0\" d=\"6000\"/>"));
+	}
+
+	@Test
+	void tsOutputIsRejected() {
+		List<MediaPlaylist.Segment> ts = new ArrayList<>(List.of(new MediaPlaylist.Segment(6.0, "segment_000.ts")));
+
+		assertThrows(IllegalArgumentException.class, () -> DashManifestWriter.build(LADDER, List.of(ts, ts)));
+	}
+
+	private static int count(String text, String needle) {
+		return text.split(needle, -1).length - 1;
+	}
+}
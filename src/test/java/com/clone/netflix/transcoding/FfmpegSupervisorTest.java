@@ -0,0 +1,78 @@
+package com.clone.netflix.transcoding;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FfmpegSupervisorTest {
+
+	private static final long MIB = 1024 * 1024;
+
+	private static final List<String> SLEEP = List.of("sleep", "30");
+
+	private final FfmpegSupervisor supervisor = new FfmpegSupervisor(4, 1024);
+
+	@AfterEach
+	void stop() {
+		supervisor.shutdown();
+	}
+
+	@Test
+	void backfillWaitsForCores() throws Exception {
+		Process first = supervisor.start(SLEEP, null, FfmpegSupervisor.Priority.BACKFILL, new FfmpegSupervisor.Demand(3, 100 * MIB));
+
+		CompletableFuture<Process> second = startAsync(FfmpegSupervisor.Priority.BACKFILL, new FfmpegSupervisor.Demand(2, 100 * MIB));
+		assertThrows(TimeoutException.class, () -> second.get(500, TimeUnit.MILLISECONDS));
+
+		supervisor.kill(first);
+		assertTrue(second.get(5, TimeUnit.SECONDS).isAlive());
+	}
+
+	@Test
+	void backfillWaitsForMemory() throws Exception {
+		Process first = supervisor.start(SLEEP, null, FfmpegSupervisor.Priority.BACKFILL, new FfmpegSupervisor.Demand(1, 800 * MIB));
+
+		CompletableFuture<Process> second = startAsync(FfmpegSupervisor.Priority.BACKFILL, new FfmpegSupervisor.Demand(1, 400 * MIB));
+		assertThrows(TimeoutException.class, () -> second.get(500, TimeUnit.MILLISECONDS));
+
+		supervisor.kill(first);
+		assertTrue(second.get(5, TimeUnit.SECONDS).isAlive());
+	}
+
+	@Test
+	void liveIsNeverQueued() throws Exception {
+		supervisor.start(SLEEP, null, FfmpegSupervisor.Priority.BACKFILL, new FfmpegSupervisor.Demand(4, 100 * MIB));
+
+		Process live = startAsync(FfmpegSupervisor.Priority.LIVE, new FfmpegSupervisor.Demand(2, 100 * MIB)).get(5, TimeUnit.SECONDS);
+
+		assertTrue(live.isAlive());
+	}
+
+	@Test
+	void shutdownKillsRunningProcesses() throws Exception {
+		Process process = supervisor.start(SLEEP, null, FfmpegSupervisor.Priority.BACKFILL, FfmpegSupervisor.Demand.LIGHT);
+
+		supervisor.shutdown();
+
+		assertFalse(process.isAlive());
+		assertTrue(supervisor.isShuttingDown());
+	}
+
+	private CompletableFuture<Process> startAsync(FfmpegSupervisor.Priority priority, FfmpegSupervisor.Demand demand) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return supervisor.start(SLEEP, null, priority, demand);
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		});
+	}
+}
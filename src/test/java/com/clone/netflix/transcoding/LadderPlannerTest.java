@@ -0,0 +1,52 @@
+package com.clone.netflix.transcoding;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LadderPlannerTest {
+
+	@Test
+	void rungsAboveTheSourceAreSkipped() {
+		List<Rendition> ladder = LadderPlanner.fitToSource(Rendition.DEFAULT_LADDER, new MediaInfo(60, 1280, 720));
+
+		assertEquals(List.of(Rendition.DEFAULT_LADDER.get(0), Rendition.DEFAULT_LADDER.get(1)), ladder);
+	}
+
+	@Test
+	void scopeSourceIsNotUpscaledVertically() {
+		List<Rendition> ladder = LadderPlanner.fitToSource(Rendition.DEFAULT_LADDER, new MediaInfo(60, 1920, 800));
+
+		assertEquals(720, ladder.get(ladder.size() - 1).height());
+	}
+
+	@Test
+	void tinySourceGetsOneRungAtItsOwnSize() {
+		List<Rendition> ladder = LadderPlanner.fitToSource(Rendition.DEFAULT_LADDER, new MediaInfo(60, 427, 241));
+
+		assertEquals(1, ladder.size());
+		Rendition rung = ladder.get(0);
+		assertEquals(0, rung.index());
+		assertEquals(426, rung.width());
+		assertEquals(240, rung.height());
+		// 800k for 640x360, by pixel count
+		assertEquals(350, rung.videoBitrateKbps());
+	}
+
+	@Test
+	void factorIsClampedAndRounded() {
+		assertEquals(0.5, LadderPlanner.factor(1380, 2800, 0.4, 1.2));
+		assertEquals(0.4, LadderPlanner.factor(300, 2800, 0.4, 1.2));
+		assertEquals(1.2, LadderPlanner.factor(9000, 2800, 0.4, 1.2));
+	}
+
+	@Test
+	void simpleContentGetsLowerBitrates() {
+		List<Rendition> ladder = LadderPlanner.scale(Rendition.DEFAULT_LADDER, 0.5);
+
+		assertEquals(List.of(400, 1400, 2500), ladder.stream().map(Rendition::videoBitrateKbps).toList());
+		assertEquals(List.of(96, 128, 192), ladder.stream().map(Rendition::audioBitrateKbps).toList());
+	}
+}
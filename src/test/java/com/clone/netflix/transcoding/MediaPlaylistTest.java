@@ -0,0 +1,149 @@
+package com.clone.netflix.transcoding;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MediaPlaylistTest {
+
+	private static final String CHUNK_0 = """
+			#EXTM3U
+			#EXT-X-VERSION:3
+			#EXT-X-TARGETDURATION:6
+			#EXT-X-MEDIA-SEQUENCE:0
+			#EXT-X-PLAYLIST-TYPE:VOD
+			#EXTINF:6.000000,
+			chunk000_000.ts
+			#EXTINF:6.000000,
+			chunk000_001.ts
+			#EXTINF:2.520000,
+			chunk000_002.ts
+			#EXT-X-ENDLIST
+			""";
+
+	private static final String CHUNK_1 = """
+			#EXTM3U
+			#EXT-X-VERSION:3
+			#EXT-X-TARGETDURATION:6
+			#EXT-X-MEDIA-SEQUENCE:0
+			#EXT-X-PLAYLIST-TYPE:VOD
+			#EXTINF:6.006000,
+			chunk001_000.ts
+			#EXTINF:4.000000,
+			chunk001_001.ts
+			#EXT-X-ENDLIST
+			""";
+
+	// one pass over a 27.5 s source
+	private static final String SINGLE_PASS = vod("segment_%03d.ts", 0, 6.0, 6.0, 6.0, 6.0, 3.5);
+
+	@Test
+	void mergedChunksMatchASinglePassEncode() {
+		List<HlsEncoder.Chunk> chunks = HlsEncoder.chunks(27.5, 12);
+		assertEquals(List.of(new HlsEncoder.Chunk(0, 0, 12), new HlsEncoder.Chunk(1, 12, 12), new HlsEncoder.Chunk(2, 24, 3.5)), chunks);
+
+		// what each chunk's ffmpeg writes: segments of 6 s counted from the chunk start
+		List<List<MediaPlaylist.Segment>> chunkPlaylists = List.of(
+				MediaPlaylist.parse(vod("chunk000_%03d.ts", 0, 6.0, 6.0)),
+				MediaPlaylist.parse(vod("chunk001_%03d.ts", 0, 6.0, 6.0)),
+				MediaPlaylist.parse(vod("chunk002_%03d.ts", 0, 3.5)));
+
+		List<MediaPlaylist.Segment> merged = MediaPlaylist.concat(chunkPlaylists, "segment_%03d.ts");
+
+		// same durations, boundaries and names as a single pass
+		assertEquals(MediaPlaylist.parse(SINGLE_PASS), merged);
+	}
+
+	@Test
+	void chunksStartOnTheSegmentGrid() {
+		List<HlsEncoder.Chunk> chunks = HlsEncoder.chunks(1300.4, 250);
+
+		for (HlsEncoder.Chunk chunk : chunks) {
+			assertEquals(0, chunk.startSeconds() % HlsEncoder.SEGMENT_SECONDS, 1e-9);
+		}
+		assertEquals(252, chunks.get(0).lengthSeconds(), 1e-9);
+		HlsEncoder.Chunk last = chunks.get(chunks.size() - 1);
+		assertEquals(1300.4, last.startSeconds() + last.lengthSeconds(), 1e-9);
+	}
+
+	private static String vod(String names, int first, double... durations) {
+		StringBuilder playlist = new StringBuilder("#EXTM3U\n#EXT-X-VERSION:3\n#EXT-X-TARGETDURATION:6\n#EXT-X-PLAYLIST-TYPE:VOD\n");
+		for (int i = 0; i < durations.length; i++) {
+			playlist.append(String.format(Locale.ROOT, "#EXTINF:%.6f,\n", durations[i]))
+					.append(String.format(names, first + i)).append('\n');
+		}
+		return playlist.append("#EXT-X-ENDLIST\n").toString();
+	}
+
+	@Test
+	void renderedPlaylistIsContinuousVod() {
+		List<MediaPlaylist.Segment> merged = MediaPlaylist.concat(
+				List.of(MediaPlaylist.parse(CHUNK_0), MediaPlaylist.parse(CHUNK_1)), "segment_%03d.ts");
+
+		String playlist = MediaPlaylist.renderVod(merged);
+
+		assertFalse(playlist.contains("#EXT-X-DISCONTINUITY"));
+		assertTrue(playlist.contains("#EXT-X-TARGETDURATION:7\n"));
+		assertTrue(playlist.endsWith("#EXT-X-ENDLIST\n"));
+		// round trip
+		assertEquals(merged, MediaPlaylist.parse(playlist));
+	}
+
+	@Test
+	void eventPlaylistIsOpenEndedWithFixedTargetDuration() {
+		String playlist = MediaPlaylist.renderEvent(MediaPlaylist.parse(CHUNK_0), 7);
+
+		assertTrue(playlist.contains("#EXT-X-PLAYLIST-TYPE:EVENT\n"));
+		assertTrue(playlist.contains("#EXT-X-TARGETDURATION:7\n"));
+		assertFalse(playlist.contains("#EXT-X-ENDLIST"));
+		assertEquals(MediaPlaylist.parse(CHUNK_0), MediaPlaylist.parse(playlist));
+	}
+
+	// ffmpeg -hls_segment_type fmp4 -hls_flags single_file
+	static final String SINGLE_FILE = """
+			#EXTM3U
+			#EXT-X-VERSION:7
+			#EXT-X-TARGETDURATION:6
+			#EXT-X-MEDIA-SEQUENCE:0
+			#EXT-X-PLAYLIST-TYPE:VOD
+			#EXT-X-MAP:URI="segment.mp4",BYTERANGE="812@0"
+			#EXTINF:6.000000,
+			#EXT-X-BYTERANGE:400000@812
+			segment.mp4
+			#EXTINF:6.000000,
+			#EXT-X-BYTERANGE:380000
+			segment.mp4
+			#EXTINF:1.500000,
+			#EXT-X-BYTERANGE:90000@380812
+			segment.mp4
+			#EXT-X-ENDLIST
+			""";
+
+	@Test
+	void byteRangesContinueWhereThePreviousEnded() {
+		List<MediaPlaylist.Segment> segments = MediaPlaylist.parse(SINGLE_FILE);
+
+		assertEquals(3, segments.size());
+		assertEquals(new MediaPlaylist.InitSection("segment.mp4", new MediaPlaylist.Range(0, 812)), segments.get(0).map());
+		assertEquals(new MediaPlaylist.Range(812, 400000), segments.get(0).range());
+		assertEquals(new MediaPlaylist.Range(400812, 380000), segments.get(1).range());
+		assertEquals(new MediaPlaylist.Range(380812, 90000), segments.get(2).range());
+		assertEquals(List.of("segment.mp4"), List.copyOf(MediaPlaylist.uris(segments)));
+	}
+
+	@Test
+	void singleFilePlaylistRoundTrips() {
+		List<MediaPlaylist.Segment> segments = MediaPlaylist.parse(SINGLE_FILE);
+
+		String playlist = MediaPlaylist.renderVod(segments);
+
+		assertTrue(playlist.contains("#EXT-X-VERSION:6\n"));
+		assertEquals(1, playlist.split("#EXT-X-MAP", -1).length - 1);
+		assertEquals(segments, MediaPlaylist.parse(playlist));
+	}
+}
@@ -0,0 +1,81 @@
+package com.clone.netflix.transcoding;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProgressivePlaylistTest {
+
+	// as ffmpeg has it while segment_002.ts is still being written under its .tmp name
+	private static final String ENCODER_PLAYLIST = """
+			#EXTM3U
+			#EXT-X-VERSION:3
+			#EXT-X-TARGETDURATION:6
+			#EXT-X-MEDIA-SEQUENCE:0
+			#EXT-X-PLAYLIST-TYPE:EVENT
+			#EXTINF:6.000000,
+			segment_000.ts
+			#EXTINF:6.000000,
+			segment_001.ts
+			#EXTINF:6.000000,
+			segment_002.ts
+			""";
+
+	private static final List<MediaPlaylist.Segment> INTRO = List.of(
+			new MediaPlaylist.Segment(4.0, "intro_000.ts"));
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void startsWithTheIntroAlone() throws Exception {
+		new ProgressivePlaylist(dir, INTRO);
+
+		String playlist = read("playlist.m3u8");
+		assertTrue(playlist.contains("#EXT-X-PLAYLIST-TYPE:EVENT\n"));
+		assertFalse(playlist.contains("#EXT-X-ENDLIST"));
+		assertEquals(INTRO, MediaPlaylist.parse(playlist));
+	}
+
+	@Test
+	void listsOnlySegmentsThatAreInPlace() throws Exception {
+		ProgressivePlaylist progressive = new ProgressivePlaylist(dir, INTRO);
+		Files.writeString(dir.resolve(ProgressivePlaylist.ENCODER_PLAYLIST), ENCODER_PLAYLIST);
+		Files.write(dir.resolve("segment_000.ts"), new byte[1]);
+		Files.write(dir.resolve("segment_001.ts"), new byte[1]);
+		Files.write(dir.resolve("segment_002.ts.tmp"), new byte[1]);
+
+		progressive.refresh();
+
+		List<MediaPlaylist.Segment> segments = MediaPlaylist.parse(read("playlist.m3u8"));
+		assertEquals(List.of("intro_000.ts", "segment_000.ts", "segment_001.ts"), segments.stream().map(MediaPlaylist.Segment::uri).toList());
+		assertTrue(segments.get(1).discontinuity());
+	}
+
+	@Test
+	void finishSwitchesToVod() throws Exception {
+		ProgressivePlaylist progressive = new ProgressivePlaylist(dir, List.of());
+		Files.writeString(dir.resolve(ProgressivePlaylist.ENCODER_PLAYLIST), ENCODER_PLAYLIST + "#EXT-X-ENDLIST\n");
+
+		progressive.finish();
+
+		String playlist = read("playlist.m3u8");
+		assertTrue(playlist.contains("#EXT-X-PLAYLIST-TYPE:VOD\n"));
+		assertTrue(playlist.contains("#EXT-X-TARGETDURATION:" + ProgressivePlaylist.TARGET_DURATION + "\n"));
+		assertTrue(playlist.endsWith("#EXT-X-ENDLIST\n"));
+		assertEquals(3, MediaPlaylist.parse(playlist).size());
+		assertFalse(Files.exists(dir.resolve(ProgressivePlaylist.ENCODER_PLAYLIST)));
+	}
+
+	private String read(String name) throws Exception {
+		return Files.readString(dir.resolve(name), StandardCharsets.UTF_8);
+	}
+}
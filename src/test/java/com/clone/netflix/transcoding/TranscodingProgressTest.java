@@ -0,0 +1,79 @@
+package com.clone.netflix.transcoding;
+
+import com.clone.netflix.playload.EncodeProgress;
+import org.junit.jupiter.api.Test;
+
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TranscodingProgressTest {
+
+	private static final String BLOCK = """
+			frame=240
+			fps=48.00
+			stream_0_0_q=28.0
+			bitrate=1200.5kbits/s
+			total_size=1500000
+			out_time_us=10000000
+			out_time_ms=10000000
+			out_time=00:00:10.000000
+			dup_frames=0
+			drop_frames=0
+			speed=2.00x
+			progress=continue
+			""";
+
+	@Test
+	void parsesProgressBlock() {
+		FfmpegProgress.Parser parser = new FfmpegProgress.Parser();
+		FfmpegProgress progress = null;
+		for (String line : BLOCK.split("\n")) {
+			FfmpegProgress block = parser.accept(line);
+			if (block != null) {
+				progress = block;
+			}
+		}
+
+		assertEquals(240, progress.frame());
+		assertEquals(48.0, progress.fps());
+		assertEquals(2.0, progress.speed());
+		assertEquals(10_000_000, progress.outTimeMicros());
+		assertFalse(progress.end());
+	}
+
+	@Test
+	void toleratesNotAvailableValues() {
+		FfmpegProgress.Parser parser = new FfmpegProgress.Parser();
+		assertNull(parser.accept("out_time_us=N/A"));
+		assertNull(parser.accept("speed=N/A"));
+		FfmpegProgress progress = parser.accept("progress=end");
+
+		assertEquals(0, progress.outTimeMicros());
+		assertEquals(0, progress.speed());
+		assertTrue(progress.end());
+	}
+
+	@Test
+	void sumsTasksAndSubtractsChunkOffset() {
+		TranscodingProgress tracker = new TranscodingProgress();
+		tracker.start("v");
+		Consumer<FfmpegProgress> first = tracker.task("v", 100, 0);
+		// second chunk starts at 100s, ffmpeg reports output time including the offset
+		Consumer<FfmpegProgress> second = tracker.task("v", 100, 100);
+
+		first.accept(new FfmpegProgress(0, 30, 2.0, 50_000_000, false));
+		second.accept(new FfmpegProgress(0, 30, 2.0, 125_000_000, false));
+
+		EncodeProgress progress = tracker.current("v");
+		assertEquals(37.5, progress.getPercent(), 1e-9);
+		assertEquals(4.0, progress.getSpeed(), 1e-9);
+		// 125s of media left at 4x
+		assertEquals(31L, progress.getEtaSeconds());
+		assertEquals(2, progress.getTasksTotal());
+		tracker.shutdown();
+	}
+}
@@ -0,0 +1,49 @@
+package com.clone.netflix.transcoding;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TrickplayGeneratorTest {
+
+	@Test
+	void tileKeepsTheSourceAspectRatio() {
+		assertEquals(90, TrickplayGenerator.tileHeight(new MediaInfo(60, 1920, 1080), 160));
+		assertEquals(66, TrickplayGenerator.tileHeight(new MediaInfo(60, 1920, 800), 160));
+	}
+
+	@Test
+	void cuesPointAtTheirTile() {
+		String vtt = TrickplayGenerator.vtt(5, 2, 9, 160, 90, 2, 2, "jpg");
+		List<String> lines = vtt.lines().toList();
+
+		assertEquals("WEBVTT", lines.get(0));
+		assertEquals("00:00:04.000 --> 00:00:06.000", lines.get(8));
+		assertEquals("sprite_000.jpg#xywh=0,90,160,90", lines.get(9));
+		// fifth thumbnail starts the second sheet, the last cue ends with the video
+		assertEquals("00:00:08.000 --> 00:00:09.000", lines.get(14));
+		assertEquals("sprite_001.jpg#xywh=0,0,160,90", lines.get(15));
+	}
+
+	@Test
+	void imagePlaylistListsOneEntryPerSheet() {
+		String playlist = TrickplayGenerator.imagePlaylist(5, 2, 9, 160, 90, 2, 2, "webp");
+
+		assertTrue(playlist.contains("#EXT-X-TARGETDURATION:8\n"));
+		assertTrue(playlist.contains("#EXT-X-IMAGES-ONLY\n"));
+		assertTrue(playlist.contains("#EXTINF:8.000,\n#EXT-X-TILES:RESOLUTION=160x90,LAYOUT=2x2,DURATION=2.000\nsprite_000.webp\n"));
+		assertTrue(playlist.contains("#EXTINF:1.000,\n#EXT-X-TILES:RESOLUTION=160x90,LAYOUT=2x2,DURATION=2.000\nsprite_001.webp\n"));
+		assertTrue(playlist.endsWith("#EXT-X-ENDLIST\n"));
+	}
+
+	@Test
+	void masterPlaylistListsTheImageStream() {
+		String master = MasterPlaylistWriter.build(List.of(Rendition.DEFAULT_LADDER.get(0)),
+				new TrickplayGenerator.Thumbnails(160, 90, "jpg", 12000));
+
+		assertTrue(master.endsWith("#EXT-X-IMAGE-STREAM-INF:BANDWIDTH=12000,RESOLUTION=160x90,CODECS=\"jpeg\",URI=\"thumbs/images.m3u8\"\n"));
+	}
+}